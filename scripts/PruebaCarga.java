@@ -0,0 +1,174 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prueba de carga de la API ({@code org.equiporon.Servidor.ServidorApi}) en localhost.
+ * <p>
+ * Lanza varios usuarios simulados (uno por hilo virtual) que durante un tiempo fijo repiten, sin
+ * pausa y sobre conexiones keep-alive, una mezcla de operaciones: recorrer páginas siguiendo el
+ * cursor, leer un estudiante y, en el porcentaje indicado, el ciclo insertar → editar → borrar
+ * (así la tabla queda como estaba). Al final muestra las operaciones por segundo y los percentiles
+ * de latencia de cada operación.
+ * <p>
+ * No necesita compilarse:
+ * <code>java scripts/PruebaCarga.java [url] [casa] [usuarios] [segundos] [%escrituras]</code>
+ * (por defecto <code>http://127.0.0.1:8080 Gryffindor 32 30 20</code>). El token de la API se toma
+ * de la variable <code>HOGWARTS_TOKEN</code> o, si no está, de <code>~/.hogwarts/api.token</code>.
+ */
+public class PruebaCarga {
+
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"([^\"]+)\"");
+
+    private static final String[] NOMBRES = {"Harry", "Hermione", "Ron", "Ginny", "Luna", "Neville", "Cedric", "Cho"};
+    private static final String[] APELLIDOS = {"Potter", "Granger", "Weasley", "Lovegood", "Longbottom", "Diggory", "Chang"};
+    private static final String[] PATRONUS = {"Ciervo", "Nutria", "Perro", "Liebre", "Caballo", "Cisne"};
+
+    private static String token;
+
+    /** Latencias (µs) y errores de una operación, de un solo usuario. */
+    private static final class Serie {
+        long[] micros = new long[1024];
+        int n;
+        long errores;
+
+        void anotar(long inicioNanos, boolean ok) {
+            if (!ok) errores++;
+            if (n == micros.length) micros = Arrays.copyOf(micros, n * 2);
+            micros[n++] = (System.nanoTime() - inicioNanos) / 1000;
+        }
+
+        void sumar(Serie otra) {
+            micros = Arrays.copyOf(micros, Math.max(micros.length, n + otra.n));
+            System.arraycopy(otra.micros, 0, micros, n, otra.n);
+            n += otra.n;
+            errores += otra.errores;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://127.0.0.1:8080";
+        String casa = args.length > 1 ? args[1] : "Gryffindor";
+        int usuarios = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int segundos = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int escrituras = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        String base = url + "/api/" + casa;
+        token = System.getenv("HOGWARTS_TOKEN");
+        if (token == null) token = Files.readString(Path.of(System.getProperty("user.home"), ".hogwarts", "api.token")).strip();
+        HttpClient cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        HttpResponse<String> salud = cliente.send(HttpRequest.newBuilder(URI.create(url + "/api/salud")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (salud.statusCode() != 200) throw new IllegalStateException("La API no responde: " + salud.statusCode());
+
+        System.out.printf("🚀 %d usuarios durante %d s contra %s (%d%% escrituras)%n", usuarios, segundos, base, escrituras);
+        long fin = System.nanoTime() + segundos * 1_000_000_000L;
+        List<Map<String, Serie>> resultados = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> hilos = new ArrayList<>();
+        long inicio = System.nanoTime();
+        for (int u = 0; u < usuarios; u++) {
+            hilos.add(Thread.ofVirtual().start(() -> resultados.add(usuario(cliente, base, casa, fin, escrituras))));
+        }
+        for (Thread hilo : hilos) hilo.join();
+        double duracion = (System.nanoTime() - inicio) / 1e9;
+
+        Map<String, Serie> total = new TreeMap<>();
+        for (Map<String, Serie> r : resultados) {
+            r.forEach((op, serie) -> total.computeIfAbsent(op, k -> new Serie()).sumar(serie));
+        }
+        System.out.printf("%-10s %9s %9s %8s %8s %8s %8s %8s%n", "operación", "total", "op/s", "errores", "p50 ms", "p95 ms", "p99 ms", "máx ms");
+        long peticiones = 0;
+        for (Map.Entry<String, Serie> e : total.entrySet()) {
+            Serie s = e.getValue();
+            long[] orden = Arrays.copyOf(s.micros, s.n);
+            Arrays.sort(orden);
+            peticiones += s.n;
+            System.out.printf("%-10s %9d %9.0f %8d %8.2f %8.2f %8.2f %8.2f%n", e.getKey(), s.n, s.n / duracion, s.errores,
+                    percentil(orden, 0.50), percentil(orden, 0.95), percentil(orden, 0.99), percentil(orden, 1.0));
+        }
+        System.out.printf("✅ %d peticiones en %.1f s (%.0f peticiones/s)%n", peticiones, duracion, peticiones / duracion);
+    }
+
+    /** Bucle de un usuario hasta el instante {@code fin}. */
+    private static Map<String, Serie> usuario(HttpClient cliente, String base, String casa, long fin, int escrituras) {
+        Map<String, Serie> series = new HashMap<>();
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        String cursor = null;
+        List<String> vistos = new ArrayList<>();
+
+        while (System.nanoTime() < fin) {
+            try {
+                if (azar.nextInt(100) < escrituras) {
+                    String cuerpo = estudiante(azar, casa);
+                    HttpResponse<String> r = medir(series, "insertar", cliente,
+                            peticion(base + "/estudiantes").POST(HttpRequest.BodyPublishers.ofString(cuerpo)), 201);
+                    Matcher m = ID.matcher(r.body());
+                    if (r.statusCode() != 201 || !m.find()) continue;
+                    String id = m.group(1);
+                    medir(series, "editar", cliente,
+                            peticion(base + "/estudiantes/" + id).PUT(HttpRequest.BodyPublishers.ofString(estudiante(azar, casa))), 200);
+                    medir(series, "borrar", cliente, peticion(base + "/estudiantes/" + id).DELETE(), 204);
+                } else if (!vistos.isEmpty() && azar.nextBoolean()) {
+                    String id = vistos.get(azar.nextInt(vistos.size()));
+                    medir(series, "leer", cliente, peticion(base + "/estudiantes/" + id).GET(), 200, 404);
+                } else {
+                    String consulta = "/estudiantes?tamano=50" + (cursor == null ? "" : "&cursor=" + cursor);
+                    HttpResponse<String> r = medir(series, "pagina", cliente, peticion(base + consulta).GET(), 200);
+                    Matcher c = CURSOR.matcher(r.body());
+                    cursor = c.find() ? c.group(1) : null;
+                    Matcher m = ID.matcher(r.body());
+                    if (m.find()) {
+                        if (vistos.size() >= 1000) vistos.set(azar.nextInt(vistos.size()), m.group(1));
+                        else vistos.add(m.group(1));
+                    }
+                }
+            } catch (Exception ex) {
+                series.computeIfAbsent("conexión", k -> new Serie()).anotar(System.nanoTime(), false);
+            }
+        }
+        return series;
+    }
+
+    private static HttpResponse<String> medir(Map<String, Serie> series, String op, HttpClient cliente,
+                                              HttpRequest.Builder peticion, int... esperados) throws Exception {
+        long inicio = System.nanoTime();
+        HttpResponse<String> r = cliente.send(peticion.build(), HttpResponse.BodyHandlers.ofString());
+        boolean ok = Arrays.stream(esperados).anyMatch(e -> e == r.statusCode());
+        series.computeIfAbsent(op, k -> new Serie()).anotar(inicio, ok);
+        return r;
+    }
+
+    private static HttpRequest.Builder peticion(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json");
+    }
+
+    private static String estudiante(ThreadLocalRandom azar, String casa) {
+        return "{\"nombre\":\"" + NOMBRES[azar.nextInt(NOMBRES.length)]
+                + "\",\"apellidos\":\"" + APELLIDOS[azar.nextInt(APELLIDOS.length)]
+                + "\",\"casa\":\"" + (casa.equalsIgnoreCase("Hogwarts") ? "Gryffindor" : casa)
+                + "\",\"curso\":" + (1 + azar.nextInt(7))
+                + ",\"patronus\":\"" + PATRONUS[azar.nextInt(PATRONUS.length)] + "\"}";
+    }
+
+    private static double percentil(long[] orden, double p) {
+        if (orden.length == 0) return 0;
+        int i = (int) Math.ceil(p * orden.length) - 1;
+        return orden[Math.max(0, Math.min(orden.length - 1, i))] / 1000.0;
+    }
+}
@@ -0,0 +1,75 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de {@link SQLiteDAO}: backup completo, backup incremental tras unos pocos
+ * cambios y restauración de Hogwarts y las cuatro casas, para distintos tamaños de tabla.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BackupBench {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int filas;
+
+    @Param({"10"})
+    public int cambios;
+
+    SQLiteDAO sqlite;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        FixtureBD.prepararTodas(filas);
+        FixtureBD.vaciarSQLite();
+        sqlite = new SQLiteDAO();
+        sqlite.hacerBackupCompleto();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        Replicador.detener();
+        ConexionBD.cerrarPools();
+    }
+
+    /** Edita unas pocas filas de Hogwarts antes de cada backup incremental. */
+    @State(Scope.Thread)
+    public static class ConCambios {
+        @Setup(Level.Invocation)
+        public void editar(BackupBench b) {
+            MariaDBDAO hogwarts = new MariaDBDAO();
+            for (int i = 0; i < b.cambios; i++) {
+                int n = 1 + ThreadLocalRandom.current().nextInt(b.filas);
+                String casa = FixtureBD.CASAS.get(n % FixtureBD.CASAS.size());
+                String id = BaseDAO.daoDeCasa(casa).getPrefijoCasa() + n;
+                // Como sincronización: se anota en CAMBIOS sin encolar réplicas que interfieran en la medida
+                hogwarts.editarEstudiante(FixtureBD.alumno(id, casa), true);
+            }
+        }
+    }
+
+    @Benchmark
+    public void backupCompleto() {
+        sqlite.hacerBackupCompleto();
+    }
+
+    @Benchmark
+    public void backupIncremental(ConCambios conCambios) {
+        sqlite.hacerBackupInstantaneo();
+    }
+
+    @Benchmark
+    public Map<String, Boolean> restaurarTodo() {
+        return sqlite.restaurarBackupEnHogwarts("Hogwarts");
+    }
+}
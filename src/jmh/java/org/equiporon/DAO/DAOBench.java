@@ -0,0 +1,126 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Modelo.ResultadoOperacion;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de las operaciones de {@link BaseDAO} sobre cada motor embebido:
+ * altas, ediciones y borrados (uno a uno y por lotes), lecturas y generación de IDs.
+ * <p>
+ * Las altas hacen crecer la tabla durante la medición; el tamaño indicado en {@code filas}
+ * es el de partida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DAOBench {
+
+    @Param({"Gryffindor", "Hufflepuff", "Ravenclaw", "Slytherin", "Hogwarts"})
+    public String casa;
+
+    @Param({"1000", "10000", "100000"})
+    public int filas;
+
+    @Param({"100"})
+    public int lote;
+
+    BaseDAO dao;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        FixtureBD.preparar(casa, filas);
+        dao = BaseDAO.daoDeCasa(casa);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        Replicador.detener();
+        ConexionBD.cerrarPools();
+    }
+
+    /** IDs recién insertados para que los benchmarks de borrado tengan algo que borrar. */
+    @State(Scope.Thread)
+    public static class Borrables {
+        List<String> ids;
+
+        @Setup(Level.Invocation)
+        public void insertar(DAOBench b) {
+            List<Modelo_Estudiante> nuevos = new ArrayList<>(b.lote);
+            for (int i = 0; i < b.lote; i++) nuevos.add(FixtureBD.alumno(null, b.casa));
+            ids = new ArrayList<>(b.lote);
+            for (ResultadoOperacion r : b.dao.insertarLote(nuevos)) ids.add(r.getId());
+        }
+    }
+
+    @Benchmark
+    public boolean insertarUno() {
+        return dao.insertarEstudiante(FixtureBD.alumno(null, casa), false);
+    }
+
+    @Benchmark
+    public List<ResultadoOperacion> insertarLote() {
+        List<Modelo_Estudiante> nuevos = new ArrayList<>(lote);
+        for (int i = 0; i < lote; i++) nuevos.add(FixtureBD.alumno(null, casa));
+        return dao.insertarLote(nuevos);
+    }
+
+    @Benchmark
+    public boolean editarUno() {
+        return dao.editarEstudiante(existente(), false);
+    }
+
+    @Benchmark
+    public List<ResultadoOperacion> editarLote() {
+        List<Modelo_Estudiante> cambios = new ArrayList<>(lote);
+        for (int i = 0; i < lote; i++) cambios.add(existente());
+        return dao.editarLote(cambios);
+    }
+
+    @Benchmark
+    public boolean borrarUno(Borrables borrables) {
+        return dao.borrarEstudiante(borrables.ids.get(0), false);
+    }
+
+    @Benchmark
+    public List<ResultadoOperacion> borrarLote(Borrables borrables) {
+        return dao.borrarLote(borrables.ids);
+    }
+
+    @Benchmark
+    public List<Modelo_Estudiante> obtenerTodos() {
+        return dao.obtenerTodos();
+    }
+
+    @Benchmark
+    public List<Modelo_Estudiante> obtenerPagina() throws SQLException {
+        CacheEstudiantes.invalidar(casa);
+        return dao.obtenerPagina("apellidos", false, null, BaseDAO.getTamanoPagina());
+    }
+
+    @Benchmark
+    public List<Modelo_Estudiante> obtenerPaginaCacheada() throws SQLException {
+        return dao.obtenerPagina("apellidos", false, null, BaseDAO.getTamanoPagina());
+    }
+
+    @Benchmark
+    public String generarId() throws SQLException {
+        return dao.generarNuevoIdNumerico();
+    }
+
+    /** Estudiante con el ID de una fila de partida elegida al azar. */
+    private Modelo_Estudiante existente() {
+        int n = 1 + ThreadLocalRandom.current().nextInt(filas);
+        return FixtureBD.alumno(casa.equals("Hogwarts") ? "HO" + n : String.valueOf(n), casa);
+    }
+}
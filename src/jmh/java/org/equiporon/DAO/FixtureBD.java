@@ -0,0 +1,126 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Preparación de datos para los benchmarks: crea desde cero la tabla ESTUDIANTES en las
+ * bases de datos embebidas de <code>src/jmh/resources/config.properties</code> y la llena
+ * con el número de filas pedido.
+ */
+final class FixtureBD {
+
+    static final List<String> CASAS = List.of("Gryffindor", "Hufflepuff", "Ravenclaw", "Slytherin");
+
+    private static final String[] APELLIDOS = {"Potter", "Granger", "Weasley", "Lovegood", "Diggory", "Malfoy", "Chang"};
+    private static final String[] PATRONUS = {"Ciervo", "Nutria", "Liebre", "Terrier", "Cisne"};
+
+    private FixtureBD() {}
+
+    /**
+     * Deja en una base de datos {@code filas} estudiantes con IDs 1..filas
+     * (en Hogwarts, "HO1".."HOn") y las secuencias de IDs ya inicializadas.
+     */
+    static void preparar(String casa, int filas) throws SQLException {
+        List<Modelo_Estudiante> lista = new ArrayList<>(filas);
+        String prefijo = casa.equals("Hogwarts") ? "HO" : "";
+        for (int i = 1; i <= filas; i++) lista.add(alumno(prefijo + i, casa));
+        cargar(casa, lista, filas);
+    }
+
+    /**
+     * Deja Hogwarts con {@code filas} estudiantes repartidos entre las cuatro casas (con prefijo)
+     * y cada casa con los suyos (sin prefijo), como tras una sincronización completa.
+     */
+    static void prepararTodas(int filas) throws SQLException {
+        List<Modelo_Estudiante> hogwarts = new ArrayList<>(filas);
+        List<List<Modelo_Estudiante>> porCasa = new ArrayList<>();
+        for (int c = 0; c < CASAS.size(); c++) porCasa.add(new ArrayList<>());
+
+        for (int i = 1; i <= filas; i++) {
+            int c = i % CASAS.size();
+            String casa = CASAS.get(c);
+            String prefijo = BaseDAO.daoDeCasa(casa).getPrefijoCasa();
+            hogwarts.add(alumno(prefijo + i, casa));
+            porCasa.get(c).add(alumno(String.valueOf(i), casa));
+        }
+
+        cargar("Hogwarts", hogwarts, filas);
+        for (int c = 0; c < CASAS.size(); c++) cargar(CASAS.get(c), porCasa.get(c), filas);
+    }
+
+    /** Estudiante válido con datos de prueba. */
+    static Modelo_Estudiante alumno(String id, String casa) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return new Modelo_Estudiante(id, "Alumno", APELLIDOS[r.nextInt(APELLIDOS.length)], casa,
+                1 + r.nextInt(7), PATRONUS[r.nextInt(PATRONUS.length)]);
+    }
+
+    /** Vacía la copia de SQLite (tabla y punto de control). */
+    static void vaciarSQLite() throws SQLException {
+        try (Connection conn = ConexionBD.getSQLiteConnection();
+             Statement st = conn.createStatement()) {
+            st.executeUpdate("DELETE FROM ESTUDIANTES");
+            st.executeUpdate("DROP TABLE IF EXISTS BACKUP_ESTADO");
+        }
+    }
+
+    private static void cargar(String casa, List<Modelo_Estudiante> lista, long ultimoId) throws SQLException {
+        try (Connection conn = ConexionBD.conectarCasa(casa)) {
+            if (conn == null) throw new SQLException("Sin conexión con " + casa);
+
+            try (Statement st = conn.createStatement()) {
+                for (String tabla : List.of("ESTUDIANTES", "ID_SECUENCIAS", "BANDEJA_SALIDA", "BANDEJA_FALLIDOS", "CAMBIOS")) {
+                    try {
+                        st.executeUpdate("DROP TABLE " + tabla);
+                    } catch (SQLException ignored) {
+                        // no existía
+                    }
+                }
+                st.executeUpdate("CREATE TABLE ESTUDIANTES (id VARCHAR(20) PRIMARY KEY, nombre VARCHAR(50), "
+                        + "apellidos VARCHAR(50), casa VARCHAR(20), curso INTEGER, patronus VARCHAR(50))");
+                st.executeUpdate("CREATE TABLE ID_SECUENCIAS (clave VARCHAR(40) PRIMARY KEY, siguiente BIGINT NOT NULL)");
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement ins = conn.prepareStatement(
+                    "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)")) {
+                int pendientes = 0;
+                for (Modelo_Estudiante e : lista) {
+                    ins.setString(1, e.getId());
+                    ins.setString(2, e.getNombre());
+                    ins.setString(3, e.getApellidos());
+                    ins.setString(4, e.getCasa());
+                    ins.setInt(5, e.getCurso());
+                    ins.setString(6, e.getPatronus());
+                    ins.addBatch();
+                    if (++pendientes == 5_000) {
+                        ins.executeBatch();
+                        pendientes = 0;
+                    }
+                }
+                if (pendientes > 0) ins.executeBatch();
+            }
+
+            // Secuencias ya creadas: los benchmarks no dependen de la consulta de semilla de cada motor
+            try (PreparedStatement seq = conn.prepareStatement("INSERT INTO ID_SECUENCIAS (clave, siguiente) VALUES (?, ?)")) {
+                for (String clave : List.of("ESTUDIANTES", "HO", "BANDEJA", "CAMBIOS")) {
+                    seq.setString(1, clave);
+                    seq.setLong(2, ultimoId + 1);
+                    seq.addBatch();
+                }
+                seq.executeBatch();
+            }
+            conn.commit();
+        }
+        CacheEstudiantes.invalidar(casa);
+    }
+}
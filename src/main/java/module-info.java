@@ -3,6 +3,8 @@ module org.equiporon {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.management;
+    requires jdk.httpserver;
 
     // Drivers de bases de datos que estás usando
     requires org.mariadb.jdbc;
@@ -22,4 +24,16 @@ module org.equiporon {
     // opens org.equiporon.Conexion to javafx.fxml;
 
     exports org.equiporon;
+
+    // Motores de base de datos: se descubren con ServiceLoader y otro módulo puede añadir el suyo
+    exports org.equiporon.Conexion;
+    uses org.equiporon.Conexion.MotorBD;
+    provides org.equiporon.Conexion.MotorBD with
+            org.equiporon.Conexion.MotorMariaDB,
+            org.equiporon.Conexion.MotorOracle,
+            org.equiporon.Conexion.MotorH2,
+            org.equiporon.Conexion.MotorSQLite;
+
+    // Las métricas se publican como MXBeans
+    exports org.equiporon.Utils to java.management;
 }
\ No newline at end of file
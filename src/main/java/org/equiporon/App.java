@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
+import org.equiporon.Utils.Arranque;
 import org.equiporon.Utils.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +37,8 @@ public class App extends Application {
      * <p>
      * Se ejecuta automáticamente al lanzar la aplicación e inicializa la
      * escena principal definida en el archivo FXML "primary.fxml".
-     * Además, incorpora un icono a la aplicación.
+     * Además, incorpora un icono a la aplicación y anota en la {@link Arranque cronología de arranque}
+     * cuándo empieza JavaFX y cuándo es visible la ventana.
      * </p>
      *
      * @author Ruben, Diego
@@ -45,12 +47,14 @@ public class App extends Application {
      */
     @Override
     public void start(@SuppressWarnings("exports") Stage s) throws IOException {
+        Arranque.hito("JavaFX iniciado");
         stage = s;
         setRoot("primary", "");
         Image icon = new Image(
                 App.class.getResource("/images/hogwarts_escudo.png").toExternalForm()
         );
         s.getIcons().add(icon);
+        Arranque.hito("ventana visible");
     }
 
     /**
@@ -0,0 +1,228 @@
+package org.equiporon.Conexion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de sentencias preparadas de una conexión física del {@link PoolConexiones}.
+ * <p>
+ * Los DAOs preparan una y otra vez las mismas pocas sentencias
+ * (<code>INSERT INTO ESTUDIANTES ...</code>, <code>UPDATE ... WHERE id=?</code>...). En MariaDB
+ * y Oracle cada preparación es un viaje al servidor, así que cada conexión física guarda
+ * sus sentencias ya preparadas, indexadas por el SQL, y las presta de nuevo cuando se
+ * vuelve a pedir el mismo SQL.
+ * <p>
+ * La sentencia prestada es un envoltorio ({@link Proxy}): al llamar a {@code close()} se
+ * limpian sus parámetros y vuelve a la caché en lugar de cerrarse. Si la caché está llena
+ * se cierra la sentencia usada hace más tiempo. Mientras una sentencia está prestada no
+ * está en la caché, así que preparar dos veces el mismo SQL a la vez da dos sentencias distintas.
+ * <p>
+ * Una conexión la usa un solo hilo a la vez; los métodos se sincronizan solo por si una
+ * sentencia se cierra después de haber devuelto su conexión al pool.
+ */
+final class CacheSentencias {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSentencias.class);
+
+    /** Contadores compartidos por todas las conexiones de un pool. */
+    static final class Estadisticas {
+        final LongAdder preparaciones = new LongAdder();
+        final LongAdder aciertos = new LongAdder();
+        final LongAdder expulsadas = new LongAdder();
+    }
+
+    /**
+     * SQL y variante con que se preparó. {@code a} y {@code b} son el indicador de claves
+     * generadas o el tipo y la concurrencia del {@code ResultSet} (-1 si no se indicaron).
+     */
+    private record Clave(String sql, int a, int b) {}
+
+    private final Connection fisica;
+    private final int capacidad;
+    private final Estadisticas estadisticas;
+
+    /** Sentencias libres; el orden de acceso da la usada hace más tiempo. */
+    private final LinkedHashMap<Clave, PreparedStatement> libres;
+
+    /**
+     * @param fisica Conexión física a la que pertenecen las sentencias.
+     * @param capacidad Sentencias libres que se guardan como máximo.
+     * @param estadisticas Contadores del pool.
+     */
+    CacheSentencias(Connection fisica, int capacidad, Estadisticas estadisticas) {
+        this.fisica = fisica;
+        this.capacidad = capacidad;
+        this.estadisticas = estadisticas;
+        this.libres = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Prepara una sentencia o reutiliza una libre con el mismo SQL y variante.
+     *
+     * @param conexion Conexión prestada que verá quien llame a {@link Statement#getConnection()}.
+     * @param args Argumentos de {@code prepareStatement}: {@code (sql)}, {@code (sql, clavesGeneradas)}
+     *             o {@code (sql, tipoResultSet, concurrencia)}.
+     * @return La sentencia envuelta; su {@code close()} la devuelve a la caché.
+     * @throws SQLException Si falla la preparación en el driver.
+     */
+    PreparedStatement preparar(Connection conexion, Object[] args) throws SQLException {
+        Clave clave = new Clave((String) args[0],
+                args.length > 1 ? (Integer) args[1] : -1,
+                args.length > 2 ? (Integer) args[2] : -1);
+        estadisticas.preparaciones.increment();
+
+        PreparedStatement real;
+        synchronized (this) {
+            real = libres.remove(clave);
+        }
+        if (real != null) {
+            estadisticas.aciertos.increment();
+        } else {
+            real = switch (args.length) {
+                case 1 -> fisica.prepareStatement(clave.sql());
+                case 2 -> fisica.prepareStatement(clave.sql(), clave.a());
+                default -> fisica.prepareStatement(clave.sql(), clave.a(), clave.b());
+            };
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new SentenciaPrestada(clave, real, conexion));
+    }
+
+    /** Cierra todas las sentencias libres (la conexión física se va a cerrar). */
+    synchronized void cerrar() {
+        for (PreparedStatement ps : libres.values()) cerrarReal(ps);
+        libres.clear();
+    }
+
+    /** Vuelve a dejar libre una sentencia ya limpia; si sobra, se cierra. */
+    private void devolver(Clave clave, PreparedStatement real) {
+        PreparedStatement sobrante = null;
+        synchronized (this) {
+            if (libres.putIfAbsent(clave, real) != null) {
+                sobrante = real;
+            } else if (libres.size() > capacidad) {
+                Iterator<PreparedStatement> it = libres.values().iterator();
+                sobrante = it.next();
+                it.remove();
+                estadisticas.expulsadas.increment();
+            }
+        }
+        if (sobrante != null) cerrarReal(sobrante);
+    }
+
+    private static void cerrarReal(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Manejador del {@link Proxy} de cada sentencia prestada: intercepta {@code close()},
+     * {@code isClosed()} y {@code getConnection()}, y recuerda los ajustes que cambia quien
+     * la usa para dejarlos como estaban antes de reutilizarla.
+     */
+    private final class SentenciaPrestada implements InvocationHandler {
+        private final Clave clave;
+        private final PreparedStatement real;
+        private final Connection conexion;
+        private boolean devuelta = false;
+        /** Valores originales de los ajustes cambiados (nombre del setter → valor). */
+        private Map<String, Integer> ajustes;
+        /** Se cambió algo que no se sabe deshacer: se cierra en vez de reutilizarla. */
+        private boolean desechable = false;
+
+        SentenciaPrestada(Clave clave, PreparedStatement real, Connection conexion) {
+            this.clave = clave;
+            this.real = real;
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!devuelta) {
+                        devuelta = true;
+                        limpiarYDevolver();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return devuelta || real.isClosed();
+                }
+                case "getConnection" -> {
+                    return conexion;
+                }
+                case "toString" -> {
+                    return "SentenciaPrestada[" + clave.sql() + "]";
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "setMaxRows" -> recordar("setMaxRows", real.getMaxRows());
+                case "setFetchSize" -> recordar("setFetchSize", real.getFetchSize());
+                case "setQueryTimeout" -> recordar("setQueryTimeout", real.getQueryTimeout());
+                case "setLargeMaxRows", "setFetchDirection", "setCursorName", "setEscapeProcessing",
+                     "setPoolable", "closeOnCompletion" -> desechable = true;
+                default -> {}
+            }
+            if (devuelta) {
+                throw new SQLException("La sentencia ya se cerró: " + clave.sql());
+            }
+            try {
+                return method.invoke(real, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private void recordar(String setter, int original) {
+            if (ajustes == null) ajustes = new LinkedHashMap<>();
+            ajustes.putIfAbsent(setter, original);
+        }
+
+        /** Deja la sentencia como recién preparada y la devuelve; si algo falla, se cierra. */
+        private void limpiarYDevolver() {
+            if (desechable) {
+                cerrarReal(real);
+                return;
+            }
+            try {
+                real.clearParameters();
+                real.clearBatch();
+                real.clearWarnings();
+                if (ajustes != null) {
+                    for (Map.Entry<String, Integer> a : ajustes.entrySet()) {
+                        switch (a.getKey()) {
+                            case "setMaxRows" -> real.setMaxRows(a.getValue());
+                            case "setFetchSize" -> real.setFetchSize(a.getValue());
+                            case "setQueryTimeout" -> real.setQueryTimeout(a.getValue());
+                        }
+                    }
+                }
+                devolver(clave, real);
+            } catch (SQLException ex) {
+                logger.debug("Sentencia descartada al devolverla: {}", ex.getMessage());
+                cerrarReal(real);
+            }
+        }
+    }
+}
@@ -2,8 +2,12 @@ package org.equiporon.Conexion;
 
 import java.io.File;
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.Metricas.Operacion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +20,10 @@ import org.slf4j.LoggerFactory;
  * de las casas (que según el código, usan configuraciones separadas) y
  * una base de datos local de respaldo (SQLite).
  * <p>
+ * Las conexiones a MariaDB y a las casas se reutilizan mediante un
+ * {@link PoolConexiones} por fuente de datos, en lugar de abrir una conexión
+ * física nueva con {@code DriverManager} en cada operación.
+ * <p>
  * Depende de la clase {@link Config} para obtener las credenciales de conexión
  * (URL, usuario, contraseña) y utiliza SLF4J ({@link Logger}) para el
  * registro de eventos y errores de conexión.
@@ -26,11 +34,14 @@ public class ConexionBD {
 
     private static final Logger logger = LoggerFactory.getLogger(ConexionBD.class);
 
+    /** Un pool por fuente de datos, creado la primera vez que se pide esa casa. */
+    private static final Map<String, PoolConexiones> pools = new ConcurrentHashMap<>();
+
     /**
-     * Establece una conexión con la base de datos correspondiente a una "casa" específica.
+     * Obtiene una conexión con la base de datos correspondiente a una "casa" específica.
      * <p>
-     * Utiliza un <code>switch</code> para determinar las credenciales correctas
-     * (obtenidas de {@link Config}) según el nombre de la casa proporcionado.
+     * La conexión se toma del {@link PoolConexiones} de esa casa; al cerrarla
+     * (<code>try-with-resources</code>) vuelve al pool en lugar de cerrarse físicamente.
      * El caso "Hogwarts" se conecta a la base de datos MariaDB principal.
      * Los demás casos (Gryffindor, Ravenclaw, etc.) se conectan a sus respectivas
      * bases de datos.
@@ -43,45 +54,19 @@ public class ConexionBD {
      * @author Gaizka,Diego
      */
     public static Connection conectarCasa(String casa) {
-        String url, user, password;
-
-        switch (casa) {
-            case "Gryffindor" -> {
-                url = Config.getGryffindorUrl();
-                user = Config.getGryffindorUser();
-                password = Config.getGryffindorPassword();
-            }
-            case "Ravenclaw" -> {
-                url = Config.getRavenclawUrl();
-                user = Config.getRavenclawUser();
-                password = Config.getRavenclawPassword();
-            }
-            case "Slytherin" -> {
-                url = Config.getSlytherinUrl();
-                user = Config.getSlytherinUser();
-                password = Config.getSlytherinPassword();
-            }
-            case "Hufflepuff" -> {
-                url = Config.getHufflepuffUrl();
-                user = Config.getHufflepuffUser();
-                password = Config.getHufflepuffPassword();
-            }
-            case "Hogwarts" -> {
-                url = Config.getMariaDBUrl();
-                user = Config.getMariaDBUser();
-                password = Config.getMariaDBPassword();
-            }
-            default -> {
-                logger.info("Casa no válida: " + casa);
-                return null;
-            }
+        PoolConexiones pool = getPool(casa);
+        if (pool == null) {
+            logger.info("Casa no válida: " + casa);
+            return null;
         }
 
+        long inicio = System.nanoTime();
         try {
-            Connection conn = DriverManager.getConnection(url, user, password);
+            Connection conn = pool.obtener();
+            Metricas.registrar(Operacion.CONECTAR, casa, inicio, true);
             return conn;
-
         } catch (SQLException e) {
+            Metricas.registrar(Operacion.CONECTAR, casa, inicio, false);
             logger.error("❌ Error al conectar con la base de datos de " + casa + ": " + e.getMessage());
             return null;
         }
@@ -90,8 +75,8 @@ public class ConexionBD {
     /**
      * Obtiene una conexión directa a la base de datos principal (MariaDB - Hogwarts).
      * <p>
-     * Este metodo es un atajo que utiliza directamente las credenciales de MariaDB
-     * definidas en {@link Config} (<code>mariadb.url</code>, <code>mariadb.user</code>, etc.).
+     * Este metodo es un atajo de {@link #conectarCasa(String)} con "Hogwarts": la conexión
+     * sale del pool de MariaDB definido en {@link Config} (<code>mariadb.url</code>, <code>mariadb.user</code>, etc.).
      *
      * @return Un objeto {@link Connection} a MariaDB, o <code>null</code> si
      * ocurre un error de SQL.
@@ -99,25 +84,79 @@ public class ConexionBD {
      * @author Gaizka, Diego
      */
     public static Connection getConnection() {
-        try {
-            Connection conn = DriverManager.getConnection(
-                    Config.getMariaDBUrl(),
-                    Config.getMariaDBUser(),
-                    Config.getMariaDBPassword()
-            );
-            logger.info("Conexión exitosa con MariaDB (Hogwarts)");
-            return conn;
-        } catch (SQLException e) {
-            logger.error("❌ Error al conectar con MariaDB: " + e.getMessage());
-            return null;
-        }
+        return conectarCasa("Hogwarts");
+    }
+
+    /**
+     * Devuelve el pool de conexiones de una casa, creándolo si todavía no existe.
+     * <p>
+     * Las casas válidas y el prefijo de sus claves salen de {@link FuentesDatos}. Las credenciales
+     * se leen de {@link Config} y el tamaño del pool de las claves
+     * <code>&lt;prefijo&gt;.pool.*</code> (ver {@link Config#getPoolMax(String)}).
+     *
+     * @param casa El nombre de la casa (ej. "Gryffindor") o "Hogwarts".
+     * @return El {@link PoolConexiones} de la casa, o <code>null</code> si la casa no es válida.
+     */
+    public static PoolConexiones getPool(String casa) {
+        FuentesDatos.Fuente fuente = FuentesDatos.fuente(casa);
+        if (fuente == null) return null;
+        String prefijo = fuente.clave();
+
+        return pools.computeIfAbsent(fuente.nombre(), c -> {
+            PoolConexiones pool = new PoolConexiones(c,
+                    Config.get(prefijo + ".url"),
+                    Config.get(prefijo + ".user"),
+                    Config.get(prefijo + ".password"),
+                    Config.getPoolMin(prefijo),
+                    Config.getPoolMax(prefijo),
+                    Config.getPoolInactivo(prefijo),
+                    Config.getPoolEspera(prefijo),
+                    Config.getPoolValidacion(prefijo),
+                    Config.getPoolSentencias(prefijo));
+            logger.info("Pool de conexiones creado para {} ({}, min {}, max {}).", c,
+                    FuentesDatos.motor(Config.get(prefijo + ".url")).getNombre(), pool.getMinimo(), pool.getMaximo());
+            publicarIndicadores(pool);
+            return pool;
+        });
+    }
+
+    /**
+     * Publica en {@link Metricas} el estado de un pool (tipo "Pool", con el nombre de la casa).
+     * Si el pool se vuelve a crear, los indicadores pasan a leer el nuevo.
+     */
+    private static void publicarIndicadores(PoolConexiones pool) {
+        String casa = pool.getNombre();
+        Metricas.indicador("Pool", casa, "abiertas", pool::getAbiertas);
+        Metricas.indicador("Pool", casa, "libres", pool::getLibres);
+        Metricas.indicador("Pool", casa, "enUso", pool::getEnUso);
+        Metricas.indicador("Pool", casa, "esperando", pool::getEsperando);
+        Metricas.indicador("Pool", casa, "maximo", pool::getMaximo);
+        Metricas.indicador("Pool", casa, "prestamos", pool::getPrestamos);
+        Metricas.indicador("Pool", casa, "esperaMediaMs", pool::getEsperaMediaMs);
+        Metricas.indicador("Pool", casa, "esperaMaxMs", pool::getEsperaMaxMs);
+        Metricas.indicador("Pool", casa, "esperasAgotadas", pool::getEsperasAgotadas);
+        Metricas.indicador("Pool", casa, "creadas", pool::getCreadas);
+        Metricas.indicador("Pool", casa, "descartadas", pool::getDescartadas);
+        Metricas.indicador("Pool", casa, "sentenciasPreparadas", pool::getSentenciasPreparadas);
+        Metricas.indicador("Pool", casa, "sentenciasReutilizadas", pool::getSentenciasReutilizadas);
+        Metricas.indicador("Pool", casa, "sentenciasExpulsadas", pool::getSentenciasExpulsadas);
+        Metricas.indicador("Pool", casa, "tasaAciertosSentencias", pool::getTasaAciertosSentencias);
+    }
+
+    /**
+     * Cierra todos los pools de conexiones abiertos.
+     * Se llama al cerrar la aplicación.
+     */
+    public static void cerrarPools() {
+        pools.values().forEach(PoolConexiones::cerrar);
+        pools.clear();
     }
 
     /**
      * Obtiene una conexión a la base de datos local de respaldo (SQLite).
      * <p>
      * Carga el driver de SQLite, se conecta al archivo <code>hogwarts_backup.db</code>
-     * ubicado en la carpeta <code>../data/</code>.
+     * ubicado en la carpeta <code>../data/</code>, o a la URL de <code>sqlite.url</code> si está configurada.
      * <p>
      * <b>Importante:</b> Este metodo también asegura que la tabla <code>ESTUDIANTES</code>
      * exista en la base de datos, ejecutando un <code>CREATE TABLE IF NOT EXISTS</code>
@@ -134,23 +173,30 @@ public class ConexionBD {
 
 
 
-            // 📍 Ruta real del .jar ejecutado (aunque esté dentro de /internal/)
-            File jarDir = new File(ConexionBD.class
-                    .getProtectionDomain()
-                    .getCodeSource()
-                    .getLocation()
-                    .toURI())
-                    .getParentFile();
+            // 📍 Se puede indicar otra ubicación con sqlite.url (ej. en los benchmarks)
+            String url = Config.get("sqlite.url");
+            String dbPath = url;
+            if (url == null) {
+                // 📍 Ruta real del .jar ejecutado (aunque esté dentro de /internal/)
+                File jarDir = new File(ConexionBD.class
+                        .getProtectionDomain()
+                        .getCodeSource()
+                        .getLocation()
+                        .toURI())
+                        .getParentFile();
 
-            // 🧩 Subimos desde /internal/app/target → /internal/
-            File internalDir = jarDir.getParentFile().getParentFile();
+                // 🧩 Subimos desde /internal/app/target → /internal/
+                File internalDir = jarDir.getParentFile().getParentFile();
 
-            // 📁 Carpeta data dentro de /internal/
-            File dbFile = new File(internalDir, "data/backup.sqlite");
-            String dbPath = dbFile.getAbsolutePath();
+                // 📁 Carpeta data dentro de /internal/
+                File dbFile = new File(internalDir, "data/backup.sqlite");
+                dbPath = dbFile.getAbsolutePath();
 
-            String url = "jdbc:sqlite:" + dbPath;
+                url = "jdbc:sqlite:" + dbPath;
+            }
+            long inicio = System.nanoTime();
             Connection conn = DriverManager.getConnection(url);
+            Metricas.registrar(Operacion.CONECTAR, "Backup", inicio, true);
 
             try (Statement stmt = conn.createStatement()) {
                 stmt.executeUpdate("""
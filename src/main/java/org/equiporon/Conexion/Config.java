@@ -49,6 +49,78 @@ public class Config {
         return props.getProperty(key);
     }
 
+    /**
+     * Obtiene una propiedad numérica, devolviendo un valor por defecto si la clave
+     * no existe o no es un número válido.
+     *
+     * @param key La clave de la propiedad (ej. "mariadb.pool.max").
+     * @param defecto Valor a devolver si la propiedad falta o es incorrecta.
+     * @return El valor numérico de la propiedad o {@code defecto}.
+     */
+    public static int getInt(String key, int defecto) {
+        String valor = get(key);
+        if (valor == null) return defecto;
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no numérico para '" + key + "': " + valor);
+            return defecto;
+        }
+    }
+
+    // --- Pool de conexiones ---
+    // Cada fuente se configura con su prefijo (mariadb, gryffindor, ravenclaw, hufflepuff, slytherin):
+    //   <prefijo>.pool.min, <prefijo>.pool.max, <prefijo>.pool.inactivo (ms),
+    //   <prefijo>.pool.espera (ms), <prefijo>.pool.validacion (ms) y <prefijo>.pool.sentencias
+
+    /**
+     * Obtiene el número mínimo de conexiones abiertas del pool de una fuente.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.min" (por defecto 1).
+     */
+    public static int getPoolMin(String prefijo)        { return getInt(prefijo + ".pool.min", 1); }
+
+    /**
+     * Obtiene el número máximo de conexiones prestadas a la vez por el pool de una fuente.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.max" (por defecto 8).
+     */
+    public static int getPoolMax(String prefijo)        { return getInt(prefijo + ".pool.max", 8); }
+
+    /**
+     * Obtiene el tiempo máximo que una conexión puede estar libre antes de ser desalojada.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.inactivo" en ms (por defecto 300000).
+     */
+    public static int getPoolInactivo(String prefijo)   { return getInt(prefijo + ".pool.inactivo", 300_000); }
+
+    /**
+     * Obtiene el tiempo máximo de espera por una conexión cuando el pool está lleno.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.espera" en ms (por defecto 10000).
+     */
+    public static int getPoolEspera(String prefijo)     { return getInt(prefijo + ".pool.espera", 10_000); }
+
+    /**
+     * Obtiene el tiempo de inactividad a partir del cual se valida una conexión antes de prestarla.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.validacion" en ms (por defecto 1000).
+     */
+    public static int getPoolValidacion(String prefijo) { return getInt(prefijo + ".pool.validacion", 1_000); }
+
+    /**
+     * Obtiene cuántas sentencias preparadas guarda cada conexión del pool de una fuente.
+     *
+     * @param prefijo Prefijo de la fuente en el fichero (ej. "gryffindor").
+     * @return El valor de "prefijo.pool.sentencias" (por defecto 64; 0 desactiva la caché).
+     */
+    public static int getPoolSentencias(String prefijo) { return getInt(prefijo + ".pool.sentencias", 64); }
+
     // --- Getters para MariaDB ---
 
     /**
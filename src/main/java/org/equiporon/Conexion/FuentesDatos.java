@@ -0,0 +1,132 @@
+package org.equiporon.Conexion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+/**
+ * Fuentes de datos de la aplicación: la base central (Hogwarts, en <code>mariadb.*</code>) y
+ * las casas, leídas de <code>config.properties</code>.
+ * <p>
+ * Las casas se declaran en la clave <code>casas</code> como <code>Nombre:PREFIJO</code>
+ * separados por comas (por defecto
+ * <code>Gryffindor:GR,Hufflepuff:HF,Ravenclaw:RV,Slytherin:SL</code>). El prefijo (dos letras)
+ * es el que llevan sus alumnos en Hogwarts, y la conexión se configura con el nombre en
+ * minúsculas (<code>gryffindor.url</code>, <code>gryffindor.pool.max</code>...). El motor de
+ * cada fuente se deduce de su URL entre los {@link MotorBD} disponibles, así que añadir una casa
+ * no requiere tocar código.
+ */
+public final class FuentesDatos {
+
+    private static final Logger logger = LoggerFactory.getLogger(FuentesDatos.class);
+
+    /** Nombre de la base central. */
+    public static final String HOGWARTS = "Hogwarts";
+
+    private static final String CASAS_DEFECTO = "Gryffindor:GR,Hufflepuff:HF,Ravenclaw:RV,Slytherin:SL";
+
+    /**
+     * Una fuente de datos.
+     *
+     * @param nombre Nombre tal como lo usan los DAOs (ej. "Gryffindor").
+     * @param clave Prefijo de sus claves en <code>config.properties</code> (ej. "gryffindor").
+     * @param prefijo Prefijo de los IDs de sus alumnos en Hogwarts (ej. "GR"; "HO" en Hogwarts).
+     */
+    public record Fuente(String nombre, String clave, String prefijo) {}
+
+    /** Motor para las URLs que no admite ningún otro: conecta sin ajustes propios. */
+    private static final MotorBD GENERICO = new MotorBD() {
+        @Override public String getNombre() { return "jdbc"; }
+        @Override public boolean admite(String url) { return true; }
+    };
+
+    private static final Fuente CENTRAL = new Fuente(HOGWARTS, "mariadb", "HO");
+
+    /** Todas las fuentes por nombre en minúsculas; la central va primero. */
+    private static final Map<String, Fuente> fuentes = new LinkedHashMap<>();
+    private static final List<String> casas;
+    private static final List<String> bases;
+    private static final List<MotorBD> motores = new ArrayList<>();
+
+    static {
+        fuentes.put(HOGWARTS.toLowerCase(), CENTRAL);
+        String lista = Config.get("casas");
+        for (String entrada : (lista == null || lista.isBlank() ? CASAS_DEFECTO : lista).split(",")) {
+            String[] partes = entrada.trim().split(":");
+            String nombre = partes[0].trim();
+            String prefijo = partes.length == 2 ? partes[1].trim().toUpperCase() : "";
+            if (nombre.isEmpty()) continue;
+            if (!prefijo.matches("[A-Z]{2}") || prefijo.equals(CENTRAL.prefijo())
+                    || fuentes.values().stream().anyMatch(f -> f.prefijo().equals(prefijo))) {
+                logger.error("❌ Casa '{}' ignorada: necesita un prefijo de dos letras propio (Nombre:XX).", entrada.trim());
+                continue;
+            }
+            if (fuentes.putIfAbsent(nombre.toLowerCase(), new Fuente(nombre, nombre.toLowerCase(), prefijo)) != null) {
+                logger.error("❌ Casa '{}' repetida en 'casas'.", nombre);
+            }
+        }
+        bases = fuentes.values().stream().map(Fuente::nombre).toList();
+        casas = bases.subList(1, bases.size());
+
+        for (MotorBD motor : ServiceLoader.load(MotorBD.class, FuentesDatos.class.getClassLoader())) motores.add(motor);
+        logger.info("🗄️ Fuentes de datos: {} (motores: {}).", bases,
+                motores.stream().map(MotorBD::getNombre).collect(Collectors.joining(", ")));
+    }
+
+    private FuentesDatos() {}
+
+    /** @return Nombres de las casas, en el orden de la configuración (sin Hogwarts). */
+    public static List<String> casas() {
+        return casas;
+    }
+
+    /** @return Hogwarts seguido de todas las casas. */
+    public static List<String> bases() {
+        return bases;
+    }
+
+    /**
+     * @param nombre Nombre de una fuente, sin distinguir mayúsculas ni espacios alrededor.
+     * @return La fuente, o {@code null} si no existe.
+     */
+    public static Fuente fuente(String nombre) {
+        return nombre == null ? null : fuentes.get(nombre.trim().toLowerCase());
+    }
+
+    /**
+     * @param nombre Nombre de una fuente escrito de cualquier forma (ej. "gryffindor ").
+     * @return El nombre tal como lo usan los DAOs, o {@code null} si no existe.
+     */
+    public static String normalizar(String nombre) {
+        Fuente fuente = fuente(nombre);
+        return fuente == null ? null : fuente.nombre();
+    }
+
+    /**
+     * @param prefijo Prefijo de un ID de Hogwarts (ej. "GR").
+     * @return La casa a la que corresponde, o {@code null} si no es de ninguna casa (ej. "HO").
+     */
+    public static String casaDePrefijo(String prefijo) {
+        for (Fuente fuente : fuentes.values()) {
+            if (fuente != CENTRAL && fuente.prefijo().equalsIgnoreCase(prefijo)) return fuente.nombre();
+        }
+        return null;
+    }
+
+    /**
+     * @param url URL JDBC de una fuente.
+     * @return El primer motor que la admite, o uno genérico sin ajustes si no la admite ninguno.
+     */
+    public static MotorBD motor(String url) {
+        if (url != null) {
+            for (MotorBD motor : motores) if (motor.admite(url)) return motor;
+        }
+        return GENERICO;
+    }
+}
@@ -0,0 +1,81 @@
+package org.equiporon.Conexion;
+
+import java.util.Properties;
+
+/**
+ * Motor de base de datos (MariaDB, Oracle, H2...), con lo que cambia de uno a otro: los ajustes al
+ * conectar y el dialecto SQL que los DAOs no pueden escribir de forma estándar.
+ * <p>
+ * Los motores se descubren con {@link java.util.ServiceLoader}: los de la aplicación se declaran
+ * en <code>module-info.java</code> (y en <code>META-INF/services</code> para el classpath), y un
+ * módulo externo puede añadir el suyo con
+ * <code>provides org.equiporon.Conexion.MotorBD with ...</code>. Cada fuente de datos usa el
+ * primer motor que admite su URL ({@link FuentesDatos#motor(String)}); si ninguno la admite, se
+ * conecta sin ajustes propios y con el SQL estándar. Así, añadir una fuente de datos de un motor
+ * ya conocido solo es configuración, sea cual sea el DAO que la use.
+ */
+public interface MotorBD {
+
+    /** @return Nombre corto del motor (ej. "mariadb"), para el log. */
+    String getNombre();
+
+    /**
+     * @param url URL JDBC de una fuente de datos.
+     * @return {@code true} si la URL es de este motor.
+     */
+    boolean admite(String url);
+
+    /**
+     * Añade las propiedades propias del driver a las de la conexión (usuario y contraseña ya
+     * vienen puestas). Lo que ya esté en la URL no se debe pisar ({@link #ponerSiFalta}).
+     *
+     * @param propiedades Propiedades para {@link java.sql.DriverManager}.
+     * @param url URL JDBC de la fuente.
+     * @param sentencias Sentencias preparadas por conexión de la caché del pool (nunca 0).
+     */
+    default void configurarCacheSentencias(Properties propiedades, String url, int sentencias) {}
+
+    /**
+     * @return Tipo de columna para un entero de 64 bits (secuencias de IDs). Por defecto
+     * <code>BIGINT</code>.
+     */
+    default String tipoEnteroLargo() {
+        return "BIGINT";
+    }
+
+    /**
+     * Añade a una consulta el límite de filas. Por defecto usa la forma estándar
+     * {@code FETCH FIRST n ROWS ONLY} (Derby, H2, HSQLDB y Oracle 12c o posterior).
+     *
+     * @param sql Consulta sin límite.
+     * @param filas Número máximo de filas.
+     * @return La consulta con el límite.
+     */
+    default String limitarFilas(String sql, int filas) {
+        return sql + " FETCH FIRST " + filas + " ROWS ONLY";
+    }
+
+    /**
+     * Hace que una consulta bloquee hasta el final de la transacción las filas que lee, para
+     * comprobarlas y cambiarlas sin que otra escritura se cuele en medio. Por defecto
+     * {@code FOR UPDATE} (MariaDB, Oracle, H2...).
+     *
+     * @param sql Consulta {@code SELECT} sobre una sola tabla.
+     * @return La consulta con el bloqueo.
+     */
+    default String bloquearFilas(String sql) {
+        return sql + " FOR UPDATE";
+    }
+
+    /**
+     * Pone una propiedad si la URL no la trae ya.
+     *
+     * @param propiedades Propiedades de la conexión.
+     * @param url URL JDBC.
+     * @param clave Propiedad del driver.
+     * @param valor Valor a poner.
+     */
+    static void ponerSiFalta(Properties propiedades, String url, String clave, String valor) {
+        if (!url.toLowerCase().contains(clave.toLowerCase() + "=")) propiedades.setProperty(clave, valor);
+    }
+}
@@ -0,0 +1,22 @@
+package org.equiporon.Conexion;
+
+import java.util.Properties;
+
+/** H2: caché de consultas analizadas de la sesión ({@code QUERY_CACHE_SIZE}). */
+public final class MotorH2 implements MotorBD {
+
+    @Override
+    public String getNombre() {
+        return "h2";
+    }
+
+    @Override
+    public boolean admite(String url) {
+        return url.startsWith("jdbc:h2:");
+    }
+
+    @Override
+    public void configurarCacheSentencias(Properties propiedades, String url, int sentencias) {
+        MotorBD.ponerSiFalta(propiedades, url, "QUERY_CACHE_SIZE", String.valueOf(sentencias));
+    }
+}
@@ -0,0 +1,33 @@
+package org.equiporon.Conexion;
+
+import java.util.Properties;
+
+/**
+ * MariaDB (y MySQL): sentencias preparadas en el servidor ({@code useServerPrepStmts}) para que
+ * no se vuelva a analizar el SQL en cada ejecución, con su caché ({@code cachePrepStmts}), y
+ * límite de filas con {@code LIMIT n}.
+ */
+public final class MotorMariaDB implements MotorBD {
+
+    @Override
+    public String getNombre() {
+        return "mariadb";
+    }
+
+    @Override
+    public boolean admite(String url) {
+        return url.startsWith("jdbc:mariadb:") || url.startsWith("jdbc:mysql:");
+    }
+
+    @Override
+    public void configurarCacheSentencias(Properties propiedades, String url, int sentencias) {
+        MotorBD.ponerSiFalta(propiedades, url, "useServerPrepStmts", "true");
+        MotorBD.ponerSiFalta(propiedades, url, "cachePrepStmts", "true");
+        MotorBD.ponerSiFalta(propiedades, url, "prepStmtCacheSize", String.valueOf(sentencias));
+    }
+
+    @Override
+    public String limitarFilas(String sql, int filas) {
+        return sql + " LIMIT " + filas;
+    }
+}
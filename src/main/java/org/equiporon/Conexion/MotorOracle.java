@@ -0,0 +1,30 @@
+package org.equiporon.Conexion;
+
+import java.util.Properties;
+
+/**
+ * Oracle: caché implícita de sentencias del driver ({@code oracle.jdbc.implicitStatementCacheSize})
+ * y <code>NUMBER(19)</code> en lugar de <code>BIGINT</code>, que Oracle no tiene.
+ */
+public final class MotorOracle implements MotorBD {
+
+    @Override
+    public String getNombre() {
+        return "oracle";
+    }
+
+    @Override
+    public boolean admite(String url) {
+        return url.startsWith("jdbc:oracle:");
+    }
+
+    @Override
+    public void configurarCacheSentencias(Properties propiedades, String url, int sentencias) {
+        MotorBD.ponerSiFalta(propiedades, url, "oracle.jdbc.implicitStatementCacheSize", String.valueOf(sentencias));
+    }
+
+    @Override
+    public String tipoEnteroLargo() {
+        return "NUMBER(19)";
+    }
+}
@@ -0,0 +1,33 @@
+package org.equiporon.Conexion;
+
+/**
+ * SQLite: sin ajustes de conexión propios, pero limita las filas con {@code LIMIT n}, porque no
+ * admite {@code FETCH FIRST}, y no tiene {@code FOR UPDATE}.
+ */
+public final class MotorSQLite implements MotorBD {
+
+    @Override
+    public String getNombre() {
+        return "sqlite";
+    }
+
+    @Override
+    public boolean admite(String url) {
+        return url.startsWith("jdbc:sqlite:");
+    }
+
+    @Override
+    public String limitarFilas(String sql, int filas) {
+        return sql + " LIMIT " + filas;
+    }
+
+    /**
+     * SQLite no bloquea filas sueltas: bloquea el fichero entero, y una transacción que ha leído
+     * no puede confirmar una escritura si otra ha escrito entre medias (falla con
+     * {@code SQLITE_BUSY}), así que basta con la consulta tal cual.
+     */
+    @Override
+    public String bloquearFilas(String sql) {
+        return sql;
+    }
+}
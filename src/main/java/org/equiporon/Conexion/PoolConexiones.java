@@ -0,0 +1,423 @@
+package org.equiporon.Conexion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexiones JDBC para una única fuente de datos (una casa o Hogwarts).
+ * <p>
+ * Mantiene un número mínimo de conexiones físicas abiertas y nunca presta más
+ * de {@code maximo} a la vez. Las conexiones prestadas son un envoltorio
+ * ({@link Proxy}) de la conexión física: al llamar a {@link Connection#close()}
+ * la conexión vuelve al pool en lugar de cerrarse, de modo que los DAOs pueden
+ * seguir usando <code>try-with-resources</code> exactamente igual que antes.
+ * <p>
+ * Características:
+ * <ul>
+ *     <li>Tamaño mínimo y máximo configurables.</li>
+ *     <li>Desalojo periódico de las conexiones inactivas que superan el tiempo máximo.</li>
+ *     <li>Validación al prestar ({@link Connection#isValid(int)}) si la conexión lleva
+ *     un tiempo sin usarse.</li>
+ *     <li>Métricas de préstamo: número de préstamos, tiempo de espera medio y máximo,
+ *     y esperas agotadas.</li>
+ *     <li>Caché de sentencias preparadas por conexión física ({@link CacheSentencias}), con su
+ *     tasa de aciertos. En MariaDB y Oracle se activa además la caché propia del driver.</li>
+ * </ul>
+ */
+public class PoolConexiones {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolConexiones.class);
+
+    /** Hilo compartido por todos los pools para el desalojo de conexiones inactivas. */
+    private static final ScheduledExecutorService desalojador =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pool-desalojo");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final String nombre;
+    private final String url;
+    private final Properties propiedades;
+
+    private final int minimo;
+    private final int maximo;
+    private final long maxInactivoMs;
+    private final long esperaMaxMs;
+    private final long validacionMs;
+    private final int sentencias;
+
+    /** Conexiones físicas libres; la cabeza es la usada más recientemente. */
+    private final BlockingDeque<ConexionLibre> libres = new LinkedBlockingDeque<>();
+    private final Semaphore permisos;
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private final ScheduledFuture<?> tareaDesalojo;
+    private volatile boolean cerrado = false;
+
+    // --- Métricas ---
+    private final LongAdder prestamos = new LongAdder();
+    private final LongAdder esperaTotalNanos = new LongAdder();
+    private final AtomicLong esperaMaxNanos = new AtomicLong();
+    private final LongAdder esperasAgotadas = new LongAdder();
+    private final LongAdder creadas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    private final CacheSentencias.Estadisticas estadisticasSentencias = new CacheSentencias.Estadisticas();
+
+    /** Conexión física con su caché de sentencias ({@code null} si está desactivada). */
+    private record Fisica(Connection conexion, CacheSentencias sentencias) {}
+
+    /** Conexión física en reposo junto con el instante en que volvió al pool. */
+    private record ConexionLibre(Fisica fisica, long devueltaEn) {}
+
+    /**
+     * Crea un pool para la fuente de datos indicada.
+     *
+     * @param nombre Nombre lógico de la fuente (ej. "Gryffindor"), usado en los logs.
+     * @param url URL JDBC.
+     * @param user Usuario de la base de datos.
+     * @param password Contraseña de la base de datos.
+     * @param minimo Número de conexiones que se mantienen abiertas aunque estén inactivas.
+     * @param maximo Número máximo de conexiones prestadas a la vez.
+     * @param maxInactivoMs Tiempo (ms) que una conexión puede estar libre antes de ser desalojada.
+     * @param esperaMaxMs Tiempo máximo (ms) que se espera por una conexión libre.
+     * @param validacionMs Si una conexión lleva más de este tiempo (ms) libre, se valida antes de prestarla.
+     * @param sentencias Sentencias preparadas que guarda cada conexión física (0 para no guardar ninguna).
+     */
+    public PoolConexiones(String nombre, String url, String user, String password,
+                          int minimo, int maximo, long maxInactivoMs, long esperaMaxMs, long validacionMs,
+                          int sentencias) {
+        this.nombre = nombre;
+        this.url = url;
+        this.sentencias = Math.max(0, sentencias);
+        this.propiedades = propiedadesDriver(url, user, password, this.sentencias);
+        this.maximo = Math.max(1, maximo);
+        this.minimo = Math.max(0, Math.min(minimo, this.maximo));
+        this.maxInactivoMs = maxInactivoMs;
+        this.esperaMaxMs = esperaMaxMs;
+        this.validacionMs = validacionMs;
+        this.permisos = new Semaphore(this.maximo, true);
+
+        long periodo = Math.max(1000, maxInactivoMs / 2);
+        this.tareaDesalojo = desalojador.scheduleWithFixedDelay(this::desalojarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión del pool, esperando como máximo {@code esperaMaxMs}.
+     * <p>
+     * Reutiliza la conexión libre más reciente; si ha estado inactiva más de
+     * {@code validacionMs} se valida antes de entregarla y, si ya no sirve, se descarta.
+     * Si no hay conexiones libres se abre una nueva con {@link DriverManager}.
+     *
+     * @return Una {@link Connection} cuyo {@code close()} la devuelve al pool.
+     * @throws SQLException Si el pool está cerrado, se agota la espera o falla la conexión física.
+     */
+    public Connection obtener() throws SQLException {
+        if (cerrado) throw new SQLException("El pool de " + nombre + " está cerrado.");
+
+        long inicio = System.nanoTime();
+        try {
+            if (!permisos.tryAcquire(esperaMaxMs, TimeUnit.MILLISECONDS)) {
+                esperasAgotadas.increment();
+                throw new SQLException("Tiempo de espera agotado (" + esperaMaxMs + " ms) obteniendo conexión de " + nombre);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando conexión de " + nombre, ex);
+        }
+
+        try {
+            Fisica fisica = tomarLibreValida();
+            if (fisica == null) {
+                fisica = abrirFisica();
+            }
+            registrarEspera(System.nanoTime() - inicio);
+            return envolver(fisica);
+        } catch (SQLException | RuntimeException ex) {
+            permisos.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Abre por adelantado las conexiones necesarias para llegar al mínimo configurado.
+     * Útil para que la primera operación de una casa no pague el coste del handshake.
+     * <p>
+     * Cada apertura ocupa un permiso del pool igual que un préstamo, así que puede ir a la vez
+     * que {@link #obtener()} sin pasar nunca de {@code maximo} conexiones. Si no queda ningún
+     * permiso libre, el pool ya está en uso y se deja de precalentar.
+     */
+    public void precalentar() {
+        while (!cerrado && abiertas.get() < minimo) {
+            if (!permisos.tryAcquire()) return;
+            try {
+                if (abiertas.get() >= minimo) return;
+                libres.offerLast(new ConexionLibre(abrirFisica(), System.nanoTime()));
+            } catch (SQLException ex) {
+                logger.warn("⚠️ No se pudo precalentar el pool de {}: {}", nombre, ex.getMessage());
+                return;
+            } finally {
+                permisos.release();
+            }
+        }
+    }
+
+    /**
+     * Cierra el pool: detiene el desalojo y cierra todas las conexiones libres.
+     * Las conexiones prestadas se cerrarán físicamente cuando se devuelvan.
+     */
+    public void cerrar() {
+        cerrado = true;
+        tareaDesalojo.cancel(false);
+        ConexionLibre libre;
+        while ((libre = libres.pollFirst()) != null) {
+            cerrarFisica(libre.fisica());
+        }
+        logger.info("🧹 Pool de {} cerrado ({} préstamos, espera media {} ms, {} de {} sentencias reutilizadas).",
+                nombre, getPrestamos(), getEsperaMediaMs(), getSentenciasReutilizadas(), getSentenciasPreparadas());
+    }
+
+    // ============================================================
+    // === MÉTRICAS ===============================================
+    // ============================================================
+
+    /** @return Nombre lógico de la fuente de datos. */
+    public String getNombre() { return nombre; }
+
+    /** @return Conexiones físicas abiertas (prestadas + libres). */
+    public int getAbiertas() { return abiertas.get(); }
+
+    /** @return Conexiones físicas libres en este momento. */
+    public int getLibres() { return libres.size(); }
+
+    /** @return Conexiones prestadas en este momento. */
+    public int getEnUso() { return maximo - permisos.availablePermits(); }
+
+    /** @return Número de hilos esperando una conexión. */
+    public int getEsperando() { return permisos.getQueueLength(); }
+
+    /** @return Total de préstamos realizados. */
+    public long getPrestamos() { return prestamos.sum(); }
+
+    /** @return Tiempo medio de espera por préstamo, en milisegundos. */
+    public double getEsperaMediaMs() {
+        long n = prestamos.sum();
+        return n == 0 ? 0 : esperaTotalNanos.sum() / (n * 1_000_000.0);
+    }
+
+    /** @return Mayor tiempo de espera observado en un préstamo, en milisegundos. */
+    public double getEsperaMaxMs() { return esperaMaxNanos.get() / 1_000_000.0; }
+
+    /** @return Préstamos que fallaron por agotar el tiempo de espera. */
+    public long getEsperasAgotadas() { return esperasAgotadas.sum(); }
+
+    /** @return Conexiones físicas abiertas desde la creación del pool. */
+    public long getCreadas() { return creadas.sum(); }
+
+    /** @return Conexiones físicas descartadas (inválidas, desalojadas o con error). */
+    public long getDescartadas() { return descartadas.sum(); }
+
+    /** @return Tamaño mínimo configurado. */
+    public int getMinimo() { return minimo; }
+
+    /** @return Tamaño máximo configurado. */
+    public int getMaximo() { return maximo; }
+
+    /** @return Llamadas a {@code prepareStatement} que han pasado por la caché de sentencias. */
+    public long getSentenciasPreparadas() { return estadisticasSentencias.preparaciones.sum(); }
+
+    /** @return Sentencias que se reutilizaron de la caché sin volver a prepararlas. */
+    public long getSentenciasReutilizadas() { return estadisticasSentencias.aciertos.sum(); }
+
+    /** @return Sentencias cerradas por falta de sitio en la caché de su conexión. */
+    public long getSentenciasExpulsadas() { return estadisticasSentencias.expulsadas.sum(); }
+
+    /** @return Fracción (0..1) de preparaciones servidas desde la caché. */
+    public double getTasaAciertosSentencias() {
+        long n = estadisticasSentencias.preparaciones.sum();
+        return n == 0 ? 0 : (double) estadisticasSentencias.aciertos.sum() / n;
+    }
+
+    // ============================================================
+    // === INTERNOS ===============================================
+    // ============================================================
+
+    private Fisica tomarLibreValida() {
+        ConexionLibre libre;
+        while ((libre = libres.pollFirst()) != null) {
+            long inactivaMs = (System.nanoTime() - libre.devueltaEn()) / 1_000_000;
+            if (inactivaMs < validacionMs || esValida(libre.fisica().conexion())) {
+                return libre.fisica();
+            }
+            logger.debug("Conexión inválida descartada en el pool de {}.", nombre);
+            cerrarFisica(libre.fisica());
+        }
+        return null;
+    }
+
+    private boolean esValida(Connection fisica) {
+        try {
+            return fisica.isValid(2);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private Fisica abrirFisica() throws SQLException {
+        Connection conexion = DriverManager.getConnection(url, propiedades);
+        abiertas.incrementAndGet();
+        creadas.increment();
+        logger.debug("Nueva conexión física para {} ({} abiertas).", nombre, abiertas.get());
+        CacheSentencias cache = sentencias > 0 ? new CacheSentencias(conexion, sentencias, estadisticasSentencias) : null;
+        return new Fisica(conexion, cache);
+    }
+
+    private void cerrarFisica(Fisica fisica) {
+        abiertas.decrementAndGet();
+        descartadas.increment();
+        if (fisica.sentencias() != null) fisica.sentencias().cerrar();
+        try {
+            fisica.conexion().close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Propiedades para {@link DriverManager}: usuario, contraseña y, si la caché de sentencias
+     * está activa, la caché propia del driver en los motores que la tienen
+     * ({@link MotorBD#configurarCacheSentencias}). No se pisa lo que ya venga en la URL.
+     */
+    private static Properties propiedadesDriver(String url, String user, String password, int sentencias) {
+        Properties p = new Properties();
+        if (user != null) p.setProperty("user", user);
+        if (password != null) p.setProperty("password", password);
+        if (sentencias == 0 || url == null) return p;
+
+        FuentesDatos.motor(url).configurarCacheSentencias(p, url, sentencias);
+        return p;
+    }
+
+    private void registrarEspera(long nanos) {
+        prestamos.increment();
+        esperaTotalNanos.add(nanos);
+        esperaMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Devuelve una conexión física al pool, restaurando su estado por defecto
+     * (autocommit activado, sin transacción pendiente). Si algo falla, la conexión se descarta.
+     */
+    private void devolver(Fisica fisica) {
+        try {
+            if (cerrado) {
+                cerrarFisica(fisica);
+                return;
+            }
+            Connection conexion = fisica.conexion();
+            if (!conexion.getAutoCommit()) {
+                conexion.rollback();
+                conexion.setAutoCommit(true);
+            }
+            conexion.clearWarnings();
+            libres.offerFirst(new ConexionLibre(fisica, System.nanoTime()));
+        } catch (SQLException ex) {
+            logger.debug("Conexión de {} descartada al devolverla: {}", nombre, ex.getMessage());
+            cerrarFisica(fisica);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    /** Cierra las conexiones que llevan demasiado tiempo libres, respetando el mínimo. */
+    private void desalojarInactivas() {
+        long ahora = System.nanoTime();
+        Iterator<ConexionLibre> it = libres.descendingIterator();
+        while (it.hasNext() && abiertas.get() > minimo) {
+            ConexionLibre libre = it.next();
+            if ((ahora - libre.devueltaEn()) / 1_000_000 > maxInactivoMs && libres.removeLastOccurrence(libre)) {
+                cerrarFisica(libre.fisica());
+                logger.debug("Conexión inactiva desalojada del pool de {}.", nombre);
+            }
+        }
+    }
+
+    private Connection envolver(Fisica fisica) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConexionPrestada(fisica));
+    }
+
+    /**
+     * Manejador del {@link Proxy} de cada préstamo: intercepta {@code close()} e
+     * {@code isClosed()}, pasa {@code prepareStatement} por la caché de sentencias y
+     * delega el resto de métodos en la conexión física.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+        private final Fisica fisica;
+        /** Se consulta desde cualquier hilo, incluidas sentencias cerradas tras devolver la conexión. */
+        private final AtomicBoolean devuelta = new AtomicBoolean();
+
+        ConexionPrestada(Fisica fisica) {
+            this.fisica = fisica;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (devuelta.compareAndSet(false, true)) {
+                        devolver(fisica);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return devuelta.get() || fisica.conexion().isClosed();
+                }
+                case "toString" -> {
+                    return "ConexionPrestada[" + nombre + "]";
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+            }
+            if (devuelta.get()) {
+                throw new SQLException("La conexión ya se devolvió al pool de " + nombre);
+            }
+            if (fisica.sentencias() != null && method.getName().equals("prepareStatement") && cacheable(method)) {
+                return fisica.sentencias().preparar((Connection) proxy, args);
+            }
+            try {
+                return method.invoke(fisica.conexion(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        /** Solo las variantes con SQL y, opcionalmente, enteros (claves generadas o tipo de ResultSet). */
+        private boolean cacheable(Method method) {
+            Class<?>[] tipos = method.getParameterTypes();
+            if (tipos.length > 3) return false;
+            for (int i = 1; i < tipos.length; i++) {
+                if (tipos[i] != int.class) return false;
+            }
+            return true;
+        }
+    }
+}
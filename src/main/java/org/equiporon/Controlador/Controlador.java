@@ -1,9 +1,12 @@
 package org.equiporon.Controlador;
 
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -11,19 +14,23 @@ import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 import javafx.util.converter.IntegerStringConverter;
 import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.Conexion.PoolConexiones;
 import org.equiporon.DAO.*;
 import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Arranque;
+import org.equiporon.Utils.Metricas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.util.List;
-import java.util.Locale;
-import java.util.ResourceBundle;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class Controlador {
 
@@ -36,6 +43,7 @@ public class Controlador {
     @FXML private Button botAdd;
     @FXML private Button botBorrar;
     @FXML private Button botDeshacer;
+    @FXML private Button botRehacer;
     @FXML private Label lblCasa;
     @FXML private Label lblId;
     @FXML private TableView<Modelo_Estudiante> tablaEstudiantes;
@@ -50,6 +58,9 @@ public class Controlador {
     @FXML private TextField txtCurso;
     @FXML private TextField txtNombre;
     @FXML private TextField txtPatronus;
+    @FXML private TextField txtBuscar;
+    @FXML private HBox barraArranque;
+    @FXML private Label lblArranque;
     @FXML private ImageView escudoCasa;
     @FXML private ImageView bannerIzquierdo;
     @FXML private ImageView bannerDerecho;
@@ -60,6 +71,29 @@ public class Controlador {
     private String casaActual = null;
     private BaseDAO daoActual = null;
 
+    // Paginación de la tabla (solo se tocan desde el hilo de la interfaz)
+    private String columnaOrden = "id";
+    private boolean ordenDescendente = false;
+    private Modelo_Estudiante ultimaFila = null;
+    private boolean hayMasPaginas = true;
+    private boolean cargandoPagina = false;
+    private int generacionCarga = 0;
+
+    // Cambios de otros clientes en la casa actual
+    private ObservadorCambios observador = null;
+    /** Versión de <code>CAMBIOS</code> hasta la que la tabla está al día (-1 si aún no se sabe). */
+    private long versionMostrada = -1;
+
+    // Cambio de casa en curso: System.nanoTime() al elegirla, o 0 si ya se ha medido
+    private long inicioCambio = 0;
+
+    // Las tareas de arranque se lanzan una sola vez por proceso (no al cambiar de idioma)
+    private static boolean arranqueLanzado = false;
+
+    // Búsqueda: mientras hay texto, la tabla muestra los resultados en lugar de las páginas
+    private static final int LIMITE_BUSQUEDA = 500;
+    private boolean buscando = false;
+
     // ----------------- Inicialización -----------------
     /**
      * Inicializa los componentes gráficos de la interfaz JavaFX y configura el comportamiento base de la aplicación.
@@ -70,11 +104,16 @@ public class Controlador {
      *     <li>Configurar la edición de las columnas de la tabla de estudiantes.</li>
      *     <li>Aplicar internacionalización (i18n) a los encabezados de la tabla.</li>
      *     <li>Asignar las factorías de celdas para enlazar los valores de {@link org.equiporon.Modelo.Modelo_Estudiante}.</li>
+     *     <li>Cargar la tabla por páginas al hacer scroll y ordenarla en la base de datos.</li>
+     *     <li>Filtrar la tabla con el buscador mientras se escribe.</li>
      *     <li>Habilitar la edición en línea y su sincronización con la base de datos.</li>
      *     <li>Inicializar el combo de selección de casas con sus estilos visuales y eventos asociados.</li>
      *     <li>Establecer por defecto la casa “Hogwarts”.</li>
-     *     <li>Realizar un backup inicial de la base de datos mediante {@link org.equiporon.DAO.SQLiteDAO#hacerBackupCompleto()}.</li>
+     *     <li>La primera vez, lanzar las tareas de arranque en segundo plano ({@link #lanzarTareasArranque}),
+     *     mostrando su progreso bajo la tabla.</li>
      * </ul>
+     * Nada de esto espera a la base de datos: la ventana aparece en el acto y la primera página de
+     * la tabla se muestra en cuanto se lee.
      * En caso de error durante la inicialización o el backup, se mostrará una alerta informativa al usuario.
      *
      * @see org.equiporon.DAO.SQLiteDAO
@@ -106,6 +145,13 @@ public class Controlador {
         tableCurso.setCellValueFactory(c -> new javafx.beans.property.SimpleIntegerProperty(c.getValue().getCurso()).asObject());
         tablePatronus.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(c.getValue().getPatronus()));
 
+        // Carga por páginas al hacer scroll y orden en la base de datos
+        tablaEstudiantes.skinProperty().addListener((obs, antes, skin) -> engancharScrollTabla());
+        tablaEstudiantes.setSortPolicy(this::ordenarEnServidor);
+
+        // Búsqueda mientras se escribe (en segundo plano, con el índice de la casa)
+        txtBuscar.textProperty().addListener((obs, antes, ahora) -> buscar(ahora));
+
         // Edición inline
         tableNombre.setOnEditCommit(ev -> { ev.getRowValue().setNombre(ev.getNewValue()); actualizarEnBDAsync(ev.getRowValue()); });
         tableApellidos.setOnEditCommit(ev -> { ev.getRowValue().setApellidos(ev.getNewValue()); actualizarEnBDAsync(ev.getRowValue()); });
@@ -123,7 +169,7 @@ public class Controlador {
         });
 
         // Casas + UI
-        choiceCasas.getItems().addAll("Hogwarts", "Gryffindor", "Hufflepuff", "Ravenclaw", "Slytherin");
+        choiceCasas.getItems().addAll(FuentesDatos.bases());
         choiceCasas.setValue("Hogwarts");
         choiceCasas.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> {
             if (newV != null) {
@@ -138,63 +184,158 @@ public class Controlador {
         aplicarImagenesCasa("Hogwarts");
         seleccionarCasa("Hogwarts");
 
-        // Backup inicial (si lo usas)
-        try {
-            SQLiteDAO sqlite = new SQLiteDAO();
-            sqlite.hacerBackupCompleto();
-        } catch (Exception ex) {
-            mostrarError(bundle.getString("alert.error.backup") + ex.getMessage());
+        // Progreso de las tareas de arranque (la ventana nueva toma el relevo al cambiar de idioma)
+        Arranque.observar(pendientes -> Platform.runLater(() -> mostrarProgresoArranque(pendientes)));
+        if (!arranqueLanzado) {
+            arranqueLanzado = true;
+            lanzarTareasArranque(bundle);
+        }
+    }
+
+    /**
+     * Lanza en segundo plano lo que la aplicación necesita al arrancar, sin retrasar la ventana ni
+     * la primera página (que va con prioridad interactiva):
+     * <ul>
+     *     <li>El backup inicial ({@link org.equiporon.DAO.SQLiteDAO#hacerBackupCompleto()}), con
+     *     prioridad de mantenimiento.</li>
+     *     <li>Abrir las conexiones mínimas de cada pool ({@link PoolConexiones#precalentar()}),
+     *     para que el primer cambio de casa no espere al handshake.</li>
+     *     <li>El {@link org.equiporon.DAO.Replicador}, que aplica los cambios que quedaran pendientes.</li>
+     * </ul>
+     * Cada tarea se anota en la cronología de {@link Arranque}.
+     *
+     * @param bundle Textos para el aviso de error del backup.
+     */
+    private void lanzarTareasArranque(ResourceBundle bundle) {
+        SQLiteDAO sqlite = RegistroDAO.backup();
+        Arranque.tarea("backup", EjecutorBD.ejecutar("Backup", EjecutorBD.Prioridad.MANTENIMIENTO, sqlite::hacerBackupCompleto))
+                .exceptionally(ex -> {
+                    Platform.runLater(() -> mostrarError(bundle.getString("alert.error.backup") + ex.getMessage()));
+                    return null;
+                });
+
+        List<CompletableFuture<Void>> conexiones = new ArrayList<>();
+        for (String casa : choiceCasas.getItems()) {
+            PoolConexiones pool = ConexionBD.getPool(casa);
+            if (pool != null) conexiones.add(EjecutorBD.ejecutar(casa, EjecutorBD.Prioridad.MANTENIMIENTO, pool::precalentar));
         }
+        Arranque.tarea("conexiones", CompletableFuture.allOf(conexiones.toArray(new CompletableFuture[0])));
+
+        // Ediciones sin confirmar de la sesión anterior
+        EscrituraDiferida.recuperar();
+
+        // Replicación en segundo plano (vacía lo pendiente de la sesión anterior)
+        Replicador.iniciar();
+    }
+
+    /** Muestra bajo la tabla las tareas de arranque que siguen en curso, o nada si no queda ninguna. */
+    private void mostrarProgresoArranque(Set<String> pendientes) {
+        barraArranque.setVisible(!pendientes.isEmpty());
+        barraArranque.setManaged(!pendientes.isEmpty());
+        if (pendientes.isEmpty()) return;
+
+        ResourceBundle bundle = ResourceBundle.getBundle("i18n.messages", Locale.getDefault());
+        StringJoiner tareas = new StringJoiner(", ");
+        for (String tarea : pendientes) tareas.add(bundle.getString("arranque." + tarea));
+        lblArranque.setText(bundle.getString("arranque.preparando") + tareas);
     }
 
     /**
      * Cambia la casa activa y configura su conexión a la base de datos.
      * <p>
-     * Actualiza el campo de texto, asigna el {@link org.equiporon.DAO.BaseDAO} correspondiente
-     * según la casa seleccionada y carga los estudiantes con {@link #cargarEstudiantesAsync()}.
-     * Muestra un mensaje de error si ocurre algún problema de conexión.
+     * Actualiza el campo de texto y toma el {@link org.equiporon.DAO.BaseDAO} compartido de la casa.
+     * Si hay una {@link org.equiporon.DAO.PrecargaCasas.Vista} guardada de la casa en el orden actual
+     * (de la última vez que se vio, o precargada), se muestra en el acto; si no, se cargan los
+     * estudiantes con {@link #cargarEstudiantesAsync()}. En ambos casos se empieza a observar la casa
+     * con un {@link org.equiporon.DAO.ObservadorCambios}, que se aplica a la tabla con
+     * {@link #aplicarCambios(ObservadorCambios.Delta)}: con una vista empieza desde su versión, así
+     * que su primera consulta trae lo que haya cambiado desde entonces.
+     * Después se precarga en segundo plano la casa a la que probablemente se irá ({@link #precargarSiguiente()}).
+     * No se abre ninguna conexión en el hilo de la interfaz: los errores de conexión se muestran al cargar.
      * </p>
      *
      * @param casa Nombre de la casa seleccionada (por ejemplo, "Gryffindor" o "Hogwarts").
-     * @see org.equiporon.Conexion.ConexionBD
+     * @see org.equiporon.DAO.PrecargaCasas
      * @see #cargarEstudiantesAsync()
      */
     private void seleccionarCasa(String casa) {
         ResourceBundle bundle = ResourceBundle.getBundle("i18n.messages", Locale.getDefault());
+        guardarVista();
+        PrecargaCasas.anotarCambio(casaActual, casa);
+        inicioCambio = System.nanoTime();
+
         casaActual = casa;
+        daoActual = BaseDAO.daoDeCasa(casa);
         txtCasa.setText(casa);
 
-        try (Connection conn = ConexionBD.conectarCasa(casa)) {
-            if (conn == null) {
-                mostrarError(bundle.getString("alert.error.connect_db") + casa);
-                return;
-            }
+        txtCasa.setEditable("Hogwarts".equalsIgnoreCase(casa));
+        if ("Hogwarts".equalsIgnoreCase(casa)) txtCasa.setPromptText(bundle.getString("label.casa"));
 
-            switch (casa) {
-                case "Gryffindor" -> daoActual = new DerbyDAO();
-                case "Hufflepuff" -> daoActual = new H2DAO();
-                case "Slytherin" -> daoActual = new HSQLDBDAO();
-                case "Ravenclaw" -> daoActual = new OracleDAO();
-                case "Hogwarts" -> daoActual = new MariaDBDAO();
-            }
+        PrecargaCasas.Vista vista = buscando ? null : PrecargaCasas.obtener(casa, columnaOrden, ordenDescendente);
+        if (observador != null) observador.close();
+        versionMostrada = vista == null ? -1 : vista.version();
+        observador = ObservadorCambios.observar(casa, vista == null ? -1 : vista.version(),
+                delta -> Platform.runLater(() -> aplicarCambios(delta)));
+        IndiceBusqueda.preparar(casa);
 
-            txtCasa.setEditable("Hogwarts".equalsIgnoreCase(casa));
-            if ("Hogwarts".equalsIgnoreCase(casa)) txtCasa.setPromptText(bundle.getString("label.casa"));
+        if (vista != null) mostrarVista(vista);
+        else cargarEstudiantesAsync();
+        precargarSiguiente();
+    }
 
-            cargarEstudiantesAsync();
-        } catch (Exception e) {
-            mostrarError(bundle.getString("alert.error.connect_db") + casa + ": " + e.getMessage());
+    /**
+     * Guarda lo que muestra la tabla como vista de la casa actual, para mostrarlo en el acto al
+     * volver. Su versión es la del último delta del observador aplicado a estas filas, no la del
+     * observador: un delta que aún esté de camino hacia la tabla se volverá a entregar al abrir la
+     * vista. No se guarda nada con una búsqueda activa, con la tabla vacía ni antes de la primera
+     * consulta de cambios.
+     */
+    private void guardarVista() {
+        if (casaActual == null || versionMostrada < 0 || buscando || tablaEstudiantes.getItems().isEmpty()) return;
+        PrecargaCasas.guardar(new PrecargaCasas.Vista(casaActual, tablaEstudiantes.getItems(), columnaOrden,
+                ordenDescendente, hayMasPaginas, versionMostrada));
+    }
+
+    /**
+     * Muestra una vista guardada en lugar de la primera página. La paginación sigue detrás de
+     * su última fila.
+     *
+     * @param vista Vista de la casa actual en el orden actual.
+     */
+    private void mostrarVista(PrecargaCasas.Vista vista) {
+        generacionCarga++;
+        cargandoPagina = false;
+        tablaEstudiantes.getItems().setAll(vista.filas());
+        ultimaFila = vista.filas().isEmpty() ? null : vista.filas().get(vista.filas().size() - 1);
+        hayMasPaginas = vista.hayMas();
+        if (inicioCambio != 0) {
+            PrecargaCasas.medirCambio(inicioCambio, true, true);
+            inicioCambio = 0;
         }
     }
 
+    /**
+     * Lee en segundo plano (con prioridad de mantenimiento) la primera página de la casa a la que
+     * probablemente se irá después, según {@link PrecargaCasas#probable}.
+     */
+    private void precargarSiguiente() {
+        String siguiente = PrecargaCasas.probable(casaActual, choiceCasas.getItems());
+        if (siguiente == null) return;
+        PrecargaCasas.precargar(siguiente, columnaOrden, ordenDescendente, BaseDAO.getTamanoPagina())
+                .exceptionally(ex -> {
+                    logger.debug("No se pudo precargar {}: {}", siguiente, ex.getMessage());
+                    return null;
+                });
+    }
+
     // ----------------- CRUD (ASÍNCRONO) -----------------
     /**
      * Añade un nuevo estudiante a la base de datos de la casa actual.
      * <p>
-     * Crea un objeto {@link org.equiporon.Modelo.Modelo_Estudiante} con los datos del formulario,
-     * realiza un backup rápido con {@link org.equiporon.DAO.SQLiteDAO#hacerBackupInstantaneo()},
-     * e inserta el registro de forma asíncrona mediante el {@link org.equiporon.DAO.BaseDAO} activo.
-     * Si la inserción es correcta, actualiza la tabla y limpia los campos.
+     * Crea un objeto {@link org.equiporon.Modelo.Modelo_Estudiante} con los datos del formulario
+     * e inserta el registro de forma asíncrona mediante el {@link org.equiporon.DAO.BaseDAO} activo
+     * (la inserción se puede deshacer con el {@link org.equiporon.DAO.DiarioDeshacer}).
+     * Si la inserción es correcta, añade la fila a la tabla (sin recargarla) y limpia los campos.
      * </p>
      *
      *
@@ -220,23 +361,22 @@ public class Controlador {
                     txtPatronus.getText()
             );
 
-                // 🔄 Ejecutar asincrónicamente aunque devuelva Future
-                CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return daoActual.insertarAsync(nuevo).get(); // Espera el resultado del Future en segundo plano
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        return false;
-                    }
-                }).thenAccept(ok -> Platform.runLater(() -> {
-                    if (ok) {
-                        mostrarInfo("✅ Estudiante añadido correctamente a " + casaActual + ".");
-                        limpiarCampos();
-                        cargarEstudiantesAsync();
-                    } else {
-                        mostrarError("❌ No se pudo añadir el estudiante.");
-                    }
-                }));
+                // 🔄 Se encadena el resultado: ningún hilo se queda esperando con get()
+                String casa = casaActual;
+                daoActual.insertarAsync(nuevo)
+                        .thenAccept(ok -> Platform.runLater(() -> {
+                            if (ok) {
+                                mostrarInfo("✅ Estudiante añadido correctamente a " + casa + ".");
+                                limpiarCampos();
+                                aplicarCambios(new ObservadorCambios.Delta(casa, List.of(nuevo), Set.of()));
+                            } else {
+                                mostrarError("❌ No se pudo añadir el estudiante.");
+                            }
+                        }))
+                        .exceptionally(ex -> {
+                            Platform.runLater(() -> mostrarError("❌ No se pudo añadir el estudiante: " + ex.getMessage()));
+                            return null;
+                        });
 
         } catch (NumberFormatException e) {
             mostrarError("Error al añadir estudiante: " + "Curso vacío o incorrecto, debe ser un numero del 1 al 7");
@@ -251,41 +391,36 @@ public class Controlador {
     /**
      * Actualiza de forma asíncrona los datos de un estudiante en la base de datos activa.
      * <p>
-     * Realiza un backup instantáneo con {@link org.equiporon.DAO.SQLiteDAO#hacerBackupInstantaneo()}
-     * y ejecuta la actualización mediante {@link org.equiporon.DAO.BaseDAO#editarAsync(Modelo_Estudiante)}.
-     * Si ocurre un error, muestra un mensaje al usuario.
+     * La edición se anota en {@link org.equiporon.DAO.EscrituraDiferida}, que junta las ediciones
+     * seguidas de la tabla y las vuelca en lote (cada volcado se deshace como un solo paso).
+     * Cuando se aplica, lo anota en el log; si falla, muestra un mensaje al usuario.
      * </p>
      *
      * @param est Estudiante a actualizar en la base de datos.
      * @see org.equiporon.Modelo.Modelo_Estudiante
-     * @see org.equiporon.DAO.BaseDAO#editarAsync(Modelo_Estudiante)
+     * @see org.equiporon.DAO.EscrituraDiferida#editar(String, Modelo_Estudiante)
      */
 
     private void actualizarEnBDAsync(Modelo_Estudiante est) {
         ResourceBundle bundle = ResourceBundle.getBundle("i18n.messages", Locale.getDefault());
         if (daoActual == null) return;
 
-        new SQLiteDAO().hacerBackupInstantaneo();
-
-        daoActual.editarAsync(est)
-                .thenAccept(ok -> Platform.runLater(() -> {
-                    if (ok) {
-                        logger.info("✅ {}", bundle.getString("alert.info.student_updated") + " " + casaActual);
+        String casa = casaActual;
+        EscrituraDiferida.editar(casa, est)
+                .thenAccept(resultado -> Platform.runLater(() -> {
+                    if (resultado.isExito()) {
+                        logger.info("✅ {}", bundle.getString("alert.info.student_updated") + " " + casa);
                     } else {
-                        mostrarError(bundle.getString("alert.error.update_student"));
+                        mostrarError(bundle.getString("alert.error.update_student") + ": " + resultado.getMensaje());
                     }
-                }))
-                .exceptionally(ex -> {
-                    Platform.runLater(() -> mostrarError(bundle.getString("alert.error.update_student") + ": " + ex.getMessage()));
-                    return null;
-                });
+                }));
     }
     /**
      * Elimina el estudiante seleccionado de la base de datos activa de forma asíncrona.
      * <p>
-     * Realiza un backup instantáneo con {@link org.equiporon.DAO.SQLiteDAO#hacerBackupInstantaneo()}
-     * y utiliza {@link org.equiporon.DAO.BaseDAO#borrarAsync(String)} para eliminar el registro.
-     * Tras la eliminación, actualiza la tabla o muestra un mensaje de error si falla la operación.
+     * Espera a que se vuelquen las ediciones pendientes ({@link org.equiporon.DAO.EscrituraDiferida#vaciar()})
+     * y, cuando termina, utiliza {@link org.equiporon.DAO.BaseDAO#borrarAsync(String)} para eliminar el registro.
+     * Tras la eliminación, quita la fila de la tabla (sin recargarla) o muestra un mensaje de error si falla la operación.
      * </p>
      *
      * @param event Evento del botón “Borrar”.
@@ -301,13 +436,14 @@ public class Controlador {
         Modelo_Estudiante sel = tablaEstudiantes.getSelectionModel().getSelectedItem();
         if (sel == null) { mostrarError(bundle.getString("alert.error.no_student_selected")); return; }
 
-        new SQLiteDAO().hacerBackupInstantaneo();
-
-        daoActual.borrarAsync(sel.getId())
+        BaseDAO dao = daoActual;
+        String casa = casaActual;
+        EscrituraDiferida.vaciar()
+                .thenCompose(v -> dao.borrarAsync(sel.getId()))
                 .thenAccept(ok -> Platform.runLater(() -> {
                     if (ok) {
-                        mostrarInfo(bundle.getString("alert.info.student_deleted") + casaActual);
-                        cargarEstudiantesAsync();
+                        mostrarInfo(bundle.getString("alert.info.student_deleted") + casa);
+                        aplicarCambios(new ObservadorCambios.Delta(casa, List.of(), Set.of(sel.getId())));
                     } else {
                         mostrarError(bundle.getString("alert.error.delete_student"));
                     }
@@ -320,53 +456,268 @@ public class Controlador {
 
 
     /**
-     * Restaura el respaldo más reciente de la base de datos para la casa actual.
+     * Deshace la última operación (de cualquier casa) con el {@link org.equiporon.DAO.DiarioDeshacer}.
      * <p>
-     * Solicita confirmación al usuario y, si acepta, utiliza
-     * {@link org.equiporon.DAO.SQLiteDAO#restaurarBackupEnHogwarts(String)} para recuperar los datos.
-     * Tras la restauración, muestra un mensaje informativo y recarga la tabla de estudiantes.
+     * Espera a que se vuelquen las ediciones pendientes y devuelve solo las filas de esa operación a
+     * como estaban antes; el cambio se replica a Hogwarts o a la casa como cualquier otra escritura.
+     * Si las filas han cambiado desde entonces, no se toca nada y se avisa.
      * </p>
      *
      * @param event Evento del botón “Deshacer”.
-     * @see org.equiporon.DAO.SQLiteDAO#restaurarBackupEnHogwarts(String)
+     * @see org.equiporon.DAO.DiarioDeshacer#deshacer()
      */
 
     @FXML
     private void clickOnUndo(ActionEvent event) {
+        moverPaso(true);
+    }
+
+    /**
+     * Vuelve a aplicar la última operación deshecha con el {@link org.equiporon.DAO.DiarioDeshacer}.
+     *
+     * @param event Evento del botón “Rehacer”.
+     * @see org.equiporon.DAO.DiarioDeshacer#rehacer()
+     */
+
+    @FXML
+    private void clickOnRedo(ActionEvent event) {
+        moverPaso(false);
+    }
+
+    /**
+     * Deshace o rehace un paso y aplica a la tabla sus filas (si es de la casa que se está viendo).
+     *
+     * @param deshacer {@code true} para deshacer, {@code false} para rehacer.
+     */
+    private void moverPaso(boolean deshacer) {
         ResourceBundle bundle = ResourceBundle.getBundle("i18n.messages", Locale.getDefault());
-        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, bundle.getString("alert.confirm.restore_backup"));
-        confirm.showAndWait().ifPresent(res -> {
-            if (res == ButtonType.OK) {
-                SQLiteDAO sqlite = new SQLiteDAO();
-                sqlite.restaurarBackupEnHogwarts(casaActual);
-                mostrarInfo(bundle.getString("alert.info.restored_backup"));
-                cargarEstudiantesAsync();
-            }
-        });
+        String clave = deshacer ? "undo" : "redo";
+        EscrituraDiferida.vaciar()
+                .thenCompose(v -> deshacer ? DiarioDeshacer.deshacer() : DiarioDeshacer.rehacer())
+                .thenAccept(paso -> Platform.runLater(() -> {
+                    if (paso == null) {
+                        mostrarInfo(bundle.getString("alert.info.nothing_to_" + clave));
+                        return;
+                    }
+                    List<Modelo_Estudiante> filas = new ArrayList<>();
+                    Set<String> borrados = new HashSet<>();
+                    for (DiarioDeshacer.Cambio c : paso.cambios()) {
+                        Modelo_Estudiante fila = deshacer ? c.antes() : c.despues();
+                        if (fila == null) borrados.add(c.id());
+                        else filas.add(fila);
+                    }
+                    aplicarCambios(new ObservadorCambios.Delta(paso.casa(), filas, borrados));
+                    logger.info("✅ {}{} ({}, {} filas)", bundle.getString(deshacer ? "alert.info.undone" : "alert.info.redone"),
+                            paso.casa(), paso.operacion(), paso.cambios().size());
+                }))
+                .exceptionally(ex -> {
+                    Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    Platform.runLater(() -> mostrarError(bundle.getString("alert.error." + clave) + causa.getMessage()));
+                    return null;
+                });
     }
 
     // ----------------- Carga (ASÍNCRONA) -----------------
     /**
-     * Carga de forma asíncrona todos los estudiantes de la casa actual.
+     * Vuelve a cargar desde el principio los estudiantes de la casa actual.
      * <p>
-     * Utiliza {@link org.equiporon.DAO.BaseDAO#obtenerTodosAsync()} para recuperar los registros
-     * y actualiza la tabla en el hilo de la interfaz. Si ocurre un error, muestra un mensaje al usuario.
+     * Vacía la tabla y pide la primera página con {@link org.equiporon.DAO.BaseDAO#obtenerPaginaAsync}
+     * en el orden elegido en la tabla; las siguientes se piden al acercarse al final con el scroll
+     * ({@link #cargarSiguientePagina()}), de modo que nunca se trae la tabla entera de una vez.
+     * Si hay una búsqueda activa, la repite en lugar de cargar páginas.
      * </p>
      *
-     * @see org.equiporon.DAO.BaseDAO#obtenerTodosAsync()
+     * @see org.equiporon.DAO.BaseDAO#obtenerPaginaAsync
      */
 
     private void cargarEstudiantesAsync() {
         if (daoActual == null) return;
+        if (buscando) {
+            buscar(txtBuscar.getText());
+            return;
+        }
+
+        generacionCarga++;
+        ultimaFila = null;
+        hayMasPaginas = true;
+        cargandoPagina = false;
+        tablaEstudiantes.getItems().clear();
+        cargarSiguientePagina();
+    }
 
-        daoActual.obtenerTodosAsync()
-                .thenAccept(lista -> Platform.runLater(() -> tablaEstudiantes.getItems().setAll(lista)))
+    /**
+     * Pide la página siguiente a la última cargada, salvo que ya haya una en curso o no queden más.
+     * Las respuestas de una carga anterior (por ejemplo, tras cambiar de casa o de orden) se descartan.
+     */
+    private void cargarSiguientePagina() {
+        if (daoActual == null || cargandoPagina || !hayMasPaginas) return;
+
+        cargandoPagina = true;
+        final int generacion = generacionCarga;
+        final int tamano = BaseDAO.getTamanoPagina();
+
+        daoActual.obtenerPaginaAsync(columnaOrden, ordenDescendente, ultimaFila, tamano)
+                .thenAccept(pagina -> Platform.runLater(() -> {
+                    if (generacion != generacionCarga) return;
+                    tablaEstudiantes.getItems().addAll(pagina);
+                    Arranque.hito(Arranque.PRIMERA_PAGINA);
+                    if (inicioCambio != 0) {
+                        PrecargaCasas.medirCambio(inicioCambio, true, false);
+                        inicioCambio = 0;
+                    }
+                    if (!pagina.isEmpty()) ultimaFila = pagina.get(pagina.size() - 1);
+                    hayMasPaginas = pagina.size() == tamano;
+                    cargandoPagina = false;
+                }))
                 .exceptionally(ex -> {
-                    Platform.runLater(() -> mostrarError("Error al cargar estudiantes: " + ex.getMessage()));
+                    Platform.runLater(() -> {
+                        if (generacion == generacionCarga) {
+                            cargandoPagina = false;
+                            if (inicioCambio != 0) {
+                                PrecargaCasas.medirCambio(inicioCambio, false, false);
+                                inicioCambio = 0;
+                            }
+                        }
+                        mostrarError("Error al cargar estudiantes: " + ex.getMessage());
+                    });
                     return null;
                 });
     }
 
+    /**
+     * Engancha la carga de páginas a la barra de scroll vertical de la tabla: al pasar del 90%
+     * se pide la siguiente página. Se llama cuando la tabla crea su skin (y con él las barras).
+     */
+    private void engancharScrollTabla() {
+        for (Node nodo : tablaEstudiantes.lookupAll(".scroll-bar")) {
+            if (nodo instanceof ScrollBar barra && barra.getOrientation() == Orientation.VERTICAL) {
+                barra.valueProperty().addListener((obs, antes, ahora) -> {
+                    if (ahora.doubleValue() >= barra.getMax() * 0.9) cargarSiguientePagina();
+                });
+            }
+        }
+    }
+
+    /**
+     * Política de orden de la tabla: en lugar de ordenar en memoria solo lo cargado, traduce
+     * la columna pulsada a un {@code ORDER BY} en la base de datos y vuelve a cargar desde la primera página.
+     *
+     * @param tabla La tabla de estudiantes.
+     * @return Siempre {@code true} (el orden se aplica en el servidor).
+     */
+    private Boolean ordenarEnServidor(TableView<Modelo_Estudiante> tabla) {
+        String columna = "id";
+        boolean descendente = false;
+        if (!tabla.getSortOrder().isEmpty()) {
+            TableColumn<Modelo_Estudiante, ?> primera = tabla.getSortOrder().get(0);
+            columna = primera == tableNombre ? "nombre"
+                    : primera == tableApellidos ? "apellidos"
+                    : primera == tableCasa ? "casa"
+                    : primera == tableCurso ? "curso"
+                    : primera == tablePatronus ? "patronus"
+                    : "id";
+            descendente = primera.getSortType() == TableColumn.SortType.DESCENDING;
+        }
+
+        if (!columna.equals(columnaOrden) || descendente != ordenDescendente) {
+            columnaOrden = columna;
+            ordenDescendente = descendente;
+            cargarEstudiantesAsync();
+        }
+        return true;
+    }
+
+    /**
+     * Filtra la tabla con el {@link IndiceBusqueda} de la casa actual. La búsqueda se hace en
+     * segundo plano; si llega otra (o se cambia de casa) antes de que termine, su resultado se
+     * descarta. Con menos de {@value IndiceBusqueda#MIN_CARACTERES} letras se vuelve a la tabla
+     * completa por páginas.
+     *
+     * @param texto Texto del buscador.
+     */
+    private void buscar(String texto) {
+        if (daoActual == null) return;
+        if (texto == null || texto.strip().length() < IndiceBusqueda.MIN_CARACTERES) {
+            if (buscando) {
+                buscando = false;
+                cargarEstudiantesAsync();
+            }
+            return;
+        }
+
+        buscando = true;
+        final int generacion = ++generacionCarga;
+        hayMasPaginas = false;
+        cargandoPagina = false;
+        IndiceBusqueda.buscarAsync(casaActual, texto, LIMITE_BUSQUEDA)
+                .thenAccept(resultado -> Platform.runLater(() -> {
+                    if (generacion != generacionCarga) return;
+                    List<Modelo_Estudiante> filas = new ArrayList<>(resultado);
+                    // Sin columna elegida se mantiene el orden por parecido
+                    if (!tablaEstudiantes.getSortOrder().isEmpty()) filas.sort(comparadorOrden());
+                    tablaEstudiantes.getItems().setAll(filas);
+                }))
+                .exceptionally(ex -> {
+                    Platform.runLater(() -> mostrarError("Error al buscar estudiantes: " + ex.getMessage()));
+                    return null;
+                });
+    }
+
+    /**
+     * Aplica a la tabla los cambios de la casa actual sin recargarla.
+     * <p>
+     * Las filas editadas se sustituyen en su sitio (salvo la que se esté editando en ese momento),
+     * las borradas se quitan y las nuevas se colocan en su posición según el orden actual, solo si
+     * caen dentro de lo ya cargado: si van detrás, llegarán con su página al hacer scroll. Con una
+     * búsqueda activa no se añaden filas nuevas.
+     * Aplicar dos veces el mismo cambio no tiene efecto. Si el delta pide recargar (demasiados
+     * cambios de golpe), la tabla se vuelve a cargar desde la primera página.
+     *
+     * @param delta Cambios detectados por el {@link ObservadorCambios} o hechos desde esta ventana.
+     */
+    private void aplicarCambios(ObservadorCambios.Delta delta) {
+        if (!delta.casa().equals(casaActual)) return;
+        versionMostrada = Math.max(versionMostrada, delta.version());
+        if (delta.recargar()) {
+            cargarEstudiantesAsync();
+            return;
+        }
+        ObservableList<Modelo_Estudiante> filas = tablaEstudiantes.getItems();
+        TablePosition<Modelo_Estudiante, ?> editando = tablaEstudiantes.getEditingCell();
+
+        Map<String, Integer> posiciones = new HashMap<>();
+        for (int i = 0; i < filas.size(); i++) posiciones.put(filas.get(i).getId(), i);
+
+        List<Modelo_Estudiante> nuevas = new ArrayList<>();
+        for (Modelo_Estudiante e : delta.cambiados()) {
+            Integer i = posiciones.get(e.getId());
+            if (i == null) nuevas.add(e);
+            else if (editando == null || editando.getRow() != i) filas.set(i, e);
+        }
+        if (!delta.borrados().isEmpty()) filas.removeIf(e -> delta.borrados().contains(e.getId()));
+
+        Comparator<Modelo_Estudiante> orden = comparadorOrden();
+        for (Modelo_Estudiante e : nuevas) {
+            if (buscando || (hayMasPaginas && (ultimaFila == null || orden.compare(e, ultimaFila) > 0))) continue;
+            int pos = Collections.binarySearch(filas, e, orden);
+            filas.add(pos < 0 ? -pos - 1 : pos, e);
+        }
+    }
+
+    /** @return El orden de la tabla ({@code columnaOrden, id}), igual que la paginación en el servidor. */
+    private Comparator<Modelo_Estudiante> comparadorOrden() {
+        Comparator<Modelo_Estudiante> orden = switch (columnaOrden) {
+            case "nombre" -> Comparator.comparing(Modelo_Estudiante::getNombre, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "apellidos" -> Comparator.comparing(Modelo_Estudiante::getApellidos, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "casa" -> Comparator.comparing(Modelo_Estudiante::getCasa, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "curso" -> Comparator.comparing(Modelo_Estudiante::getCurso, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "patronus" -> Comparator.comparing(Modelo_Estudiante::getPatronus, Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> (a, b) -> 0;
+        };
+        orden = orden.thenComparing(Modelo_Estudiante::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return ordenDescendente ? orden.reversed() : orden;
+    }
+
     // ----------------- Utilidades UI -----------------
     /**
      * Limpia los campos de texto del formulario de entrada de datos.
@@ -529,11 +880,13 @@ public class Controlador {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == btnSi) {
-                try { DerbyDAO.shutdown(); } catch (Throwable ignored) {}
-                try { H2DAO.shutdown(); } catch (Throwable ignored) {}
-                try { HSQLDBDAO.shutdown(); } catch (Throwable ignored) {}
-                try { OracleDAO.shutdown(); } catch (Throwable ignored) {}
-                try { MariaDBDAO.shutdown(); } catch (Throwable ignored) {}
+                logger.info("📊 Caché de estudiantes: {}", CacheEstudiantes.resumen());
+                logger.info("📊 Métricas de la sesión:{}", Metricas.resumen());
+                if (observador != null) observador.close();
+                // Lo que no llegue a volcarse sigue en el diario y se recupera al volver a abrir
+                try { EscrituraDiferida.vaciar().get(5, TimeUnit.SECONDS); } catch (Exception ignored) {}
+                try { Replicador.detener(); } catch (Throwable ignored) {}
+                try { RegistroDAO.cerrar(); } catch (Throwable ignored) {}
                 Platform.exit();
             }
         });
@@ -620,6 +973,8 @@ public class Controlador {
         };
 
         Locale.setDefault(locale);
+        // La ventana nueva tiene su propio controlador y observador
+        if (observador != null) observador.close();
 
         try {
             ResourceBundle bundle = ResourceBundle.getBundle("i18n.messages", locale);
@@ -0,0 +1,273 @@
+package org.equiporon.DAO;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bandeja de salida (patrón <i>transactional outbox</i>) de cada base de datos.
+ * <p>
+ * Cada escritura en una casa o en Hogwarts que deba replicarse deja además una
+ * entrada en la tabla <code>BANDEJA_SALIDA</code> <b>dentro de la misma transacción</b>:
+ * si la escritura se confirma, la entrada también, y si falla, ninguna de las dos.
+ * El {@link Replicador} lee después esas entradas en segundo plano y las aplica en el destino.
+ * <p>
+ * Las entradas solo guardan el ID del estudiante y el tipo de operación; el
+ * replicador relee el estado actual de la fila al aplicarla, por lo que repetir una
+ * entrada o aplicarlas fuera de orden no cambia el resultado final.
+ * <p>
+ * Las entradas que fallan demasiadas veces se mueven a <code>BANDEJA_FALLIDOS</code>
+ * (cola de mensajes muertos) para revisarlas a mano.
+ */
+final class BandejaSalida {
+
+    private static final String DDL_BANDEJA = """
+            CREATE TABLE BANDEJA_SALIDA (
+                seq %s PRIMARY KEY,
+                id_estudiante VARCHAR(20) NOT NULL,
+                operacion VARCHAR(10) NOT NULL,
+                creado DECIMAL(19) NOT NULL,
+                intentos INTEGER DEFAULT 0 NOT NULL
+            )""".formatted(EsquemaBD.ENTERO_LARGO);
+
+    private static final String DDL_FALLIDOS = """
+            CREATE TABLE BANDEJA_FALLIDOS (
+                seq %s PRIMARY KEY,
+                id_estudiante VARCHAR(20) NOT NULL,
+                operacion VARCHAR(10) NOT NULL,
+                creado DECIMAL(19) NOT NULL,
+                intentos INTEGER NOT NULL,
+                ultimo_error VARCHAR(500)
+            )""".formatted(EsquemaBD.ENTERO_LARGO);
+
+    private BandejaSalida() {}
+
+    /** Entrada pendiente de replicar. */
+    record Entrada(long seq, String idEstudiante, String operacion, long creado, int intentos) {}
+
+    /**
+     * Reserva los números de secuencia de las próximas entradas y crea la tabla si falta.
+     * <p>
+     * Ambas cosas usan conexiones propias del pool, así que hay que llamarlo <b>antes</b> de pedir
+     * la conexión de la escritura: si cada tarea del compartimento ya tiene la suya y espera una
+     * segunda, el pool se queda sin conexiones y todas acaban agotando la espera.
+     *
+     * @param dao DAO de la base de datos donde se va a escribir.
+     * @param cantidad Número de entradas que se van a registrar (0 si ninguna).
+     * @return El primer número reservado; valen los de {@code [inicio, inicio + cantidad)}.
+     * @throws SQLException Si no se puede crear la tabla o reservar los números.
+     */
+    static long reservar(BaseDAO dao, int cantidad) throws SQLException {
+        if (cantidad == 0) return 0;
+        preparar(dao);
+        return cantidad == 1
+                ? GeneradorIds.siguiente(dao.getCasa(), "BANDEJA", dao::getConnection, BandejaSalida::maximoSeq)
+                : GeneradorIds.reservar(dao.getCasa(), "BANDEJA", cantidad, dao::getConnection, BandejaSalida::maximoSeq);
+    }
+
+    /**
+     * Crea la tabla de la bandeja si falta, con una conexión propia del pool (antes de pedir la
+     * conexión de la escritura, como {@link #reservar(BaseDAO, int)}).
+     *
+     * @param dao DAO de la base de datos.
+     * @throws SQLException Si la tabla no existe y no se puede crear.
+     */
+    static void preparar(BaseDAO dao) throws SQLException {
+        EsquemaBD.asegurarTabla(dao.getCasa(), dao::getConnection, "BANDEJA_SALIDA", DDL_BANDEJA);
+    }
+
+    /**
+     * Descarta todas las entradas pendientes usando la conexión (y transacción) del llamante. Se usa
+     * al restaurar la tabla entera: las entradas anteriores hablan de filas que ya no están así y
+     * no deben replicarse sobre lo restaurado.
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @return Número de entradas descartadas.
+     * @throws SQLException Si falla el borrado.
+     */
+    static int vaciar(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            return st.executeUpdate("DELETE FROM BANDEJA_SALIDA");
+        }
+    }
+
+    /**
+     * Registra una operación en la bandeja usando la conexión (y transacción) del llamante.
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @param operacion "insert", "update" o "delete".
+     * @param idEstudiante ID del estudiante en esa base de datos.
+     * @param seq Número de secuencia reservado con {@link #reservar(BaseDAO, int)}.
+     * @throws SQLException Si no se puede registrar (la transacción del llamante debe deshacerse).
+     */
+    static void registrar(Connection conn, String operacion, String idEstudiante, long seq) throws SQLException {
+        registrarLote(conn, operacion, List.of(idEstudiante), seq);
+    }
+
+    /**
+     * Registra varias operaciones del mismo tipo con un único <code>executeBatch</code>.
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @param operacion "insert", "update" o "delete".
+     * @param ids IDs de los estudiantes afectados.
+     * @param seq Primer número de secuencia reservado con {@link #reservar(BaseDAO, int)} para al menos
+     * {@code ids.size()} entradas; los que sobren se quedan sin usar.
+     * @throws SQLException Si no se puede registrar.
+     */
+    static void registrarLote(Connection conn, String operacion, List<String> ids, long seq) throws SQLException {
+        if (ids.isEmpty()) return;
+        long ahora = System.currentTimeMillis();
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO BANDEJA_SALIDA (seq, id_estudiante, operacion, creado, intentos) VALUES (?, ?, ?, ?, 0)")) {
+            for (String id : ids) {
+                ps.setLong(1, seq++);
+                ps.setString(2, id);
+                ps.setString(3, operacion);
+                ps.setLong(4, ahora);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Lee las entradas más antiguas pendientes de replicar.
+     *
+     * @param fuente Nombre de la base de datos.
+     * @param conn Conexión a esa base de datos.
+     * @param maximo Número máximo de entradas a devolver.
+     * @return Entradas ordenadas por número de secuencia.
+     * @throws SQLException Si falla la consulta.
+     */
+    static List<Entrada> leer(String fuente, Connection conn, int maximo) throws SQLException {
+        prepararTablas(fuente, conn);
+        List<Entrada> entradas = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT seq, id_estudiante, operacion, creado, intentos FROM BANDEJA_SALIDA ORDER BY seq")) {
+            ps.setMaxRows(maximo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next() && entradas.size() < maximo) {
+                    entradas.add(new Entrada(rs.getLong(1), rs.getString(2), rs.getString(3),
+                            rs.getLong(4), rs.getInt(5)));
+                }
+            }
+        }
+        return entradas;
+    }
+
+    /**
+     * Borra de la bandeja las entradas ya aplicadas en el destino.
+     *
+     * @param conn Conexión a la base de datos de origen.
+     * @param entradas Entradas replicadas.
+     * @throws SQLException Si falla el borrado.
+     */
+    static void eliminar(Connection conn, List<Entrada> entradas) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM BANDEJA_SALIDA WHERE seq = ?")) {
+            for (Entrada e : entradas) {
+                ps.setLong(1, e.seq());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Anota un intento fallido. Las entradas que alcanzan {@code maxIntentos} se mueven
+     * a <code>BANDEJA_FALLIDOS</code> junto con el último error.
+     *
+     * @param conn Conexión a la base de datos de origen (en autocommit).
+     * @param entradas Entradas que no se han podido aplicar.
+     * @param error Mensaje del error.
+     * @param maxIntentos Intentos a partir de los cuales la entrada se da por perdida.
+     * @return Número de entradas movidas a la cola de fallidos.
+     * @throws SQLException Si falla la actualización.
+     */
+    static int anotarFallo(Connection conn, List<Entrada> entradas, String error, int maxIntentos) throws SQLException {
+        String mensaje = error == null ? "" : error.substring(0, Math.min(500, error.length()));
+        int muertas = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement sumar = conn.prepareStatement("UPDATE BANDEJA_SALIDA SET intentos = intentos + 1 WHERE seq = ?");
+             PreparedStatement mover = conn.prepareStatement(
+                     "INSERT INTO BANDEJA_FALLIDOS (seq, id_estudiante, operacion, creado, intentos, ultimo_error) VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement borrar = conn.prepareStatement("DELETE FROM BANDEJA_SALIDA WHERE seq = ?")) {
+            for (Entrada e : entradas) {
+                if (e.intentos() + 1 >= maxIntentos) {
+                    mover.setLong(1, e.seq());
+                    mover.setString(2, e.idEstudiante());
+                    mover.setString(3, e.operacion());
+                    mover.setLong(4, e.creado());
+                    mover.setInt(5, e.intentos() + 1);
+                    mover.setString(6, mensaje);
+                    mover.addBatch();
+                    borrar.setLong(1, e.seq());
+                    borrar.addBatch();
+                    muertas++;
+                } else {
+                    sumar.setLong(1, e.seq());
+                    sumar.addBatch();
+                }
+            }
+            sumar.executeBatch();
+            if (muertas > 0) {
+                mover.executeBatch();
+                borrar.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return muertas;
+    }
+
+    /**
+     * @param fuente Nombre de la base de datos.
+     * @param conn Conexión a esa base de datos.
+     * @return IDs de los estudiantes con cambios todavía sin replicar.
+     * @throws SQLException Si falla la consulta.
+     */
+    static Set<String> pendientes(String fuente, Connection conn) throws SQLException {
+        prepararTablas(fuente, conn);
+        Set<String> ids = new HashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id_estudiante FROM BANDEJA_SALIDA")) {
+            while (rs.next()) ids.add(rs.getString(1));
+        }
+        return ids;
+    }
+
+    /**
+     * @param conn Conexión a la base de datos de origen.
+     * @return Instante (ms) de la entrada pendiente más antigua, o -1 si la bandeja está vacía.
+     * @throws SQLException Si falla la consulta.
+     */
+    static long masAntigua(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MIN(creado) FROM BANDEJA_SALIDA")) {
+            if (rs.next()) {
+                long creado = rs.getLong(1);
+                return rs.wasNull() ? -1 : creado;
+            }
+        }
+        return -1;
+    }
+
+    private static long maximoSeq(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MAX(seq) FROM BANDEJA_SALIDA")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void prepararTablas(String fuente, Connection conn) throws SQLException {
+        EsquemaBD.asegurarTabla(fuente, conn, "BANDEJA_SALIDA", DDL_BANDEJA);
+        EsquemaBD.asegurarTabla(fuente, conn, "BANDEJA_FALLIDOS", DDL_FALLIDOS);
+    }
+}
@@ -1,22 +1,31 @@
 
 package org.equiporon.DAO;
 
+import org.equiporon.Conexion.Config;
 import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.Conexion.MotorBD;
+import org.equiporon.DAO.EjecutorBD.Prioridad;
 import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Modelo.ResultadoOperacion;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.Metricas.Operacion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import static org.equiporon.Utils.Alertas.mostrarError;
 
 /**
  * Clase base genérica para los DAOs de Hogwarts y las Casas.
  * Gestiona operaciones CRUD básicas, sincronización bidireccional
- * y ejecución asíncrona.
+ * (mediante la {@link BandejaSalida} y el {@link Replicador}) y ejecución asíncrona.
  * Además, comprueba la funcionalidad antes de realizar cambios
  * @author Gaizka, Igor, Unai, Ruben
  */
@@ -24,9 +33,11 @@ public abstract class BaseDAO {
 
     protected final static Logger logger = LoggerFactory.getLogger(BaseDAO.class);
 
-    /** Pool de hilos para ejecución asíncrona */
-    protected static final ExecutorService dbExecutor =
-            Executors.newFixedThreadPool(2);
+    /** Evita cerrar el ejecutor varias veces (al salir se llama a {@link #shutdown()} desde cada DAO). */
+    private static final AtomicBoolean cerrado = new AtomicBoolean();
+
+    /** Motor de esta base de datos, con su dialecto SQL ({@link #motor(Connection)}). */
+    private volatile MotorBD motor;
 
     /** Devuelve el nombre de la casa (o Hogwarts). */
     protected abstract String getCasa();
@@ -42,7 +53,7 @@ public abstract class BaseDAO {
      * Ejecuta la inserción de un nuevo estudiante de forma asíncrona.
      *
      * <p>
-     * Envía la tarea de insertar el estudiante a un ejecutor ({@code dbExecutor})
+     * Envía la tarea de insertar el estudiante al {@link EjecutorBD}, en el compartimento de esta casa,
      * utilizando el metodo {@code insertarEstudiante(e, false)}. La operación se realiza
      * en un hilo separado, y la sincronización bidireccional (si aplica) se activa.
      *
@@ -54,14 +65,14 @@ public abstract class BaseDAO {
      * @author Gaizka
      */
     public CompletableFuture<Boolean> insertarAsync(Modelo_Estudiante e) {
-        return CompletableFuture.supplyAsync(() -> insertarEstudiante(e, false), dbExecutor);
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> insertarEstudiante(e, false));
     }
 
     /**
      * Ejecuta la edición de un estudiante existente de forma asíncrona.
      *
      * <p>
-     * Envía la tarea de editar el estudiante a un ejecutor ({@code dbExecutor})
+     * Envía la tarea de editar el estudiante al {@link EjecutorBD}, en el compartimento de esta casa,
      * utilizando el metodo {@code editarEstudiante(e, false)}. La operación se realiza
      * en un hilo separado, y la sincronización bidireccional (si aplica) se activa.
      *
@@ -73,14 +84,14 @@ public abstract class BaseDAO {
      * @author Gaizka
      */
     public CompletableFuture<Boolean> editarAsync(Modelo_Estudiante e) {
-        return CompletableFuture.supplyAsync(() -> editarEstudiante(e, false), dbExecutor);
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> editarEstudiante(e, false));
     }
 
     /**
      * Ejecuta la eliminación de un estudiante por ID de forma asíncrona.
      *
      * <p>
-     * Envía la tarea de borrar el estudiante a un ejecutor ({@code dbExecutor})
+     * Envía la tarea de borrar el estudiante al {@link EjecutorBD}, en el compartimento de esta casa,
      * utilizando el metodo {@code borrarEstudiante(id, false)}. La operación se realiza
      * en un hilo separado, y la sincronización bidireccional (si aplica) se activa.
      *
@@ -92,13 +103,13 @@ public abstract class BaseDAO {
      * @author Gaizka
      */
     public CompletableFuture<Boolean> borrarAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> borrarEstudiante(id, false), dbExecutor);
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> borrarEstudiante(id, false));
     }
     /**
      * Ejecuta la recuperación de todos los estudiantes de forma asíncrona.
      *
      * <p>
-     * Envía la tarea de obtener todos los estudiantes a un ejecutor ({@code dbExecutor})
+     * Envía la tarea de obtener todos los estudiantes al {@link EjecutorBD}, en el compartimento de esta casa,
      * utilizando el metodo {@code obtenerTodos()}. La operación se realiza en un hilo separado.
      *
      * @return Un objeto {@link Future} que representa el resultado pendiente de la consulta.
@@ -108,7 +119,37 @@ public abstract class BaseDAO {
      * @author Gaizka
      */
     public CompletableFuture<List<Modelo_Estudiante>> obtenerTodosAsync() {
-        return CompletableFuture.supplyAsync(this::obtenerTodos, dbExecutor);
+        return EjecutorBD.enviar(getCasa(), Prioridad.INTERACTIVA, this::obtenerTodos);
+    }
+
+    /**
+     * Ejecuta {@link #insertarLote(List)} en el {@link EjecutorBD}, dentro del compartimento de esta casa.
+     *
+     * @param estudiantes Estudiantes a insertar.
+     * @return Un {@link CompletableFuture} con el resultado de cada fila.
+     */
+    public CompletableFuture<List<ResultadoOperacion>> insertarLoteAsync(List<Modelo_Estudiante> estudiantes) {
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> insertarLote(estudiantes));
+    }
+
+    /**
+     * Ejecuta {@link #editarLote(List)} en el {@link EjecutorBD}, dentro del compartimento de esta casa.
+     *
+     * @param estudiantes Estudiantes con los datos actualizados.
+     * @return Un {@link CompletableFuture} con el resultado de cada fila.
+     */
+    public CompletableFuture<List<ResultadoOperacion>> editarLoteAsync(List<Modelo_Estudiante> estudiantes) {
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> editarLote(estudiantes));
+    }
+
+    /**
+     * Ejecuta {@link #borrarLote(List)} en el {@link EjecutorBD}, dentro del compartimento de esta casa.
+     *
+     * @param ids IDs de los estudiantes a eliminar.
+     * @return Un {@link CompletableFuture} con el resultado de cada fila.
+     */
+    public CompletableFuture<List<ResultadoOperacion>> borrarLoteAsync(List<String> ids) {
+        return EjecutorBD.enviar(getCasa(), Prioridad.ESCRITURA, () -> borrarLote(ids));
     }
 
     // ============================================================
@@ -123,18 +164,21 @@ public abstract class BaseDAO {
      * **Proceso:**
      * <ol>
      * <li>Verifica la validez del objeto {@code Modelo_Estudiante} usando {@code comprobarEstudiante(e)}.</li>
-     * <li>Genera un nuevo ID numérico local (sin prefijo de casa) usando {@code generarNuevoIdNumerico(conn)} y lo asigna al estudiante.</li>
+     * <li>Genera un nuevo ID numérico local (sin prefijo de casa) usando {@code generarNuevoIdNumerico()} y lo asigna al estudiante.
+     * Si la llamada es de sincronización y el estudiante ya trae ID, se conserva ese ID.</li>
      * <li>Ejecuta la consulta SQL: {@code INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)}.</li>
-     * <li>Si la llamada no es de sincronización ({@code esSincronizacion = false}) y no estamos en la casa 'Hogwarts',
-     * se realiza una **sincronización bidireccional** insertando el estudiante en la base de datos de Hogwarts
-     * con un ID que incluye el prefijo de la casa (ej. "GR" + ID numérico).</li>
+     * <li>Si la llamada no es de sincronización ({@code esSincronizacion = false}), registra el cambio en la
+     * {@link BandejaSalida} **en la misma transacción** que el INSERT. El {@link Replicador} lo llevará después
+     * a Hogwarts en segundo plano con el prefijo de la casa (ej. "GR" + ID numérico), sin que el usuario
+     * espere a la segunda base de datos.</li>
+     * <li>Si no es de sincronización, tras confirmar anota la inserción en el {@link DiarioDeshacer}.</li>
      * </ol>
      *
      * @param e El objeto {@link Modelo_Estudiante} conteniendo los datos del nuevo estudiante.
      * El campo {@code id} será sobrescrito con el nuevo ID generado.
      * @param esSincronizacion Booleano que indica si la llamada proviene de una sincronización externa
      * (ej. desde Hogwarts). Si es {@code true}, se omite la sincronización bidireccional para prevenir bucles.
-     * @return {@code true} si el estudiante fue insertado y sincronizado exitosamente, {@code false}
+     * @return {@code true} si el estudiante fue insertado (y su replicación quedó registrada), {@code false}
      * si la comprobación inicial falla o si ocurre un error de {@code SQLException}.
      * @throws SQLException Si ocurre un error al acceder a la base de datos (manejado internamente con log).
      *
@@ -147,14 +191,24 @@ public abstract class BaseDAO {
         }
 
         final String sql = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
+        long inicio = System.nanoTime();
+
+        long seq;
+        try {
+            // ⚙️ Solo generar número (sin prefijo); en una sincronización se respeta el ID recibido
+            if (!esSincronizacion || e.getId() == null || e.getId().isBlank()) {
+                e.setId(generarNuevoIdNumerico());
+            }
+            seq = prepararEscritura(!esSincronizacion && debeReplicar(e.getId()) ? 1 : 0);
+        } catch (SQLException ex) {
+            logger.error("❌ Error generando ID en {}.", getCasa(), ex);
+            return medir(Operacion.INSERTAR, inicio, false);
+        }
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            // ⚙️ Solo generar número (sin prefijo)
-            String nuevoId = generarNuevoIdNumerico(conn);
-            e.setId(nuevoId);
-
+            conn.setAutoCommit(false);
             ps.setString(1, e.getId());
             ps.setString(2, e.getNombre());
             ps.setString(3, e.getApellidos());
@@ -163,37 +217,28 @@ public abstract class BaseDAO {
             ps.setString(6, e.getPatronus());
             ps.executeUpdate();
 
-            logger.info("✅ Insertado en {} con ID {}", getCasa(), e.getId());
-
-            // 🔁 Sincronizar hacia Hogwarts (MariaDB)
-            if (!esSincronizacion && !getCasa().equalsIgnoreCase("Hogwarts")) {
-                MariaDBDAO hogwartsDAO = new MariaDBDAO();
-
-                // Prefijo para Hogwarts según la casa
-                String prefijo = switch (getCasa().toLowerCase()) {
-                    case "gryffindor" -> "GR";
-                    case "hufflepuff" -> "HF";
-                    case "ravenclaw" -> "RV";
-                    case "slytherin" -> "SL";
-                    default -> "HO";
-                };
-
-                String idConPrefijo = prefijo + e.getId();
-
-                Modelo_Estudiante copia = new Modelo_Estudiante(
-                        idConPrefijo, e.getNombre(), e.getApellidos(),
-                        getCasa(), e.getCurso(), e.getPatronus()
-                );
-
-                hogwartsDAO.insertarEstudiante(copia, true);
-                logger.info("🔄 Sincronizado {} → Hogwarts (INSERT ID {}).", getCasa(), e.getId());
+            // 🔁 Registrar la replicación hacia Hogwarts en la misma transacción
+            RegistroCambios.anotar(conn, "insert", List.of(e.getId()));
+            if (!esSincronizacion && debeReplicar(e.getId())) {
+                BandejaSalida.registrar(conn, "insert", e.getId(), seq);
             }
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), List.of(e), List.of());
+            Modelo_Estudiante guardada = filaGuardada(e);
+            DiarioOperaciones.anotar(getCasa(), "insert", esSincronizacion, List.of(guardada), List.of());
+            if (!esSincronizacion) {
+                DiarioDeshacer.anotar(getCasa(), "insert", List.of(new DiarioDeshacer.Cambio(e.getId(), null, guardada)));
+            }
+
+            logger.info("✅ Insertado en {} con ID {}", getCasa(), e.getId());
+            if (!esSincronizacion) Replicador.avisar();
 
-            return true;
+            return medir(Operacion.INSERTAR, inicio, true);
 
         } catch (SQLException ex) {
             logger.error("❌ Error al insertar en {}.", getCasa(), ex);
-            return false;
+            return medir(Operacion.INSERTAR, inicio, false);
         }
     }
 
@@ -208,16 +253,18 @@ public abstract class BaseDAO {
      * <ol>
      * <li>Verifica la validez del objeto {@code Modelo_Estudiante} usando {@code comprobarEstudiante(e)}.</li>
      * <li>Ejecuta la consulta SQL: {@code UPDATE ESTUDIANTES SET nombre=?, apellidos=?, casa=?, curso=?, patronus=? WHERE id=?}.</li>
-     * <li>Si la llamada no es de sincronización ({@code esSincronizacion = false}) y no estamos en la casa 'Hogwarts',
-     * se realiza una **sincronización bidireccional** llamando a {@code editarEstudiante} en el DAO de Hogwarts,
-     * utilizando un ID con prefijo de casa.</li>
+     * <li>Si la llamada no es de sincronización ({@code esSincronizacion = false}), registra el cambio en la
+     * {@link BandejaSalida} en la misma transacción; el {@link Replicador} lo aplicará en Hogwarts (con el
+     * prefijo de la casa) o, si estamos en Hogwarts, en la casa del estudiante.</li>
+     * <li>Si no es de sincronización, lee antes del UPDATE (en la misma transacción) cómo estaba la fila
+     * y, tras confirmar, anota los dos estados en el {@link DiarioDeshacer}.</li>
      * </ol>
      *
      * @param e El objeto {@link Modelo_Estudiante} con los datos actualizados. El campo {@code id} debe coincidir con un estudiante existente.
      * @param esSincronizacion Booleano que indica si la llamada proviene de una sincronización externa
      * (ej. desde Hogwarts). Si es {@code true}, se omite la sincronización bidireccional para prevenir bucles.
-     * @return {@code true} si el estudiante fue editado y sincronizado exitosamente, {@code false}
-     * si la comprobación inicial falla o si ocurre un error de {@code SQLException}.
+     * @return {@code true} si el estudiante fue editado (y su replicación quedó registrada), {@code false}
+     * si la comprobación inicial falla, si no existe ese ID o si ocurre un error de {@code SQLException}.
      * @throws SQLException Si ocurre un error al acceder a la base de datos (manejado internamente con log).
      *
      * @author Gaizka
@@ -229,36 +276,56 @@ public abstract class BaseDAO {
         }
 
         final String sql = "UPDATE ESTUDIANTES SET nombre=?, apellidos=?, casa=?, curso=?, patronus=? WHERE id=?";
+        long inicio = System.nanoTime();
+        long seq;
+        try {
+            seq = prepararEscritura(!esSincronizacion && debeReplicar(e.getId()) ? 1 : 0);
+        } catch (SQLException ex) {
+            logger.error("❌ Error al editar en {}.", getCasa(), ex);
+            return medir(Operacion.EDITAR, inicio, false);
+        }
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
+            conn.setAutoCommit(false);
+            // Imagen anterior para el diario de deshacer, leída en la misma transacción
+            Modelo_Estudiante antes = esSincronizacion ? null : obtenerPorIds(conn, List.of(e.getId())).get(e.getId());
             ps.setString(1, e.getNombre());
             ps.setString(2, e.getApellidos());
             ps.setString(3, e.getCasa());
             ps.setInt(4, e.getCurso());
             ps.setString(5, e.getPatronus());
             ps.setString(6, e.getId());
-            ps.executeUpdate();
+            int filas = ps.executeUpdate();
 
-            logger.info("✏️ Editado en {} (ID {}).", getCasa(), e.getId());
+            // Igual que en los lotes: editar un ID que no existe es un fallo
+            if (filas == 0) {
+                conn.rollback();
+                logger.warn("⚠️ No se encontró el ID {} en {} para editar.", e.getId(), getCasa());
+                return medir(Operacion.EDITAR, inicio, false);
+            }
 
-            if (!esSincronizacion && !getCasa().equalsIgnoreCase("Hogwarts")) {
-                MariaDBDAO hogwartsDAO = new MariaDBDAO();
-                String idConPrefijo = getPrefijoCasa() + e.getId();
-                Modelo_Estudiante copia = new Modelo_Estudiante(
-                        idConPrefijo, e.getNombre(), e.getApellidos(),
-                        getCasa(), e.getCurso(), e.getPatronus()
-                );
-                hogwartsDAO.editarEstudiante(copia, true);
-                logger.info("🔄 Sincronizado {} → Hogwarts (UPDATE ID {}).", getCasa(), e.getId());
+            RegistroCambios.anotar(conn, "update", List.of(e.getId()));
+            if (!esSincronizacion && debeReplicar(e.getId())) {
+                BandejaSalida.registrar(conn, "update", e.getId(), seq);
+            }
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), List.of(e), List.of());
+            DiarioOperaciones.anotar(getCasa(), "update", esSincronizacion, List.of(e), List.of());
+            if (antes != null) {
+                DiarioDeshacer.anotar(getCasa(), "update", List.of(new DiarioDeshacer.Cambio(e.getId(), antes, e)));
             }
 
-            return true;
+            logger.info("✏️ Editado en {} (ID {}).", getCasa(), e.getId());
+            if (!esSincronizacion) Replicador.avisar();
+
+            return medir(Operacion.EDITAR, inicio, true);
 
         } catch (SQLException ex) {
             logger.error("❌ Error al editar en {}.", getCasa(), ex);
-            return false;
+            return medir(Operacion.EDITAR, inicio, false);
         }
     }
 
@@ -267,7 +334,9 @@ public abstract class BaseDAO {
      * Elimina un estudiante de la tabla de la base de datos local utilizando su ID
      * y, opcionalmente, sincroniza la eliminación con la base de datos central de Hogwarts.
      * <p>
-     * La operación ejecuta la siguiente consulta SQL: {@code DELETE FROM ESTUDIANTES WHERE id=?}.
+     * La operación ejecuta la siguiente consulta SQL: {@code DELETE FROM ESTUDIANTES WHERE id=?}
+     * y, si no es una sincronización, registra el borrado en la {@link BandejaSalida} en la misma transacción
+     * y anota la fila borrada en el {@link DiarioDeshacer}.
      *
      * @param id El ID del estudiante a eliminar. Este debe ser el ID local (sin prefijo de casa).
      * @param esSincronizacion Booleano que indica si la llamada proviene de una sincronización externa
@@ -283,43 +352,72 @@ public abstract class BaseDAO {
      */
     public boolean borrarEstudiante(String id, boolean esSincronizacion) {
         final String sql = "DELETE FROM ESTUDIANTES WHERE id=?";
+        long inicio = System.nanoTime();
+        long seq;
+        try {
+            seq = prepararEscritura(!esSincronizacion && debeReplicar(id) ? 1 : 0);
+        } catch (SQLException ex) {
+            logger.error("❌ Error al borrar en {} (ID {}).", getCasa(), id, ex);
+            return medir(Operacion.BORRAR, inicio, false);
+        }
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
+            conn.setAutoCommit(false);
+            Modelo_Estudiante antes = esSincronizacion ? null : obtenerPorIds(conn, List.of(id)).get(id);
             ps.setString(1, id);
             int filas = ps.executeUpdate();
 
             if (filas == 0) {
+                conn.rollback();
                 logger.warn("⚠️ No se encontró el ID {} en {} para borrar.", id, getCasa());
-                return false;
+                return medir(Operacion.BORRAR, inicio, false);
             }
 
-            logger.info("🗑️ Borrado en {} (ID {}).", getCasa(), id);
-
-            // 🔁 Sincronización bidireccional (solo si no estamos en Hogwarts)
-            if (!esSincronizacion && !getCasa().equalsIgnoreCase("Hogwarts")) {
-                MariaDBDAO hogwartsDAO = new MariaDBDAO();
-
-                String idConPrefijo = getPrefijoCasa() + id;
-                hogwartsDAO.borrarEstudiante(idConPrefijo, true);
-                logger.info("🔄 Sincronizado {} → Hogwarts (DELETE ID {}).", getCasa(), id);
+            // 🔁 Registrar la replicación en la misma transacción
+            RegistroCambios.anotar(conn, "delete", List.of(id));
+            if (!esSincronizacion && debeReplicar(id)) {
+                BandejaSalida.registrar(conn, "delete", id, seq);
             }
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), List.of(), List.of(id));
+            DiarioOperaciones.anotar(getCasa(), "delete", esSincronizacion, List.of(), List.of(id));
+            if (antes != null) DiarioDeshacer.anotar(getCasa(), "delete", List.of(new DiarioDeshacer.Cambio(id, antes, null)));
 
-            return true;
+            logger.info("🗑️ Borrado en {} (ID {}).", getCasa(), id);
+            if (!esSincronizacion) Replicador.avisar();
+
+            return medir(Operacion.BORRAR, inicio, true);
 
         } catch (SQLException ex) {
             logger.error("❌ Error al borrar en {} (ID {}).", getCasa(), id, ex);
-            return false;
+            return medir(Operacion.BORRAR, inicio, false);
         }
     }
 
+    /**
+     * Registra en {@link Metricas} una operación de esta base de datos.
+     *
+     * @param op Operación realizada.
+     * @param inicio Valor de {@link System#nanoTime()} al empezar.
+     * @param ok Resultado de la operación.
+     * @return {@code ok}, para poder escribir {@code return medir(...)}.
+     */
+    protected boolean medir(Operacion op, long inicio, boolean ok) {
+        Metricas.registrar(op, getCasa(), inicio, ok);
+        return ok;
+    }
+
 
     /**
      * Recupera una lista de todos los estudiantes de la base de datos.
      * <p>
      * Ejecuta una consulta SQL: {@code SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES}
-     * y mapea cada fila a un objeto {@code Modelo_Estudiante}.
+     * y mapea cada fila a un objeto {@code Modelo_Estudiante}. Carga la tabla entera en memoria:
+     * para mostrar datos en la interfaz es preferible {@link #obtenerPagina}, y para recorrerlos
+     * sin acumularlos, {@link #recorrerTodos(Consumer)}.
      *
      * @return Una {@code List} de {@code Modelo_Estudiante} conteniendo todos los estudiantes.
      * Retorna una lista vacía si no hay estudiantes o si ocurre un error.
@@ -329,70 +427,531 @@ public abstract class BaseDAO {
      */
     public List<Modelo_Estudiante> obtenerTodos() {
         List<Modelo_Estudiante> lista = new ArrayList<>();
-        final String sql = "SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES";
+        try {
+            recorrerTodos(lista::add);
+        } catch (SQLException ex) {
+            logger.error("❌ Error al obtener estudiantes de {}.", getCasa(), ex);
+        }
+        return lista;
+    }
+
+    /**
+     * Lee un estudiante por su ID en el {@link EjecutorBD}, dentro del compartimento de esta casa.
+     *
+     * @param id ID del estudiante.
+     * @return Un {@link CompletableFuture} con el estudiante, o {@code null} si no existe;
+     * termina con error si falla la consulta.
+     */
+    public CompletableFuture<Modelo_Estudiante> obtenerPorIdAsync(String id) {
+        return EjecutorBD.enviar(getCasa(), Prioridad.INTERACTIVA, () -> {
+            long inicio = System.nanoTime();
+            boolean ok = false;
+            Modelo_Estudiante e = null;
+            try (Connection conn = getConnection()) {
+                if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + getCasa());
+                e = obtenerPorIds(conn, List.of(id)).get(id);
+                ok = true;
+                return e;
+            } finally {
+                Metricas.registrar(Operacion.LEER, getCasa(), inicio, ok, e == null ? 0 : 1);
+            }
+        });
+    }
+
+    // ============================================================
+    // === LECTURA PAGINADA Y EN STREAMING ========================
+    // ============================================================
+
+    /** Columnas por las que se puede ordenar (el nombre va directo al ORDER BY). */
+    private static final Set<String> COLUMNAS_ORDEN = Set.of("id", "nombre", "apellidos", "casa", "curso", "patronus");
+
+    /** Filas por página por defecto (clave <code>pagina.tamano</code>). */
+    private static final int TAMANO_PAGINA = Math.max(1, Config.getInt("pagina.tamano", 200));
+
+    /** Filas que el driver trae en cada viaje al recorrer una consulta (clave <code>lectura.fetch</code>). */
+    private static final int FETCH_SIZE = Math.max(1, Config.getInt("lectura.fetch", 500));
+
+    /**
+     * @return El tamaño de página configurado en <code>pagina.tamano</code> (por defecto 200).
+     */
+    public static int getTamanoPagina() {
+        return TAMANO_PAGINA;
+    }
+
+    /**
+     * Lee una página de estudiantes ordenada en el servidor, usando paginación por clave
+     * (<i>keyset</i>): en lugar de un {@code OFFSET}, la consulta continúa a partir de la última
+     * fila de la página anterior, así que cada página cuesta lo mismo aunque la tabla sea enorme.
+     * <p>
+     * El orden es {@code columna, id}; el {@code id} desempata las filas con el mismo valor para que
+     * ninguna se repita ni se pierda entre páginas.
+     * <p>
+     * Las páginas se sirven desde {@link CacheEstudiantes} si ya se han leído y la casa no ha
+     * cambiado desde entonces.
+     *
+     * @param columna Columna de orden: id, nombre, apellidos, casa, curso o patronus.
+     * @param descendente {@code true} para orden descendente.
+     * @param despuesDe Última fila de la página anterior, o {@code null} para la primera página.
+     * @param tamano Número máximo de filas de la página.
+     * @return Las filas de la página (lista inmutable); si hay menos de {@code tamano}, es la última.
+     * @throws SQLException Si falla la consulta.
+     */
+    public List<Modelo_Estudiante> obtenerPagina(String columna, boolean descendente,
+                                                 Modelo_Estudiante despuesDe, int tamano) throws SQLException {
+        String col = columna == null ? "id" : columna.toLowerCase();
+        if (!COLUMNAS_ORDEN.contains(col)) throw new IllegalArgumentException("Columna de orden no válida: " + columna);
+
+        CacheEstudiantes.ClavePagina clave = new CacheEstudiantes.ClavePagina(getCasa(), col, descendente,
+                despuesDe == null ? null : despuesDe.getId(),
+                despuesDe == null ? null : valorColumna(despuesDe, col), tamano);
+        List<Modelo_Estudiante> cacheada = CacheEstudiantes.obtener(clave);
+        if (cacheada != null) return cacheada;
+
+        long version = CacheEstudiantes.version(getCasa());
+        List<Modelo_Estudiante> pagina = List.copyOf(leerPagina(col, descendente, despuesDe, tamano));
+        CacheEstudiantes.guardar(clave, pagina, version);
+        return pagina;
+    }
 
+    /** Consulta la página en la base de datos (sin pasar por la caché). */
+    private List<Modelo_Estudiante> leerPagina(String col, boolean descendente,
+                                               Modelo_Estudiante despuesDe, int tamano) throws SQLException {
+
+        String sentido = descendente ? "DESC" : "ASC";
+        String comparador = descendente ? "<" : ">";
+
+        StringBuilder sql = new StringBuilder("SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES");
+        if (despuesDe != null) {
+            if (col.equals("id")) {
+                sql.append(" WHERE id ").append(comparador).append(" ?");
+            } else {
+                sql.append(" WHERE (").append(col).append(' ').append(comparador).append(" ? OR (")
+                        .append(col).append(" = ? AND id ").append(comparador).append(" ?))");
+            }
+        }
+        sql.append(" ORDER BY ");
+        if (!col.equals("id")) sql.append(col).append(' ').append(sentido).append(", ");
+        sql.append("id ").append(sentido);
+
+        List<Modelo_Estudiante> pagina = new ArrayList<>(tamano);
+        long inicio = System.nanoTime();
+        boolean ok = false;
         try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement ps = conn.prepareStatement(motor(conn).limitarFilas(sql.toString(), tamano))) {
+
+            if (despuesDe != null) {
+                if (col.equals("id")) {
+                    ps.setString(1, despuesDe.getId());
+                } else {
+                    Object valor = valorColumna(despuesDe, col);
+                    ps.setObject(1, valor);
+                    ps.setObject(2, valor);
+                    ps.setString(3, despuesDe.getId());
+                }
+            }
+            ps.setMaxRows(tamano);
+            ps.setFetchSize(Math.min(tamano, FETCH_SIZE));
 
-            while (rs.next()) {
-                lista.add(new Modelo_Estudiante(
-                        rs.getString("id"),
-                        rs.getString("nombre"),
-                        rs.getString("apellidos"),
-                        rs.getString("casa"),
-                        rs.getInt("curso"),
-                        rs.getString("patronus")
-                ));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) pagina.add(mapearFila(rs));
+            }
+            ok = true;
+        } finally {
+            Metricas.registrar(Operacion.LEER, getCasa(), inicio, ok, pagina.size());
+        }
+        return pagina;
+    }
+
+    /**
+     * Ejecuta {@link #obtenerPagina} en el {@link EjecutorBD}, dentro del compartimento de esta casa.
+     *
+     * @param columna Columna de orden.
+     * @param descendente {@code true} para orden descendente.
+     * @param despuesDe Última fila de la página anterior, o {@code null} para la primera.
+     * @param tamano Número máximo de filas.
+     * @return Un {@link CompletableFuture} con la página; termina con error si falla la consulta.
+     */
+    public CompletableFuture<List<Modelo_Estudiante>> obtenerPaginaAsync(String columna, boolean descendente,
+                                                                       Modelo_Estudiante despuesDe, int tamano) {
+        return EjecutorBD.enviar(getCasa(), Prioridad.INTERACTIVA, () -> {
+            try {
+                return obtenerPagina(columna, descendente, despuesDe, tamano);
+            } catch (SQLException ex) {
+                logger.error("❌ Error al leer una página de {}.", getCasa(), ex);
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Recorre todos los estudiantes sin cargarlos a la vez en memoria: el driver los va trayendo
+     * en bloques de <code>lectura.fetch</code> filas mientras se procesan.
+     *
+     * @param accion Acción a ejecutar con cada estudiante, en orden de ID.
+     * @return Número de estudiantes recorridos.
+     * @throws SQLException Si falla la consulta.
+     */
+    public int recorrerTodos(Consumer<Modelo_Estudiante> accion) throws SQLException {
+        final String sql = "SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES ORDER BY id";
+        int filas = 0;
+        long inicio = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            // Algunos drivers solo respetan el fetch size dentro de una transacción
+            conn.setAutoCommit(false);
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    accion.accept(mapearFila(rs));
+                    filas++;
+                }
             }
+            conn.commit();
+            ok = true;
+        } finally {
+            Metricas.registrar(Operacion.LEER, getCasa(), inicio, ok, filas);
+        }
+        return filas;
+    }
+
+    /**
+     * Motor de esta base de datos, deducido de la URL de su conexión ({@link FuentesDatos#motor}) la
+     * primera vez: el dialecto depende del motor de la fuente, no de la clase del DAO.
+     *
+     * @param conn Conexión a esta base de datos.
+     * @return El motor.
+     * @throws SQLException Si no se puede leer la URL de la conexión.
+     */
+    private MotorBD motor(Connection conn) throws SQLException {
+        MotorBD m = motor;
+        if (m == null) motor = m = FuentesDatos.motor(conn.getMetaData().getURL());
+        return m;
+    }
+
+    /** Valor de una columna de orden para continuar la paginación tras {@code e}. */
+    private static Object valorColumna(Modelo_Estudiante e, String columna) {
+        return switch (columna) {
+            case "nombre" -> e.getNombre();
+            case "apellidos" -> e.getApellidos();
+            case "casa" -> e.getCasa();
+            case "curso" -> e.getCurso();
+            case "patronus" -> e.getPatronus();
+            default -> e.getId();
+        };
+    }
+
+    /**
+     * Convierte la fila actual de un {@link ResultSet} de la tabla ESTUDIANTES en un {@link Modelo_Estudiante}.
+     *
+     * @param rs Resultado posicionado en una fila con las columnas id, nombre, apellidos, casa, curso y patronus.
+     * @return El estudiante leído.
+     * @throws SQLException Si falta alguna columna.
+     */
+    protected static Modelo_Estudiante mapearFila(ResultSet rs) throws SQLException {
+        return new Modelo_Estudiante(
+                rs.getString("id"),
+                rs.getString("nombre"),
+                rs.getString("apellidos"),
+                rs.getString("casa"),
+                rs.getInt("curso"),
+                rs.getString("patronus")
+        );
+    }
 
+    /**
+     * Lee varios estudiantes por ID usando la conexión indicada.
+     * Las consultas se parten en bloques de {@code IN (...)} para no superar el límite de parámetros.
+     *
+     * @param conn Conexión a esta base de datos.
+     * @param ids IDs a buscar.
+     * @return Mapa ID → estudiante con los que existen; los que no aparecen ya no están en la tabla.
+     * @throws SQLException Si falla la consulta.
+     */
+    Map<String, Modelo_Estudiante> obtenerPorIds(Connection conn, Collection<String> ids) throws SQLException {
+        return leerPorIds(conn, ids, false);
+    }
+
+    /**
+     * Como {@link #obtenerPorIds}, pero si {@code bloquear} deja bloqueadas las filas leídas hasta
+     * el final de la transacción ({@link MotorBD#bloquearFilas}).
+     */
+    private Map<String, Modelo_Estudiante> leerPorIds(Connection conn, Collection<String> ids,
+                                                      boolean bloquear) throws SQLException {
+        Map<String, Modelo_Estudiante> encontrados = new HashMap<>();
+        List<String> lista = new ArrayList<>(ids);
+        for (int desde = 0; desde < lista.size(); desde += 500) {
+            List<String> trozo = lista.subList(desde, Math.min(lista.size(), desde + 500));
+            String sql = "SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES WHERE id IN ("
+                    + String.join(", ", Collections.nCopies(trozo.size(), "?")) + ")";
+            if (bloquear) sql = motor(conn).bloquearFilas(sql);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < trozo.size(); i++) ps.setString(i + 1, trozo.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Modelo_Estudiante e = mapearFila(rs);
+                        encontrados.put(e.getId(), e);
+                    }
+                }
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Aplica en esta base de datos cambios que llegan replicados desde otra.
+     * <p>
+     * En una única transacción borra todas las filas afectadas y vuelve a insertar las que
+     * siguen existiendo en el origen, con su ID tal cual. Aplicar dos veces el mismo lote
+     * deja la tabla igual (idempotente). Anota los cambios en el {@link RegistroCambios}
+     * pero no registra nada en la bandeja de salida.
+     *
+     * @param ids IDs (en el formato de esta base de datos) afectados por los cambios.
+     * @param filas Estado actual de las filas que deben existir.
+     * @throws SQLException Si falla la transacción (se deshace entera).
+     */
+    void aplicarReplica(Collection<String> ids, Collection<Modelo_Estudiante> filas) throws SQLException {
+        prepararEscritura(0);
+        try (Connection conn = getConnection()) {
+            if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + getCasa());
+            conn.setAutoCommit(false);
+
+            List<String> borrados = reemplazarFilas(conn, ids, ids, filas);
+
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), filas, borrados);
+            DiarioOperaciones.anotar(getCasa(), "replica", true, filas, borrados);
+        }
+    }
+
+    /**
+     * Deja filas en otro estado para el {@link DiarioDeshacer}.
+     * <p>
+     * En una única transacción comprueba que cada fila sigue como {@link DiarioDeshacer.Cambio#antes()}
+     * y la deja como {@link DiarioDeshacer.Cambio#despues()}, borrando y volviendo a insertar las
+     * afectadas con su ID tal cual. Las filas se leen bloqueadas, así que ninguna escritura puede
+     * cambiarlas entre la comprobación y el cambio; una fila que se esperaba ausente y que otro
+     * inserta entre medias hace fallar el {@code INSERT} por clave repetida, y también cuenta
+     * como conflicto. Como cualquier escritura local, se anota en el
+     * {@link RegistroCambios} y en la {@link BandejaSalida} (así llega a Hogwarts o a la casa),
+     * pero no como un paso nuevo del diario de deshacer.
+     *
+     * @param cambios Estado esperado y estado nuevo de cada fila.
+     * @return IDs de las filas que ya no estaban como se esperaba; si hay alguna, no se cambia nada.
+     * @throws SQLException Si falla la transacción (se deshace entera).
+     */
+    List<String> restaurarFilas(List<DiarioDeshacer.Cambio> cambios) throws SQLException {
+        long inicio = System.nanoTime();
+        List<String> ids = cambios.stream().map(DiarioDeshacer.Cambio::id).toList();
+        List<String> replicar = ids.stream().filter(this::debeReplicar).toList();
+        long seq;
+        try {
+            seq = prepararEscritura(replicar.size());
         } catch (SQLException ex) {
-            logger.error("❌ Error al obtener estudiantes de {}.", getCasa(), ex);
+            Metricas.registrar(Operacion.DESHACER, getCasa(), inicio, false, 0);
+            throw ex;
+        }
+        try (Connection conn = getConnection()) {
+            if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + getCasa());
+            conn.setAutoCommit(false);
+
+            Map<String, Modelo_Estudiante> actuales = leerPorIds(conn, ids, true);
+            List<String> conflictos = new ArrayList<>();
+            List<String> existian = new ArrayList<>();
+            List<String> ausentes = new ArrayList<>();
+            for (DiarioDeshacer.Cambio c : cambios) {
+                if (!DiarioDeshacer.mismaFila(actuales.get(c.id()), c.antes())) conflictos.add(c.id());
+                (c.antes() != null ? existian : ausentes).add(c.id());
+            }
+            if (!conflictos.isEmpty()) {
+                conn.rollback();
+                Metricas.registrar(Operacion.DESHACER, getCasa(), inicio, false, 0);
+                return conflictos;
+            }
+
+            List<Modelo_Estudiante> filas = new ArrayList<>(cambios.size());
+            for (DiarioDeshacer.Cambio c : cambios) if (c.despues() != null) filas.add(c.despues());
+            List<String> borrados;
+            try {
+                // Solo se borran las que existían: están bloqueadas y ya comprobadas
+                borrados = reemplazarFilas(conn, existian, ids, filas);
+            } catch (SQLException ex) {
+                if (!claveRepetida(ex)) throw ex;
+                conn.rollback();
+                Set<String> insertadas = obtenerPorIds(conn, ausentes).keySet();
+                conn.rollback();
+                if (insertadas.isEmpty()) throw ex;
+                Metricas.registrar(Operacion.DESHACER, getCasa(), inicio, false, 0);
+                return new ArrayList<>(insertadas);
+            }
+            BandejaSalida.registrarLote(conn, "update", replicar, seq);
+
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), filas, borrados);
+            DiarioOperaciones.anotar(getCasa(), "deshacer", false, filas, borrados);
+            Metricas.registrar(Operacion.DESHACER, getCasa(), inicio, true, cambios.size());
+            Replicador.avisar();
+            return List.of();
+        } catch (SQLException ex) {
+            Metricas.registrar(Operacion.DESHACER, getCasa(), inicio, false, 0);
+            throw ex;
         }
-        return lista;
+    }
+
+    /**
+     * @return {@code true} si el error (o alguna de sus causas o errores encadenados) es de clave
+     * repetida: la clase de integridad de JDBC o un SQLState <code>23xxx</code>.
+     */
+    private static boolean claveRepetida(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException) return true;
+            if (t instanceof SQLException sql) {
+                if (sql.getSQLState() != null && sql.getSQLState().startsWith("23")) return true;
+                if (sql.getNextException() != null && claveRepetida(sql.getNextException())) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Borra las filas {@code borrar} y vuelve a insertar {@code filas} con su ID tal cual, usando la
+     * transacción del llamante, y anota los cambios de las filas {@code ids} en el {@link RegistroCambios}.
+     *
+     * @param borrar IDs que se borran antes de insertar.
+     * @param ids Todos los IDs afectados (incluye {@code borrar} y los de {@code filas}).
+     * @return IDs que se han quedado borrados (los de {@code ids} que no están en {@code filas}).
+     */
+    private List<String> reemplazarFilas(Connection conn, Collection<String> borrar, Collection<String> ids,
+                                         Collection<Modelo_Estudiante> filas) throws SQLException {
+        try (PreparedStatement del = conn.prepareStatement("DELETE FROM ESTUDIANTES WHERE id=?")) {
+            for (String id : borrar) {
+                del.setString(1, id);
+                del.addBatch();
+            }
+            del.executeBatch();
+        }
+
+        try (PreparedStatement ins = conn.prepareStatement(
+                "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Modelo_Estudiante e : filas) {
+                ins.setString(1, e.getId());
+                ins.setString(2, e.getNombre());
+                ins.setString(3, e.getApellidos());
+                ins.setString(4, e.getCasa());
+                ins.setInt(5, e.getCurso());
+                ins.setString(6, e.getPatronus());
+                ins.addBatch();
+            }
+            ins.executeBatch();
+        }
+
+        Set<String> existentes = new HashSet<>();
+        for (Modelo_Estudiante e : filas) existentes.add(e.getId());
+        List<String> borrados = new ArrayList<>();
+        for (String id : ids) if (!existentes.contains(id)) borrados.add(id);
+        RegistroCambios.anotar(conn, "update", existentes);
+        RegistroCambios.anotar(conn, "delete", borrados);
+        return borrados;
+    }
+
+    /**
+     * Prepara una escritura antes de pedir su conexión: crea si faltan las tablas del
+     * {@link RegistroCambios} y de la {@link BandejaSalida} y reserva los números de secuencia de
+     * las entradas que se van a replicar. Todo eso usa conexiones propias del pool; pedirlas
+     * teniendo ya la de la transacción podría dejar a todas las tareas del compartimento
+     * esperando una segunda conexión.
+     *
+     * @param replicar Entradas que se registrarán en la bandeja de salida (0 si ninguna).
+     * @return El primer número de secuencia reservado para la bandeja.
+     * @throws SQLException Si no se pueden crear las tablas o reservar los números.
+     */
+    protected long prepararEscritura(int replicar) throws SQLException {
+        RegistroCambios.preparar(this);
+        return BandejaSalida.reservar(this, replicar);
+    }
+
+    /**
+     * Indica si un cambio sobre el ID indicado debe replicarse a otra base de datos.
+     * Las casas replican siempre hacia Hogwarts; Hogwarts lo redefine para no replicar
+     * los alumnos propios ("HO"), que no pertenecen a ninguna casa.
+     *
+     * @param id ID del estudiante modificado.
+     * @return {@code true} si hay que registrar el cambio en la bandeja de salida.
+     */
+    protected boolean debeReplicar(String id) {
+        return true;
+    }
+
+    /**
+     * Devuelve el DAO de una base de datos por el nombre de su casa.
+     * Es un atajo de {@link RegistroDAO#dao(String)}: el DAO es el mismo durante toda la ejecución.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa de {@link FuentesDatos} (sin distinguir mayúsculas).
+     * @return El DAO de esa base de datos, o {@code null} si el nombre no es válido.
+     */
+    public static BaseDAO daoDeCasa(String casa) {
+        return RegistroDAO.dao(casa);
+    }
+
+    /**
+     * Devuelve la casa que corresponde a un prefijo de ID de Hogwarts.
+     *
+     * @param prefijo Prefijo de dos letras (ej. "GR").
+     * @return El nombre de la casa, o {@code null} si el prefijo no es de ninguna casa (ej. "HO").
+     */
+    static String casaDePrefijo(String prefijo) {
+        return FuentesDatos.casaDePrefijo(prefijo);
     }
 
     /**
      * Obtiene el prefijo de dos letras asociado a la casa ({@code getCasa()}) para su uso,
-     * por ejemplo, en la generación de IDs o códigos.
+     * por ejemplo, en la generación de IDs o códigos. Se configura en {@link FuentesDatos}
+     * ("GR" para Gryffindor, "HF" para Hufflepuff, etc.).
      *
-     * @return El prefijo de dos letras para la casa:
-     * <ul>
-     * <li>"GR" para Gryffindor</li>
-     * <li>"HF" para Hufflepuff</li>
-     * <li>"RV" para Ravenclaw</li>
-     * <li>"SL" para Slytherin</li>
-     * <li>"HO" por defecto para cualquier otra casa o valor.</li>
-     * </ul>
+     * @return El prefijo de la casa, o "HO" en Hogwarts (y en cualquier otra base de datos).
      *
      * @author Gaizka
      */
     protected String getPrefijoCasa() {
-        return switch (getCasa().toLowerCase()) {
-            case "gryffindor" -> "GR";
-            case "hufflepuff" -> "HF";
-            case "ravenclaw" -> "RV";
-            case "slytherin" -> "SL";
-            default -> "HO";
-        };
+        FuentesDatos.Fuente fuente = FuentesDatos.fuente(getCasa());
+        return fuente == null ? "HO" : fuente.prefijo();
     }
     /**
-     * Genera un nuevo ID con prefijo según la casa.
-     * Ejemplo: GR1, HF2, RV3, SL1, HO4...
-     *
-     * Genera un nuevo ID con prefijo según la casa (compatible con todos los motores).
-     *
      * Genera un nuevo ID numérico local (sin prefijo) para las casas.
+     * <p>
+     * El número sale de {@link GeneradorIds}, que reserva bloques de IDs en la tabla
+     * <code>ID_SECUENCIAS</code> de esta base de datos: no recorre la tabla de estudiantes
+     * y dos inserciones simultáneas (aunque sean de clientes distintos) nunca reciben el mismo ID.
+     * <p>
+     * La base de datos de cada casa es la única que reparte números para sus alumnos;
+     * Hogwarts usa el mismo número con el prefijo de la casa (ej. "GR" + ID numérico).
      *
-     * @param conn La conexión a la base de datos que se utilizará.
-     * @return El siguiente ID numérico disponible. Retorna {@code 1} si la tabla está vacía.
-     * @throws SQLException Si ocurre un error durante la ejecución de la consulta SQL.
+     * @return El siguiente ID numérico disponible, como texto.
+     * @throws SQLException Si no se puede reservar un bloque de IDs.
      *
      * @author Gaizka
      */
-    protected String generarNuevoIdNumerico(Connection conn) throws SQLException {
+    protected String generarNuevoIdNumerico() throws SQLException {
+        return String.valueOf(GeneradorIds.siguiente(getCasa(), "ESTUDIANTES", this::getConnection, this::maximoIdExistente));
+    }
+
+    /**
+     * Calcula el mayor ID numérico ya usado por esta casa. Solo se usa como semilla la
+     * primera vez que se crea la secuencia de IDs.
+     * <p>
+     * Recorre los IDs de la tabla local (ignorando prefijos como GR, HF, etc.) y, si no
+     * estamos en Hogwarts, también tiene en cuenta los IDs con el prefijo de la casa que
+     * ya existan en Hogwarts, para no repetir números de datos anteriores.
+     *
+     * @param conn La conexión a la base de datos de la casa.
+     * @return El mayor número encontrado, o {@code 0} si la tabla está vacía.
+     * @throws SQLException Si ocurre un error durante la ejecución de la consulta SQL.
+     */
+    protected long maximoIdExistente(Connection conn) throws SQLException {
         String sql = "SELECT id FROM ESTUDIANTES";
-        int maximo = 0;
+        long maximo = 0;
 
         try (PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
@@ -406,19 +965,306 @@ public abstract class BaseDAO {
 
                 if (!numeros.isEmpty()) {
                     try {
-                        int valor = Integer.parseInt(numeros);
+                        long valor = Long.parseLong(numeros);
                         if (valor > maximo) maximo = valor;
                     } catch (NumberFormatException ignored) {}
                 }
             }
         }
 
-        // Devuelve el siguiente número (como texto)
-        return String.valueOf(maximo + 1);
+        if (!getCasa().equalsIgnoreCase("Hogwarts")) {
+            try (Connection connHogwarts = ConexionBD.getConnection()) {
+                if (connHogwarts != null) {
+                    maximo = Math.max(maximo, MariaDBDAO.maximoIdHogwarts(connHogwarts, getPrefijoCasa()));
+                }
+            } catch (SQLException ex) {
+                logger.warn("⚠️ No se pudo consultar Hogwarts para la semilla de IDs de {}: {}", getCasa(), ex.getMessage());
+            }
+        }
+        return maximo;
     }
 
 
 
+    // ============================================================
+    // === OPERACIONES POR LOTES ==================================
+    // ============================================================
+
+    /**
+     * Inserta muchos estudiantes con una sola transacción y sentencias por lotes
+     * ({@code addBatch}/{@code executeBatch}), en lugar de una conexión y un viaje por alumno.
+     * <p>
+     * **Proceso:**
+     * <ol>
+     * <li>Valida todas las filas con {@link #validarEstudiante(Modelo_Estudiante)}; las inválidas
+     * no se insertan y su resultado indica el motivo (sin mostrar alertas).</li>
+     * <li>Reserva de una vez los IDs de todas las filas válidas ({@link #asignarIdsLote(List)}).</li>
+     * <li>Inserta las filas en bloques de {@code lote.tamano} sentencias y registra la replicación
+     * de todas ellas en la {@link BandejaSalida} con un único lote, todo en la misma transacción.</li>
+     * </ol>
+     * Si la transacción falla se deshace entera: ninguna fila válida queda insertada y el
+     * resultado de la fila que provocó el error (si el driver la identifica) lleva su mensaje.
+     *
+     * @param estudiantes Estudiantes a insertar; su ID se sobrescribe con el asignado.
+     * @return Un resultado por cada fila recibida, en el mismo orden.
+     */
+    public List<ResultadoOperacion> insertarLote(List<Modelo_Estudiante> estudiantes) {
+        final String sql = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
+
+        ResultadoOperacion[] resultados = new ResultadoOperacion[estudiantes.size()];
+        List<Integer> validos = validarLote(estudiantes, resultados);
+        if (validos.isEmpty()) return List.of(resultados);
+
+        List<Modelo_Estudiante> filas = new ArrayList<>(validos.size());
+        for (int i : validos) filas.add(estudiantes.get(i));
+
+        try {
+            asignarIdsLote(filas);
+        } catch (SQLException ex) {
+            logger.error("❌ Error reservando IDs para el lote en {}.", getCasa(), ex);
+            for (int i : validos) resultados[i] = ResultadoOperacion.error(i, null, ex.getMessage());
+            return List.of(resultados);
+        }
+
+        ejecutarLote(sql, "insert", validos, i -> estudiantes.get(i).getId(), estudiantes::get, (ps, i) -> {
+            Modelo_Estudiante e = estudiantes.get(i);
+            ps.setString(1, e.getId());
+            ps.setString(2, e.getNombre());
+            ps.setString(3, e.getApellidos());
+            ps.setString(4, casaAGuardar(e));
+            ps.setInt(5, e.getCurso());
+            ps.setString(6, e.getPatronus());
+        }, resultados);
+        return List.of(resultados);
+    }
+
+    /**
+     * Actualiza muchos estudiantes con una sola transacción y sentencias por lotes.
+     * Las filas inválidas o cuyo ID no existe se marcan como fallidas; el resto se confirma
+     * y se registra para replicar con un único lote.
+     *
+     * @param estudiantes Estudiantes con el ID y los nuevos datos.
+     * @return Un resultado por cada fila recibida, en el mismo orden.
+     */
+    public List<ResultadoOperacion> editarLote(List<Modelo_Estudiante> estudiantes) {
+        final String sql = "UPDATE ESTUDIANTES SET nombre=?, apellidos=?, casa=?, curso=?, patronus=? WHERE id=?";
+
+        ResultadoOperacion[] resultados = new ResultadoOperacion[estudiantes.size()];
+        List<Integer> validos = new ArrayList<>();
+        for (int i : validarLote(estudiantes, resultados)) {
+            String id = estudiantes.get(i).getId();
+            if (id == null || id.isBlank()) resultados[i] = ResultadoOperacion.error(i, id, "Falta el ID");
+            else validos.add(i);
+        }
+
+        ejecutarLote(sql, "update", validos, i -> estudiantes.get(i).getId(), estudiantes::get, (ps, i) -> {
+            Modelo_Estudiante e = estudiantes.get(i);
+            ps.setString(1, e.getNombre());
+            ps.setString(2, e.getApellidos());
+            ps.setString(3, e.getCasa());
+            ps.setInt(4, e.getCurso());
+            ps.setString(5, e.getPatronus());
+            ps.setString(6, e.getId());
+        }, resultados);
+        return List.of(resultados);
+    }
+
+    /**
+     * Elimina muchos estudiantes con una sola transacción y sentencias por lotes.
+     * Los IDs que no existen se marcan como fallidos.
+     *
+     * @param ids IDs de los estudiantes a eliminar.
+     * @return Un resultado por cada ID recibido, en el mismo orden.
+     */
+    public List<ResultadoOperacion> borrarLote(List<String> ids) {
+        final String sql = "DELETE FROM ESTUDIANTES WHERE id=?";
+
+        ResultadoOperacion[] resultados = new ResultadoOperacion[ids.size()];
+        List<Integer> validos = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            if (id == null || id.isBlank()) resultados[i] = ResultadoOperacion.error(i, id, "Falta el ID");
+            else validos.add(i);
+        }
+
+        ejecutarLote(sql, "delete", validos, ids::get, null, (ps, i) -> ps.setString(1, ids.get(i)), resultados);
+        return List.of(resultados);
+    }
+
+    /**
+     * Asigna un ID nuevo a cada estudiante de un lote reservando todos los números de una vez.
+     * Hogwarts lo redefine para repartir por casa y prefijo.
+     *
+     * @param filas Estudiantes válidos a insertar.
+     * @throws SQLException Si no se puede reservar el rango de IDs.
+     */
+    protected void asignarIdsLote(List<Modelo_Estudiante> filas) throws SQLException {
+        long numero = reservarIdsNumericos(filas.size());
+        for (Modelo_Estudiante e : filas) e.setId(String.valueOf(numero++));
+    }
+
+    /**
+     * Reserva un rango contiguo de IDs numéricos (sin prefijo) en la secuencia de esta base de datos.
+     *
+     * @param cantidad Número de IDs a reservar.
+     * @return El primer ID del rango {@code [inicio, inicio + cantidad)}.
+     * @throws SQLException Si no se puede reservar.
+     */
+    protected long reservarIdsNumericos(int cantidad) throws SQLException {
+        return GeneradorIds.reservar(getCasa(), "ESTUDIANTES", cantidad, this::getConnection, this::maximoIdExistente);
+    }
+
+    /**
+     * Valor de la columna {@code casa} al insertar. Cada casa guarda su propio nombre;
+     * Hogwarts lo redefine para guardar la casa del estudiante.
+     *
+     * @param e Estudiante a insertar.
+     * @return El nombre de la casa a guardar.
+     */
+    protected String casaAGuardar(Modelo_Estudiante e) {
+        return getCasa();
+    }
+
+    /**
+     * @param e Estudiante a insertar (ya con su ID).
+     * @return La fila tal como queda guardada, con la casa de {@link #casaAGuardar(Modelo_Estudiante)}.
+     */
+    protected Modelo_Estudiante filaGuardada(Modelo_Estudiante e) {
+        return new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), casaAGuardar(e), e.getCurso(), e.getPatronus());
+    }
+
+    /** Número de sentencias que se acumulan antes de cada {@code executeBatch} (clave <code>lote.tamano</code>). */
+    private static final int TAMANO_LOTE = Math.max(1, Config.getInt("lote.tamano", 500));
+
+    /** Rellena los parámetros de la sentencia para la fila {@code i}. */
+    @FunctionalInterface
+    private interface ParametrosFila {
+        void rellenar(PreparedStatement ps, int i) throws SQLException;
+    }
+
+    /** Valida todas las filas y devuelve los índices de las válidas; las inválidas quedan con su error. */
+    private List<Integer> validarLote(List<Modelo_Estudiante> estudiantes, ResultadoOperacion[] resultados) {
+        List<Integer> validos = new ArrayList<>(estudiantes.size());
+        for (int i = 0; i < estudiantes.size(); i++) {
+            Modelo_Estudiante e = estudiantes.get(i);
+            String error = validarEstudiante(e);
+            if (error == null) validos.add(i);
+            else resultados[i] = ResultadoOperacion.error(i, e == null ? null : e.getId(), error);
+        }
+        if (validos.size() < estudiantes.size()) {
+            logger.warn("⚠️ {} de {} filas del lote no son válidas en {}.",
+                    estudiantes.size() - validos.size(), estudiantes.size(), getCasa());
+        }
+        return validos;
+    }
+
+    /**
+     * Ejecuta la misma sentencia para todas las filas indicadas en una transacción,
+     * enviándolas por bloques de {@link #TAMANO_LOTE}, y registra en la bandeja de salida
+     * las que han cambiado alguna fila. Deja un resultado en {@code resultados} para cada índice.
+     * {@code filaDe} da el estado nuevo de cada fila para el {@link IndiceBusqueda} ({@code null} en los borrados).
+     * El lote entero queda como un solo paso del {@link DiarioDeshacer}.
+     */
+    private void ejecutarLote(String sql, String operacion, List<Integer> indices,
+                              IntFunction<String> idDe, IntFunction<Modelo_Estudiante> filaDe,
+                              ParametrosFila parametros, ResultadoOperacion[] resultados) {
+        if (indices.isEmpty()) return;
+        long inicio = System.currentTimeMillis();
+        long inicioNanos = System.nanoTime();
+        Operacion op = switch (operacion) {
+            case "insert" -> Operacion.INSERTAR_LOTE;
+            case "update" -> Operacion.EDITAR_LOTE;
+            default -> Operacion.BORRAR_LOTE;
+        };
+
+        int enviadas = 0;
+        long seq;
+        try {
+            // Secuencias para todas las filas que podrían replicarse, aunque luego alguna no exista
+            seq = prepararEscritura((int) indices.stream().map(idDe::apply).filter(this::debeReplicar).count());
+        } catch (SQLException ex) {
+            logger.error("❌ Error preparando el lote {} de {}.", operacion, getCasa(), ex);
+            Metricas.registrar(op, getCasa(), inicioNanos, false, 0);
+            for (int i : indices) resultados[i] = ResultadoOperacion.error(i, idDe.apply(i), ex.getMessage());
+            return;
+        }
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            conn.setAutoCommit(false);
+            // Imágenes anteriores para el diario de deshacer (en una inserción no hay)
+            Map<String, Modelo_Estudiante> antes = operacion.equals("insert") ? Map.of()
+                    : obtenerPorIds(conn, indices.stream().map(idDe::apply).toList());
+            List<String> cambiados = new ArrayList<>(indices.size());
+            List<Modelo_Estudiante> filasCambiadas = new ArrayList<>(filaDe == null ? 0 : indices.size());
+            List<String> replicar = new ArrayList<>(indices.size());
+
+            for (int desde = 0; desde < indices.size(); desde += TAMANO_LOTE) {
+                List<Integer> bloque = indices.subList(desde, Math.min(indices.size(), desde + TAMANO_LOTE));
+                for (int i : bloque) {
+                    parametros.rellenar(ps, i);
+                    ps.addBatch();
+                }
+                enviadas = desde;
+                int[] cuentas = ps.executeBatch();
+
+                for (int k = 0; k < bloque.size(); k++) {
+                    int i = bloque.get(k);
+                    String id = idDe.apply(i);
+                    // SUCCESS_NO_INFO: el driver no sabe cuántas filas, pero la sentencia se ejecutó
+                    if (cuentas[k] > 0 || cuentas[k] == Statement.SUCCESS_NO_INFO) {
+                        resultados[i] = ResultadoOperacion.ok(i, id);
+                        cambiados.add(id);
+                        if (filaDe != null) filasCambiadas.add(filaDe.apply(i));
+                        if (debeReplicar(id)) replicar.add(id);
+                    } else {
+                        resultados[i] = ResultadoOperacion.error(i, id, "No existe el ID " + id);
+                    }
+                }
+            }
+
+            RegistroCambios.anotar(conn, operacion, cambiados);
+            BandejaSalida.registrarLote(conn, operacion, replicar, seq);
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), filasCambiadas, filaDe == null ? cambiados : List.of());
+            List<Modelo_Estudiante> guardadas = operacion.equals("insert")
+                    ? filasCambiadas.stream().map(this::filaGuardada).toList() : filasCambiadas;
+            DiarioOperaciones.anotar(getCasa(), operacion, false, guardadas, filaDe == null ? cambiados : List.of());
+            List<DiarioDeshacer.Cambio> deshacer = new ArrayList<>(cambiados.size());
+            for (int k = 0; k < cambiados.size(); k++) {
+                String id = cambiados.get(k);
+                deshacer.add(new DiarioDeshacer.Cambio(id, antes.get(id), filaDe == null ? null : guardadas.get(k)));
+            }
+            DiarioDeshacer.anotar(getCasa(), operacion, deshacer);
+
+            logger.info("📦 Lote {} en {}: {} filas en {} ms.", operacion, getCasa(), indices.size(),
+                    System.currentTimeMillis() - inicio);
+            Metricas.registrar(op, getCasa(), inicioNanos, true, cambiados.size());
+            if (!replicar.isEmpty()) Replicador.avisar();
+
+        } catch (SQLException ex) {
+            // La conexión se devuelve al pool con rollback: no queda aplicada ninguna fila
+            logger.error("❌ Error en el lote {} de {}; se deshace entero.", operacion, getCasa(), ex);
+            Metricas.registrar(op, getCasa(), inicioNanos, false, 0);
+            int culpable = -1;
+            if (ex instanceof BatchUpdateException bue && bue.getUpdateCounts() != null) {
+                int[] cuentas = bue.getUpdateCounts();
+                // Los drivers que paran en el primer error devuelven solo las cuentas anteriores
+                for (int k = 0; k < cuentas.length && culpable < 0; k++) {
+                    if (cuentas[k] == Statement.EXECUTE_FAILED) culpable = enviadas + k;
+                }
+                if (culpable < 0 && enviadas + cuentas.length < indices.size()) culpable = enviadas + cuentas.length;
+            }
+            for (int k = 0; k < indices.size(); k++) {
+                int i = indices.get(k);
+                String mensaje = k == culpable ? ex.getMessage() : "No aplicado: el lote se ha deshecho (" + ex.getMessage() + ")";
+                resultados[i] = ResultadoOperacion.error(i, idDe.apply(i), mensaje);
+            }
+        }
+    }
+
     /**
      * Metodo para comprobar si los estudiantes son válidos, teniendo en cuenta diferentes factores:
      * <ul>
@@ -435,51 +1281,59 @@ public abstract class BaseDAO {
      * @return {@code true} si el estudiante es válido, {@code false} en caso contrario.
      */
     public static boolean comprobarEstudiante(Modelo_Estudiante e) {
-
-        if (e.getCasa().isEmpty() || e.getCasa() == null || e.getApellidos().isEmpty() || e.getNombre().isEmpty()
-                || e.getCurso() == null || e.getPatronus().isEmpty()) {
-            logger.error("No dejes campos vacíos");
-            mostrarError("Error campos vacíos", "No dejes campos vacíos");
+        ErrorValidacion error = validar(e);
+        if (error != null) {
+            logger.error(error.mensaje());
+            mostrarError(error.titulo(), error.mensaje());
             return false;
         }
+        return true;
+    }
+
+    /**
+     * Aplica las mismas comprobaciones que {@link #comprobarEstudiante(Modelo_Estudiante)}
+     * pero sin mostrar ninguna alerta, para poder validar muchas filas de una vez.
+     *
+     * @param e Objeto {@link Modelo_Estudiante} a comprobar.
+     * @return {@code null} si el estudiante es válido, o el motivo por el que no lo es.
+     */
+    public static String validarEstudiante(Modelo_Estudiante e) {
+        ErrorValidacion error = validar(e);
+        return error == null ? null : error.mensaje();
+    }
+
+    /** Título (para la alerta) y mensaje de un error de validación. */
+    private record ErrorValidacion(String titulo, String mensaje) {}
+
+    private static ErrorValidacion validar(Modelo_Estudiante e) {
+
+        if (e == null || e.getCasa() == null || e.getApellidos() == null || e.getNombre() == null
+                || e.getPatronus() == null || e.getCasa().isEmpty() || e.getApellidos().isEmpty()
+                || e.getNombre().isEmpty() || e.getCurso() == null || e.getPatronus().isEmpty()) {
+            return new ErrorValidacion("Error campos vacíos", "No dejes campos vacíos");
+        }
 
         if (e.getCurso() <= 0 || e.getCurso() > 7) {
-            logger.error("Curso no válido");
-            mostrarError("Error curso inválido", "Los cursos válidos son del 1 al 7");
-            return false;
+            return new ErrorValidacion("Error curso inválido", "Los cursos válidos son del 1 al 7");
         }
 
         if (!comprobarStrings(e.getPatronus())) {
-            logger.error("Patronus no válido");
-            mostrarError("Error patronus inválido", "Los patronus válidos contienen solo letras y espacios");
-            return false;
+            return new ErrorValidacion("Error patronus inválido", "Los patronus válidos contienen solo letras y espacios");
         }
 
         if (!comprobarStrings(e.getNombre())) {
-            logger.error("Nombre no válido");
-            mostrarError("Error nombre inválido", "Los nombres válidos contienen solo letras y espacios");
-            return false;
+            return new ErrorValidacion("Error nombre inválido", "Los nombres válidos contienen solo letras y espacios");
         }
 
         if (!comprobarStrings(e.getApellidos())) {
-            logger.error("Apellidos no válidos");
-            mostrarError("Error apellidos inválidos", "Los apellidos válidos contienen solo letras y espacios");
-            return false;
+            return new ErrorValidacion("Error apellidos inválidos", "Los apellidos válidos contienen solo letras y espacios");
         }
 
-
-        if (!(e.getCasa().equalsIgnoreCase("Gryffindor") ||
-                e.getCasa().equalsIgnoreCase("Slytherin") ||
-                e.getCasa().equalsIgnoreCase("Hogwarts") ||
-                e.getCasa().equalsIgnoreCase("Hufflepuff") ||
-                e.getCasa().equalsIgnoreCase("Ravenclaw"))) {
-
-            logger.error("Casa no válida");
-            mostrarError("Error casa inválida", "No has introducido la casa correctamente");
-            return false;
+        if (FuentesDatos.fuente(e.getCasa()) == null) {
+            return new ErrorValidacion("Error casa inválida", "No has introducido la casa correctamente");
         }
 
-        return true;
+        return null;
     }
 
     /**
@@ -513,20 +1367,20 @@ public abstract class BaseDAO {
 
 
     /**
-     * Cierra el pool de hilos asociado a la base de datos si aún no está cerrado.
+     * Cierra el {@link EjecutorBD} si aún no está cerrado.
      * <p>
-     * Este metodo comprueba si el {@code dbExecutor} sigue activo y, en ese caso,
-     * lo apaga de forma ordenada para liberar los recursos asociados.
+     * Deja de aceptar tareas asíncronas y da unos segundos a las que están en curso
+     * para terminar, liberando los recursos asociados.
      * </p>
      *
-     * <p>También muestra un mensaje en consola indicando que el pool ha sido cerrado.</p>
+     * <p>También muestra un mensaje en consola indicando que el ejecutor ha sido cerrado.</p>
      *
      * @author Gaizka, Xiker
      */
     public static void shutdown() {
-        if (!dbExecutor.isShutdown()) {
-            dbExecutor.shutdown();
-            System.out.println("🧹 Pool de hilos cerrado.");
+        if (cerrado.compareAndSet(false, true)) {
+            EjecutorBD.cerrar();
+            System.out.println("🧹 Ejecutor de base de datos cerrado.");
         }
     }
 }
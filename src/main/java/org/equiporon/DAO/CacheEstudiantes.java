@@ -0,0 +1,135 @@
+package org.equiporon.DAO;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de lectura de las páginas de estudiantes, separada por casa.
+ * <p>
+ * {@link BaseDAO#obtenerPagina} consulta primero aquí: volver a una casa que se
+ * acaba de ver no toca la base de datos. El tamaño se limita por número total de
+ * filas guardadas (<code>cache.filas</code>) y se desalojan las páginas menos usadas;
+ * además cada página caduca a los <code>cache.segundos</code> segundos para recoger
+ * los cambios hechos por otros clientes.
+ * <p>
+ * Las escrituras de los DAOs (y las réplicas que aplica el {@link Replicador})
+ * invalidan todas las páginas de su casa tras el commit, igual que el
+ * {@link ObservadorCambios} cuando detecta cambios de otros clientes. Cada casa lleva una versión:
+ * una lectura que empezó antes de una escritura no guarda su resultado, para no dejar
+ * en la caché datos anteriores al cambio.
+ * <p>
+ * Las filas se copian al guardar y al servir: la tabla edita en línea las que muestra, y una
+ * edición que aún espera su volcado (o que se rechaza) no debe verla nadie más.
+ */
+public final class CacheEstudiantes {
+
+    /** Página cacheada: casa, orden y punto de continuación de la paginación por clave. */
+    record ClavePagina(String casa, String columna, boolean descendente,
+                       String despuesDeId, Object despuesDeValor, int tamano) {}
+
+    private static final Cache<ClavePagina, List<Modelo_Estudiante>> paginas = Caffeine.newBuilder()
+            .maximumWeight(Math.max(1, Config.getInt("cache.filas", 50_000)))
+            .weigher((ClavePagina clave, List<Modelo_Estudiante> filas) -> filas.size() + 1)
+            .expireAfterWrite(Duration.ofSeconds(Math.max(1, Config.getInt("cache.segundos", 60))))
+            .recordStats()
+            .build();
+
+    /** Versión de los datos de cada casa; sube con cada invalidación. */
+    private static final Map<String, AtomicLong> versiones = new ConcurrentHashMap<>();
+
+    private CacheEstudiantes() {}
+
+    /**
+     * @param clave Página buscada.
+     * @return Una copia de la página cacheada, o {@code null} si no está.
+     */
+    static List<Modelo_Estudiante> obtener(ClavePagina clave) {
+        List<Modelo_Estudiante> filas = paginas.getIfPresent(clave);
+        return filas == null ? null : copias(filas);
+    }
+
+    /**
+     * @param casa Nombre de la casa (o "Hogwarts").
+     * @return Versión actual de sus datos; debe leerse <b>antes</b> de consultar la base de datos.
+     */
+    static long version(String casa) {
+        return versiones.computeIfAbsent(casa, c -> new AtomicLong()).get();
+    }
+
+    /**
+     * Guarda una página leída de la base de datos, salvo que la casa haya cambiado desde
+     * que se empezó a leer.
+     *
+     * @param clave Página leída.
+     * @param filas Filas de la página.
+     * @param versionLeida Valor de {@link #version(String)} antes de la consulta.
+     */
+    static void guardar(ClavePagina clave, List<Modelo_Estudiante> filas, long versionLeida) {
+        if (version(clave.casa()) != versionLeida) return;
+        paginas.put(clave, copias(filas));
+        // Si se invalidó justo entre la comprobación y el put, se descarta igualmente
+        if (version(clave.casa()) != versionLeida) paginas.invalidate(clave);
+    }
+
+    /**
+     * Descarta todas las páginas de una casa. Se llama tras confirmar cualquier escritura en ella.
+     *
+     * @param casa Nombre de la casa (o "Hogwarts").
+     */
+    public static void invalidar(String casa) {
+        versiones.computeIfAbsent(casa, c -> new AtomicLong()).incrementAndGet();
+        paginas.asMap().keySet().removeIf(clave -> clave.casa().equals(casa));
+    }
+
+    /**
+     * @param filas Filas a copiar.
+     * @return Lista inmutable con una copia de cada fila, que se puede entregar sin que los
+     * cambios de quien la recibe lleguen al original.
+     */
+    static List<Modelo_Estudiante> copias(Collection<Modelo_Estudiante> filas) {
+        List<Modelo_Estudiante> copias = new ArrayList<>(filas.size());
+        for (Modelo_Estudiante e : filas) {
+            copias.add(new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), e.getCasa(), e.getCurso(), e.getPatronus()));
+        }
+        return List.copyOf(copias);
+    }
+
+    /** Vacía la caché entera. */
+    public static void invalidarTodo() {
+        versiones.values().forEach(AtomicLong::incrementAndGet);
+        paginas.invalidateAll();
+    }
+
+    /** @return Lecturas servidas desde la caché. */
+    public static long getAciertos() { return paginas.stats().hitCount(); }
+
+    /** @return Lecturas que tuvieron que ir a la base de datos. */
+    public static long getFallos() { return paginas.stats().missCount(); }
+
+    /** @return Páginas desalojadas por tamaño o caducidad. */
+    public static long getDesalojos() { return paginas.stats().evictionCount(); }
+
+    /** @return Porcentaje de aciertos (0..1). */
+    public static double getTasaAciertos() { return paginas.stats().hitRate(); }
+
+    /** @return Número aproximado de páginas guardadas. */
+    public static long getPaginas() { return paginas.estimatedSize(); }
+
+    /** @return Resumen legible de las estadísticas, para el log. */
+    public static String resumen() {
+        CacheStats stats = paginas.stats();
+        return String.format("%d aciertos, %d fallos (%.0f%%), %d desalojos, %d páginas",
+                stats.hitCount(), stats.missCount(), stats.hitRate() * 100, stats.evictionCount(), paginas.estimatedSize());
+    }
+}
@@ -0,0 +1,32 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * DAO de la base de datos de una casa. Todas las casas usan esta misma clase, sea cual sea su
+ * motor: lo que cambia es su fuente de datos ({@link FuentesDatos}) y, con ella, su pool.
+ * Se obtiene de {@link RegistroDAO}, que guarda uno por casa.
+ */
+public class CasaDAO extends BaseDAO {
+
+    private final String casa;
+
+    /** @param casa Nombre de la casa tal como aparece en {@link FuentesDatos#casas()}. */
+    CasaDAO(String casa) {
+        this.casa = casa;
+    }
+
+    @Override
+    protected String getCasa() {
+        return casa;
+    }
+
+    @Override
+    protected Connection getConnection() throws SQLException {
+        return ConexionBD.conectarCasa(casa);
+    }
+}
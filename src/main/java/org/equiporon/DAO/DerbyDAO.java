@@ -1,19 +0,0 @@
-package org.equiporon.DAO;
-
-import org.equiporon.Conexion.ConexionBD;
-import java.sql.Connection;
-import java.sql.SQLException;
-
-public class DerbyDAO extends BaseDAO {
-
-    @Override
-    protected String getCasa() {
-        return "Gryffindor";
-    }
-
-    @Override
-    protected Connection getConnection() throws SQLException {
-        return ConexionBD.conectarCasa("Gryffindor");
-    }
-
-}
\ No newline at end of file
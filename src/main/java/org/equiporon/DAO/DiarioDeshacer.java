@@ -0,0 +1,461 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diario de deshacer/rehacer por operación.
+ * <p>
+ * Cada escritura local de un DAO (insertar, editar, borrar y sus lotes) se anota como un
+ * {@link Paso} con la imagen anterior y posterior de solo las filas que ha cambiado, leídas en
+ * la misma transacción. {@link #deshacer()} devuelve esas filas a su estado anterior y
+ * {@link #rehacer()} las vuelve a dejar como estaban después; las dos cuestan lo que ocupan las
+ * filas del paso, no la base de datos. Los cambios se escriben como cualquier otra escritura
+ * local, así que la {@link BandejaSalida} los lleva después a Hogwarts o a la casa.
+ * <p>
+ * Si alguna fila ha cambiado desde el paso (otra edición, otro cliente), no se toca nada: el
+ * paso se descarta y se avisa, para no pisar cambios posteriores.
+ * <p>
+ * Las pilas se guardan en un diario en disco (<code>deshacer.diario</code>) solo de añadir, con
+ * un registro por paso nuevo, deshecho, rehecho o descartado (en el {@link FormatoDiario}), y se
+ * reconstruyen al arrancar. Se guardan como mucho <code>deshacer.pasos</code> pasos; cuando el
+ * diario supera <code>deshacer.mb</code> MB se reescribe solo con los pasos que siguen vivos.
+ * <p>
+ * Las pilas se actualizan en el acto, pero el disco se toca en un único hilo propio, como en
+ * {@link EscrituraDiferida}: los DAOs anotan tras cada commit desde todas las casas a la vez, y
+ * no deben esperar unos a otros por una escritura o una compactación del diario.
+ */
+public final class DiarioDeshacer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiarioDeshacer.class);
+
+    private static final int MAX_PASOS = Math.max(1, Config.getInt("deshacer.pasos", 100));
+    private static final long MAX_BYTES = Math.max(1, Config.getInt("deshacer.mb", 8)) * 1024L * 1024L;
+    private static final Path DIARIO = Config.get("deshacer.diario") != null
+            ? Path.of(Config.get("deshacer.diario"))
+            : Path.of(System.getProperty("user.home"), ".hogwarts", "deshacer.diario");
+
+    /** Tamaño máximo de un registro (un lote grande puede ocupar varios MB). */
+    private static final int MAX_REGISTRO = 64 << 20;
+
+    private static final byte PASO = 'P';
+    private static final byte DESHECHO = 'D';
+    private static final byte REHECHO = 'R';
+    private static final byte DESCARTADO = 'X';
+
+    /**
+     * Cambio de una fila.
+     *
+     * @param id ID del estudiante en la base de datos del paso.
+     * @param antes Fila antes de la operación, o {@code null} si no existía (inserción).
+     * @param despues Fila después de la operación, o {@code null} si ya no existe (borrado).
+     */
+    public record Cambio(String id, Modelo_Estudiante antes, Modelo_Estudiante despues) {
+        /** @return El cambio que lo deshace. */
+        Cambio invertido() {
+            return new Cambio(id, despues, antes);
+        }
+    }
+
+    /**
+     * Una operación que se puede deshacer.
+     *
+     * @param numero Número del paso, creciente.
+     * @param casa Base de datos donde se hizo ("Hogwarts" o una casa).
+     * @param operacion "insert", "update" o "delete".
+     * @param cambios Filas cambiadas.
+     */
+    public record Paso(long numero, String casa, String operacion, List<Cambio> cambios) {}
+
+    // Protegido por el monitor de la clase. El primero de cada pila es el último paso.
+    private static final Deque<Paso> deshacer = new ArrayDeque<>();
+    private static final Deque<Paso> rehacer = new ArrayDeque<>();
+    private static long siguiente = 1;
+    private static boolean aplicando;
+    private static boolean cargado;
+    /** Si este proceso tiene el diario para él solo ({@link FormatoDiario#reservar}). */
+    private static boolean propio;
+    private static ExecutorService hilo;
+
+    // Solo se tocan desde el hilo propio
+    private static FileChannel canal;
+    private static long tamano;
+    private static boolean compactacionPendiente;
+
+    static {
+        Metricas.indicador("DiarioDeshacer", "pasos", "deshacer", DiarioDeshacer::getPasosDeshacer);
+        Metricas.indicador("DiarioDeshacer", "pasos", "rehacer", DiarioDeshacer::getPasosRehacer);
+    }
+
+    private DiarioDeshacer() {}
+
+    /**
+     * Anota una operación ya confirmada. La llaman los DAOs tras el {@code commit} de cada
+     * escritura local; las que llegan replicadas no se anotan. Vacía la pila de rehacer. El
+     * registro se escribe en disco después, en el hilo del diario.
+     *
+     * @param casa Base de datos de la operación.
+     * @param operacion "insert", "update" o "delete".
+     * @param cambios Filas cambiadas; si no hay ninguna, no se anota nada.
+     */
+    static synchronized void anotar(String casa, String operacion, List<Cambio> cambios) {
+        if (cambios.isEmpty()) return;
+        cargar();
+        // Copias (el llamante puede seguir modificando sus filas); una fila repetida en un lote
+        // queda como un solo cambio, de su primer estado al último
+        Map<String, Cambio> porId = new LinkedHashMap<>();
+        for (Cambio c : cambios) {
+            Cambio previo = porId.get(c.id());
+            porId.put(c.id(), new Cambio(c.id(), previo != null ? previo.antes() : copia(c.antes()), copia(c.despues())));
+        }
+        Paso paso = new Paso(siguiente++, casa, operacion, List.copyOf(porId.values()));
+        apilar(paso);
+        escribir(registroPaso(paso));
+    }
+
+    /**
+     * Deshace el último paso.
+     *
+     * @return Futuro con el paso deshecho, o con {@code null} si no hay nada que deshacer.
+     * Termina con error si ya se está deshaciendo o rehaciendo otro paso, si falla la base de
+     * datos (el paso sigue en la pila) o si las filas han cambiado desde entonces (el paso se descarta).
+     */
+    public static CompletableFuture<Paso> deshacer() {
+        return mover(deshacer, rehacer, DESHECHO);
+    }
+
+    /**
+     * Vuelve a aplicar el último paso deshecho.
+     *
+     * @return Futuro con el paso rehecho, o con {@code null} si no hay nada que rehacer.
+     * Termina con error en los mismos casos que {@link #deshacer()}.
+     */
+    public static CompletableFuture<Paso> rehacer() {
+        return mover(rehacer, deshacer, REHECHO);
+    }
+
+    /** @return Pasos que se pueden deshacer. */
+    public static synchronized int getPasosDeshacer() {
+        cargar();
+        return deshacer.size();
+    }
+
+    /** @return Pasos deshechos que se pueden rehacer. */
+    public static synchronized int getPasosRehacer() {
+        cargar();
+        return rehacer.size();
+    }
+
+    /** @return Copia de la pila de deshacer (el primero es el último paso). */
+    static synchronized List<Paso> pilaDeshacer() {
+        cargar();
+        return List.copyOf(deshacer);
+    }
+
+    /** @return Copia de la pila de rehacer (el primero es el último deshecho). */
+    static synchronized List<Paso> pilaRehacer() {
+        cargar();
+        return List.copyOf(rehacer);
+    }
+
+    /**
+     * Espera a que el hilo del diario escriba lo encolado, cierra el fichero y olvida las pilas; el
+     * siguiente uso las vuelve a leer del disco. Se llama al salir, sin pasos aplicándose.
+     */
+    static void cerrar() {
+        ExecutorService anterior;
+        synchronized (DiarioDeshacer.class) {
+            anterior = hilo;
+            hilo = null;
+            deshacer.clear();
+            rehacer.clear();
+            siguiente = 1;
+            cargado = false;
+            propio = false;
+        }
+        if (anterior == null) return;
+        // El canal es del hilo: se cierra en él, detrás de lo que tenga encolado
+        anterior.execute(() -> {
+            try {
+                if (canal != null) canal.close();
+            } catch (IOException ex) {
+                logger.warn("⚠️ No se pudo cerrar el diario de deshacer ({}): {}", DIARIO, ex.getMessage());
+            }
+            canal = null;
+            compactacionPendiente = false;
+        });
+        anterior.shutdown();
+        try {
+            if (!anterior.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("⚠️ El diario de deshacer no terminó de escribirse al cerrarlo.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param a Una fila, o {@code null}.
+     * @param b Otra fila, o {@code null}.
+     * @return {@code true} si las dos faltan o tienen los mismos datos.
+     */
+    static boolean mismaFila(Modelo_Estudiante a, Modelo_Estudiante b) {
+        if (a == null || b == null) return a == b;
+        return Objects.equals(a.getId(), b.getId())
+                && Objects.equals(a.getNombre(), b.getNombre())
+                && Objects.equals(a.getApellidos(), b.getApellidos())
+                && Objects.equals(a.getCasa(), b.getCasa())
+                && Objects.equals(a.getCurso(), b.getCurso())
+                && Objects.equals(a.getPatronus(), b.getPatronus());
+    }
+
+    private static Modelo_Estudiante copia(Modelo_Estudiante e) {
+        return e == null ? null : new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), e.getCasa(),
+                e.getCurso() == null ? 0 : e.getCurso(), e.getPatronus());
+    }
+
+    /**
+     * Aplica el paso de arriba de {@code desde} (al revés si se está deshaciendo) y, si sale bien,
+     * lo pasa a {@code hacia}.
+     */
+    private static CompletableFuture<Paso> mover(Deque<Paso> desde, Deque<Paso> hacia, byte tipo) {
+        Paso paso;
+        synchronized (DiarioDeshacer.class) {
+            cargar();
+            if (aplicando) return CompletableFuture.failedFuture(new IllegalStateException("Ya se está deshaciendo otro paso."));
+            paso = desde.peekFirst();
+            if (paso == null) return CompletableFuture.completedFuture(null);
+            aplicando = true;
+        }
+
+        BaseDAO dao = BaseDAO.daoDeCasa(paso.casa());
+        List<Cambio> cambios = tipo == DESHECHO
+                ? paso.cambios().stream().map(Cambio::invertido).toList()
+                : paso.cambios();
+        CompletableFuture<List<String>> aplicado = dao == null
+                ? CompletableFuture.failedFuture(new IllegalArgumentException("Casa no válida: " + paso.casa()))
+                : EjecutorBD.enviar(paso.casa(), EjecutorBD.Prioridad.ESCRITURA, () -> dao.restaurarFilas(cambios));
+
+        return aplicado.handle((conflictos, ex) -> {
+            synchronized (DiarioDeshacer.class) {
+                aplicando = false;
+                if (ex == null) {
+                    desde.remove(paso);
+                    if (conflictos.isEmpty()) hacia.addFirst(paso);
+                    escribir(registroMarca(conflictos.isEmpty() ? tipo : DESCARTADO, paso.numero()));
+                }
+            }
+            if (ex != null) {
+                logger.error("❌ No se pudo {} el paso {} en {}.", tipo == DESHECHO ? "deshacer" : "rehacer",
+                        paso.numero(), paso.casa(), ex);
+                throw ex instanceof CompletionException ce ? ce : new CompletionException(ex);
+            }
+            if (!conflictos.isEmpty()) {
+                logger.warn("⚠️ Paso {} en {} descartado: han cambiado {}.", paso.numero(), paso.casa(), conflictos);
+                throw new CompletionException(new IllegalStateException(
+                        "Los estudiantes " + conflictos + " han cambiado desde entonces; el paso se descarta."));
+            }
+            logger.info("↩️ Paso {} ({} en {}, {} filas) {}.", paso.numero(), paso.operacion(), paso.casa(),
+                    paso.cambios().size(), tipo == DESHECHO ? "deshecho" : "rehecho");
+            return paso;
+        });
+    }
+
+    /** Pone un paso nuevo arriba de la pila de deshacer, vacía la de rehacer y olvida los más antiguos. Con el monitor. */
+    private static void apilar(Paso paso) {
+        deshacer.addFirst(paso);
+        rehacer.clear();
+        while (deshacer.size() > MAX_PASOS) deshacer.removeLast();
+    }
+
+    // ============================================================
+    // === DIARIO =================================================
+    // ============================================================
+
+    /** Reconstruye las pilas desde el diario la primera vez que se usan. Con el monitor. */
+    private static void cargar() {
+        if (cargado) return;
+        cargado = true;
+        // Sin el diario, los pasos de este proceso solo viven en memoria
+        propio = FormatoDiario.reservar(DIARIO.resolveSibling(DIARIO.getFileName() + ".lock"), "de deshacer");
+        if (!propio) return;
+        int registros = 0;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(DIARIO)))) {
+            DataInputStream registro;
+            while ((registro = FormatoDiario.leer(entrada, MAX_REGISTRO, DIARIO)) != null) {
+                registros++;
+                byte tipo = registro.readByte();
+                long numero = registro.readLong();
+                siguiente = Math.max(siguiente, numero + 1);
+                switch (tipo) {
+                    case PASO -> apilar(leerPaso(numero, registro));
+                    case DESHECHO -> pasarArriba(deshacer, rehacer, numero);
+                    case REHECHO -> pasarArriba(rehacer, deshacer, numero);
+                    case DESCARTADO -> {
+                        deshacer.removeIf(p -> p.numero() == numero);
+                        rehacer.removeIf(p -> p.numero() == numero);
+                    }
+                    default -> logger.warn("⚠️ Registro desconocido '{}' en el diario de deshacer.", (char) tipo);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            return;
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo leer el diario de deshacer ({}).", DIARIO, ex);
+        }
+        logger.info("↩️ Diario de deshacer: {} pasos para deshacer y {} para rehacer ({} registros).",
+                deshacer.size(), rehacer.size(), registros);
+        // Reescribirlo también descarta lo que hubiera detrás de un registro dañado
+        programarCompactacion();
+    }
+
+    /** Pasa el paso de arriba de {@code desde} a {@code hacia} si es el indicado. Con el monitor. */
+    private static void pasarArriba(Deque<Paso> desde, Deque<Paso> hacia, long numero) {
+        Paso paso = desde.peekFirst();
+        if (paso != null && paso.numero() == numero) hacia.addFirst(desde.removeFirst());
+    }
+
+    private static synchronized ExecutorService hilo() {
+        if (hilo == null) {
+            hilo = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "diario-deshacer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return hilo;
+    }
+
+    /** Encola un registro para el diario. Con el monitor, para que el orden sea el de las pilas. */
+    private static void escribir(ByteBuffer registro) {
+        if (propio) hilo().execute(() -> anadir(registro));
+    }
+
+    /**
+     * Encola una compactación con las pilas tal como están ahora. Con el monitor: todo lo encolado
+     * antes ya está en la copia (se escribe en el fichero viejo, que se sustituye) y todo lo
+     * encolado después se añade al fichero nuevo.
+     */
+    private static void programarCompactacion() {
+        List<Paso> vivos = new ArrayList<>(deshacer);
+        List<Paso> deshechos = new ArrayList<>(rehacer);
+        hilo().execute(() -> compactar(vivos, deshechos));
+    }
+
+    /** Añade un registro al diario y pide compactarlo si ha crecido demasiado. Solo desde el hilo propio. */
+    private static void anadir(ByteBuffer registro) {
+        try {
+            if (canal == null) {
+                Files.createDirectories(DIARIO.toAbsolutePath().getParent());
+                canal = FileChannel.open(DIARIO, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                tamano = canal.size();
+            }
+            tamano += registro.remaining();
+            FormatoDiario.escribir(canal, registro);
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo escribir el diario de deshacer ({}).", DIARIO, ex);
+        }
+        if (tamano > MAX_BYTES && !compactacionPendiente) {
+            compactacionPendiente = true;
+            synchronized (DiarioDeshacer.class) {
+                programarCompactacion();
+            }
+        }
+    }
+
+    /**
+     * Reescribe el diario solo con los pasos vivos, en un fichero nuevo que sustituye al anterior
+     * de golpe: los de deshacer del más antiguo al más reciente, y los de rehacer como pasos
+     * seguidos de su marca de deshecho. Solo desde el hilo propio.
+     *
+     * @param deshacer Copia de la pila de deshacer (el primero es el último paso).
+     * @param rehacer Copia de la pila de rehacer (el primero es el último deshecho).
+     */
+    private static void compactar(List<Paso> deshacer, List<Paso> rehacer) {
+        compactacionPendiente = false;
+        Path temporal = DIARIO.resolveSibling(DIARIO.getFileName() + ".tmp");
+        try {
+            if (canal != null) {
+                canal.close();
+                canal = null;
+            }
+            Files.createDirectories(DIARIO.toAbsolutePath().getParent());
+            try (FileChannel nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Paso paso : deshacer.reversed()) FormatoDiario.escribir(nuevo, registroPaso(paso));
+                // Rehacer: el de arriba es el último deshecho, así que se apila el último y se deshace el primero
+                for (Paso paso : rehacer) FormatoDiario.escribir(nuevo, registroPaso(paso));
+                for (Paso paso : rehacer.reversed()) FormatoDiario.escribir(nuevo, registroMarca(DESHECHO, paso.numero()));
+                nuevo.force(false);
+                tamano = nuevo.size();
+            }
+            Files.move(temporal, DIARIO, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo compactar el diario de deshacer ({}).", DIARIO, ex);
+        }
+    }
+
+    /**
+     * Registro de un paso nuevo:
+     * <pre>
+     * byte 'P', long número, casa, operación, int filas
+     * por fila: id, boolean hay antes [+ estudiante], boolean hay después [+ estudiante]
+     * </pre>
+     */
+    private static ByteBuffer registroPaso(Paso paso) {
+        return FormatoDiario.registro(salida -> {
+            salida.writeByte(PASO);
+            salida.writeLong(paso.numero());
+            FormatoDiario.cadena(salida, paso.casa());
+            FormatoDiario.cadena(salida, paso.operacion());
+            salida.writeInt(paso.cambios().size());
+            for (Cambio c : paso.cambios()) {
+                FormatoDiario.cadena(salida, c.id());
+                salida.writeBoolean(c.antes() != null);
+                if (c.antes() != null) FormatoDiario.estudiante(salida, c.antes());
+                salida.writeBoolean(c.despues() != null);
+                if (c.despues() != null) FormatoDiario.estudiante(salida, c.despues());
+            }
+        });
+    }
+
+    private static Paso leerPaso(long numero, DataInputStream registro) throws IOException {
+        String casa = FormatoDiario.cadena(registro);
+        String operacion = FormatoDiario.cadena(registro);
+        int filas = registro.readInt();
+        List<Cambio> cambios = new ArrayList<>(filas);
+        for (int i = 0; i < filas; i++) {
+            String id = FormatoDiario.cadena(registro);
+            Modelo_Estudiante antes = registro.readBoolean() ? FormatoDiario.estudiante(registro) : null;
+            Modelo_Estudiante despues = registro.readBoolean() ? FormatoDiario.estudiante(registro) : null;
+            cambios.add(new Cambio(id, antes, despues));
+        }
+        return new Paso(numero, casa, operacion, List.copyOf(cambios));
+    }
+
+    /** Registro de un paso deshecho, rehecho o descartado: byte tipo y long número. */
+    private static ByteBuffer registroMarca(byte tipo, long numero) {
+        return FormatoDiario.registro(salida -> {
+            salida.writeByte(tipo);
+            salida.writeLong(numero);
+        });
+    }
+}
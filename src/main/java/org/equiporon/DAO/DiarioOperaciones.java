@@ -0,0 +1,342 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local de operaciones: cada escritura confirmada por un DAO (altas, ediciones, borrados,
+ * lotes, réplicas aplicadas, pasos deshechos y restauraciones) queda como un registro binario
+ * en disco, en el orden en que se confirmó y con un número de secuencia creciente.
+ * <p>
+ * El diario son segmentos de <code>operaciones.segmento.mb</code> MB en
+ * <code>operaciones.dir</code>, cada uno proyectado en memoria ({@link MappedByteBuffer}): anotar
+ * una operación es copiar unos bytes, sin llamada al sistema. Un hilo propio sincroniza con el
+ * disco lo escrito cada <code>operaciones.fsync.ms</code> ms, de una vez para todo lo anotado
+ * entretanto. Cuando un registro no cabe se abre un segmento nuevo (su nombre es el número del
+ * primer registro) y se borran los más antiguos por encima de <code>operaciones.segmentos</code>.
+ * <p>
+ * El directorio es de un solo proceso ({@link FormatoDiario#reservar}); en los demás que lo
+ * compartan no se anota nada.
+ * <p>
+ * Los registros usan el {@link FormatoDiario} (longitud, CRC32 y contenido). Al abrir el diario
+ * se busca el final del último segmento y se limpia lo que hubiera detrás de un registro
+ * incompleto. {@link #leer(long, Consumer)} recorre los segmentos en orden desde una secuencia
+ * dada, saltando sin decodificar los registros anteriores.
+ */
+public final class DiarioOperaciones {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiarioOperaciones.class);
+
+    private static final boolean ACTIVO = !"false".equalsIgnoreCase(Config.get("operaciones.activo"));
+    private static final Path DIRECTORIO = Config.get("operaciones.dir") != null
+            ? Path.of(Config.get("operaciones.dir"))
+            : Path.of(System.getProperty("user.home"), ".hogwarts", "operaciones");
+    private static final int TAMANO_SEGMENTO = Math.max(1, Config.getInt("operaciones.segmento.mb", 16)) << 20;
+    private static final int MAX_SEGMENTOS = Math.max(1, Config.getInt("operaciones.segmentos", 8));
+    private static final long FSYNC_MS = Math.max(1, Config.getInt("operaciones.fsync.ms", 50));
+
+    private static final String EXTENSION = ".seg";
+    private static final String CERROJO = "diario.lock";
+
+    /**
+     * Una operación confirmada.
+     *
+     * @param seq Número de secuencia, creciente y sin huecos dentro del diario.
+     * @param instante Momento en que se anotó (ms desde la época).
+     * @param casa Base de datos donde se escribió ("Hogwarts" o una casa).
+     * @param operacion "insert", "update", "delete", "replica", "deshacer" o "restaurar"
+     * (en "restaurar", {@code filas} es la tabla entera).
+     * @param replica {@code true} si llegó replicada de otra base de datos.
+     * @param filas Estado en que han quedado las filas escritas.
+     * @param borrados IDs de las filas que han dejado de existir.
+     */
+    public record Entrada(long seq, long instante, String casa, String operacion, boolean replica,
+                          List<Modelo_Estudiante> filas, List<String> borrados) {}
+
+    // Protegido por el monitor de la clase
+    private static boolean abierto;
+    /** {@code true} si este proceso tiene el directorio para él solo. */
+    private static boolean propio;
+    private static MappedByteBuffer segmento;
+    private static long siguienteSeq = 1;
+    /** Posición del segmento actual hasta la que ya se ha sincronizado con el disco. */
+    private static int forzado;
+    private static ScheduledExecutorService hilo;
+
+    private static final LongAdder registros = new LongAdder();
+    private static final LongAdder bytes = new LongAdder();
+    private static final LongAdder sincronizaciones = new LongAdder();
+
+    static {
+        Metricas.indicador("DiarioOperaciones", "diario", "registros", registros::sum);
+        Metricas.indicador("DiarioOperaciones", "diario", "bytes", bytes::sum);
+        Metricas.indicador("DiarioOperaciones", "diario", "sincronizaciones", sincronizaciones::sum);
+        Metricas.indicador("DiarioOperaciones", "diario", "segmentos", () -> segmentos().size());
+    }
+
+    private DiarioOperaciones() {}
+
+    /**
+     * Anota una operación ya confirmada. La llaman los DAOs después de cada {@code commit}.
+     * Un fallo al escribir el diario se anota en el log y no afecta a la operación.
+     *
+     * @param casa Base de datos de la operación.
+     * @param operacion Tipo de operación (ver {@link Entrada#operacion()}).
+     * @param replica {@code true} si llega replicada de otra base de datos.
+     * @param filas Estado en que han quedado las filas escritas.
+     * @param borrados IDs de las filas borradas.
+     * @return Número de secuencia del registro, o {@code -1} si no se ha anotado.
+     */
+    static long anotar(String casa, String operacion, boolean replica,
+                       Collection<Modelo_Estudiante> filas, Collection<String> borrados) {
+        if (!ACTIVO || (filas.isEmpty() && borrados.isEmpty() && !operacion.equals("restaurar"))) return -1;
+        long instante = System.currentTimeMillis();
+        synchronized (DiarioOperaciones.class) {
+            try {
+                abrir();
+                if (!propio) return -1;
+                long seq = siguienteSeq;
+                ByteBuffer registro = FormatoDiario.registro(salida -> {
+                    salida.writeLong(seq);
+                    salida.writeLong(instante);
+                    FormatoDiario.cadena(salida, casa);
+                    FormatoDiario.cadena(salida, operacion);
+                    salida.writeBoolean(replica);
+                    salida.writeInt(filas.size());
+                    for (Modelo_Estudiante e : filas) FormatoDiario.estudiante(salida, e);
+                    salida.writeInt(borrados.size());
+                    for (String id : borrados) FormatoDiario.cadena(salida, id);
+                });
+                // Siempre queda sitio para la longitud 0 que marca el final
+                if (segmento == null || segmento.remaining() < registro.remaining() + 4) rodar(seq, registro.remaining() + 4);
+                bytes.add(registro.remaining());
+                segmento.put(registro);
+                siguienteSeq++;
+                registros.increment();
+                return seq;
+            } catch (IOException | UncheckedIOException ex) {
+                logger.error("❌ No se pudo anotar la operación {} de {} en el diario ({}).", operacion, casa, DIRECTORIO, ex);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Sincroniza con el disco todo lo anotado desde la última vez. La sincronización se hace fuera
+     * del monitor, así que anotar no espera al disco. Se llama periódicamente y al cerrar la aplicación.
+     */
+    public static void forzar() {
+        MappedByteBuffer mapa;
+        int desde;
+        int hasta;
+        synchronized (DiarioOperaciones.class) {
+            if (segmento == null || segmento.position() == forzado) return;
+            mapa = segmento;
+            desde = forzado;
+            hasta = segmento.position();
+            forzado = hasta;
+        }
+        mapa.force(desde, hasta - desde);
+        sincronizaciones.increment();
+    }
+
+    /**
+     * Sincroniza con el disco lo anotado y suelta el segmento actual; la siguiente operación vuelve
+     * a abrir el diario desde el disco. Se llama al salir.
+     */
+    public static synchronized void cerrar() {
+        forzar();
+        if (hilo != null) hilo.shutdownNow();
+        hilo = null;
+        segmento = null;
+        forzado = 0;
+        siguienteSeq = 1;
+        abierto = false;
+        propio = false;
+    }
+
+    /**
+     * Recorre el diario en orden desde una secuencia. Lee los segmentos proyectados en memoria
+     * en modo lectura, así que puede ir a la vez que se anotan operaciones; se para en el primer
+     * registro incompleto o dañado (el final de lo escrito).
+     *
+     * @param desde Primera secuencia que interesa (las anteriores se saltan sin decodificar).
+     * @param accion Se llama con cada entrada, en orden.
+     * @return La secuencia de la última entrada entregada, o {@code desde - 1} si no hay ninguna.
+     * @throws IOException Si no se puede leer un segmento.
+     */
+    public static long leer(long desde, Consumer<Entrada> accion) throws IOException {
+        List<Long> primeros = segmentos();
+        long ultima = desde - 1;
+        for (int i = 0; i < primeros.size(); i++) {
+            // Un segmento entero anterior a 'desde' no se abre
+            if (i + 1 < primeros.size() && primeros.get(i + 1) <= desde) continue;
+            try (FileChannel canal = FileChannel.open(rutaSegmento(primeros.get(i)), StandardOpenOption.READ)) {
+                MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+                CRC32 crc = new CRC32();
+                int pos = 0;
+                while (pos + 8 <= mapa.limit()) {
+                    int longitud = mapa.getInt(pos);
+                    if (longitud < 16 || pos + 8 + longitud > mapa.limit()) break;
+                    long seq = mapa.getLong(pos + 8);
+                    if (seq >= desde) {
+                        crc.reset();
+                        crc.update(mapa.slice(pos + 8, longitud));
+                        if ((int) crc.getValue() != mapa.getInt(pos + 4)) break;
+                        byte[] contenido = new byte[longitud];
+                        mapa.get(pos + 8, contenido);
+                        accion.accept(decodificar(contenido));
+                        ultima = seq;
+                    }
+                    pos += 8 + longitud;
+                }
+            }
+        }
+        return ultima;
+    }
+
+    /** @return Secuencia que recibirá la próxima operación anotada. */
+    public static synchronized long getSiguienteSeq() {
+        try {
+            abrir();
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo abrir el diario de operaciones ({}).", DIRECTORIO, ex);
+        }
+        return siguienteSeq;
+    }
+
+    // ============================================================
+    // === SEGMENTOS ==============================================
+    // ============================================================
+
+    /** Abre el último segmento (o ninguno si el diario está vacío) y busca su final. Con el monitor. */
+    private static void abrir() throws IOException {
+        if (abierto) return;
+        abierto = true;
+        Files.createDirectories(DIRECTORIO);
+        propio = FormatoDiario.reservar(DIRECTORIO.resolve(CERROJO), "de operaciones");
+        if (!propio) return;
+        List<Long> primeros = segmentos();
+        if (!primeros.isEmpty()) {
+            long primero = primeros.get(primeros.size() - 1);
+            try (FileChannel canal = FileChannel.open(rutaSegmento(primero), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segmento = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+            }
+            siguienteSeq = primero;
+            CRC32 crc = new CRC32();
+            int pos = 0;
+            while (pos + 8 <= segmento.limit()) {
+                int longitud = segmento.getInt(pos);
+                if (longitud < 16 || pos + 8 + longitud > segmento.limit()) break;
+                crc.reset();
+                crc.update(segmento.slice(pos + 8, longitud));
+                if ((int) crc.getValue() != segmento.getInt(pos + 4)) break;
+                siguienteSeq = segmento.getLong(pos + 8) + 1;
+                pos += 8 + longitud;
+            }
+            // Lo que haya detrás es un registro cortado: se limpia para que no se lea como válido
+            if (pos < segmento.limit() && segmento.getInt(pos) != 0) {
+                logger.warn("⚠️ Diario de operaciones: registro incompleto en {}; se descarta.", rutaSegmento(primero));
+                for (int i = pos; i < segmento.limit(); i++) segmento.put(i, (byte) 0);
+                segmento.force();
+            }
+            segmento.position(pos);
+            forzado = pos;
+        }
+        hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "diario-operaciones");
+            t.setDaemon(true);
+            return t;
+        });
+        hilo.scheduleWithFixedDelay(DiarioOperaciones::forzar, FSYNC_MS, FSYNC_MS, TimeUnit.MILLISECONDS);
+        logger.info("📼 Diario de operaciones en {} (siguiente secuencia {}).", DIRECTORIO, siguienteSeq);
+    }
+
+    /**
+     * Cierra el segmento actual (sincronizándolo) y abre uno nuevo que empieza en {@code seq},
+     * con sitio al menos para {@code minimo} bytes. Borra los segmentos que sobran; si alguno no se
+     * puede borrar (en Windows, mientras siga proyectado), se queda para la próxima vez y el registro
+     * se escribe igual. Con el monitor.
+     */
+    private static void rodar(long seq, int minimo) throws IOException {
+        forzar();
+        Path ruta = rutaSegmento(seq);
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segmento = canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(TAMANO_SEGMENTO, minimo));
+        }
+        forzado = 0;
+
+        List<Long> primeros = segmentos();
+        for (int i = 0; i < primeros.size() - MAX_SEGMENTOS; i++) {
+            try {
+                Files.deleteIfExists(rutaSegmento(primeros.get(i)));
+            } catch (IOException ex) {
+                logger.warn("⚠️ No se pudo borrar el segmento antiguo {}: {}", rutaSegmento(primeros.get(i)), ex.getMessage());
+            }
+        }
+        logger.debug("📼 Nuevo segmento del diario de operaciones: {}.", ruta.getFileName());
+    }
+
+    /** @return Primera secuencia de cada segmento, en orden. */
+    private static List<Long> segmentos() {
+        List<Long> primeros = new ArrayList<>();
+        if (!Files.isDirectory(DIRECTORIO)) return primeros;
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(DIRECTORIO, "*" + EXTENSION)) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                try {
+                    primeros.add(Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION.length())));
+                } catch (NumberFormatException ignorado) {
+                    // No es un segmento
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("⚠️ No se pudo listar el diario de operaciones ({}): {}", DIRECTORIO, ex.getMessage());
+        }
+        Collections.sort(primeros);
+        return primeros;
+    }
+
+    private static Path rutaSegmento(long primero) {
+        return DIRECTORIO.resolve(String.format("%020d%s", primero, EXTENSION));
+    }
+
+    private static Entrada decodificar(byte[] contenido) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(contenido));
+        long seq = entrada.readLong();
+        long instante = entrada.readLong();
+        String casa = FormatoDiario.cadena(entrada);
+        String operacion = FormatoDiario.cadena(entrada);
+        boolean replica = entrada.readBoolean();
+        int n = entrada.readInt();
+        List<Modelo_Estudiante> filas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) filas.add(FormatoDiario.estudiante(entrada));
+        int m = entrada.readInt();
+        List<String> borrados = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) borrados.add(FormatoDiario.cadena(entrada));
+        return new Entrada(seq, instante, casa, operacion, replica, filas, borrados);
+    }
+}
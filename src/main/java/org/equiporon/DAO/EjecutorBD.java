@@ -0,0 +1,324 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.PoolConexiones;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.SerieLatencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Planificador de las operaciones asíncronas de base de datos.
+ * <p>
+ * Cada tarea corre en su propio hilo virtual, así que esperar a la base de datos (o a
+ * una conexión del pool) no ocupa ningún hilo de plataforma. Para que una casa lenta
+ * no se lleve por delante a las demás, cada casa tiene su propio compartimento
+ * (<i>bulkhead</i>) que limita cuántas tareas suyas se ejecutan a la vez.
+ * <p>
+ * Dentro de cada compartimento las tareas que esperan turno se ordenan por {@link Prioridad}:
+ * <ul>
+ *   <li>Cuando queda un hueco, entra primero la tarea de mayor prioridad. Para evitar que las
+ *   de menor prioridad esperen para siempre, una tarea que lleva más de
+ *   <code>ejecutor.envejecimiento</code> ms en cola (defecto 5000) pasa por delante.</li>
+ *   <li>La replicación y el mantenimiento nunca ocupan el último hueco de una casa (si tiene
+ *   más de uno), así que una lectura interactiva no espera nunca detrás de un backup completo.</li>
+ *   <li>Cada prioridad tiene una cola acotada (<code>ejecutor.cola.&lt;prioridad&gt;</code>). Si está
+ *   llena, la tarea se rechaza en el acto: el futuro termina con {@link RejectedExecutionException}
+ *   en lugar de acumular trabajo sin límite.</li>
+ * </ul>
+ * El límite de cada casa es <code>ejecutor.&lt;casa&gt;.concurrencia</code> (ej.
+ * <code>ejecutor.ravenclaw.concurrencia</code>); por defecto, uno menos que el tamaño máximo
+ * de su pool de conexiones (mínimo 1), o 1 para el backup de SQLite.
+ * <p>
+ * Las tareas devuelven un {@link CompletableFuture}: quien las lanza debe encadenar el
+ * resultado ({@code thenAccept}, {@code thenCompose}...) en lugar de esperar con {@code get()}.
+ */
+public final class EjecutorBD {
+
+    private static final Logger logger = LoggerFactory.getLogger(EjecutorBD.class);
+
+    /** Clases de prioridad, de mayor a menor. */
+    public enum Prioridad {
+        /** Lecturas que el usuario está esperando (cambiar de casa, paginar). */
+        INTERACTIVA(1_000),
+        /** Escrituras del usuario y sus backups previos. */
+        ESCRITURA(1_000),
+        /** Réplicas entre casas y Hogwarts. */
+        REPLICACION(100),
+        /** Backups completos y otras tareas de fondo. */
+        MANTENIMIENTO(20);
+
+        private final String nombre = name().toLowerCase();
+        private final int colaPorDefecto;
+
+        Prioridad(int colaPorDefecto) {
+            this.colaPorDefecto = colaPorDefecto;
+        }
+
+        /** @return {@code true} para las clases que no pueden ocupar el último hueco de una casa. */
+        boolean enSegundoPlano() {
+            return this == REPLICACION || this == MANTENIMIENTO;
+        }
+    }
+
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    private static final long ENVEJECIMIENTO_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(0, Config.getInt("ejecutor.envejecimiento", 5_000)));
+
+    private static final int[] CAPACIDAD = new int[PRIORIDADES.length];
+
+    /** Tiempo en cola y tiempo total (cola + ejecución) de cada prioridad, para todas las casas. */
+    private static final SerieLatencia[] ESPERA = new SerieLatencia[PRIORIDADES.length];
+    private static final SerieLatencia[] TOTAL = new SerieLatencia[PRIORIDADES.length];
+    private static final LongAdder[] RECHAZADAS = new LongAdder[PRIORIDADES.length];
+
+    static {
+        for (Prioridad p : PRIORIDADES) {
+            int i = p.ordinal();
+            CAPACIDAD[i] = Math.max(1, Config.getInt("ejecutor.cola." + p.nombre, p.colaPorDefecto));
+            ESPERA[i] = Metricas.serie("Prioridad", p.nombre, "espera");
+            TOTAL[i] = Metricas.serie("Prioridad", p.nombre, "total");
+            RECHAZADAS[i] = new LongAdder();
+            Metricas.indicador("Prioridad", p.nombre, "rechazadas", RECHAZADAS[i]::sum);
+        }
+    }
+
+    private static final ExecutorService hilos =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bd-", 0).factory());
+
+    private static final Map<String, Compartimento> compartimentos = new ConcurrentHashMap<>();
+
+    private EjecutorBD() {}
+
+    /**
+     * Tarea de base de datos que puede lanzar excepciones comprobadas (normalmente {@code SQLException}).
+     *
+     * @param <T> Tipo del resultado.
+     */
+    @FunctionalInterface
+    public interface Tarea<T> {
+        T ejecutar() throws Exception;
+    }
+
+    /** Tarea esperando turno. */
+    private record Pendiente<T>(Prioridad prioridad, Tarea<T> tarea, CompletableFuture<T> futuro, long encolada) {}
+
+    /** Límite de concurrencia de una casa, sus colas por prioridad y sus contadores. */
+    private static final class Compartimento {
+        final String casa;
+        final int limite;
+        final int limiteSegundoPlano;
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Pendiente<?>>[] colas = new ArrayDeque[PRIORIDADES.length];
+        final LongAdder completadas = new LongAdder();
+        final LongAdder fallidas = new LongAdder();
+        int enCurso;
+        int enCursoSegundoPlano;
+
+        Compartimento(String casa, int limite) {
+            this.casa = casa;
+            this.limite = limite;
+            this.limiteSegundoPlano = Math.max(1, limite - 1);
+            for (int i = 0; i < colas.length; i++) colas[i] = new ArrayDeque<>();
+        }
+
+        synchronized int enEspera() {
+            int n = 0;
+            for (ArrayDeque<Pendiente<?>> cola : colas) n += cola.size();
+            return n;
+        }
+
+        synchronized int enCola(Prioridad p) {
+            return colas[p.ordinal()].size();
+        }
+
+        synchronized int enCurso() {
+            return enCurso;
+        }
+
+        /** Libera el hueco de una tarea terminada y devuelve la siguiente a arrancar, si alguna. */
+        synchronized Pendiente<?> liberar(Prioridad p) {
+            enCurso--;
+            if (p.enSegundoPlano()) enCursoSegundoPlano--;
+            return siguiente();
+        }
+
+        /**
+         * Elige la próxima tarea si queda hueco: la más antigua de las que han superado el
+         * tiempo de envejecimiento o, si ninguna, la de mayor prioridad, y le reserva el hueco.
+         * Se llama con el monitor del compartimento.
+         */
+        Pendiente<?> siguiente() {
+            if (enCurso >= limite) return null;
+            long ahora = System.nanoTime();
+            Pendiente<?> elegida = null;
+            Pendiente<?> envejecida = null;
+
+            for (Prioridad p : PRIORIDADES) {
+                Pendiente<?> cabeza = colas[p.ordinal()].peekFirst();
+                if (cabeza == null) continue;
+                if (p.enSegundoPlano() && enCursoSegundoPlano >= limiteSegundoPlano) continue;
+                if (elegida == null) elegida = cabeza;
+                if (ahora - cabeza.encolada() > ENVEJECIMIENTO_NANOS
+                        && (envejecida == null || cabeza.encolada() < envejecida.encolada())) {
+                    envejecida = cabeza;
+                }
+            }
+            if (envejecida != null) elegida = envejecida;
+            if (elegida == null) return null;
+
+            colas[elegida.prioridad().ordinal()].pollFirst();
+            enCurso++;
+            if (elegida.prioridad().enSegundoPlano()) enCursoSegundoPlano++;
+            return elegida;
+        }
+    }
+
+    /**
+     * Ejecuta una tarea en un hilo virtual dentro del compartimento de una casa,
+     * cuando le toque según su prioridad.
+     *
+     * @param casa Casa (o "Hogwarts", "Backup") cuya base de datos usa la tarea.
+     * @param prioridad Clase de la tarea.
+     * @param tarea Trabajo a realizar.
+     * @param <T> Tipo del resultado.
+     * @return Un {@link CompletableFuture} con el resultado; si la tarea lanza una excepción,
+     * termina con ella ({@code join()} la envuelve en una {@link CompletionException}). Si la cola
+     * de su prioridad está llena, termina en el acto con {@link RejectedExecutionException}.
+     */
+    public static <T> CompletableFuture<T> enviar(String casa, Prioridad prioridad, Tarea<T> tarea) {
+        Compartimento c = compartimento(casa);
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        Pendiente<T> pendiente = new Pendiente<>(prioridad, tarea, futuro, System.nanoTime());
+
+        boolean admitida;
+        Pendiente<?> arrancar = null;
+        synchronized (c) {
+            ArrayDeque<Pendiente<?>> cola = c.colas[prioridad.ordinal()];
+            admitida = cola.size() < CAPACIDAD[prioridad.ordinal()];
+            if (admitida) {
+                cola.addLast(pendiente);
+                arrancar = c.siguiente();
+            }
+        }
+        if (!admitida) {
+            RECHAZADAS[prioridad.ordinal()].increment();
+            logger.warn("⚠️ Cola {} de {} llena; tarea rechazada.", prioridad.nombre, casa);
+            futuro.completeExceptionally(new RejectedExecutionException(
+                    "Cola " + prioridad.nombre + " de " + casa + " llena"));
+            return futuro;
+        }
+        if (arrancar != null) arrancar(c, arrancar);
+        return futuro;
+    }
+
+    /**
+     * Variante de {@link #enviar} para tareas sin resultado.
+     *
+     * @param casa Casa cuya base de datos usa la tarea.
+     * @param prioridad Clase de la tarea.
+     * @param tarea Trabajo a realizar.
+     * @return Un {@link CompletableFuture} que termina cuando acaba la tarea.
+     */
+    public static CompletableFuture<Void> ejecutar(String casa, Prioridad prioridad, Runnable tarea) {
+        return enviar(casa, prioridad, () -> {
+            tarea.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param casa Casa.
+     * @return Tareas de la casa esperando turno (todas las prioridades).
+     */
+    public static int getEnEspera(String casa) {
+        return compartimento(casa).enEspera();
+    }
+
+    /**
+     * @param casa Casa.
+     * @return Tareas de la casa ejecutándose ahora mismo.
+     */
+    public static int getEnCurso(String casa) {
+        return compartimento(casa).enCurso();
+    }
+
+    /**
+     * Deja de aceptar tareas y espera unos segundos a que terminen las que están en marcha.
+     */
+    public static void cerrar() {
+        hilos.shutdown();
+        try {
+            if (!hilos.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("⚠️ Quedaban tareas de base de datos en curso al cerrar.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Arranca en un hilo virtual una tarea que ya tiene hueco reservado. */
+    private static <T> void arrancar(Compartimento c, Pendiente<T> p) {
+        try {
+            hilos.execute(() -> correr(c, p));
+        } catch (RejectedExecutionException ex) {
+            p.futuro().completeExceptionally(ex);
+            Pendiente<?> otra = c.liberar(p.prioridad());
+            // Cerrado: las que estaban en cola tampoco van a poder arrancar
+            if (otra != null) arrancar(c, otra);
+        }
+    }
+
+    private static <T> void correr(Compartimento c, Pendiente<T> p) {
+        int i = p.prioridad().ordinal();
+        boolean ok = false;
+        try {
+            ESPERA[i].medir(p.encolada(), true);
+            if (p.futuro().isDone()) return; // cancelada mientras esperaba turno
+            p.futuro().complete(p.tarea().ejecutar());
+            c.completadas.increment();
+            ok = true;
+        } catch (Throwable ex) {
+            c.fallidas.increment();
+            p.futuro().completeExceptionally(ex);
+        } finally {
+            TOTAL[i].medir(p.encolada(), ok);
+            Pendiente<?> otra = c.liberar(p.prioridad());
+            if (otra != null) arrancar(c, otra);
+        }
+    }
+
+    private static Compartimento compartimento(String casa) {
+        Compartimento c = compartimentos.get(casa);
+        if (c != null) return c;
+        return compartimentos.computeIfAbsent(casa, EjecutorBD::crear);
+    }
+
+    private static Compartimento crear(String casa) {
+        PoolConexiones pool = ConexionBD.getPool(casa);
+        // Una conexión menos que el pool: queda libre para quien la pida fuera del compartimento
+        // (réplicas que llegan desde otra base de datos, reservas de IDs...)
+        int defecto = pool == null ? 1 : Math.max(1, pool.getMaximo() - 1);
+        int limite = Math.max(1, Config.getInt("ejecutor." + casa.toLowerCase() + ".concurrencia", defecto));
+        Compartimento c = new Compartimento(casa, limite);
+
+        Metricas.indicador("EjecutorBD", casa, "limite", () -> c.limite);
+        Metricas.indicador("EjecutorBD", casa, "enCurso", c::enCurso);
+        Metricas.indicador("EjecutorBD", casa, "enEspera", c::enEspera);
+        for (Prioridad p : PRIORIDADES) {
+            Metricas.indicador("EjecutorBD", casa, "enCola_" + p.nombre, () -> c.enCola(p));
+        }
+        Metricas.indicador("EjecutorBD", casa, "completadas", c.completadas::sum);
+        Metricas.indicador("EjecutorBD", casa, "fallidas", c.fallidas::sum);
+
+        logger.debug("Compartimento de {} creado (máx. {} tareas a la vez).", c.casa, limite);
+        return c;
+    }
+}
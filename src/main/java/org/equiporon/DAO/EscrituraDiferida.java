@@ -0,0 +1,337 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Modelo.ResultadoOperacion;
+import org.equiporon.Utils.Metricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritura diferida (write-behind) de las ediciones hechas en la tabla.
+ * <p>
+ * Una edición no va a la base de datos en el acto: se guarda el estado nuevo de la fila y,
+ * pasados <code>diferida.ms</code> ms desde la primera edición pendiente (o en cuanto se juntan
+ * <code>diferida.filas</code> filas), se vuelcan todas a la vez con un {@link BaseDAO#editarLote}
+ * por casa (que queda como un solo paso en el {@link DiarioDeshacer}). Varias ediciones de la misma
+ * fila se juntan en un único UPDATE con su último estado, y todas esperan el mismo resultado.
+ * <p>
+ * Cada fila tiene como mucho un UPDATE en vuelo: los lotes de casas distintas se ejecutan a la vez
+ * y no hay orden entre ellos, así que si se mandara otro con la misma fila podría confirmarse antes
+ * y acabar pisado por el estado viejo. Lo que se edita mientras su volcado anterior sigue en curso
+ * se queda pendiente y sale en cuanto ese termina.
+ * <p>
+ * Para no perder ediciones si la aplicación se cierra de golpe, cada una se añade antes a un
+ * diario en disco (<code>diferida.diario</code>), un registro con su CRC por edición. Las
+ * escrituras al diario se agrupan y se sincronizan con el disco una vez por grupo. Tras cada
+ * volcado el diario se reescribe solo con lo que sigue sin confirmar. Al arrancar,
+ * {@link #recuperar()} lo lee hasta el primer registro incompleto o dañado y vuelca lo que quedó.
+ * <p>
+ * Lo que deba ir después de las ediciones (borrar, deshacer, salir) tiene que esperar
+ * a {@link #vaciar()}. El diario y la programación de los volcados van en un único hilo propio;
+ * los volcados en sí, en el {@link EjecutorBD}.
+ */
+public final class EscrituraDiferida {
+
+    private static final Logger logger = LoggerFactory.getLogger(EscrituraDiferida.class);
+
+    private static final long VENTANA_MS = Math.max(0, Config.getInt("diferida.ms", 500));
+    private static final int MAX_FILAS = Math.max(1, Config.getInt("diferida.filas", 500));
+    private static final Path DIARIO = Config.get("diferida.diario") != null
+            ? Path.of(Config.get("diferida.diario"))
+            : Path.of(System.getProperty("user.home"), ".hogwarts", "escrituras.diario");
+
+    /** Tamaño máximo de un registro; uno mayor solo puede ser basura al final del diario. */
+    private static final int MAX_REGISTRO = 1 << 16;
+
+    /** Fila por volcar: su último estado y el resultado que esperan sus ediciones. */
+    private record Fila(String casa, Modelo_Estudiante estado, CompletableFuture<ResultadoOperacion> resultado) {}
+
+    // Protegidos por el monitor de la clase. La clave es casa + '\n' + id.
+    private static final Map<String, Fila> pendientes = new LinkedHashMap<>();
+    private static final Map<String, Fila> enVuelo = new HashMap<>();
+    private static ScheduledFuture<?> volcadoProgramado;
+    private static ScheduledExecutorService hilo;
+
+    /** Registros por añadir al diario; el canal solo se toca desde el hilo propio. */
+    private static final Queue<ByteBuffer> porEscribir = new ConcurrentLinkedQueue<>();
+    private static FileChannel canal;
+    /** Si este proceso tiene el diario para él solo ({@link FormatoDiario#reservar}); solo desde el hilo propio. */
+    private static Boolean diarioPropio;
+
+    private static final LongAdder ediciones = new LongAdder();
+    private static final LongAdder filasVolcadas = new LongAdder();
+    private static final LongAdder volcados = new LongAdder();
+
+    static {
+        Metricas.indicador("EscrituraDiferida", "ediciones", "ediciones", ediciones::sum);
+        Metricas.indicador("EscrituraDiferida", "ediciones", "filasVolcadas", filasVolcadas::sum);
+        Metricas.indicador("EscrituraDiferida", "ediciones", "volcados", volcados::sum);
+        Metricas.indicador("EscrituraDiferida", "ediciones", "pendientes", EscrituraDiferida::getPendientes);
+    }
+
+    private EscrituraDiferida() {}
+
+    /**
+     * Anota el estado nuevo de una fila para volcarlo con las demás.
+     *
+     * @param casa Base de datos de la fila ("Hogwarts" o una casa).
+     * @param e Estudiante con su ID y los datos nuevos (se copia: se puede seguir modificando).
+     * @return Resultado del UPDATE que acabe aplicando esta edición (el mismo para todas las
+     * ediciones de la fila que se junten). Nunca termina con error: los fallos vienen como
+     * resultado fallido con su mensaje.
+     */
+    public static CompletableFuture<ResultadoOperacion> editar(String casa, Modelo_Estudiante e) {
+        Modelo_Estudiante copia = new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), e.getCasa(),
+                e.getCurso() == null ? 0 : e.getCurso(), e.getPatronus());
+        CompletableFuture<ResultadoOperacion> resultado;
+        synchronized (EscrituraDiferida.class) {
+            Fila previa = pendientes.get(clave(casa, copia.getId()));
+            resultado = previa != null ? previa.resultado() : new CompletableFuture<>();
+            pendientes.put(clave(casa, copia.getId()), new Fila(casa, copia, resultado));
+            programar(pendientes.size() >= MAX_FILAS ? 0 : VENTANA_MS);
+        }
+        ediciones.increment();
+        porEscribir.add(registro(casa, copia));
+        hilo().execute(EscrituraDiferida::escribirDiario);
+        return resultado;
+    }
+
+    /**
+     * Vuelca ya todo lo pendiente.
+     *
+     * @return Futuro que termina cuando todas las ediciones anotadas hasta ahora se han
+     * aplicado o han fallado (también las que esperan a que acabe el volcado anterior de su fila).
+     * Nunca termina con error.
+     */
+    public static CompletableFuture<Void> vaciar() {
+        CompletableFuture<Void> hecho = new CompletableFuture<>();
+        hilo().execute(() -> {
+            volcar();
+            List<CompletableFuture<ResultadoOperacion>> esperando = new ArrayList<>();
+            synchronized (EscrituraDiferida.class) {
+                for (Fila fila : enVuelo.values()) esperando.add(fila.resultado());
+                for (Fila fila : pendientes.values()) esperando.add(fila.resultado());
+            }
+            CompletableFuture.allOf(esperando.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> hecho.complete(null));
+        });
+        return hecho;
+    }
+
+    /**
+     * Lee el diario de la sesión anterior y vuelca las ediciones que no llegaron a confirmarse.
+     * Se llama una vez al arrancar.
+     *
+     * @return Futuro con las ediciones leídas del diario, que termina al programar el volcado (no
+     * espera a que se aplique).
+     */
+    public static CompletableFuture<Integer> recuperar() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (!diarioPropio()) return 0;
+            int leidas = 0;
+            try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(DIARIO)))) {
+                while (true) {
+                    Fila fila = leerRegistro(entrada);
+                    if (fila == null) break;
+                    leidas++;
+                    synchronized (EscrituraDiferida.class) {
+                        pendientes.put(clave(fila.casa(), fila.estado().getId()), fila);
+                    }
+                }
+            } catch (NoSuchFileException ex) {
+                return 0;
+            } catch (IOException ex) {
+                logger.error("❌ No se pudo leer el diario de ediciones ({}).", DIARIO, ex);
+                return 0;
+            }
+            if (leidas == 0) return 0;
+            logger.info("📝 {} ediciones sin confirmar recuperadas del diario; se vuelcan ahora.", leidas);
+            compactar();
+            synchronized (EscrituraDiferida.class) {
+                programar(0);
+            }
+            return leidas;
+        }, hilo());
+    }
+
+    /** @return Filas anotadas que todavía no se han empezado a volcar. */
+    public static synchronized int getPendientes() {
+        return pendientes.size();
+    }
+
+    // ============================================================
+    // === VOLCADO ================================================
+    // ============================================================
+
+    /** Programa un volcado dentro de {@code ms}, salvo que ya haya uno programado antes. Con el monitor. */
+    private static void programar(long ms) {
+        if (volcadoProgramado != null && volcadoProgramado.getDelay(TimeUnit.MILLISECONDS) <= ms) return;
+        if (volcadoProgramado != null) volcadoProgramado.cancel(false);
+        volcadoProgramado = hilo().schedule(EscrituraDiferida::volcar, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lanza el volcado de lo pendiente: un lote por casa. Las filas que ya tienen un volcado en curso
+     * se quedan pendientes; al terminar ese volcado se programa otro.
+     */
+    private static void volcar() {
+        Map<String, Fila> lote = new LinkedHashMap<>();
+        synchronized (EscrituraDiferida.class) {
+            if (volcadoProgramado != null) volcadoProgramado.cancel(false);
+            volcadoProgramado = null;
+            for (Iterator<Map.Entry<String, Fila>> it = pendientes.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Fila> pendiente = it.next();
+                if (enVuelo.containsKey(pendiente.getKey())) continue;
+                lote.put(pendiente.getKey(), pendiente.getValue());
+                it.remove();
+            }
+            if (lote.isEmpty()) return;
+            enVuelo.putAll(lote);
+        }
+        volcados.increment();
+
+        Map<String, List<Fila>> porCasa = new LinkedHashMap<>();
+        for (Fila fila : lote.values()) porCasa.computeIfAbsent(fila.casa(), c -> new ArrayList<>()).add(fila);
+
+        CompletableFuture.allOf(porCasa.entrySet().stream()
+                .map(c -> volcarCasa(c.getKey(), c.getValue()))
+                .toArray(CompletableFuture[]::new))
+                .whenComplete((v, ex) -> {
+                    if (ex != null) logger.error("❌ Volcado de {} ediciones fallido.", lote.size(), ex);
+                    synchronized (EscrituraDiferida.class) {
+                        lote.forEach(enVuelo::remove);
+                        // Las filas editadas mientras tanto estaban esperando a este volcado
+                        if (lote.keySet().stream().anyMatch(pendientes::containsKey)) programar(0);
+                    }
+                    for (Fila fila : lote.values()) {
+                        fila.resultado().complete(ResultadoOperacion.error(0, fila.estado().getId(),
+                                ex == null ? "Sin resultado" : ex.getMessage()));
+                    }
+                    hilo().execute(EscrituraDiferida::compactar);
+                });
+    }
+
+    private static CompletableFuture<Void> volcarCasa(String casa, List<Fila> filas) {
+        BaseDAO dao = BaseDAO.daoDeCasa(casa);
+        if (dao == null) return CompletableFuture.failedFuture(new IllegalArgumentException("Casa no válida: " + casa));
+        return dao.editarLoteAsync(filas.stream().map(Fila::estado).toList()).thenAccept(resultados -> {
+            for (ResultadoOperacion r : resultados) {
+                Fila fila = filas.get(r.getIndice());
+                if (!r.isExito()) logger.warn("⚠️ Edición de {} en {} no aplicada: {}", fila.estado().getId(), casa, r.getMensaje());
+                fila.resultado().complete(r);
+            }
+            filasVolcadas.add(filas.size());
+            logger.debug("📝 {} filas volcadas en {}.", filas.size(), casa);
+        });
+    }
+
+    private static String clave(String casa, String id) {
+        return casa + '\n' + id;
+    }
+
+    private static synchronized ScheduledExecutorService hilo() {
+        if (hilo == null) {
+            hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "escritura-diferida");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return hilo;
+    }
+
+    // ============================================================
+    // === DIARIO =================================================
+    // ============================================================
+
+    /**
+     * Añade al diario los registros en cola y los sincroniza con el disco una sola vez.
+     * Solo desde el hilo propio.
+     */
+    private static void escribirDiario() {
+        if (porEscribir.isEmpty()) return;
+        if (!diarioPropio()) {
+            porEscribir.clear();
+            return;
+        }
+        try {
+            if (canal == null) {
+                Files.createDirectories(DIARIO.toAbsolutePath().getParent());
+                canal = FileChannel.open(DIARIO, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer registro;
+            while ((registro = porEscribir.poll()) != null) FormatoDiario.escribir(canal, registro);
+            canal.force(false);
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo escribir el diario de ediciones ({}).", DIARIO, ex);
+        }
+    }
+
+    /**
+     * Reescribe el diario solo con las filas sin confirmar (en vuelo y pendientes), en un fichero
+     * nuevo que sustituye al anterior de golpe. Solo desde el hilo propio.
+     */
+    private static void compactar() {
+        if (!diarioPropio()) return;
+        escribirDiario();
+        List<Fila> vivas;
+        synchronized (EscrituraDiferida.class) {
+            vivas = new ArrayList<>(enVuelo.values());
+            vivas.addAll(pendientes.values());
+        }
+        Path temporal = DIARIO.resolveSibling(DIARIO.getFileName() + ".tmp");
+        try {
+            if (canal != null) {
+                canal.close();
+                canal = null;
+            }
+            Files.createDirectories(DIARIO.toAbsolutePath().getParent());
+            try (FileChannel nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Fila fila : vivas) FormatoDiario.escribir(nuevo, registro(fila.casa(), fila.estado()));
+                nuevo.force(false);
+            }
+            Files.move(temporal, DIARIO, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo compactar el diario de ediciones ({}).", DIARIO, ex);
+        }
+    }
+
+    /**
+     * @return {@code true} si este proceso tiene el diario para él solo; si no, las ediciones se
+     * siguen juntando y volcando, pero sin diario. Solo desde el hilo propio.
+     */
+    private static boolean diarioPropio() {
+        if (diarioPropio == null) {
+            diarioPropio = FormatoDiario.reservar(DIARIO.resolveSibling(DIARIO.getFileName() + ".lock"), "de ediciones");
+        }
+        return diarioPropio;
+    }
+
+    /** Registro del diario ({@link FormatoDiario}): la casa y el estado de la fila. */
+    private static ByteBuffer registro(String casa, Modelo_Estudiante e) {
+        return FormatoDiario.registro(salida -> {
+            FormatoDiario.cadena(salida, casa);
+            FormatoDiario.estudiante(salida, e);
+        });
+    }
+
+    /** @return La fila del siguiente registro, o {@code null} al llegar al final o a un registro incompleto o dañado. */
+    private static Fila leerRegistro(DataInputStream entrada) throws IOException {
+        DataInputStream registro = FormatoDiario.leer(entrada, MAX_REGISTRO, DIARIO);
+        if (registro == null) return null;
+        return new Fila(FormatoDiario.cadena(registro), FormatoDiario.estudiante(registro), new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,93 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.FuentesDatos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Utilidad para crear las tablas auxiliares (secuencias, bandeja de salida...)
+ * la primera vez que se usan en cada base de datos.
+ * <p>
+ * No usa <code>CREATE TABLE IF NOT EXISTS</code> porque Derby y Oracle no lo admiten:
+ * comprueba si la tabla existe con una consulta vacía y, si falla, la crea. Los tipos que cambian
+ * de un motor a otro se escriben en el DDL como marcas ({@link #ENTERO_LARGO}).
+ */
+final class EsquemaBD {
+
+    private static final Logger logger = LoggerFactory.getLogger(EsquemaBD.class);
+
+    /** Pares "fuente|tabla" ya comprobados en esta ejecución. */
+    private static final Set<String> preparadas = ConcurrentHashMap.newKeySet();
+
+    /** Marca del DDL que se cambia por el entero de 64 bits del motor ({@link org.equiporon.Conexion.MotorBD#tipoEnteroLargo()}). */
+    static final String ENTERO_LARGO = "{ENTERO_LARGO}";
+
+    private EsquemaBD() {}
+
+    /**
+     * Asegura que una tabla existe en la base de datos indicada.
+     *
+     * @param fuente Nombre de la base de datos (ej. "Gryffindor"), para recordar que ya está comprobada.
+     * @param conn Conexión a esa base de datos.
+     * @param tabla Nombre de la tabla.
+     * @param ddl Sentencia <code>CREATE TABLE</code> completa (puede llevar {@link #ENTERO_LARGO}).
+     * @param extras Sentencias a ejecutar justo después de crear la tabla (ej. <code>CREATE INDEX</code>).
+     * @throws SQLException Si la tabla no existe y no se puede crear.
+     */
+    static void asegurarTabla(String fuente, Connection conn, String tabla, String ddl, String... extras) throws SQLException {
+        String clave = fuente + "|" + tabla;
+        if (preparadas.contains(clave)) return;
+
+        if (!existe(conn, tabla)) {
+            try (Statement st = conn.createStatement()) {
+                if (ddl.contains(ENTERO_LARGO)) {
+                    ddl = ddl.replace(ENTERO_LARGO, FuentesDatos.motor(conn.getMetaData().getURL()).tipoEnteroLargo());
+                }
+                st.executeUpdate(ddl);
+                for (String extra : extras) st.executeUpdate(extra);
+                logger.info("🧱 Tabla {} creada en {}.", tabla, fuente);
+            } catch (SQLException ex) {
+                // Otro cliente pudo crearla a la vez: solo fallamos si sigue sin existir
+                if (!existe(conn, tabla)) throw ex;
+            }
+        }
+        preparadas.add(clave);
+    }
+
+    /**
+     * Igual que {@link #asegurarTabla(String, Connection, String, String)}, pero abre una
+     * conexión propia solo si la tabla no se ha comprobado todavía. Debe usarse cuando el
+     * llamante está dentro de una transacción: en MariaDB y Oracle un <code>CREATE TABLE</code>
+     * confirmaría la transacción en curso.
+     *
+     * @param fuente Nombre de la base de datos.
+     * @param proveedor Origen de la conexión auxiliar.
+     * @param tabla Nombre de la tabla.
+     * @param ddl Sentencia <code>CREATE TABLE</code> completa.
+     * @param extras Sentencias a ejecutar justo después de crear la tabla.
+     * @throws SQLException Si la tabla no existe y no se puede crear.
+     */
+    static void asegurarTabla(String fuente, GeneradorIds.ProveedorConexion proveedor, String tabla, String ddl,
+                              String... extras) throws SQLException {
+        if (preparadas.contains(fuente + "|" + tabla)) return;
+        try (Connection conn = proveedor.obtener()) {
+            if (conn == null) throw new SQLException("Sin conexión con " + fuente + " para crear " + tabla);
+            asegurarTabla(fuente, conn, tabla, ddl, extras);
+        }
+    }
+
+    private static boolean existe(Connection conn, String tabla) {
+        try (Statement st = conn.createStatement()) {
+            st.executeQuery("SELECT * FROM " + tabla + " WHERE 1 = 0").close();
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+}
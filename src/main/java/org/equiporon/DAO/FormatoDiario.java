@@ -0,0 +1,164 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Formato binario de los diarios en disco ({@link EscrituraDiferida}, {@link DiarioDeshacer},
+ * {@link DiarioOperaciones}).
+ * <p>
+ * Cada registro es:
+ * <pre>
+ * int longitud   (del contenido)
+ * int CRC32      (del contenido)
+ * contenido
+ * </pre>
+ * Al leer, un registro incompleto (una escritura cortada al cerrarse de golpe) o con el CRC
+ * incorrecto marca el final del diario: lo anterior es válido y lo que sigue se ignora.
+ * <p>
+ * Cada diario es de un solo proceso ({@link #reservar}): la aplicación, el servidor de la API y
+ * el importador usan las mismas rutas por defecto y pueden estar abiertos a la vez.
+ */
+final class FormatoDiario {
+
+    private static final Logger logger = LoggerFactory.getLogger(FormatoDiario.class);
+
+    /** Bloqueos tomados por este proceso, abiertos hasta que termina. */
+    private static final Map<Path, FileLock> reservados = new HashMap<>();
+
+    /** Escribe el contenido de un registro. */
+    @FunctionalInterface
+    interface Contenido {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+
+    private FormatoDiario() {}
+
+    /** @return El registro completo (longitud, CRC y contenido), listo para escribir. */
+    static ByteBuffer registro(Contenido contenido) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            salida.writeLong(0); // longitud y CRC, se rellenan al final
+            contenido.escribir(salida);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // ByteArrayOutputStream no lanza
+        }
+        byte[] b = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(b, 8, b.length - 8);
+        ByteBuffer registro = ByteBuffer.wrap(b);
+        registro.putInt(0, b.length - 8);
+        registro.putInt(4, (int) crc.getValue());
+        return registro;
+    }
+
+    /**
+     * Lee el siguiente registro.
+     *
+     * @param entrada Diario abierto.
+     * @param maximo Tamaño máximo de un contenido; uno mayor solo puede ser basura.
+     * @param diario Ruta del diario, para el log.
+     * @return El contenido del registro, o {@code null} al llegar al final o a un registro
+     * incompleto o dañado.
+     */
+    static DataInputStream leer(DataInputStream entrada, int maximo, Path diario) throws IOException {
+        byte[] datos;
+        int crcGuardado;
+        try {
+            int longitud = entrada.readInt();
+            crcGuardado = entrada.readInt();
+            if (longitud <= 0 || longitud > maximo) {
+                logger.warn("⚠️ Diario {} dañado (longitud {}); se ignora el resto.", diario, longitud);
+                return null;
+            }
+            datos = entrada.readNBytes(longitud);
+            if (datos.length < longitud) return null; // escritura cortada al cerrarse de golpe
+        } catch (EOFException ex) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        if ((int) crc.getValue() != crcGuardado) {
+            logger.warn("⚠️ Registro con CRC incorrecto en el diario {}; se ignora el resto.", diario);
+            return null;
+        }
+        return new DataInputStream(new ByteArrayInputStream(datos));
+    }
+
+    /**
+     * Reserva un diario para este proceso con un bloqueo exclusivo del sistema sobre
+     * {@code cerrojo}, que dura hasta que el proceso termina. Si lo tiene otro proceso, este no
+     * debe escribir ni compactar el diario: se pisarían los registros, y cada compactación
+     * dejaría solo lo de uno de los dos.
+     *
+     * @param cerrojo Fichero de bloqueo del diario (se crea si falta).
+     * @param diario Nombre del diario, para el log.
+     * @return {@code true} si el diario es de este proceso; {@code false} si lo usa otro o no se
+     * ha podido bloquear (ya anotado en el log).
+     */
+    static synchronized boolean reservar(Path cerrojo, String diario) {
+        if (reservados.containsKey(cerrojo)) return true;
+        FileChannel canal = null;
+        try {
+            Files.createDirectories(cerrojo.toAbsolutePath().getParent());
+            canal = FileChannel.open(cerrojo, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock bloqueo = canal.tryLock();
+            if (bloqueo != null) {
+                reservados.put(cerrojo, bloqueo);
+                return true;
+            }
+            logger.error("❌ El diario {} lo está usando otro proceso ({}); en este queda desactivado.", diario, cerrojo);
+        } catch (IOException | OverlappingFileLockException ex) {
+            logger.error("❌ No se pudo bloquear el diario {} ({}); en este proceso queda desactivado.", diario, cerrojo, ex);
+        }
+        try {
+            if (canal != null) canal.close();
+        } catch (IOException ignorado) {
+            // Sin bloqueo no hay nada que soltar
+        }
+        return false;
+    }
+
+    /** Escribe un registro entero en el canal. */
+    static void escribir(FileChannel canal, ByteBuffer registro) throws IOException {
+        while (registro.hasRemaining()) canal.write(registro);
+    }
+
+    /** Cadena que puede ser {@code null}: boolean presente + UTF. */
+    static void cadena(DataOutputStream salida, String s) throws IOException {
+        salida.writeBoolean(s != null);
+        if (s != null) salida.writeUTF(s);
+    }
+
+    static String cadena(DataInputStream entrada) throws IOException {
+        return entrada.readBoolean() ? entrada.readUTF() : null;
+    }
+
+    /** Estudiante: id, nombre, apellidos y casa (como {@link #cadena}), int curso y patronus. */
+    static void estudiante(DataOutputStream salida, Modelo_Estudiante e) throws IOException {
+        cadena(salida, e.getId());
+        cadena(salida, e.getNombre());
+        cadena(salida, e.getApellidos());
+        cadena(salida, e.getCasa());
+        salida.writeInt(e.getCurso() == null ? 0 : e.getCurso());
+        cadena(salida, e.getPatronus());
+    }
+
+    static Modelo_Estudiante estudiante(DataInputStream entrada) throws IOException {
+        return new Modelo_Estudiante(cadena(entrada), cadena(entrada), cadena(entrada), cadena(entrada),
+                entrada.readInt(), cadena(entrada));
+    }
+}
@@ -0,0 +1,220 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.FuentesDatos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generador de IDs numéricos por bloques (patrón hi/lo) común a todos los motores.
+ * <p>
+ * Cada base de datos guarda en la tabla <code>ID_SECUENCIAS</code> una fila por
+ * clave (ej. "ESTUDIANTES" en una casa o "HO" en Hogwarts) con el siguiente
+ * número libre. Para pedir IDs se ejecuta en una transacción propia un
+ * <code>UPDATE ... SET siguiente = siguiente + n</code>, que bloquea la fila hasta el
+ * commit: dos clientes nunca reciben el mismo rango aunque inserten a la vez.
+ * <p>
+ * Los bloques reservados se reparten después en memoria, así que la mayoría de
+ * inserciones no tocan la base de datos para obtener su ID (coste O(1) en lugar de
+ * recorrer la tabla entera). La contrapartida es que pueden quedar huecos en la
+ * numeración si la aplicación se cierra con un bloque a medias.
+ * <p>
+ * Solo usa SQL estándar (<code>CREATE TABLE</code>, <code>UPDATE</code>, <code>SELECT</code>,
+ * <code>INSERT</code>), por lo que funciona igual en Derby, H2, HSQLDB, Oracle, MariaDB y SQLite.
+ * El contador es un entero de 64 bits ({@link org.equiporon.Conexion.MotorBD#tipoEnteroLargo()}),
+ * igual que los IDs que reparte.
+ */
+public final class GeneradorIds {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneradorIds.class);
+
+    /** Número de IDs que se reservan de una vez (clave <code>ids.bloque</code>). */
+    private static final int TAMANO_BLOQUE = Math.max(1, Config.getInt("ids.bloque", 20));
+
+    private static final int MAX_INTENTOS = 5;
+
+    /** Bloques en memoria por "fuente|clave". */
+    private static final Map<String, Bloque> bloques = new ConcurrentHashMap<>();
+
+    /** Pares "fuente|clave" cuya fila ya existe ({@link #asegurar}). */
+    private static final Set<String> creadas = ConcurrentHashMap.newKeySet();
+
+    private GeneradorIds() {}
+
+    /** Proporciona una conexión propia para la transacción de reserva. */
+    @FunctionalInterface
+    public interface ProveedorConexion {
+        Connection obtener() throws SQLException;
+    }
+
+    /**
+     * Calcula el mayor ID ya usado. Solo se invoca la primera vez que se usa una clave,
+     * para que la secuencia continúe la numeración de los datos existentes.
+     */
+    @FunctionalInterface
+    public interface CalculoSemilla {
+        long maximoActual(Connection conn) throws SQLException;
+    }
+
+    /** Rango [siguiente, limite) de IDs ya reservados en la base de datos. */
+    private static final class Bloque {
+        long siguiente;
+        long limite;
+    }
+
+    /**
+     * Devuelve el siguiente ID libre para una clave, reservando un bloque nuevo
+     * en la base de datos solo cuando se ha agotado el anterior.
+     *
+     * @param fuente Nombre de la base de datos (ej. "Gryffindor"); separa los bloques en memoria.
+     * @param clave Clave de la secuencia dentro de esa base de datos (ej. "ESTUDIANTES").
+     * @param proveedor Origen de la conexión usada para reservar.
+     * @param semilla Cálculo del máximo existente si la secuencia aún no existe.
+     * @return El ID numérico asignado.
+     * @throws SQLException Si no se puede reservar un bloque.
+     */
+    public static long siguiente(String fuente, String clave, ProveedorConexion proveedor,
+                                 CalculoSemilla semilla) throws SQLException {
+        Bloque bloque = bloques.computeIfAbsent(fuente + "|" + clave, k -> new Bloque());
+        synchronized (bloque) {
+            if (bloque.siguiente >= bloque.limite) {
+                long inicio = reservarEnBD(fuente, clave, TAMANO_BLOQUE, proveedor, semilla);
+                bloque.siguiente = inicio;
+                bloque.limite = inicio + TAMANO_BLOQUE;
+            }
+            return bloque.siguiente++;
+        }
+    }
+
+    /**
+     * Reserva directamente en la base de datos un rango contiguo de {@code cantidad} IDs,
+     * sin pasar por el bloque en memoria. Pensado para inserciones masivas.
+     *
+     * @param fuente Nombre de la base de datos (ej. "Gryffindor").
+     * @param clave Clave de la secuencia.
+     * @param cantidad Número de IDs a reservar.
+     * @param proveedor Origen de la conexión usada para reservar.
+     * @param semilla Cálculo del máximo existente si la secuencia aún no existe.
+     * @return El primer ID del rango; los IDs válidos son {@code [inicio, inicio + cantidad)}.
+     * @throws SQLException Si no se puede reservar el rango.
+     */
+    public static long reservar(String fuente, String clave, int cantidad, ProveedorConexion proveedor,
+                                CalculoSemilla semilla) throws SQLException {
+        return reservarEnBD(fuente, clave, cantidad, proveedor, semilla);
+    }
+
+    /**
+     * Crea la fila de una secuencia si todavía no existe, en una transacción propia. Sirve para
+     * las secuencias que luego se avanzan con {@link #siguienteEnTransaccion}.
+     *
+     * @param fuente Nombre de la base de datos.
+     * @param clave Clave de la secuencia.
+     * @param proveedor Origen de la conexión usada para crearla.
+     * @param semilla Cálculo del máximo existente si la secuencia aún no existe.
+     * @throws SQLException Si no se puede crear.
+     */
+    static void asegurar(String fuente, String clave, ProveedorConexion proveedor, CalculoSemilla semilla)
+            throws SQLException {
+        if (creadas.contains(fuente + "|" + clave)) return;
+        reservarEnBD(fuente, clave, 0, proveedor, semilla);
+        creadas.add(fuente + "|" + clave);
+    }
+
+    /**
+     * Avanza una secuencia en uno usando la conexión y la transacción del llamante, sin bloques en
+     * memoria. El <code>UPDATE</code> deja la fila bloqueada hasta que el llamante confirma, así que
+     * los números salen en el mismo orden en que se confirman las transacciones: quien lee un número
+     * ya confirmado sabe que todos los anteriores también lo están. A cambio, las transacciones que
+     * lo usan se esperan unas a otras desde esa sentencia hasta su commit, así que debe ser de lo
+     * último que hagan.
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @param clave Clave de la secuencia.
+     * @param semilla Cálculo del máximo existente si la fila no existe (no debería pasar tras
+     *                {@link #asegurar}; por ejemplo, si alguien ha vaciado la tabla).
+     * @return El número asignado.
+     * @throws SQLException Si falla la actualización (la transacción del llamante debe deshacerse).
+     */
+    static long siguienteEnTransaccion(Connection conn, String clave, CalculoSemilla semilla) throws SQLException {
+        long numero = avanzar(conn, clave, 1);
+        if (numero < 0) {
+            numero = semilla.maximoActual(conn) + 1;
+            crear(conn, clave, numero + 1);
+        }
+        return numero;
+    }
+
+    /**
+     * Avanza la secuencia en una transacción propia y devuelve el inicio del rango reservado.
+     * Si la fila de la clave no existe se crea a partir de la semilla; si otro cliente
+     * la crea a la vez, el INSERT falla por clave duplicada y se reintenta con el UPDATE.
+     */
+    private static long reservarEnBD(String fuente, String clave, int cantidad, ProveedorConexion proveedor,
+                                     CalculoSemilla semilla) throws SQLException {
+        try (Connection conn = proveedor.obtener()) {
+            if (conn == null) {
+                throw new SQLException("Sin conexión para reservar IDs en " + fuente);
+            }
+            EsquemaBD.asegurarTabla(fuente, conn, "ID_SECUENCIAS",
+                    "CREATE TABLE ID_SECUENCIAS (clave VARCHAR(40) PRIMARY KEY, siguiente "
+                            + FuentesDatos.motor(conn.getMetaData().getURL()).tipoEnteroLargo() + " NOT NULL)");
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (int intento = 1; intento <= MAX_INTENTOS; intento++) {
+                    try {
+                        long inicio = avanzar(conn, clave, cantidad);
+                        if (inicio < 0) {
+                            inicio = semilla.maximoActual(conn) + 1;
+                            crear(conn, clave, inicio + cantidad);
+                            logger.info("🔢 Secuencia {} creada en {} empezando en {}.", clave, fuente, inicio);
+                        }
+                        conn.commit();
+                        logger.debug("Reservados IDs [{}, {}) de {} en {}.", inicio, inicio + cantidad, clave, fuente);
+                        return inicio;
+                    } catch (SQLException ex) {
+                        conn.rollback();
+                        if (intento == MAX_INTENTOS) throw ex;
+                        logger.debug("Reintentando reserva de IDs en {} ({}).", fuente, ex.getMessage());
+                    }
+                }
+                throw new SQLException("No se pudieron reservar IDs en " + fuente);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /** @return El inicio del rango reservado, o -1 si la clave todavía no existe. */
+    private static long avanzar(Connection conn, String clave, int cantidad) throws SQLException {
+        try (PreparedStatement up = conn.prepareStatement(
+                "UPDATE ID_SECUENCIAS SET siguiente = siguiente + ? WHERE clave = ?")) {
+            up.setInt(1, cantidad);
+            up.setString(2, clave);
+            if (up.executeUpdate() == 0) return -1;
+        }
+        try (PreparedStatement sel = conn.prepareStatement(
+                "SELECT siguiente FROM ID_SECUENCIAS WHERE clave = ?")) {
+            sel.setString(1, clave);
+            try (ResultSet rs = sel.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Secuencia " + clave + " desaparecida");
+                return rs.getLong(1) - cantidad;
+            }
+        }
+    }
+
+    private static void crear(Connection conn, String clave, long siguiente) throws SQLException {
+        try (PreparedStatement ins = conn.prepareStatement(
+                "INSERT INTO ID_SECUENCIAS (clave, siguiente) VALUES (?, ?)")) {
+            ins.setString(1, clave);
+            ins.setLong(2, siguiente);
+            ins.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de trigramas en memoria para buscar estudiantes por nombre, apellidos o patronus mientras se escribe.
+ * <p>
+ * Cada casa tiene su índice: la lista de sus estudiantes y, por cada trigrama (tres letras
+ * seguidas, sin tildes ni mayúsculas), la lista de estudiantes que lo contienen. Buscar es
+ * contar, para los trigramas del texto buscado, en cuántos aparece cada estudiante: los que
+ * comparten al menos la mitad salen en el resultado, así que una errata no impide encontrar a
+ * nadie. Primero van los que contienen el texto tal cual y luego los que comparten más trigramas.
+ * <p>
+ * El índice se construye la primera vez recorriendo la tabla ({@link BaseDAO#recorrerTodos}) y
+ * después se mantiene con las escrituras de los DAOs, las réplicas y los cambios de otros clientes
+ * que detecta el {@link ObservadorCambios}. Los cambios que llegan mientras se construye se
+ * aplican al terminar. Las búsquedas se hacen en un hilo propio, nunca en el de la interfaz.
+ * <p>
+ * Los cambios de otros clientes solo llegan mientras algún observador mira la casa, así que al
+ * cerrarse el último ({@link #desatendida}) su índice se descarta: si se volviera a usar, tendría
+ * altas y borrados de menos. Se reconstruye la próxima vez que se prepare.
+ */
+public final class IndiceBusqueda {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndiceBusqueda.class);
+
+    /** Letras mínimas del texto buscado. */
+    public static final int MIN_CARACTERES = 3;
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+    private static final Map<String, IndiceBusqueda> indices = new ConcurrentHashMap<>();
+
+    /** Observadores abiertos por casa. */
+    private static final Map<String, Integer> observadores = new ConcurrentHashMap<>();
+
+    private static final ExecutorService hiloBusqueda = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "busqueda");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Contadores por estudiante, reutilizados entre búsquedas (solo los usa {@link #hiloBusqueda}). */
+    private static int[] contadores = new int[0];
+
+    private final String casa;
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+    private final CompletableFuture<IndiceBusqueda> listo = new CompletableFuture<>();
+
+    // Protegidos por el cerrojo
+    private final ArrayList<Modelo_Estudiante> filas = new ArrayList<>();
+    private final Map<String, Integer> posiciones = new HashMap<>();
+    private final Map<Long, Lista> trigramas = new HashMap<>();
+    private int borradas;
+    private List<Runnable> pendientes = new ArrayList<>();
+
+    private IndiceBusqueda(String casa) {
+        this.casa = casa;
+    }
+
+    /**
+     * Empieza a construir en segundo plano el índice de una casa, si no existe ya.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa.
+     */
+    public static void preparar(String casa) {
+        indices.computeIfAbsent(casa, c -> {
+            IndiceBusqueda indice = new IndiceBusqueda(c);
+            indice.construir();
+            return indice;
+        });
+    }
+
+    /**
+     * Busca estudiantes en una casa, en un hilo aparte. Si el índice no existe, lo construye primero.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa.
+     * @param texto Texto buscado (sin distinguir mayúsculas ni tildes); con menos de
+     *              {@value #MIN_CARACTERES} letras no se busca.
+     * @param limite Número máximo de resultados.
+     * @return Un {@link CompletableFuture} con los estudiantes, del más al menos parecido.
+     */
+    public static CompletableFuture<List<Modelo_Estudiante>> buscarAsync(String casa, String texto, int limite) {
+        preparar(casa);
+        return indices.get(casa).listo.thenApplyAsync(indice -> indice.buscar(texto, limite), hiloBusqueda);
+    }
+
+    /**
+     * Aplica al índice de una casa (si existe) filas escritas o borradas. Se llama tras cada commit.
+     *
+     * @param casa Casa donde se ha escrito.
+     * @param cambiadas Estado nuevo de las filas insertadas o editadas.
+     * @param borradas IDs de las filas borradas.
+     */
+    static void actualizar(String casa, Collection<Modelo_Estudiante> cambiadas, Collection<String> borradas) {
+        IndiceBusqueda indice = indices.get(casa);
+        if (indice == null || (cambiadas.isEmpty() && borradas.isEmpty())) return;
+        // Copias: las filas de la tabla se modifican al editarlas en línea
+        List<Modelo_Estudiante> copias = new ArrayList<>(cambiadas.size());
+        for (Modelo_Estudiante e : cambiadas) {
+            copias.add(new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), e.getCasa(), e.getCurso(), e.getPatronus()));
+        }
+        List<String> ids = List.copyOf(borradas);
+        indice.aplicar(() -> {
+            for (String id : ids) indice.quitar(id);
+            for (Modelo_Estudiante e : copias) indice.poner(e);
+        });
+    }
+
+    /**
+     * Descarta el índice de una casa (por ejemplo, tras restaurarla entera); se reconstruye en la próxima búsqueda.
+     *
+     * @param casa Casa cuyo índice se descarta.
+     */
+    static void descartar(String casa) {
+        indices.remove(casa);
+    }
+
+    /**
+     * Anota que un {@link ObservadorCambios} empieza a mirar una casa.
+     *
+     * @param casa Casa observada.
+     */
+    static void observada(String casa) {
+        observadores.merge(casa, 1, Integer::sum);
+    }
+
+    /**
+     * Anota que un {@link ObservadorCambios} deja de mirar una casa. Si era el último, el índice de
+     * esa casa se descarta, porque los cambios de otros clientes ya no le llegarían.
+     *
+     * @param casa Casa que se deja de observar.
+     */
+    static void desatendida(String casa) {
+        observadores.compute(casa, (c, n) -> {
+            if (n != null && n > 1) return n - 1;
+            indices.remove(c);
+            logger.debug("🔎 Índice de búsqueda de {} descartado: ya no se observa.", c);
+            return null;
+        });
+    }
+
+    // ============================================================
+    // === INTERNOS ===============================================
+    // ============================================================
+
+    private void construir() {
+        EjecutorBD.enviar(casa, EjecutorBD.Prioridad.MANTENIMIENTO, () -> {
+            long inicio = System.currentTimeMillis();
+            List<Modelo_Estudiante> leidas = new ArrayList<>();
+            BaseDAO.daoDeCasa(casa).recorrerTodos(leidas::add);
+
+            cerrojo.writeLock().lock();
+            try {
+                for (Modelo_Estudiante e : leidas) poner(e);
+                for (Runnable cambio : pendientes) cambio.run();
+                pendientes = null;
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+            logger.info("🔎 Índice de búsqueda de {}: {} estudiantes, {} trigramas en {} ms.",
+                    casa, leidas.size(), trigramas.size(), System.currentTimeMillis() - inicio);
+            return this;
+        }).whenComplete((indice, ex) -> {
+            if (ex == null) {
+                listo.complete(indice);
+            } else {
+                logger.error("❌ No se pudo construir el índice de búsqueda de {}.", casa, ex);
+                indices.remove(casa, this);
+                listo.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /** Aplica un cambio ya, o al terminar la construcción si todavía está en curso. */
+    private void aplicar(Runnable cambio) {
+        cerrojo.writeLock().lock();
+        try {
+            if (pendientes != null) {
+                pendientes.add(cambio);
+                return;
+            }
+            cambio.run();
+            if (borradas > 10_000 && borradas > filas.size() / 2) compactar();
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /** Añade (o sustituye) un estudiante. Requiere el cerrojo de escritura. */
+    private void poner(Modelo_Estudiante e) {
+        quitar(e.getId());
+        int doc = filas.size();
+        filas.add(e);
+        posiciones.put(e.getId(), doc);
+        for (String campo : new String[]{e.getNombre(), e.getApellidos(), e.getPatronus()}) {
+            String texto = normalizar(campo);
+            for (int i = 0; i + 3 <= texto.length(); i++) {
+                trigramas.computeIfAbsent(trigrama(texto, i), k -> new Lista()).anadir(doc);
+            }
+        }
+    }
+
+    /** Marca un estudiante como borrado; sus entradas se limpian al compactar. Requiere el cerrojo de escritura. */
+    private void quitar(String id) {
+        Integer doc = posiciones.remove(id);
+        if (doc != null) {
+            filas.set(doc, null);
+            borradas++;
+        }
+    }
+
+    /** Rehace las listas sin los estudiantes borrados. Requiere el cerrojo de escritura. */
+    private void compactar() {
+        List<Modelo_Estudiante> vivas = new ArrayList<>(filas.size() - borradas);
+        for (Modelo_Estudiante e : filas) if (e != null) vivas.add(e);
+        filas.clear();
+        posiciones.clear();
+        trigramas.clear();
+        borradas = 0;
+        for (Modelo_Estudiante e : vivas) poner(e);
+    }
+
+    private List<Modelo_Estudiante> buscar(String texto, int limite) {
+        String consulta = ESPACIOS.matcher(normalizar(texto)).replaceAll(" ").trim();
+        if (consulta.replace(" ", "").length() < MIN_CARACTERES) return List.of();
+        String[] palabras = consulta.split(" ");
+
+        Set<Long> claves = new LinkedHashSet<>();
+        for (String palabra : palabras) {
+            for (int i = 0; i + 3 <= palabra.length(); i++) claves.add(trigrama(palabra, i));
+        }
+        if (claves.isEmpty()) return List.of();
+        int minimo = Math.max(1, (claves.size() + 1) / 2);
+
+        cerrojo.readLock().lock();
+        try {
+            // 1. Contar en cuántos trigramas de la búsqueda aparece cada estudiante. Quien no esté
+            // en las (n - mínimo + 1) listas más cortas no puede llegar al mínimo, así que solo esas
+            // añaden candidatos; en las demás basta con buscar (son crecientes) a los ya tocados.
+            List<Lista> listas = new ArrayList<>(claves.size());
+            for (long clave : claves) {
+                Lista lista = trigramas.get(clave);
+                if (lista != null) listas.add(lista);
+            }
+            if (listas.size() < minimo) return List.of();
+            listas.sort(Comparator.comparingInt(l -> l.tamano));
+            int abiertas = claves.size() - minimo + 1;
+
+            if (contadores.length < filas.size()) contadores = new int[filas.size() + filas.size() / 4];
+            int[] cuenta = contadores;
+            int[] tocados = new int[0];
+            int nTocados = 0;
+            for (int l = 0; l < listas.size(); l++) {
+                Lista lista = listas.get(l);
+                if (l < abiertas) {
+                    for (int k = 0; k < lista.tamano; k++) {
+                        int doc = lista.docs[k];
+                        if (cuenta[doc]++ == 0) {
+                            if (nTocados == tocados.length) tocados = Arrays.copyOf(tocados, Math.max(64, nTocados * 2));
+                            tocados[nTocados++] = doc;
+                        }
+                    }
+                } else if ((long) nTocados * 20 < lista.tamano) {
+                    for (int k = 0; k < nTocados; k++) {
+                        if (Arrays.binarySearch(lista.docs, 0, lista.tamano, tocados[k]) >= 0) cuenta[tocados[k]]++;
+                    }
+                } else {
+                    for (int k = 0; k < lista.tamano; k++) {
+                        int doc = lista.docs[k];
+                        if (cuenta[doc] != 0) cuenta[doc]++;
+                    }
+                }
+            }
+
+            // 2. Quedarse con los que más coinciden: buscar el corte con un histograma de las cuentas
+            int maximo = limite * 2;
+            int[] histograma = new int[claves.size() + 1];
+            for (int k = 0; k < nTocados; k++) {
+                int doc = tocados[k];
+                if (filas.get(doc) != null) histograma[cuenta[doc]]++;
+            }
+            int corte = claves.size();
+            for (int acumulados = histograma[corte]; corte > minimo && acumulados < maximo; ) {
+                acumulados += histograma[--corte];
+            }
+            // Los que superan el corte caben todos; los del corte, hasta llenar
+            List<int[]> candidatos = new ArrayList<>();
+            for (int k = 0; k < nTocados; k++) {
+                int doc = tocados[k];
+                if (cuenta[doc] > corte && filas.get(doc) != null) candidatos.add(new int[]{doc, cuenta[doc]});
+            }
+            for (int k = 0; k < nTocados; k++) {
+                int doc = tocados[k];
+                if (cuenta[doc] == corte && filas.get(doc) != null && candidatos.size() < maximo) {
+                    candidatos.add(new int[]{doc, corte});
+                }
+                cuenta[doc] = 0;
+            }
+            for (int[] candidato : candidatos) {
+                candidato[1] = candidato[1] * 4 + (contiene(filas.get(candidato[0]), palabras) ? 1000 : 0);
+            }
+
+            // 3. Ordenar: primero los que contienen el texto, luego por trigramas en común
+            candidatos.sort((a, b) -> Integer.compare(b[1], a[1]));
+            List<Modelo_Estudiante> resultado = new ArrayList<>(Math.min(limite, candidatos.size()));
+            for (int k = 0; k < candidatos.size() && resultado.size() < limite; k++) {
+                Modelo_Estudiante e = filas.get(candidatos.get(k)[0]);
+                resultado.add(new Modelo_Estudiante(e.getId(), e.getNombre(), e.getApellidos(), e.getCasa(), e.getCurso(), e.getPatronus()));
+            }
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /** @return {@code true} si cada palabra aparece tal cual en el nombre, los apellidos o el patronus. */
+    private static boolean contiene(Modelo_Estudiante e, String[] palabras) {
+        String texto = normalizar(e.getNombre()) + ' ' + normalizar(e.getApellidos()) + ' ' + normalizar(e.getPatronus());
+        for (String palabra : palabras) if (!texto.contains(palabra)) return false;
+        return true;
+    }
+
+    /** Minúsculas y sin tildes ("Ñoño" → "nono"). */
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        if (texto.chars().allMatch(c -> c < 0x80)) return texto.toLowerCase(Locale.ROOT);
+        return MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigrama(String texto, int i) {
+        return ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2);
+    }
+
+    /** Lista creciente de estudiantes que contienen un trigrama (sin repetidos). */
+    private static final class Lista {
+        int[] docs = new int[4];
+        int tamano;
+
+        void anadir(int doc) {
+            if (tamano > 0 && docs[tamano - 1] == doc) return;
+            if (tamano == docs.length) docs = Arrays.copyOf(docs, tamano * 2);
+            docs[tamano++] = doc;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.equiporon.DAO;
 
 import org.equiporon.Conexion.ConexionBD;
 import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas.Operacion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,6 +10,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 /**
  * DAO de la base de datos de Hogwarts en MariaDB
  *
@@ -64,15 +71,18 @@ public class MariaDBDAO extends BaseDAO {
      *
      * Este metodo primero valida el objeto {@code Modelo_Estudiante} y luego determina
      * el **prefijo de casa** (GR, HF, RV, SL o HO) para generar un **nuevo ID único**
-     * para el estudiante en el sistema central de Hogwarts.
+     * para el estudiante en el sistema central de Hogwarts. La parte numérica la reparte
+     * la base de datos de la casa (ver {@link BaseDAO#generarNuevoIdNumerico()}), salvo
+     * para los alumnos de Hogwarts ("HO"), cuya secuencia vive en MariaDB.
+     * Si la operación viene de una casa y el estudiante ya trae ID, se conserva.
      *
-     * Tras la inserción exitosa, si la operación **no** proviene de una sincronización,
-     * llama a {@code sincronizarConCasa} para propagar el nuevo registro a la base de datos
-     * de la casa de procedencia (eliminando el prefijo de Hogwarts del ID para la casa).
+     * Si la operación **no** proviene de una sincronización, en la misma transacción que el
+     * INSERT se registra el cambio en la {@link BandejaSalida}; el {@link Replicador} lo llevará
+     * a la casa de procedencia (quitando el prefijo de Hogwarts del ID) en segundo plano.
      *
      * @param e El objeto {@code Modelo_Estudiante} con los datos a insertar. Su ID será actualizado.
      * @param esSincronizacion Booleano que indica si la operación fue iniciada por una sincronización desde una casa (true).
-     * Si es {@code false}, se procede a sincronizar la inserción hacia la casa.
+     * Si es {@code false}, se registra la inserción para replicarla hacia la casa.
      * @return {@code true} si la inserción en Hogwarts fue exitosa, {@code false} si falla la validación o la operación SQL.
      */
 
@@ -85,24 +95,25 @@ public class MariaDBDAO extends BaseDAO {
         }
 
         final String sql = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
+        long inicio = System.nanoTime();
+
+        long seq;
+        try {
+            // Generar ID nuevo en Hogwarts (en una sincronización se respeta el ID de la casa)
+            if (!esSincronizacion || e.getId() == null || e.getId().isBlank()) {
+                e.setId(generarNuevoIdHogwarts(e.getCasa()));
+            }
+            seq = prepararEscritura(!esSincronizacion && debeReplicar(e.getId()) ? 1 : 0);
+        } catch (SQLException ex) {
+            logger.error("❌ Error generando ID en Hogwarts.", ex);
+            return medir(Operacion.INSERTAR, inicio, false);
+        }
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            // Determinar prefijo según la casa
-            String prefijo = switch (e.getCasa().toLowerCase()) {
-                case "gryffindor" -> "GR";
-                case "hufflepuff" -> "HF";
-                case "ravenclaw" -> "RV";
-                case "slytherin" -> "SL";
-                default -> "HO";
-            };
-
-            // Generar ID nuevo en Hogwarts
-            String nuevoId = generarNuevoIdHogwarts(conn, prefijo);
-            e.setId(nuevoId);
-
-            ps.setString(1, nuevoId);
+            conn.setAutoCommit(false);
+            ps.setString(1, e.getId());
             ps.setString(2, e.getNombre());
             ps.setString(3, e.getApellidos());
             ps.setString(4, e.getCasa());
@@ -110,46 +121,29 @@ public class MariaDBDAO extends BaseDAO {
             ps.setString(6, e.getPatronus());
             ps.executeUpdate();
 
-            logger.info("✅ Insertado en Hogwarts con ID {}", e.getId());
-
-            // 🔁 Sincronizar con la casa correspondiente (solo si no viene de la casa)
+            // 🔁 Registrar la replicación hacia la casa (solo si no viene de la casa)
+            RegistroCambios.anotar(conn, "insert", List.of(e.getId()));
+            if (!esSincronizacion && debeReplicar(e.getId())) {
+                BandejaSalida.registrar(conn, "insert", e.getId(), seq);
+            }
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), List.of(e), List.of());
+            Modelo_Estudiante guardada = filaGuardada(e);
+            DiarioOperaciones.anotar(getCasa(), "insert", esSincronizacion, List.of(guardada), List.of());
             if (!esSincronizacion) {
-                sincronizarConCasa(e, "insert");
+                DiarioDeshacer.anotar(getCasa(), "insert", List.of(new DiarioDeshacer.Cambio(e.getId(), null, guardada)));
             }
 
-            return true;
+            logger.info("✅ Insertado en Hogwarts con ID {}", e.getId());
+            if (!esSincronizacion) Replicador.avisar();
+
+            return medir(Operacion.INSERTAR, inicio, true);
 
         } catch (SQLException ex) {
             logger.error("❌ Error insertando en Hogwarts.", ex);
-            return false;
-        }
-    }
-
-    /**
-     * Edita un registro de estudiante existente en la base de datos de Hogwarts (MariaDB).
-     *
-     * Este metodo delega la lógica de actualización SQL al metodo {@code super.editarEstudiante()}
-     * definido en {@code BaseDAO}.
-     *
-     * Si la actualización en Hogwarts es exitosa ({@code ok} es true) y la operación
-     * no es una sincronización que viene de una casa ({@code esSincronizacion} es false),
-     * entonces propaga el cambio a la base de datos de la casa correspondiente
-     * llamando a {@code sincronizarConCasa} con el tipo "update".
-     *
-     * @param e El objeto {@code Modelo_Estudiante} conteniendo el ID y los nuevos datos del estudiante.
-     * @param esSincronizacion Booleano que indica si la operación proviene de una sincronización (true)
-     * o es una operación directa en Hogwarts (false).
-     * @return {@code true} si la edición fue exitosa tanto en la base principal como, si aplica, en la sincronización,
-     * {@code false} en caso contrario.
-     */
-
-    @Override
-    public boolean editarEstudiante(Modelo_Estudiante e, boolean esSincronizacion) {
-        boolean ok = super.editarEstudiante(e, esSincronizacion);
-        if (ok && !esSincronizacion) {
-            sincronizarConCasa(e, "update");
+            return medir(Operacion.INSERTAR, inicio, false);
         }
-        return ok;
     }
 
     /**
@@ -157,161 +151,218 @@ public class MariaDBDAO extends BaseDAO {
      *
      * Ejecuta una sentencia SQL {@code DELETE} utilizando el ID del estudiante (que incluye el prefijo de casa, ej: "GR101").
      *
-     * Si la eliminación es exitosa y esta operación **no** ha sido desencadenada por una sincronización
-     * desde una casa (es decir, {@code esSincronizacion} es {@code false}),
-     * se llama a {@code sincronizarBorradoConCasa} para propagar la eliminación a la base de datos
-     * de la casa correspondiente, deduciendo la casa a partir del prefijo del ID.
+     * Si esta operación **no** ha sido desencadenada por una sincronización desde una casa
+     * (es decir, {@code esSincronizacion} es {@code false}), el borrado se registra en la
+     * {@link BandejaSalida} en la misma transacción, y el {@link Replicador} lo propaga a la
+     * casa que indica el prefijo del ID.
      *
      * @param id El ID único del estudiante en Hogwarts a eliminar (con prefijo de casa).
      * @param esSincronizacion Booleano que indica si la operación proviene de una sincronización (true)
      * o es una operación directa en Hogwarts (false).
-     * @return {@code true} si el registro fue eliminado exitosamente, {@code false} si ocurre un error SQL.
+     * @return {@code true} si el registro fue eliminado exitosamente, {@code false} si no existía o
+     * si ocurre un error SQL.
      */
 
     @Override
     public boolean borrarEstudiante(String id, boolean esSincronizacion) {
         final String sql = "DELETE FROM ESTUDIANTES WHERE id=?";
+        long inicio = System.nanoTime();
+        long seq;
+        try {
+            seq = prepararEscritura(!esSincronizacion && debeReplicar(id) ? 1 : 0);
+        } catch (SQLException ex) {
+            logger.error("❌ Error al borrar en Hogwarts.", ex);
+            return medir(Operacion.BORRAR, inicio, false);
+        }
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
+            conn.setAutoCommit(false);
+            Modelo_Estudiante antes = esSincronizacion ? null : obtenerPorIds(conn, List.of(id)).get(id);
             ps.setString(1, id);
-            ps.executeUpdate();
-            logger.info("🗑️ Borrado en Hogwarts (ID {}).", id);
+            int filas = ps.executeUpdate();
 
-            // 🔁 Sincronizar hacia la casa solo si no es sincronización
-            if (!esSincronizacion) {
-                sincronizarBorradoConCasa(id);
+            if (filas == 0) {
+                conn.rollback();
+                logger.warn("⚠️ No se encontró el ID {} en Hogwarts para borrar.", id);
+                return medir(Operacion.BORRAR, inicio, false);
             }
 
-            return true;
+            // 🔁 Registrar la replicación hacia la casa solo si no es sincronización
+            RegistroCambios.anotar(conn, "delete", List.of(id));
+            if (!esSincronizacion && debeReplicar(id)) {
+                BandejaSalida.registrar(conn, "delete", id, seq);
+            }
+            conn.commit();
+            CacheEstudiantes.invalidar(getCasa());
+            IndiceBusqueda.actualizar(getCasa(), List.of(), List.of(id));
+            DiarioOperaciones.anotar(getCasa(), "delete", esSincronizacion, List.of(), List.of(id));
+            if (antes != null) DiarioDeshacer.anotar(getCasa(), "delete", List.of(new DiarioDeshacer.Cambio(id, antes, null)));
+
+            logger.info("🗑️ Borrado en Hogwarts (ID {}).", id);
+            if (!esSincronizacion) Replicador.avisar();
+
+            return medir(Operacion.BORRAR, inicio, true);
 
         } catch (SQLException ex) {
             logger.error("❌ Error al borrar en Hogwarts.", ex);
-            return false;
+            return medir(Operacion.BORRAR, inicio, false);
         }
     }
 
     /**
-     * Propaga una operación (inserción o actualización) de estudiante realizada
-     * en la base de datos central de Hogwarts hacia la base de datos de la casa correspondiente.
-     *
-     * **Pasos de la Sincronización:**
-     * 1. Determina el {@code BaseDAO} de la casa (DerbyDAO, H2DAO, OracleDAO o HSQLDBDAO)
-     * basándose en el valor de {@code e.getCasa()}.
-     * 2. Crea una copia del objeto {@code Modelo_Estudiante}, crucialmente **eliminando**
-     * el prefijo de Hogwarts (GR, HF, RV, SL) del ID para adaptarlo al formato de ID de la casa.
-     * 3. Ejecuta la operación especificada por el parámetro {@code tipo} ("insert" o "update")
-     * en el DAO de la casa, marcándola como una operación de sincronización ({@code true}).
+     * {@inheritDoc}
      *
-     * @param e El objeto {@code Modelo_Estudiante} con los datos y el ID de Hogwarts a sincronizar.
-     * @param tipo El tipo de operación que se debe ejecutar en la casa ("insert" o "update"). El tipo "delete" debería usarse con {@code sincronizarBorradoConCasa}.
+     * En Hogwarts solo se replican los alumnos que pertenecen a una casa (prefijos GR, HF, RV y SL);
+     * los alumnos propios ("HO") no tienen copia en ninguna otra base de datos.
      */
+    @Override
+    protected boolean debeReplicar(String id) {
+        return id != null && id.length() > 2 && casaDePrefijo(id.substring(0, 2)) != null;
+    }
 
-    private void sincronizarConCasa(Modelo_Estudiante e, String tipo) {
-        String casa = e.getCasa().trim().toLowerCase();
-
-        BaseDAO daoCasa = switch (casa) {
-            case "gryffindor" -> new DerbyDAO();
-            case "hufflepuff" -> new H2DAO();
-            case "ravenclaw" -> new OracleDAO();
-            case "slytherin" -> new HSQLDBDAO();
-            default -> null;
-        };
+    /**
+     * {@inheritDoc}
+     *
+     * En Hogwarts cada estudiante guarda el nombre de su casa.
+     */
+    @Override
+    protected String casaAGuardar(Modelo_Estudiante e) {
+        return e.getCasa();
+    }
 
-        if (daoCasa == null) {
-            logger.warn("⚠️ No se encontró DAO para la casa '{}'.", casa);
-            return;
+    /**
+     * {@inheritDoc}
+     *
+     * En Hogwarts los estudiantes se agrupan por casa: cada grupo reserva un único rango en la
+     * secuencia de su casa (o en la secuencia "HO" de MariaDB) y recibe el prefijo correspondiente,
+     * igual que en {@link #generarNuevoIdHogwarts(String)}.
+     */
+    @Override
+    protected void asignarIdsLote(List<Modelo_Estudiante> filas) throws SQLException {
+        Map<String, List<Modelo_Estudiante>> porCasa = new LinkedHashMap<>();
+        for (Modelo_Estudiante e : filas) {
+            porCasa.computeIfAbsent(e.getCasa().trim().toLowerCase(), c -> new ArrayList<>()).add(e);
         }
 
-        // ⚙️ Crear copia con ID sin prefijo (para la casa)
-        String idNumerico = e.getId().replaceAll("^(GR|HF|RV|SL)", "");  // <-- quita prefijo
-        Modelo_Estudiante copia = new Modelo_Estudiante(
-                idNumerico,
-                e.getNombre(),
-                e.getApellidos(),
-                e.getCasa(),
-                e.getCurso(),
-                e.getPatronus()
-        );
-
-        // 🧱 Ejecutar la operación en la casa
-        switch (tipo) {
-            case "insert" -> daoCasa.insertarEstudiante(copia, true);
-            case "update" -> daoCasa.editarEstudiante(copia, true);
-            case "delete" -> daoCasa.borrarEstudiante(copia.getId(), true);
+        for (Map.Entry<String, List<Modelo_Estudiante>> grupo : porCasa.entrySet()) {
+            List<Modelo_Estudiante> estudiantes = grupo.getValue();
+            BaseDAO daoCasa = daoDeCasa(grupo.getKey());
+            String prefijo;
+            long numero;
+            if (daoCasa != null && !(daoCasa instanceof MariaDBDAO)) {
+                prefijo = daoCasa.getPrefijoCasa();
+                numero = daoCasa.reservarIdsNumericos(estudiantes.size());
+            } else {
+                prefijo = "HO";
+                numero = GeneradorIds.reservar(getCasa(), "HO", estudiantes.size(), this::getConnection,
+                        c -> maximoIdHogwarts(c, "HO"));
+            }
+            for (Modelo_Estudiante e : estudiantes) e.setId(prefijo + numero++);
         }
-
-        logger.info("🔄 Hogwarts → {} ({} ID {}).", e.getCasa(), tipo, e.getId());
     }
 
-
     /**
-     * Propaga una operación de borrado de estudiante desde la base de datos
-     * central de Hogwarts hacia la base de datos de la casa correspondiente.
+     * Genera un nuevo ID único para un estudiante en la base de datos central de Hogwarts (MariaDB).
+     *
+     * El ID se construye combinando el prefijo de casa de dos letras (ej: "GR", "SL")
+     * con un número de la secuencia de la casa, de modo que el mismo alumno tiene
+     * el mismo número en Hogwarts y en su casa. Los alumnos de Hogwarts ("HO") usan
+     * la secuencia "HO" de MariaDB.
      *
-     * **Mecanismo de Propagación:**
-     * 1. El metodo extrae el **prefijo de dos letras** (ej: "GR", "HF") del ID de Hogwarts
-     * para determinar la casa de destino (Gryffindor, Hufflepuff, etc.) y, por ende, el {@code BaseDAO} a utilizar.
-     * 2. Una vez que se identifica el DAO de la casa, se extrae el **ID numérico** (sin prefijo)
-     * para adaptarlo al formato de la casa.
-     * 3. Finalmente, ejecuta el metodo {@code borrarEstudiante()} en el DAO de la casa,
-     * marcando la operación como sincronización ({@code true}) para evitar ciclos de borrado.
+     * @param casa La casa del estudiante.
+     * @return El nuevo ID único generado para Hogwarts (ej: "GR102" o "HO1").
+     * @throws SQLException Si no se puede reservar un ID.
      *
-     * @param id El ID del estudiante en Hogwarts (con prefijo de casa, ej: "RV205") que ha sido borrado.
+     * @author Gaizka
      */
-
-    private void sincronizarBorradoConCasa(String id) {
-        if (id.length() < 3) return;
-        String prefijo = id.substring(0, 2).toUpperCase();
-        String idSinPrefijo = id.substring(2);
-
-        BaseDAO daoCasa = switch (prefijo) {
-            case "GR" -> new DerbyDAO();
-            case "HF" -> new H2DAO();
-            case "RV" -> new OracleDAO();
-            case "SL" -> new HSQLDBDAO();
-            default -> null;
-        };
-
-        if (daoCasa != null) {
-            daoCasa.borrarEstudiante(idSinPrefijo, true);
-            logger.info("🔄 Hogwarts → {} (DELETE ID {}).", daoCasa.getCasa(), idSinPrefijo);
-        } else {
-            logger.warn("⚠️ No se pudo determinar casa para prefijo '{}'.", prefijo);
+    private String generarNuevoIdHogwarts(String casa) throws SQLException {
+        BaseDAO daoCasa = daoDeCasa(casa);
+        if (daoCasa != null && !(daoCasa instanceof MariaDBDAO)) {
+            return daoCasa.getPrefijoCasa() + daoCasa.generarNuevoIdNumerico();
         }
+        long numero = GeneradorIds.siguiente(getCasa(), "HO", this::getConnection, c -> maximoIdHogwarts(c, "HO"));
+        return "HO" + numero;
     }
 
     /**
-     * Genera un nuevo ID único y secuencial para un estudiante en la base de datos central de Hogwarts (MariaDB).
-     *
-     * El ID se construye combinando un prefijo de casa de dos letras (ej: "GR", "SL")
-     * con el siguiente número entero consecutivo al ID numérico más alto encontrado
-     * previamente para esa casa específica.
+     * Obtiene el mayor número usado en Hogwarts para un prefijo de casa.
      *
      * **Mecanismo SQL:** La consulta busca el valor máximo de la parte numérica del ID
      * (obtenida tras eliminar el prefijo de dos caracteres) para los IDs que coinciden con
-     * el patrón de prefijo proporcionado. Si no se encuentra un ID previo, comienza en '1'.
+     * el patrón de prefijo proporcionado. Solo se usa como semilla de {@link GeneradorIds},
+     * una vez por secuencia.
      *
      * @param conn La {@code Connection} activa a la base de datos MariaDB.
-     * @param casaPrefijo El prefijo de dos letras de la casa (ej: "GR" para Gryffindor) para la cual se genera el ID.
-     * @return El nuevo ID único generado para Hogwarts (ej: "GR102" o "SL1").
+     * @param casaPrefijo El prefijo de dos letras de la casa (ej: "GR" para Gryffindor).
+     * @return El mayor número encontrado, o {@code 0} si no hay IDs con ese prefijo.
      * @throws SQLException Si ocurre un error durante la ejecución de la consulta SQL.
      *
      * @author Gaizka
      */
-
-    private String generarNuevoIdHogwarts(Connection conn, String casaPrefijo) throws SQLException {
+    static long maximoIdHogwarts(Connection conn, String casaPrefijo) throws SQLException {
         String sql = "SELECT MAX(CAST(SUBSTRING(id, 3) AS UNSIGNED)) AS maximo FROM ESTUDIANTES WHERE id LIKE ?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, casaPrefijo + "%");
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    int ultimo = rs.getInt("maximo");
-                    return casaPrefijo + (ultimo + 1);
+                    return rs.getLong("maximo");
                 }
             }
         }
-        return casaPrefijo + "1";
+        return 0;
+    }
+
+    /**
+     * Calcula en el servidor la huella de cada cubeta de los alumnos de una casa guardados en Hogwarts,
+     * para que el {@link Reconciliador} no tenga que traerse las filas.
+     * <p>
+     * La cubeta de un alumno es la parte numérica de su ID dividida entre {@code ancho}. La huella de
+     * cada fila es el CRC32 de sus columnas separadas por <code>|</code> (igual que
+     * {@link Reconciliador#huella(String, Modelo_Estudiante)}) y la de la cubeta, su número de filas y
+     * la suma de esas huellas. La cadena se convierte a utf8mb4 antes del CRC32: sin eso se
+     * calcularía sobre los bytes del juego de caracteres de la tabla (latin1 en muchas
+     * instalaciones) y cualquier nombre con tilde o ñ no coincidiría nunca con la huella de la casa.
+     * Los IDs cuya parte numérica no es un número canónico se ignoran.
+     *
+     * @param conn Conexión a Hogwarts.
+     * @param prefijo Prefijo de la casa (ej. "GR").
+     * @param ancho IDs por cubeta.
+     * @param rangos Rangos {@code [desde, hasta)} de números a resumir, o {@code null} para todos.
+     * @return Huella de cada cubeta no vacía.
+     * @throws SQLException Si falla la consulta.
+     */
+    static Map<Long, Reconciliador.Huella> resumirCubetas(Connection conn, String prefijo, long ancho,
+                                                          List<long[]> rangos) throws SQLException {
+        Map<Long, Reconciliador.Huella> cubetas = new HashMap<>();
+        final int porConsulta = 100;
+        int desde = 0;
+        do {
+            List<long[]> trozo = rangos == null ? List.of() : rangos.subList(desde, Math.min(rangos.size(), desde + porConsulta));
+            String filtro = trozo.isEmpty() ? "" : " WHERE "
+                    + String.join(" OR ", Collections.nCopies(trozo.size(), "(n >= ? AND n < ?)"));
+            String sql = "SELECT n DIV ? AS cubeta, COUNT(*) AS filas, "
+                    + "SUM(CRC32(CONVERT(CONCAT_WS('|', SUBSTRING(id, 3), nombre, apellidos, casa, curso, patronus) USING utf8mb4))) AS suma "
+                    + "FROM (SELECT CAST(SUBSTRING(id, 3) AS UNSIGNED) AS n, id, nombre, apellidos, casa, curso, patronus "
+                    + "FROM ESTUDIANTES WHERE id LIKE ? AND SUBSTRING(id, 3) REGEXP '^[1-9][0-9]*$') t"
+                    + filtro + " GROUP BY cubeta";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                ps.setLong(i++, ancho);
+                ps.setString(i++, prefijo + "%");
+                for (long[] rango : trozo) {
+                    ps.setLong(i++, rango[0]);
+                    ps.setLong(i++, rango[1]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        cubetas.put(rs.getLong("cubeta"), new Reconciliador.Huella(rs.getLong("filas"), rs.getLong("suma")));
+                    }
+                }
+            }
+            desde += porConsulta;
+        } while (rangos != null && desde < rangos.size());
+        return cubetas;
     }
 }
@@ -0,0 +1,211 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Captura de cambios (CDC) de la tabla ESTUDIANTES de una base de datos, para refrescar la
+ * interfaz sin recargarla entera.
+ * <p>
+ * Cada <code>cdc.periodo</code> ms consulta la tabla <code>CAMBIOS</code> que mantienen las
+ * escrituras de los DAOs ({@link RegistroCambios}), lee solo las filas cambiadas desde la última
+ * versión vista y entrega un {@link Delta} al oyente. Así se ven los cambios de otros clientes y
+ * los que aplica el {@link Replicador}, no solo los propios.
+ * <p>
+ * La versión de cada cambio sale de la secuencia de la base de datos que usa
+ * {@link RegistroCambios}, que se confirma en orden y no depende del reloj de ningún cliente:
+ * cada consulta lee solo lo posterior a la última versión vista, sin márgenes. Un cambio puede
+ * llegar dos veces (por ejemplo, al poner al día una vista que ya lo tenía), así que aplicar un
+ * delta debe ser idempotente.
+ * <p>
+ * Las consultas se lanzan en el {@link EjecutorBD}, en el compartimento de la casa y con
+ * prioridad de replicación. Un hilo compartido solo las programa. Cada delta también se
+ * aplica a la caché de páginas y al {@link IndiceBusqueda} de la casa.
+ * <p>
+ * Se puede empezar desde una versión anterior ({@link #observar(String, long, Consumer)}): la
+ * primera consulta entrega entonces todo lo que cambió desde ella, lo que sirve para poner al
+ * día una vista guardada ({@link PrecargaCasas}). Si son más de <code>cdc.max</code> filas, o la
+ * tabla se ha restaurado entera, el delta no las trae y pide recargar ({@link Delta#recargar()}).
+ */
+public final class ObservadorCambios implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObservadorCambios.class);
+
+    private static final long PERIODO_MS = Math.max(100, Config.getInt("cdc.periodo", 1000));
+    private static final int MAX_FILAS = Math.max(1, Config.getInt("cdc.max", 5000));
+
+    private static ScheduledExecutorService hilo;
+
+    /**
+     * Cambios de una consulta.
+     *
+     * @param casa Base de datos observada.
+     * @param cambiados Estado actual de las filas insertadas o editadas.
+     * @param borrados IDs de las filas que ya no existen.
+     * @param recargar {@code true} si hubo demasiados cambios para traerlos uno a uno: las listas
+     *                 vienen vacías y lo mostrado debe volver a leerse entero.
+     * @param version Versión hasta la que llega el delta: quien lo aplica está al día hasta ella.
+     *                -1 en los deltas que no vienen del observador (cambios hechos desde la ventana).
+     */
+    public record Delta(String casa, List<Modelo_Estudiante> cambiados, Set<String> borrados, boolean recargar,
+                        long version) {
+        /** Delta con los cambios fila a fila hechos desde la propia ventana. */
+        public Delta(String casa, List<Modelo_Estudiante> cambiados, Set<String> borrados) {
+            this(casa, cambiados, borrados, false, -1);
+        }
+
+        /** @return {@code true} si no trae ningún cambio. */
+        public boolean vacio() {
+            return !recargar && cambiados.isEmpty() && borrados.isEmpty();
+        }
+    }
+
+    private final String casa;
+    private final BaseDAO dao;
+    private final Consumer<Delta> oyente;
+    private final ScheduledFuture<?> programada;
+    private final AtomicBoolean consultando = new AtomicBoolean();
+    private volatile boolean cerrado;
+
+    // Solo se escribe desde la consulta en curso (nunca hay dos a la vez)
+    private volatile long version;
+
+    private ObservadorCambios(String casa, long desde, Consumer<Delta> oyente) {
+        this.casa = casa;
+        this.dao = BaseDAO.daoDeCasa(casa);
+        this.oyente = oyente;
+        this.version = desde;
+        IndiceBusqueda.observada(casa);
+        this.programada = hilo().scheduleWithFixedDelay(this::programar, 0, PERIODO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Empieza a observar una base de datos. Solo se entregan los cambios posteriores a la llamada;
+     * la primera consulta entrega además un delta vacío con la versión de partida.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa.
+     * @param oyente Recibe cada delta no vacío, desde un hilo del {@link EjecutorBD}.
+     * @return El observador; hay que cerrarlo con {@link #close()} al dejar de usarlo.
+     * @throws IllegalArgumentException Si la casa no es válida.
+     */
+    public static ObservadorCambios observar(String casa, Consumer<Delta> oyente) {
+        return observar(casa, -1, oyente);
+    }
+
+    /**
+     * Empieza a observar una base de datos desde una versión ya vista.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa.
+     * @param desde Versión ({@link #getVersion()}) hasta la que ya se conocen los cambios; la
+     *              primera consulta entrega los posteriores. Negativa para empezar desde ahora.
+     * @param oyente Recibe cada delta no vacío, desde un hilo del {@link EjecutorBD}.
+     * @return El observador; hay que cerrarlo con {@link #close()} al dejar de usarlo.
+     * @throws IllegalArgumentException Si la casa no es válida.
+     */
+    public static ObservadorCambios observar(String casa, long desde, Consumer<Delta> oyente) {
+        if (BaseDAO.daoDeCasa(casa) == null) throw new IllegalArgumentException("Casa no válida: " + casa);
+        return new ObservadorCambios(casa, desde, oyente);
+    }
+
+    /**
+     * @return Versión del último cambio entregado (todo lo anterior ya se ha entregado), o -1
+     * si todavía no se ha hecho la primera consulta.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Deja de observar; no se entrega ningún delta más. Si nadie más observa la casa, descarta su
+     * {@link IndiceBusqueda}.
+     */
+    @Override
+    public synchronized void close() {
+        if (cerrado) return;
+        cerrado = true;
+        programada.cancel(false);
+        IndiceBusqueda.desatendida(casa);
+    }
+
+    private static synchronized ScheduledExecutorService hilo() {
+        if (hilo == null) {
+            hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cdc");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return hilo;
+    }
+
+    /** Lanza una consulta si no hay otra en curso. */
+    private void programar() {
+        if (cerrado || !consultando.compareAndSet(false, true)) return;
+        boolean inicial = version < 0;
+        EjecutorBD.enviar(casa, EjecutorBD.Prioridad.REPLICACION, this::consultar)
+                .whenComplete((delta, ex) -> {
+                    consultando.set(false);
+                    if (ex != null) {
+                        logger.debug("Consulta de cambios en {} fallida: {}", casa, ex.getMessage());
+                    } else if (!cerrado && inicial && delta.vacio()) {
+                        oyente.accept(delta);
+                    } else if (!cerrado && !delta.vacio()) {
+                        CacheEstudiantes.invalidar(casa);
+                        if (delta.recargar()) IndiceBusqueda.descartar(casa);
+                        else IndiceBusqueda.actualizar(casa, delta.cambiados(), delta.borrados());
+                        oyente.accept(delta);
+                    }
+                });
+    }
+
+    private Delta consultar() throws SQLException {
+        try (Connection conn = dao.getConnection()) {
+            if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + casa);
+
+            if (version < 0) {
+                version = RegistroCambios.ultimaVersion(casa, conn);
+                return new Delta(casa, List.of(), Set.of(), false, version);
+            }
+
+            Map<String, String> nuevos = new LinkedHashMap<>();
+            boolean reinicio = false;
+            for (RegistroCambios.Cambio c : RegistroCambios.leerDesde(casa, conn, version)) {
+                reinicio |= c.reinicio();
+                nuevos.put(c.id(), c.operacion());
+                version = Math.max(version, c.version());
+            }
+            if (nuevos.isEmpty()) return new Delta(casa, List.of(), Set.of(), false, version);
+            if (reinicio) {
+                logger.debug("👁️ {}: tabla restaurada; se pide recargar.", casa);
+                return new Delta(casa, List.of(), Set.of(), true, version);
+            }
+            if (nuevos.size() > MAX_FILAS) {
+                logger.debug("👁️ {}: {} filas cambiadas; se pide recargar.", casa, nuevos.size());
+                return new Delta(casa, List.of(), Set.of(), true, version);
+            }
+
+            List<String> leer = new ArrayList<>();
+            Set<String> borrados = new HashSet<>();
+            nuevos.forEach((id, operacion) -> {
+                if (operacion.equals("delete")) borrados.add(id);
+                else leer.add(id);
+            });
+            Map<String, Modelo_Estudiante> actuales = dao.obtenerPorIds(conn, leer);
+            for (String id : leer) {
+                if (!actuales.containsKey(id)) borrados.add(id);
+            }
+            logger.debug("👁️ {}: {} filas cambiadas, {} borradas.", casa, actuales.size(), borrados.size());
+            return new Delta(casa, List.copyOf(actuales.values()), Set.copyOf(borrados), false, version);
+        }
+    }
+}
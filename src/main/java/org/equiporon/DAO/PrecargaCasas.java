@@ -0,0 +1,200 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.SerieLatencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vistas guardadas de cada casa para que cambiar de casa en la interfaz sea instantáneo.
+ * <p>
+ * Una {@link Vista} son las primeras filas de la tabla de una casa, en un orden, junto con la
+ * versión de la tabla <code>CAMBIOS</code> ({@link RegistroCambios}) a la que corresponden. Al
+ * volver a una casa se muestra su vista en el acto y se reabre el {@link ObservadorCambios}
+ * desde esa versión: su primera consulta trae lo que cambió mientras tanto, que se aplica
+ * encima. Así la vista nunca se da por buena sin comprobarla.
+ * <p>
+ * Las vistas salen de dos sitios: la interfaz guarda la de la casa que deja
+ * ({@link #guardar(Vista)}), y {@link #precargar} lee en segundo plano la primera página de la
+ * casa a la que probablemente se irá después ({@link #probable}), según los cambios anteriores.
+ * <p>
+ * Cada cambio de casa se mide ({@link #medirCambio}) y se publica en JMX como
+ * <code>type=CambioCasa</code>, separando los que salieron de una vista de los que tuvieron
+ * que esperar a la base de datos.
+ */
+public final class PrecargaCasas {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrecargaCasas.class);
+
+    /** Filas máximas que se guardan de cada casa. */
+    private static final int MAX_FILAS = Math.max(1, Config.getInt("precarga.filas", 1000));
+
+    private static final SerieLatencia DESDE_VISTA = Metricas.serie("CambioCasa", "vista", "cambio");
+    private static final SerieLatencia DESDE_BD = Metricas.serie("CambioCasa", "bd", "cambio");
+
+    /**
+     * Primeras filas de una casa en un orden.
+     *
+     * @param casa Casa (o "Hogwarts").
+     * @param filas Filas en el orden indicado, empezando por la primera.
+     * @param columna Columna de orden.
+     * @param descendente Sentido del orden.
+     * @param hayMas {@code true} si detrás de la última fila quedan más.
+     * @param version Versión de <code>CAMBIOS</code> hasta la que las filas están al día.
+     */
+    public record Vista(String casa, List<Modelo_Estudiante> filas, String columna, boolean descendente,
+                        boolean hayMas, long version) {
+
+        /** @return {@code true} si la vista está en ese orden. */
+        public boolean coincide(String columna, boolean descendente) {
+            return this.columna.equals(columna) && this.descendente == descendente;
+        }
+    }
+
+    private static final Map<String, Vista> vistas = new ConcurrentHashMap<>();
+
+    /** Veces que se ha ido de una casa a otra ("desde→hacia"). */
+    private static final Map<String, AtomicLong> transiciones = new ConcurrentHashMap<>();
+
+    static {
+        Metricas.indicador("CambioCasa", "vistas", "guardadas", vistas::size);
+    }
+
+    private PrecargaCasas() {}
+
+    /**
+     * @param casa Casa buscada.
+     * @param columna Orden actual de la tabla.
+     * @param descendente Sentido del orden actual.
+     * @return La vista guardada de la casa en ese orden (con copias de sus filas, que la tabla
+     * puede editar sin tocar la guardada), o {@code null} si no hay.
+     */
+    public static Vista obtener(String casa, String columna, boolean descendente) {
+        Vista vista = vistas.get(casa);
+        if (vista == null || !vista.coincide(columna, descendente)) return null;
+        return new Vista(vista.casa(), CacheEstudiantes.copias(vista.filas()), vista.columna(), vista.descendente(),
+                vista.hayMas(), vista.version());
+    }
+
+    private static boolean hayVista(String casa, String columna, boolean descendente) {
+        Vista vista = vistas.get(casa);
+        return vista != null && vista.coincide(columna, descendente);
+    }
+
+    /**
+     * Guarda la vista de una casa, sustituyendo la anterior, con copias de sus filas. Si trae más
+     * de <code>precarga.filas</code> filas, se guardan solo las primeras.
+     *
+     * @param vista Vista a guardar (su versión debe ser la del observador que la mantenía al día).
+     */
+    public static void guardar(Vista vista) {
+        if (vista.version() < 0) return;
+        if (vista.filas().size() > MAX_FILAS) {
+            vista = new Vista(vista.casa(), CacheEstudiantes.copias(vista.filas().subList(0, MAX_FILAS)), vista.columna(),
+                    vista.descendente(), true, vista.version());
+        } else {
+            vista = new Vista(vista.casa(), CacheEstudiantes.copias(vista.filas()), vista.columna(), vista.descendente(),
+                    vista.hayMas(), vista.version());
+        }
+        vistas.put(vista.casa(), vista);
+    }
+
+    /** Descarta todas las vistas (por ejemplo, tras restaurar un backup). */
+    public static void descartarTodo() {
+        vistas.clear();
+    }
+
+    /**
+     * Lee en segundo plano, con prioridad de mantenimiento, la primera página de una casa y la
+     * guarda como su vista. No hace nada si ya hay una vista en ese orden.
+     * <p>
+     * La versión se lee <b>antes</b> que la página: lo que cambie entre medias se volverá a
+     * entregar al abrir el observador, y aplicarlo dos veces no tiene efecto.
+     *
+     * @param casa Casa a precargar.
+     * @param columna Columna de orden.
+     * @param descendente Sentido del orden.
+     * @param tamano Filas de la página.
+     * @return Futuro que termina al guardar la vista (o en el acto si no hacía falta).
+     */
+    public static CompletableFuture<Void> precargar(String casa, String columna, boolean descendente, int tamano) {
+        BaseDAO dao = BaseDAO.daoDeCasa(casa);
+        if (dao == null || hayVista(casa, columna, descendente)) return CompletableFuture.completedFuture(null);
+
+        return EjecutorBD.enviar(casa, EjecutorBD.Prioridad.MANTENIMIENTO, () -> {
+            if (hayVista(casa, columna, descendente)) return null;
+            long inicio = System.currentTimeMillis();
+            long version;
+            try (Connection conn = dao.getConnection()) {
+                if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + casa);
+                version = RegistroCambios.ultimaVersion(casa, conn);
+            }
+            List<Modelo_Estudiante> pagina = dao.obtenerPagina(columna, descendente, null, tamano);
+            Vista nueva = new Vista(casa, pagina, columna, descendente, pagina.size() == tamano, version);
+            vistas.compute(casa, (c, vieja) -> vieja != null && vieja.coincide(columna, descendente) ? vieja : nueva);
+            logger.debug("🔮 {} precargada ({} filas en {} ms).", casa, pagina.size(), System.currentTimeMillis() - inicio);
+            return null;
+        });
+    }
+
+    /**
+     * Anota un cambio de casa, para {@link #probable}.
+     *
+     * @param desde Casa que se deja ({@code null} al arrancar, que no se anota).
+     * @param hacia Casa elegida.
+     */
+    public static void anotarCambio(String desde, String hacia) {
+        if (desde == null || desde.equals(hacia)) return;
+        transiciones.computeIfAbsent(desde + "→" + hacia, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Casa a la que probablemente se irá desde la actual: la más elegida hasta ahora después de
+     * ella o, si todavía no hay historial, la siguiente de la lista que no tenga vista.
+     *
+     * @param desde Casa actual.
+     * @param casas Todas las casas, en el orden del selector.
+     * @return La casa a precargar, o {@code null} si todas tienen vista.
+     */
+    public static String probable(String desde, List<String> casas) {
+        String mejor = null;
+        long veces = 0;
+        for (String casa : casas) {
+            if (casa.equals(desde) || vistas.containsKey(casa)) continue;
+            AtomicLong n = transiciones.get(desde + "→" + casa);
+            if (n != null && n.get() > veces) {
+                mejor = casa;
+                veces = n.get();
+            }
+        }
+        if (mejor != null) return mejor;
+
+        int i = casas.indexOf(desde);
+        for (int k = 1; k <= casas.size(); k++) {
+            String casa = casas.get(Math.floorMod(i + k, casas.size()));
+            if (!casa.equals(desde) && !vistas.containsKey(casa)) return casa;
+        }
+        return null;
+    }
+
+    /**
+     * Registra la duración de un cambio de casa, desde que se eligió hasta que la tabla tuvo filas.
+     *
+     * @param inicioNanos Valor de {@link System#nanoTime()} al elegir la casa.
+     * @param ok {@code false} si la carga falló.
+     * @param desdeVista {@code true} si se mostró una vista guardada.
+     */
+    public static void medirCambio(long inicioNanos, boolean ok, boolean desdeVista) {
+        (desdeVista ? DESDE_VISTA : DESDE_BD).medir(inicioNanos, ok);
+    }
+}
@@ -0,0 +1,340 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.Metricas.Operacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Reconciliación entre Hogwarts y las casas (árbol de Merkle por rangos de ID).
+ * <p>
+ * El {@link Replicador} solo lleva los cambios que pasan por la {@link BandejaSalida}; si algo
+ * se pierde (entradas en <code>BANDEJA_FALLIDOS</code>, escrituras hechas a mano...) las bases
+ * de datos se desvían. Este proceso encuentra y repara esas diferencias sin copiar las tablas:
+ * <ol>
+ *     <li>Los alumnos se reparten en cubetas por la parte numérica de su ID (en Hogwarts, quitando
+ *     el prefijo GR/HF/RV/SL). Cada cubeta tiene una huella: número de filas y suma de los CRC32
+ *     de cada fila. Como la huella es una suma, la de una cubeta grande es la suma de las de sus
+ *     cubetas hijas, y forman un árbol.</li>
+ *     <li>La casa se recorre una vez y se calculan sus hojas (<code>reconciliacion.hoja</code> IDs).
+ *     Hogwarts calcula las huellas en el servidor ({@link MariaDBDAO#resumirCubetas}): solo viajan
+ *     las huellas, no las filas.</li>
+ *     <li>Se comparan las cubetas de arriba abajo, bajando solo por las distintas, cada nivel con
+ *     {@value #RAMAS} veces menos IDs por cubeta.</li>
+ *     <li>De las hojas distintas se leen las filas de los dos lados y las que no coinciden se
+ *     sobrescriben en Hogwarts con las de la casa, que es la dueña de sus alumnos.</li>
+ * </ol>
+ * Las filas con cambios aún en la bandeja de salida de cualquiera de los dos lados no se tocan:
+ * de esas se encarga el replicador. Las cuatro casas se reconcilian en paralelo con
+ * {@link #reconciliarTodas()}.
+ */
+public final class Reconciliador {
+
+    private static final Logger logger = LoggerFactory.getLogger(Reconciliador.class);
+
+    /** IDs por hoja del árbol. */
+    private static final long HOJA = Math.max(1, Config.getInt("reconciliacion.hoja", 64));
+    /** Cubetas hijas de cada cubeta. */
+    static final int RAMAS = 16;
+    /** Cubetas máximas del primer nivel. */
+    private static final long MAX_RAIZ = 256;
+    /** Hojas cuyas filas se leen y reparan de una vez. */
+    private static final int HOJAS_POR_REPARACION = 16;
+
+    private Reconciliador() {}
+
+    /**
+     * Huella de una cubeta: número de filas y suma de sus CRC32.
+     *
+     * @param filas Filas de la cubeta.
+     * @param suma Suma de las huellas de sus filas.
+     */
+    record Huella(long filas, long suma) {
+        Huella sumar(Huella otra) {
+            return new Huella(filas + otra.filas, suma + otra.suma);
+        }
+    }
+
+    /**
+     * Resultado de reconciliar una casa.
+     *
+     * @param casa Casa reconciliada.
+     * @param filasCasa Alumnos de la casa recorridos.
+     * @param cubetas Cubetas comparadas (en todos los niveles).
+     * @param hojasDistintas Hojas cuya huella no coincidía.
+     * @param reparadas Filas sobrescritas o borradas en Hogwarts.
+     * @param pendientes Filas distintas que se dejaron al replicador por tener cambios en la bandeja.
+     * @param filasHogwarts Filas leídas de Hogwarts (huellas más alumnos de las hojas distintas).
+     * @param ms Duración en milisegundos.
+     */
+    public record Resultado(String casa, int filasCasa, int cubetas, int hojasDistintas, int reparadas,
+                            int pendientes, long filasHogwarts, long ms) {
+        @Override
+        public String toString() {
+            return casa + ": " + filasCasa + " alumnos, " + cubetas + " cubetas comparadas, " + hojasDistintas
+                    + " hojas distintas, " + reparadas + " filas reparadas, " + pendientes + " pendientes de replicar, "
+                    + filasHogwarts + " filas leídas de Hogwarts, " + ms + " ms";
+        }
+    }
+
+    /**
+     * Reconcilia las cuatro casas en paralelo, cada una en su compartimento del {@link EjecutorBD}
+     * con prioridad de mantenimiento.
+     *
+     * @return Un {@link CompletableFuture} con el resultado de cada casa ({@code null} si falló; el
+     * error queda en el log). Nunca termina con error.
+     */
+    public static CompletableFuture<Map<String, Resultado>> reconciliarTodas() {
+        Map<String, CompletableFuture<Resultado>> tareas = new LinkedHashMap<>();
+        for (String casa : FuentesDatos.casas()) {
+            tareas.put(casa, EjecutorBD.enviar(casa, EjecutorBD.Prioridad.MANTENIMIENTO, () -> reconciliar(casa))
+                    .exceptionally(ex -> {
+                        logger.error("❌ Error reconciliando {} con Hogwarts.", casa, ex);
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(tareas.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, Resultado> resultados = new LinkedHashMap<>();
+            tareas.forEach((casa, tarea) -> resultados.put(casa, tarea.join()));
+            return resultados;
+        });
+    }
+
+    /**
+     * Compara una casa con sus alumnos en Hogwarts y repara las diferencias en Hogwarts.
+     *
+     * @param casa "Gryffindor", "Hufflepuff", "Ravenclaw" o "Slytherin".
+     * @return Resumen de lo comparado y reparado.
+     * @throws SQLException Si falla alguna de las dos bases de datos (lo ya reparado se queda).
+     * @throws IllegalArgumentException Si la casa no es válida.
+     */
+    public static Resultado reconciliar(String casa) throws SQLException {
+        BaseDAO daoCasa = BaseDAO.daoDeCasa(casa);
+        if (daoCasa == null || daoCasa instanceof MariaDBDAO) throw new IllegalArgumentException("Casa no válida: " + casa);
+        MariaDBDAO hogwarts = RegistroDAO.hogwarts();
+        String prefijo = daoCasa.getPrefijoCasa();
+        long inicio = System.nanoTime();
+        boolean ok = false;
+        int reparadas = 0;
+
+        try {
+            // 1. Hojas de la casa, en una sola pasada
+            TreeMap<Long, Huella> hojas = new TreeMap<>();
+            int[] irregulares = new int[1];
+            int filasCasa = daoCasa.recorrerTodos(e -> {
+                long numero = numeroCanonico(e.getId());
+                if (numero < 0) {
+                    irregulares[0]++;
+                    return;
+                }
+                hojas.merge(numero / HOJA, new Huella(1, huella(e.getId(), e)), Huella::sumar);
+            });
+            if (irregulares[0] > 0) {
+                logger.warn("⚠️ {} alumnos de {} con ID no numérico; no se reconcilian.", irregulares[0], casa);
+            }
+
+            int cubetas = 0;
+            long filasHogwarts = 0;
+            List<Long> hojasDistintas;
+            Set<String> pendientes;
+
+            try (Connection connHogwarts = hogwarts.getConnection();
+                 Connection connCasa = daoCasa.getConnection()) {
+                if (connHogwarts == null) throw new SQLTransientConnectionException("Sin conexión con Hogwarts");
+                if (connCasa == null) throw new SQLTransientConnectionException("Sin conexión con " + casa);
+
+                // 2. Primer nivel: el ancho más pequeño con pocas cubetas
+                long maximo = Math.max(hojas.isEmpty() ? 0 : (hojas.lastKey() + 1) * HOJA,
+                        MariaDBDAO.maximoIdHogwarts(connHogwarts, prefijo));
+                long ancho = HOJA;
+                while (maximo / ancho >= MAX_RAIZ) ancho *= RAMAS;
+
+                // 3. Bajar por las cubetas distintas hasta las hojas
+                List<long[]> rangos = null;
+                while (true) {
+                    Map<Long, Huella> remotas = MariaDBDAO.resumirCubetas(connHogwarts, prefijo, ancho, rangos);
+                    Map<Long, Huella> locales = agrupar(hojas, ancho, rangos);
+                    filasHogwarts += remotas.size();
+
+                    Set<Long> claves = new TreeSet<>(locales.keySet());
+                    claves.addAll(remotas.keySet());
+                    cubetas += claves.size();
+                    List<Long> distintas = new ArrayList<>();
+                    for (Long clave : claves) {
+                        if (!Objects.equals(locales.get(clave), remotas.get(clave))) distintas.add(clave);
+                    }
+
+                    if (distintas.isEmpty() || ancho == HOJA) {
+                        hojasDistintas = distintas;
+                        break;
+                    }
+                    rangos = new ArrayList<>(distintas.size());
+                    for (Long clave : distintas) rangos.add(new long[]{clave * ancho, (clave + 1) * ancho});
+                    ancho /= RAMAS;
+                }
+
+                // Cambios en vuelo: los aplicará el replicador
+                pendientes = new HashSet<>(BandejaSalida.pendientes(casa, connCasa));
+                if (!hojasDistintas.isEmpty()) {
+                    for (String id : BandejaSalida.pendientes("Hogwarts", connHogwarts)) {
+                        if (id.startsWith(prefijo)) pendientes.add(id.substring(prefijo.length()));
+                    }
+                }
+
+                // 4. Reparar las hojas distintas
+                int enEspera = 0;
+                for (int i = 0; i < hojasDistintas.size(); i += HOJAS_POR_REPARACION) {
+                    List<Long> grupo = hojasDistintas.subList(i, Math.min(hojasDistintas.size(), i + HOJAS_POR_REPARACION));
+                    int[] cuenta = reparar(daoCasa, connCasa, hogwarts, connHogwarts, prefijo, grupo, pendientes);
+                    reparadas += cuenta[0];
+                    enEspera += cuenta[1];
+                    filasHogwarts += cuenta[2];
+                }
+
+                long ms = (System.nanoTime() - inicio) / 1_000_000;
+                Resultado resultado = new Resultado(casa, filasCasa, cubetas, hojasDistintas.size(), reparadas,
+                        enEspera, filasHogwarts, ms);
+                if (reparadas > 0) {
+                    logger.warn("🩹 {}", resultado);
+                } else {
+                    logger.info("🌳 {}", resultado);
+                }
+                ok = true;
+                return resultado;
+            }
+        } finally {
+            Metricas.registrar(Operacion.RECONCILIAR, casa, inicio, ok, reparadas);
+        }
+    }
+
+    /**
+     * Lee las filas de unas hojas en los dos lados y sobrescribe en Hogwarts las que no coinciden.
+     *
+     * @return {reparadas, dejadas al replicador, filas leídas de Hogwarts}.
+     */
+    private static int[] reparar(BaseDAO daoCasa, Connection connCasa, MariaDBDAO hogwarts, Connection connHogwarts,
+                                 String prefijo, List<Long> hojas, Set<String> pendientes) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        List<String> idsHogwarts = new ArrayList<>();
+        for (long hoja : hojas) {
+            for (long n = hoja * HOJA; n < (hoja + 1) * HOJA; n++) {
+                ids.add(String.valueOf(n));
+                idsHogwarts.add(prefijo + n);
+            }
+        }
+        Map<String, Modelo_Estudiante> enCasa = daoCasa.obtenerPorIds(connCasa, ids);
+        Map<String, Modelo_Estudiante> enHogwarts = hogwarts.obtenerPorIds(connHogwarts, idsHogwarts);
+
+        List<String> aReparar = new ArrayList<>();
+        List<Modelo_Estudiante> filas = new ArrayList<>();
+        int enEspera = 0;
+        for (String id : ids) {
+            Modelo_Estudiante c = enCasa.get(id);
+            Modelo_Estudiante h = enHogwarts.get(prefijo + id);
+            if (c == null && h == null) continue;
+            if (c != null && h != null && huella(id, c) == huella(id, h)) continue;
+            if (pendientes.contains(id)) {
+                enEspera++;
+                continue;
+            }
+            aReparar.add(prefijo + id);
+            if (c != null) {
+                filas.add(new Modelo_Estudiante(prefijo + id, c.getNombre(), c.getApellidos(), c.getCasa(),
+                        c.getCurso(), c.getPatronus()));
+            }
+        }
+        if (!aReparar.isEmpty()) hogwarts.aplicarReplica(aReparar, filas);
+        return new int[]{aReparar.size(), enEspera, enHogwarts.size()};
+    }
+
+    /**
+     * Suma las hojas de la casa en cubetas de {@code ancho} IDs.
+     *
+     * @param hojas Huellas de las hojas, por número de hoja.
+     * @param ancho IDs por cubeta (múltiplo de la hoja).
+     * @param rangos Rangos a incluir, o {@code null} para todos.
+     * @return Huella de cada cubeta no vacía.
+     */
+    private static Map<Long, Huella> agrupar(TreeMap<Long, Huella> hojas, long ancho, List<long[]> rangos) {
+        long hojasPorCubeta = ancho / HOJA;
+        Map<Long, Huella> cubetas = new HashMap<>();
+        Collection<Map.Entry<Long, Huella>> todas = hojas.entrySet();
+        List<Collection<Map.Entry<Long, Huella>>> partes = new ArrayList<>();
+        if (rangos == null) {
+            partes.add(todas);
+        } else {
+            for (long[] rango : rangos) partes.add(hojas.subMap(rango[0] / HOJA, rango[1] / HOJA).entrySet());
+        }
+        for (Collection<Map.Entry<Long, Huella>> parte : partes) {
+            for (Map.Entry<Long, Huella> hoja : parte) {
+                cubetas.merge(hoja.getKey() / hojasPorCubeta, hoja.getValue(), Huella::sumar);
+            }
+        }
+        return cubetas;
+    }
+
+    /**
+     * Huella de una fila: CRC32 (UTF-8) del número de ID y las columnas no nulas separadas por
+     * <code>|</code>, igual que <code>CRC32(CONVERT(CONCAT_WS('|', ...) USING utf8mb4))</code> en MariaDB.
+     *
+     * @param numero Parte numérica del ID.
+     * @param e Estudiante.
+     * @return Valor entre 0 y 2<sup>32</sup> - 1.
+     */
+    static long huella(String numero, Modelo_Estudiante e) {
+        StringBuilder sb = new StringBuilder(numero);
+        for (Object valor : new Object[]{e.getNombre(), e.getApellidos(), e.getCasa(), e.getCurso(), e.getPatronus()}) {
+            if (valor != null) sb.append('|').append(valor);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /** @return El número de un ID de casa, o -1 si no es un número sin ceros a la izquierda. */
+    private static long numeroCanonico(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18 || id.charAt(0) == '0') return -1;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+        }
+        return Long.parseLong(id);
+    }
+
+    /**
+     * Punto de entrada sin interfaz: reconcilia las cuatro casas con Hogwarts y muestra el resultado.
+     *
+     * @param args No se usan.
+     */
+    public static void main(String[] args) {
+        int salida = 0;
+        try {
+            Map<String, Resultado> resultados = reconciliarTodas().join();
+            for (Map.Entry<String, Resultado> r : resultados.entrySet()) {
+                if (r.getValue() == null) {
+                    System.out.println("❌ " + r.getKey() + ": error (ver log)");
+                    salida = 1;
+                } else {
+                    System.out.println("✅ " + r.getValue());
+                }
+            }
+        } finally {
+            Replicador.detener();
+            BaseDAO.shutdown();
+            ConexionBD.cerrarPools();
+        }
+        System.exit(salida);
+    }
+}
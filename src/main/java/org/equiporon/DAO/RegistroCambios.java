@@ -0,0 +1,161 @@
+package org.equiporon.DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Registro de cambios de la tabla ESTUDIANTES de cada base de datos.
+ * <p>
+ * La tabla <code>CAMBIOS</code> guarda una fila por estudiante modificado con la
+ * operación y la versión de su último cambio. Se actualiza dentro de la misma
+ * transacción que la escritura, así que nunca se confirma un cambio sin su anotación.
+ * Los borrados se quedan anotados para que quien lea el registro sepa que debe borrar
+ * la fila. Cuando se sustituye la tabla entera (restaurar un backup) se anota un único
+ * reinicio ({@link #anotarReinicio}): quien lo lea debe volver a leer todo.
+ * <p>
+ * La versión no es un instante del reloj del cliente (los relojes de dos clientes no
+ * son comparables), sino la secuencia <code>CAMBIOS</code> de <code>ID_SECUENCIAS</code>
+ * de la propia base de datos, tomada dentro de la transacción con
+ * {@link GeneradorIds#siguienteEnTransaccion}. Como la fila de la secuencia queda
+ * bloqueada hasta el commit, las versiones se confirman en orden: quien ha visto la
+ * versión <i>v</i> ya puede ver todas las anteriores, y leer "posteriores a <i>v</i>"
+ * no pierde nada sin necesidad de márgenes.
+ * <p>
+ * Permite a los backups incrementales de {@link SQLiteDAO} copiar solo lo que ha
+ * cambiado desde el último punto de control, en lugar de la tabla entera, y al
+ * {@link ObservadorCambios} avisar a la interfaz de los cambios de otros clientes.
+ */
+final class RegistroCambios {
+
+    private static final String DDL = """
+            CREATE TABLE CAMBIOS (
+                id VARCHAR(20) PRIMARY KEY,
+                version DECIMAL(19) NOT NULL,
+                operacion VARCHAR(10) NOT NULL
+            )""";
+
+    private static final String INDICE = "CREATE INDEX IDX_CAMBIOS_VERSION ON CAMBIOS (version)";
+
+    private RegistroCambios() {}
+
+    /** Clave de la secuencia de versiones en <code>ID_SECUENCIAS</code>. */
+    private static final String SECUENCIA = "CAMBIOS";
+
+    /** ID de la fila que anota un reinicio de la tabla (ningún estudiante lo usa). */
+    private static final String ID_REINICIO = "*";
+
+    /** Operación anotada en un reinicio de la tabla. */
+    private static final String REINICIO = "reinicio";
+
+    /** Último cambio de un estudiante. */
+    record Cambio(String id, long version, String operacion) {
+        /** @return {@code true} si la tabla se sustituyó entera y hay que volver a leerla. */
+        boolean reinicio() {
+            return REINICIO.equals(operacion);
+        }
+    }
+
+    /**
+     * Crea la tabla y su secuencia de versiones si faltan, con una conexión propia del pool. Debe
+     * llamarse antes de pedir la conexión de la escritura, igual que
+     * {@link BandejaSalida#reservar(BaseDAO, int)}. La secuencia arranca por encima de la mayor
+     * versión ya anotada, así que sigue siendo comparable con las versiones antiguas.
+     *
+     * @param dao DAO de la base de datos donde se va a escribir.
+     * @throws SQLException Si la tabla o la secuencia no existen y no se pueden crear.
+     */
+    static void preparar(BaseDAO dao) throws SQLException {
+        EsquemaBD.asegurarTabla(dao.getCasa(), dao::getConnection, "CAMBIOS", DDL, INDICE);
+        GeneradorIds.asegurar(dao.getCasa(), SECUENCIA, dao::getConnection, RegistroCambios::maximaVersion);
+    }
+
+    /**
+     * Anota el cambio de varios estudiantes usando la conexión (y transacción) del llamante.
+     * La tabla ya debe existir ({@link #preparar(BaseDAO)}). Desde aquí hasta el commit la
+     * transacción tiene bloqueada la secuencia de versiones, así que debe ser de lo último que
+     * haga la escritura.
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @param operacion "insert", "update" o "delete".
+     * @param ids IDs de los estudiantes afectados.
+     * @throws SQLException Si no se puede anotar (la transacción del llamante debe deshacerse).
+     */
+    static void anotar(Connection conn, String operacion, Collection<String> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+
+        long version = GeneradorIds.siguienteEnTransaccion(conn, SECUENCIA, RegistroCambios::maximaVersion);
+        // DELETE + INSERT: funciona igual en todos los motores, sin depender de MERGE ni de las cuentas del UPDATE
+        try (PreparedStatement del = conn.prepareStatement("DELETE FROM CAMBIOS WHERE id = ?");
+             PreparedStatement ins = conn.prepareStatement(
+                     "INSERT INTO CAMBIOS (id, version, operacion) VALUES (?, ?, ?)")) {
+            for (String id : ids) {
+                del.setString(1, id);
+                del.addBatch();
+                ins.setString(1, id);
+                ins.setLong(2, version);
+                ins.setString(3, operacion);
+                ins.addBatch();
+            }
+            del.executeBatch();
+            ins.executeBatch();
+        }
+    }
+
+    /**
+     * Anota que la tabla entera se ha sustituido, usando la conexión (y transacción) del llamante.
+     * La tabla ya debe existir ({@link #preparar(BaseDAO)}).
+     *
+     * @param conn Conexión de la transacción en curso.
+     * @throws SQLException Si no se puede anotar (la transacción del llamante debe deshacerse).
+     */
+    static void anotarReinicio(Connection conn) throws SQLException {
+        anotar(conn, REINICIO, List.of(ID_REINICIO));
+    }
+
+    private static long maximaVersion(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT MAX(version) FROM CAMBIOS");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * @param fuente Nombre de la base de datos.
+     * @param conn Conexión a esa base de datos.
+     * @return Versión del último cambio anotado, o 0 si no hay ninguno.
+     * @throws SQLException Si falla la consulta.
+     */
+    static long ultimaVersion(String fuente, Connection conn) throws SQLException {
+        EsquemaBD.asegurarTabla(fuente, conn, "CAMBIOS", DDL, INDICE);
+        return maximaVersion(conn);
+    }
+
+    /**
+     * Lee los cambios con versión posterior a la indicada.
+     *
+     * @param fuente Nombre de la base de datos.
+     * @param conn Conexión a esa base de datos.
+     * @param version Versión a partir de la cual leer (exclusiva).
+     * @return Los cambios ordenados por versión.
+     * @throws SQLException Si falla la consulta.
+     */
+    static List<Cambio> leerDesde(String fuente, Connection conn, long version) throws SQLException {
+        EsquemaBD.asegurarTabla(fuente, conn, "CAMBIOS", DDL, INDICE);
+        List<Cambio> cambios = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT id, version, operacion FROM CAMBIOS WHERE version > ? ORDER BY version")) {
+            ps.setLong(1, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    cambios.add(new Cambio(rs.getString(1), rs.getLong(2), rs.getString(3)));
+                }
+            }
+        }
+        return cambios;
+    }
+}
@@ -0,0 +1,60 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de los DAOs de la aplicación: uno por fuente de datos, creado la primera vez que se
+ * pide y compartido durante toda la ejecución.
+ * <p>
+ * Las fuentes salen de {@link FuentesDatos} (configuración), así que una casa nueva tiene su
+ * DAO, su pool ({@link ConexionBD#getPool(String)}), su caché de páginas y sus métricas sin
+ * escribir ninguna clase: todo se indexa por el nombre de la casa. Hogwarts usa
+ * {@link MariaDBDAO} y las casas {@link CasaDAO}. Los DAOs no guardan estado propio, así que
+ * compartirlos entre hilos es seguro.
+ */
+public final class RegistroDAO {
+
+    private static final Map<String, BaseDAO> daos = new ConcurrentHashMap<>();
+    private static final SQLiteDAO backup = new SQLiteDAO();
+
+    private RegistroDAO() {}
+
+    /**
+     * @param casa "Hogwarts" o el nombre de una casa, sin distinguir mayúsculas.
+     * @return El DAO de esa base de datos, o {@code null} si el nombre no es válido.
+     */
+    public static BaseDAO dao(String casa) {
+        FuentesDatos.Fuente fuente = FuentesDatos.fuente(casa);
+        if (fuente == null) return null;
+        BaseDAO dao = daos.get(fuente.nombre());
+        if (dao != null) return dao;
+        return daos.computeIfAbsent(fuente.nombre(),
+                nombre -> nombre.equals(FuentesDatos.HOGWARTS) ? new MariaDBDAO() : new CasaDAO(nombre));
+    }
+
+    /** @return El DAO de la base central. */
+    public static MariaDBDAO hogwarts() {
+        return (MariaDBDAO) dao(FuentesDatos.HOGWARTS);
+    }
+
+    /** @return El DAO de la copia local en SQLite. */
+    public static SQLiteDAO backup() {
+        return backup;
+    }
+
+    /**
+     * Cierra el {@link EjecutorBD}, el {@link DiarioOperaciones} (sincronizándolo con el disco), el
+     * {@link DiarioDeshacer} (esperando a que escriba lo encolado) y los pools de todas las fuentes.
+     * Se llama al salir.
+     */
+    public static void cerrar() {
+        BaseDAO.shutdown();
+        DiarioOperaciones.cerrar();
+        DiarioDeshacer.cerrar();
+        ConexionBD.cerrarPools();
+    }
+}
@@ -0,0 +1,310 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.Metricas.Operacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replicador en segundo plano entre las casas y Hogwarts.
+ * <p>
+ * Vacía periódicamente la {@link BandejaSalida} de cada base de datos:
+ * <ul>
+ *     <li>Casa → Hogwarts: el ID del destino es el de la casa con su prefijo (ej. "GR" + 12).</li>
+ *     <li>Hogwarts → casa: la casa se deduce del prefijo del ID y se le quita al aplicarlo.</li>
+ * </ul>
+ * Las entradas se aplican por lotes: se relee el estado actual de las filas en el origen
+ * y en el destino se borran y reinsertan en una sola transacción, así que reintentar un
+ * lote es idempotente. Si un lote falla se reintenta entrada a entrada para aislar la que
+ * da problemas, y las que superan <code>replicacion.intentos</code> pasan a la cola de fallidos.
+ * <p>
+ * Solo cuentan como intento los fallos que dependen de los datos. Si se pierde la conexión con
+ * el origen o el destino ({@link #esCaida}), las entradas se quedan como estaban y se espera cada
+ * vez más entre pasadas (hasta un minuto), así que una caída larga no vacía la bandeja en la cola
+ * de fallidos. El retraso de replicación de cada origen (antigüedad de la entrada pendiente más
+ * vieja) se puede consultar con {@link #getRetrasoMs(String)}, y sigue creciendo durante la caída.
+ * <p>
+ * El hilo del replicador solo programa las pasadas: cada origen se vacía en el
+ * {@link EjecutorBD} con prioridad {@link EjecutorBD.Prioridad#REPLICACION}.
+ */
+public final class Replicador {
+
+    private static final Logger logger = LoggerFactory.getLogger(Replicador.class);
+
+    private static final List<String> FUENTES = FuentesDatos.bases();
+
+    private static final int LOTE = Math.max(1, Config.getInt("replicacion.lote", 200));
+    private static final int MAX_INTENTOS = Math.max(1, Config.getInt("replicacion.intentos", 20));
+    private static final long PERIODO_MS = Math.max(100, Config.getInt("replicacion.periodo", 1000));
+    private static final long ESPERA_MAX_MS = 60_000;
+
+    private static ScheduledExecutorService hilo;
+    private static final AtomicBoolean avisoPendiente = new AtomicBoolean();
+
+    /** Instante (ms) de la entrada pendiente más vieja de cada origen, según su última lectura (-1 si vacía). */
+    private static final Map<String, Long> pendienteDesde = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> fallosSeguidos = new ConcurrentHashMap<>();
+    private static final Map<String, Long> noAntesDe = new ConcurrentHashMap<>();
+    private static final Set<String> drenando = ConcurrentHashMap.newKeySet();
+    private static final LongAdder replicadas = new LongAdder();
+    private static final LongAdder fallidas = new LongAdder();
+
+    static {
+        Metricas.indicador("Replicador", "replicacion", "replicadas", replicadas::sum);
+        Metricas.indicador("Replicador", "replicacion", "fallidas", fallidas::sum);
+        for (String fuente : FUENTES) {
+            Metricas.indicador("Replicador", "replicacion", "retrasoMs" + fuente, () -> getRetrasoMs(fuente));
+        }
+    }
+
+    private Replicador() {}
+
+    /**
+     * Arranca el hilo del replicador si todavía no está en marcha.
+     */
+    public static synchronized void iniciar() {
+        if (hilo != null) return;
+        ScheduledThreadPoolExecutor ejecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "replicador");
+            t.setDaemon(true);
+            return t;
+        });
+        Metricas.ejecutor("replicador", ejecutor);
+        hilo = ejecutor;
+        hilo.scheduleWithFixedDelay(Replicador::drenarTodo, PERIODO_MS, PERIODO_MS, TimeUnit.MILLISECONDS);
+        logger.info("🔁 Replicador iniciado (lote {}, cada {} ms).", LOTE, PERIODO_MS);
+    }
+
+    /**
+     * Pide una pasada inmediata del replicador (se llama tras cada escritura confirmada).
+     * Varias llamadas seguidas se agrupan en una sola pasada.
+     */
+    public static void avisar() {
+        iniciar();
+        if (avisoPendiente.compareAndSet(false, true)) {
+            try {
+                hilo.execute(() -> {
+                    avisoPendiente.set(false);
+                    drenarTodo();
+                });
+            } catch (RejectedExecutionException ex) {
+                avisoPendiente.set(false);
+            }
+        }
+    }
+
+    /**
+     * Detiene el replicador dando unos segundos para terminar la pasada en curso.
+     * Lo que quede pendiente sigue en las bandejas y se replicará en el próximo arranque.
+     */
+    public static synchronized void detener() {
+        if (hilo == null) return;
+        hilo.shutdown();
+        try {
+            hilo.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        hilo = null;
+        logger.info("🧹 Replicador detenido ({} replicadas, {} fallidas).", replicadas.sum(), fallidas.sum());
+    }
+
+    /**
+     * @param fuente Base de datos de origen (ej. "Gryffindor" o "Hogwarts").
+     * @return Antigüedad en ms de su entrada pendiente más vieja (0 si está al día).
+     */
+    public static long getRetrasoMs(String fuente) {
+        long desde = pendienteDesde.getOrDefault(fuente, -1L);
+        return desde < 0 ? 0 : Math.max(0, System.currentTimeMillis() - desde);
+    }
+
+    /** @return Entradas replicadas desde el arranque. */
+    public static long getReplicadas() { return replicadas.sum(); }
+
+    /** @return Entradas movidas a la cola de fallidos desde el arranque. */
+    public static long getFallidas() { return fallidas.sum(); }
+
+    // ============================================================
+    // === INTERNOS ===============================================
+    // ============================================================
+
+    /**
+     * Lanza el vaciado de cada origen en el {@link EjecutorBD}, en el compartimento de esa
+     * casa y con prioridad de replicación, para que no quite huecos al trabajo del usuario.
+     * Un origen que todavía se está vaciando de la pasada anterior se salta.
+     */
+    private static void drenarTodo() {
+        for (String fuente : FUENTES) {
+            if (System.currentTimeMillis() < noAntesDe.getOrDefault(fuente, 0L)) continue;
+            if (!drenando.add(fuente)) continue;
+            EjecutorBD.ejecutar(fuente, EjecutorBD.Prioridad.REPLICACION, () -> drenarConEspera(fuente))
+                    .whenComplete((v, ex) -> {
+                        drenando.remove(fuente);
+                        if (ex != null) logger.debug("Pasada de replicación desde {} no lanzada: {}", fuente, ex.getMessage());
+                    });
+        }
+    }
+
+    /** Vacía un origen; si falla, lo deja en espera cada vez más tiempo. */
+    private static void drenarConEspera(String fuente) {
+        try {
+            drenar(fuente);
+            fallosSeguidos.remove(fuente);
+            noAntesDe.remove(fuente);
+        } catch (Exception ex) {
+            int fallos = fallosSeguidos.merge(fuente, 1, Integer::sum);
+            long espera = Math.min(ESPERA_MAX_MS, PERIODO_MS << Math.min(fallos, 16));
+            noAntesDe.put(fuente, System.currentTimeMillis() + espera);
+            logger.warn("⚠️ Replicación desde {} detenida {} ms: {}", fuente, espera, ex.getMessage());
+        }
+    }
+
+    private static void drenar(String fuente) throws SQLException {
+        BaseDAO origen = BaseDAO.daoDeCasa(fuente);
+        try (Connection conn = origen.getConnection()) {
+            if (conn == null) throw new SQLTransientConnectionException("Sin conexión con " + fuente);
+
+            try {
+                while (true) {
+                    List<BandejaSalida.Entrada> entradas = BandejaSalida.leer(fuente, conn, LOTE);
+                    if (entradas.isEmpty()) break;
+
+                    // Agrupar por base de datos de destino
+                    Map<String, List<BandejaSalida.Entrada>> porDestino = new LinkedHashMap<>();
+                    List<BandejaSalida.Entrada> sinDestino = new ArrayList<>();
+                    for (BandejaSalida.Entrada e : entradas) {
+                        String destino = destinoDe(fuente, e.idEstudiante());
+                        if (destino == null) sinDestino.add(e);
+                        else porDestino.computeIfAbsent(destino, d -> new ArrayList<>()).add(e);
+                    }
+                    if (!sinDestino.isEmpty()) {
+                        logger.warn("⚠️ {} entradas de {} sin casa de destino; se descartan.", sinDestino.size(), fuente);
+                        BandejaSalida.eliminar(conn, sinDestino);
+                    }
+
+                    for (Map.Entry<String, List<BandejaSalida.Entrada>> grupo : porDestino.entrySet()) {
+                        aplicarGrupo(fuente, origen, conn, grupo.getKey(), grupo.getValue());
+                    }
+
+                    if (entradas.size() < LOTE) break;
+                }
+            } finally {
+                medirRetraso(fuente, conn);
+            }
+        }
+    }
+
+    /**
+     * Relee la entrada pendiente más vieja del origen, haya ido bien la pasada o no (con el destino
+     * caído es justo cuando más crece el retraso). Si tampoco se puede leer, se conserva la anterior.
+     */
+    private static void medirRetraso(String fuente, Connection conn) {
+        try {
+            pendienteDesde.put(fuente, BandejaSalida.masAntigua(conn));
+        } catch (SQLException ex) {
+            logger.debug("No se pudo medir el retraso de replicación de {}: {}", fuente, ex.getMessage());
+        }
+    }
+
+    /**
+     * Aplica en el destino un grupo de entradas. Si el lote falla por algo distinto a
+     * una caída de conexión, se reintenta entrada a entrada y se anota el intento a las que
+     * fallen solas. Una caída no se anota: se propaga para que el origen espere.
+     */
+    private static void aplicarGrupo(String fuente, BaseDAO origen, Connection connOrigen,
+                                     String destino, List<BandejaSalida.Entrada> grupo) throws SQLException {
+        try {
+            aplicar(fuente, origen, connOrigen, destino, grupo);
+        } catch (SQLException ex) {
+            if (esCaida(ex)) throw ex;
+            if (grupo.size() == 1) {
+                anotarFallo(fuente, connOrigen, grupo, ex);
+                return;
+            }
+            logger.debug("Lote {} → {} fallido, reintentando por entradas: {}", fuente, destino, ex.getMessage());
+            for (BandejaSalida.Entrada e : grupo) {
+                aplicarGrupo(fuente, origen, connOrigen, destino, List.of(e));
+            }
+        }
+    }
+
+    private static void aplicar(String fuente, BaseDAO origen, Connection connOrigen,
+                                String destino, List<BandejaSalida.Entrada> grupo) throws SQLException {
+        long inicio = System.nanoTime();
+        Set<String> ids = new LinkedHashSet<>();
+        for (BandejaSalida.Entrada e : grupo) ids.add(e.idEstudiante());
+
+        // Estado actual en el origen: si la fila ya no existe, se borra en el destino
+        Map<String, Modelo_Estudiante> actuales = origen.obtenerPorIds(connOrigen, ids);
+
+        List<String> idsDestino = new ArrayList<>(ids.size());
+        List<Modelo_Estudiante> filasDestino = new ArrayList<>(actuales.size());
+        for (String id : ids) {
+            String idDestino = idEnDestino(fuente, id);
+            idsDestino.add(idDestino);
+            Modelo_Estudiante e = actuales.get(id);
+            if (e != null) {
+                filasDestino.add(new Modelo_Estudiante(idDestino, e.getNombre(), e.getApellidos(),
+                        e.getCasa(), e.getCurso(), e.getPatronus()));
+            }
+        }
+
+        try {
+            BaseDAO.daoDeCasa(destino).aplicarReplica(idsDestino, filasDestino);
+        } catch (SQLException ex) {
+            Metricas.registrar(Operacion.SINCRONIZAR, destino, inicio, false, 0);
+            throw ex;
+        }
+        Metricas.registrar(Operacion.SINCRONIZAR, destino, inicio, true, grupo.size());
+        BandejaSalida.eliminar(connOrigen, grupo);
+        replicadas.add(grupo.size());
+        logger.info("🔄 {} → {} ({} cambios replicados).", fuente, destino, grupo.size());
+    }
+
+    private static void anotarFallo(String fuente, Connection connOrigen, List<BandejaSalida.Entrada> grupo,
+                                    SQLException causa) throws SQLException {
+        int muertas = BandejaSalida.anotarFallo(connOrigen, grupo, causa.getMessage(), MAX_INTENTOS);
+        if (muertas > 0) {
+            fallidas.add(muertas);
+            logger.error("❌ {} cambios de {} movidos a BANDEJA_FALLIDOS: {}", muertas, fuente, causa.getMessage());
+        }
+    }
+
+    /**
+     * @return {@code true} si el error (o alguna de sus causas) es de conexión: las clases
+     * transitoria y no transitoria de JDBC, la recuperable de Oracle o un SQLState <code>08xxx</code>.
+     */
+    static boolean esCaida(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException) return true;
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    /** @return La base de datos donde se replica un cambio, o {@code null} si no tiene destino. */
+    private static String destinoDe(String fuente, String id) {
+        if (!fuente.equals("Hogwarts")) return "Hogwarts";
+        if (id == null || id.length() < 3) return null;
+        return BaseDAO.casaDePrefijo(id.substring(0, 2));
+    }
+
+    private static String idEnDestino(String fuente, String id) {
+        if (fuente.equals("Hogwarts")) return id.substring(2);
+        return BaseDAO.daoDeCasa(fuente).getPrefijoCasa() + id;
+    }
+}
@@ -1,13 +1,20 @@
 package org.equiporon.DAO;
 
+import org.equiporon.Conexion.Config;
 import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
 import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.Metricas.Operacion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 /**
  *
  * DAO de la base de datos de Hogwarts en local con SQLite
@@ -16,7 +23,8 @@ import java.sql.ResultSet;
  * con la base de datos SQLite.
  *
  * Incluye métodos para crear la tabla, insertar, obtener,
- * actualizar y eliminar registros de estudiantes.
+ * actualizar y eliminar registros de estudiantes, y para hacer backups
+ * completos o incrementales (a partir de la tabla CAMBIOS de Hogwarts).
  *
  * @author Diego, Unai, Gaizka, Ruben, Igor
  */
@@ -24,6 +32,16 @@ public class SQLiteDAO extends BaseDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(SQLiteDAO.class);
 
+    /** Filas por executeBatch al restaurar (clave <code>restauracion.lote</code>). */
+    private static final int LOTE_RESTAURACION = Math.max(1, Config.getInt("restauracion.lote", 1_000));
+
+    /**
+     * Clave del punto de control en la tabla BACKUP_ESTADO de SQLite. Guarda una versión de
+     * <code>CAMBIOS</code>; los puntos antiguos ("hogwarts.cambios") eran instantes en ms y no
+     * se reutilizan, así que el primer backup tras actualizar es completo.
+     */
+    private static final String CLAVE_PUNTO_CONTROL = "hogwarts.version";
+
     @Override
     protected String getCasa() {
         return "Backup";
@@ -36,10 +54,11 @@ public class SQLiteDAO extends BaseDAO {
 
     /** 🔁 Sincroniza los datos de Hogwarts a SQLite */
     public boolean sincronizarDesdeHogwarts(Modelo_Estudiante e, String tipo) {
+        long inicio = System.nanoTime();
         try (Connection conn = getConnection()) {
             if (conn == null) {
                 logger.error("❌ No hay conexión a SQLite.");
-                return false;
+                return medir(Operacion.SINCRONIZAR, inicio, false);
             }
 
             switch (tipo.toLowerCase()) {
@@ -47,10 +66,10 @@ public class SQLiteDAO extends BaseDAO {
                 case "update" -> editarBackup(conn, e);
                 case "delete" -> borrarBackup(conn, e.getId());
             }
-            return true;
+            return medir(Operacion.SINCRONIZAR, inicio, true);
         } catch (Exception ex) {
             logger.error("⚠️ Error sincronizando con SQLite.", ex);
-            return false;
+            return medir(Operacion.SINCRONIZAR, inicio, false);
         }
     }
 
@@ -122,15 +141,25 @@ public class SQLiteDAO extends BaseDAO {
      *<br>
      * El metodo borra todos los registros existentes en la tabla ESTUDIANTES
      * de la base de datos SQLite y, a continuación, copia todos los registros
-     * desde la base de datos principal (MariaDB) a SQLite.
+     * desde la base de datos principal (MariaDB) a SQLite, en una sola transacción.
+     * Guarda además el punto de control a partir del cual {@link #hacerBackupInstantaneo()}
+     * copiará solo los cambios.
      *
      * @author Gaizka
      */
     public void hacerBackupCompleto() {
+        long inicio = System.currentTimeMillis();
+        long inicioNanos = System.nanoTime();
+        boolean ok = false;
+        int filas = 0;
         try (Connection connSqlite = getConnection();
              Connection connMaria = ConexionBD.getConnection()) {
 
             if (connSqlite == null || connMaria == null) return;
+            connSqlite.setAutoCommit(false);
+
+            // 0️⃣ Versión de Hogwarts antes de copiar: lo confirmado después se repasará en el incremental
+            long version = RegistroCambios.ultimaVersion("Hogwarts", connMaria);
 
             // 1️⃣ Vaciar SQLite
             try (PreparedStatement del = connSqlite.prepareStatement("DELETE FROM ESTUDIANTES")) {
@@ -152,13 +181,21 @@ public class SQLiteDAO extends BaseDAO {
                         ins.setInt(5, rs.getInt("curso"));
                         ins.setString(6, rs.getString("patronus"));
                         ins.addBatch();
+                        filas++;
                     }
                     ins.executeBatch();
                 }
             }
-            logger.info("💾 Backup completo realizado en SQLite.");
+
+            // 3️⃣ Punto de control para los backups incrementales
+            guardarPuntoControl(connSqlite, version);
+            connSqlite.commit();
+            ok = true;
+            logger.info("💾 Backup completo realizado en SQLite ({} ms).", System.currentTimeMillis() - inicio);
         } catch (Exception e) {
             logger.error("⚠️ Error haciendo backup en SQLite.", e);
+        } finally {
+            Metricas.registrar(Operacion.BACKUP, getCasa(), inicioNanos, ok, filas);
         }
     }
 
@@ -169,161 +206,316 @@ public class SQLiteDAO extends BaseDAO {
      * Si 'casaARevertir' es "Hogwarts", restaura también las 4 casas.
      * Si 'casaARevertir' es una casa específica, solo restaura esa casa.
      *<br>
+     * Espera a que termine {@link #restaurarBackupAsync(String)}; desde la interfaz
+     * debe usarse la versión asíncrona.
+     *<br>
      * @param casaARevertir Indica el alcance de la restauración ("Hogwarts" para total,
      * o el nombre de una casa para parcial).
+     * @return Mapa casa → {@code true} si se restauró; vacío si no se pudo leer el backup.
      *
      * @author Gaizka
      */
-    public void restaurarBackupEnHogwarts(String casaARevertir) {
-        try (Connection connSqlite = getConnection()) {
-            if (connSqlite == null) {
-                logger.error("❌ No hay conexión a SQLite.");
-                return;
-            }
+    public Map<String, Boolean> restaurarBackupEnHogwarts(String casaARevertir) {
+        return restaurarBackupAsync(casaARevertir).join();
+    }
 
-            // Recuperamos todos los estudiantes del backup
-            String select = "SELECT * FROM ESTUDIANTES";
-            try (PreparedStatement ps = connSqlite.prepareStatement(select);
-                 ResultSet rs = ps.executeQuery()) {
+    /**
+     * Restaura desde el backup de SQLite sin bloquear al llamante.
+     *<br>
+     * El backup se lee una sola vez y se reparte por casa (quitando el prefijo del ID
+     * para las casas). Después cada base de datos se restaura en paralelo, en el compartimento
+     * de su casa del {@link EjecutorBD} y en una sola transacción ({@link #restaurarCasa}): si una
+     * falla, esa se deshace y conserva sus datos, sin afectar a las demás. Al final se registra
+     * el tiempo de cada una.
+     *
+     * @param casaARevertir "Hogwarts" para restaurar todo, o el nombre de una casa.
+     * @return Un {@link CompletableFuture} con el mapa casa → {@code true} si se restauró
+     * (vacío si no se pudo leer el backup). Nunca termina con error.
+     */
+    public CompletableFuture<Map<String, Boolean>> restaurarBackupAsync(String casaARevertir) {
+        long inicio = System.currentTimeMillis();
+        boolean total = casaARevertir.equalsIgnoreCase("Hogwarts");
+
+        return EjecutorBD.enviar(getCasa(), EjecutorBD.Prioridad.ESCRITURA, this::leerBackup)
+                .thenCompose(lista -> {
+                    Map<String, List<Modelo_Estudiante>> porCasa = repartirPorCasa(lista, casaARevertir);
+
+                    // 🧩 Restaurar cada base de datos en paralelo, cada una en su compartimento
+                    Map<String, CompletableFuture<Long>> tareas = new LinkedHashMap<>();
+                    for (Map.Entry<String, List<Modelo_Estudiante>> entrada : porCasa.entrySet()) {
+                        String casa = entrada.getKey();
+                        tareas.put(casa, EjecutorBD.enviar(casa, EjecutorBD.Prioridad.ESCRITURA, () -> restaurarCasa(casa, entrada.getValue()))
+                                .exceptionally(ex -> {
+                                    logger.error("❌ Error restaurando {} desde SQLite.", casa, ex);
+                                    return -1L;
+                                }));
+                    }
 
-                java.util.List<Modelo_Estudiante> lista = new java.util.ArrayList<>();
-                while (rs.next()) {
-                    Modelo_Estudiante e = new Modelo_Estudiante(
-                            rs.getString("id"),
-                            rs.getString("nombre"),
-                            rs.getString("apellidos"),
-                            rs.getString("casa"),
-                            rs.getInt("curso"),
-                            rs.getString("patronus")
-                    );
-                    lista.add(e);
-                }
+                    return CompletableFuture.allOf(tareas.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+                        Map<String, Boolean> resultado = new LinkedHashMap<>();
+                        StringBuilder tiempos = new StringBuilder();
+                        for (Map.Entry<String, CompletableFuture<Long>> tarea : tareas.entrySet()) {
+                            long ms = tarea.getValue().join();
+                            resultado.put(tarea.getKey(), ms >= 0);
+                            tiempos.append(tarea.getKey()).append(ms >= 0 ? "=" + ms + "ms " : "=ERROR ");
+                        }
+                        logger.info("♻️ Restauración {} desde SQLite en {} ms: {}",
+                                total ? "completa" : "parcial (" + casaARevertir + ")",
+                                System.currentTimeMillis() - inicio, tiempos.toString().trim());
+                        return resultado;
+                    });
+                })
+                .exceptionally(ex -> {
+                    logger.error("⚠️ Error leyendo el backup de SQLite.", ex);
+                    return Map.of();
+                });
+    }
 
-                // 🧩 Restaurar Hogwarts siempre
-                restaurarCasa("Hogwarts", ConexionBD.getConnection(), lista);
-
-                // 🧩 Si se restauró desde Hogwarts → sincronizar TODAS las casas
-                if (casaARevertir.equalsIgnoreCase("Hogwarts")) {
-                    restaurarCasa("Gryffindor", ConexionBD.conectarCasa("Gryffindor"), lista);
-                    restaurarCasa("Hufflepuff", ConexionBD.conectarCasa("Hufflepuff"), lista);
-                    restaurarCasa("Slytherin", ConexionBD.conectarCasa("Slytherin"), lista);
-                    restaurarCasa("Ravenclaw", ConexionBD.conectarCasa("Ravenclaw"), lista);
-                    logger.info("♻️ Restauración completa (Hogwarts + todas las casas) desde SQLite.");
-                } else {
-                    // 🧩 Si se restauró desde una casa → solo esa
-                    switch (casaARevertir.toLowerCase()) {
-                        case "gryffindor" -> restaurarCasa("Gryffindor", ConexionBD.conectarCasa("Gryffindor"), lista);
-                        case "hufflepuff" -> restaurarCasa("Hufflepuff", ConexionBD.conectarCasa("Hufflepuff"), lista);
-                        case "slytherin" -> restaurarCasa("Slytherin", ConexionBD.conectarCasa("Slytherin"), lista);
-                        case "ravenclaw" -> restaurarCasa("Ravenclaw", ConexionBD.conectarCasa("Ravenclaw"), lista);
-                    }
-                    logger.info("♻️ Restauración parcial ({}) desde SQLite.", casaARevertir);
-                }
+    /** Lee todas las filas del backup de SQLite. */
+    private List<Modelo_Estudiante> leerBackup() throws SQLException {
+        List<Modelo_Estudiante> lista = new ArrayList<>();
+        try (Connection connSqlite = getConnection()) {
+            if (connSqlite == null) throw new SQLException("No hay conexión a SQLite.");
 
+            String select = "SELECT id, nombre, apellidos, casa, curso, patronus FROM ESTUDIANTES";
+            try (PreparedStatement ps = connSqlite.prepareStatement(select);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) lista.add(mapearFila(rs));
             }
-        } catch (Exception e) {
-            logger.error("⚠️ Error restaurando desde SQLite.", e);
         }
+        return lista;
+    }
+
+    /**
+     * Reparte el backup entre Hogwarts (todas las filas) y las casas a restaurar
+     * (sus filas, con el ID sin prefijo).
+     */
+    private static Map<String, List<Modelo_Estudiante>> repartirPorCasa(List<Modelo_Estudiante> lista, String casaARevertir) {
+        Map<String, List<Modelo_Estudiante>> porCasa = new LinkedHashMap<>();
+        porCasa.put("Hogwarts", lista);
+        boolean total = casaARevertir.equalsIgnoreCase("Hogwarts");
+        for (String casa : FuentesDatos.casas()) {
+            if (total || casa.equalsIgnoreCase(casaARevertir)) porCasa.put(casa, new ArrayList<>());
+        }
+        for (Modelo_Estudiante e : lista) {
+            FuentesDatos.Fuente fuente = FuentesDatos.fuente(e.getCasa());
+            if (fuente == null || fuente.nombre().equals(FuentesDatos.HOGWARTS)) continue;
+            List<Modelo_Estudiante> destino = porCasa.get(fuente.nombre());
+            if (destino == null) continue;
+            // 🧩 En las casas el ID va sin prefijo
+            String id = e.getId().startsWith(fuente.prefijo()) ? e.getId().substring(fuente.prefijo().length()) : e.getId();
+            destino.add(new Modelo_Estudiante(id, e.getNombre(), e.getApellidos(), e.getCasa(), e.getCurso(), e.getPatronus()));
+        }
+        return porCasa;
     }
 
 
     /**
      * 💾 Realiza un backup instantáneo del estado actual de Hogwarts (MariaDB)
      * justo antes de una operación, para poder deshacer siempre.
+     *<br>
+     * Es incremental: lee en la tabla <code>CAMBIOS</code> de Hogwarts los estudiantes modificados
+     * desde el último punto de control y copia solo esas filas (o las borra si ya no existen), así
+     * que su coste depende de los cambios y no del tamaño de la tabla. El punto de control es la
+     * última versión de <code>CAMBIOS</code> copiada; las versiones salen de una secuencia de la base
+     * de datos que se confirma en orden, así que no hace falta volver a leer ningún margen.
+     *<br>
+     * Si todavía no hay punto de control, o Hogwarts se ha restaurado desde entonces (reinicio en
+     * <code>CAMBIOS</code>), hace un {@link #hacerBackupCompleto()}.
      */
     public void hacerBackupInstantaneo() {
+        long inicio = System.currentTimeMillis();
+        long inicioNanos = System.nanoTime();
+        boolean necesitaCompleto = false;
+
         try (Connection connSqlite = getConnection();
              Connection connMaria = ConexionBD.getConnection()) {
 
             if (connSqlite == null || connMaria == null) return;
 
-            // 1️⃣ Vaciar SQLite
-            try (PreparedStatement del = connSqlite.prepareStatement("DELETE FROM ESTUDIANTES")) {
-                del.executeUpdate();
-            }
-
-            // 2️⃣ Copiar todos los registros actuales desde MariaDB a SQLite
-            String select = "SELECT * FROM ESTUDIANTES";
-            try (PreparedStatement ps = connMaria.prepareStatement(select);
-                 ResultSet rs = ps.executeQuery()) {
-
-                String insert = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement ins = connSqlite.prepareStatement(insert)) {
-                    while (rs.next()) {
-                        ins.setString(1, rs.getString("id"));
-                        ins.setString(2, rs.getString("nombre"));
-                        ins.setString(3, rs.getString("apellidos"));
-                        ins.setString(4, rs.getString("casa"));
-                        ins.setInt(5, rs.getInt("curso"));
-                        ins.setString(6, rs.getString("patronus"));
-                        ins.addBatch();
+            long punto = leerPuntoControl(connSqlite);
+            if (punto < 0) {
+                necesitaCompleto = true;
+            } else {
+                // 1️⃣ Estudiantes cambiados en Hogwarts desde el último punto de control
+                Set<String> ids = new LinkedHashSet<>();
+                long version = punto;
+                for (RegistroCambios.Cambio c : RegistroCambios.leerDesde("Hogwarts", connMaria, punto)) {
+                    if (c.reinicio()) necesitaCompleto = true;
+                    ids.add(c.id());
+                    version = Math.max(version, c.version());
+                }
+                // Tras una restauración de Hogwarts hay que copiarla entera
+                if (!necesitaCompleto) {
+                    // 2️⃣ Estado actual de esas filas (las que falten se han borrado)
+                    Map<String, Modelo_Estudiante> actuales = RegistroDAO.hogwarts().obtenerPorIds(connMaria, ids);
+
+                    // 3️⃣ Aplicarlas en SQLite junto con el nuevo punto de control
+                    connSqlite.setAutoCommit(false);
+                    try (PreparedStatement del = connSqlite.prepareStatement("DELETE FROM ESTUDIANTES WHERE id=?");
+                         PreparedStatement ins = connSqlite.prepareStatement(
+                                 "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)")) {
+                        for (String id : ids) {
+                            del.setString(1, id);
+                            del.addBatch();
+                            Modelo_Estudiante e = actuales.get(id);
+                            if (e != null) {
+                                ins.setString(1, e.getId());
+                                ins.setString(2, e.getNombre());
+                                ins.setString(3, e.getApellidos());
+                                ins.setString(4, e.getCasa());
+                                ins.setInt(5, e.getCurso());
+                                ins.setString(6, e.getPatronus());
+                                ins.addBatch();
+                            }
+                        }
+                        del.executeBatch();
+                        ins.executeBatch();
                     }
-                    ins.executeBatch();
+                    guardarPuntoControl(connSqlite, version);
+                    connSqlite.commit();
+
+                    logger.info("💾 Backup instantáneo hecho antes de la operación ({} cambios, {} ms).",
+                            ids.size(), System.currentTimeMillis() - inicio);
+                    Metricas.registrar(Operacion.BACKUP, getCasa(), inicioNanos, true, ids.size());
                 }
             }
-
-            logger.info("💾 Backup instantáneo hecho antes de la operación.");
         } catch (Exception e) {
             logger.error("⚠️ Error haciendo backup instantáneo.", e);
+            Metricas.registrar(Operacion.BACKUP, getCasa(), inicioNanos, false, 0);
+        }
+
+        if (necesitaCompleto) hacerBackupCompleto();
+    }
+
+    /**
+     * Lee el punto de control del último backup (versión de <code>CAMBIOS</code>) guardado en SQLite.
+     *
+     * @param conn Conexión a SQLite.
+     * @return El punto de control, o -1 si todavía no se ha hecho ningún backup completo.
+     * @throws SQLException Si falla la consulta.
+     */
+    private long leerPuntoControl(Connection conn) throws SQLException {
+        prepararEstado(conn);
+        try (PreparedStatement ps = conn.prepareStatement("SELECT valor FROM BACKUP_ESTADO WHERE clave = ?")) {
+            ps.setString(1, CLAVE_PUNTO_CONTROL);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Guarda el punto de control del backup en SQLite (dentro de la transacción en curso).
+     *
+     * @param conn Conexión a SQLite.
+     * @param version Versión de <code>CAMBIOS</code> hasta la que el backup está al día.
+     * @throws SQLException Si falla la escritura.
+     */
+    private void guardarPuntoControl(Connection conn, long version) throws SQLException {
+        prepararEstado(conn);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT OR REPLACE INTO BACKUP_ESTADO (clave, valor) VALUES (?, ?)")) {
+            ps.setString(1, CLAVE_PUNTO_CONTROL);
+            ps.setLong(2, version);
+            ps.executeUpdate();
         }
     }
 
+    private void prepararEstado(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS BACKUP_ESTADO (clave TEXT PRIMARY KEY, valor INTEGER)");
+        }
+    }
 
     /**
-     * Restaura una casa específica desde la lista de estudiantes del backup.
+     * Restaura una base de datos con los estudiantes que le corresponden del backup.
+     *<br>
+     * Vacía la tabla e inserta las filas en bloques de <code>restauracion.lote</code>,
+     * todo en una única transacción: si algo falla se deshace y la base de datos
+     * queda como estaba, en lugar de vacía. Registra el progreso tras cada bloque.
      *<br>
-     * Restaura una casa específica desde la lista de estudiantes del backup,
-     * insertando solo los que pertenecen a esa casa.
+     * En la misma transacción anota un reinicio en <code>CAMBIOS</code>, para que los observadores,
+     * las vistas guardadas y el backup incremental de otros clientes vuelvan a leer la tabla
+     * entera, y vacía la <code>BANDEJA_SALIDA</code> de esa base de datos, cuyas entradas hablan
+     * de filas que ya no están así y no deben replicarse sobre las restauradas.
+     *
+     * @param nombreCasa Base de datos a restaurar ("Hogwarts" o una casa).
+     * @param lista Estudiantes a dejar en esa base de datos, con el ID ya en su formato.
+     * @return Tiempo empleado en ms.
+     * @throws SQLException Si no hay conexión o falla la restauración (ya deshecha).
      *
      * @author Gaizka
      */
-    private void restaurarCasa(String nombreCasa, Connection conn, java.util.List<Modelo_Estudiante> lista) {
-        if (conn == null) {
-            logger.warn("⚠️ No hay conexión para {}", nombreCasa);
-            return;
-        }
+    private long restaurarCasa(String nombreCasa, List<Modelo_Estudiante> lista) throws SQLException {
+        long inicio = System.currentTimeMillis();
+        long inicioNanos = System.nanoTime();
 
+        // Tablas y secuencia con conexiones propias, antes de ocupar la de la restauración
+        BaseDAO dao = BaseDAO.daoDeCasa(nombreCasa);
         try {
-            // 🔸 1. Vaciar tabla
-            try (PreparedStatement del = conn.prepareStatement("DELETE FROM ESTUDIANTES")) {
-                del.executeUpdate();
+            RegistroCambios.preparar(dao);
+            BandejaSalida.preparar(dao);
+        } catch (SQLException ex) {
+            Metricas.registrar(Operacion.RESTAURAR, nombreCasa, inicioNanos, false, 0);
+            throw ex;
+        }
+
+        try (Connection conn = ConexionBD.conectarCasa(nombreCasa)) {
+            if (conn == null) {
+                Metricas.registrar(Operacion.RESTAURAR, nombreCasa, inicioNanos, false, 0);
+                throw new SQLException("No hay conexión para " + nombreCasa);
             }
+            conn.setAutoCommit(false);
 
-            // 🔸 2. Insertar solo los estudiantes de esa casa
-            String insert = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement ins = conn.prepareStatement(insert)) {
-
-                for (Modelo_Estudiante e : lista) {
-                    boolean esMariaDB = nombreCasa.equalsIgnoreCase("Hogwarts");
-                    boolean coincideCasa =
-                            esMariaDB ||
-                                    (nombreCasa.equalsIgnoreCase("Gryffindor") && e.getCasa().equalsIgnoreCase("Gryffindor")) ||
-                                    (nombreCasa.equalsIgnoreCase("Hufflepuff") && e.getCasa().equalsIgnoreCase("Hufflepuff")) ||
-                                    (nombreCasa.equalsIgnoreCase("Slytherin") && e.getCasa().equalsIgnoreCase("Slytherin")) ||
-                                    (nombreCasa.equalsIgnoreCase("Ravenclaw") && e.getCasa().equalsIgnoreCase("Ravenclaw"));
-
-                    if (!coincideCasa) continue;
-
-                    // 🧩 Ajustar ID solo si no es Hogwarts
-                    String id = e.getId();
-                    if (!esMariaDB) id = id.replaceAll("^(GR|HF|RV|SL)", "");
-
-                    ins.setString(1, id);
-                    ins.setString(2, e.getNombre());
-                    ins.setString(3, e.getApellidos());
-                    ins.setString(4, e.getCasa());
-                    ins.setInt(5, e.getCurso());
-                    ins.setString(6, e.getPatronus());
-                    ins.addBatch();
+            try {
+                // 🔸 1. Vaciar tabla
+                try (PreparedStatement del = conn.prepareStatement("DELETE FROM ESTUDIANTES")) {
+                    del.executeUpdate();
                 }
 
-                ins.executeBatch();
-            }
-
-            logger.info("✅ Restaurada la casa {} desde SQLite.", nombreCasa);
+                // 🔸 2. Insertar por bloques
+                String insert = "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)";
+                try (PreparedStatement ins = conn.prepareStatement(insert)) {
+                    int pendientes = 0;
+                    int hechas = 0;
+                    for (Modelo_Estudiante e : lista) {
+                        ins.setString(1, e.getId());
+                        ins.setString(2, e.getNombre());
+                        ins.setString(3, e.getApellidos());
+                        ins.setString(4, e.getCasa());
+                        ins.setInt(5, e.getCurso());
+                        ins.setString(6, e.getPatronus());
+                        ins.addBatch();
+                        if (++pendientes == LOTE_RESTAURACION) {
+                            ins.executeBatch();
+                            hechas += pendientes;
+                            pendientes = 0;
+                            logger.info("♻️ {}: {}/{} filas restauradas.", nombreCasa, hechas, lista.size());
+                        }
+                    }
+                    if (pendientes > 0) ins.executeBatch();
+                }
 
-        } catch (Exception ex) {
-            logger.error("❌ Error restaurando casa {} desde SQLite", nombreCasa, ex);
+                // 🔸 3. Bandeja vacía y reinicio anotado (lo último: bloquea la secuencia hasta el commit)
+                int descartadas = BandejaSalida.vaciar(conn);
+                if (descartadas > 0) logger.info("♻️ {}: {} cambios sin replicar descartados.", nombreCasa, descartadas);
+                RegistroCambios.anotarReinicio(conn);
+
+                conn.commit();
+                CacheEstudiantes.invalidar(nombreCasa);
+                IndiceBusqueda.descartar(nombreCasa);
+                DiarioOperaciones.anotar(nombreCasa, "restaurar", false, lista, List.of());
+            } catch (SQLException ex) {
+                conn.rollback();
+                logger.error("❌ Restauración de {} deshecha: {}", nombreCasa, ex.getMessage());
+                Metricas.registrar(Operacion.RESTAURAR, nombreCasa, inicioNanos, false, 0);
+                throw ex;
+            }
         }
+
+        long ms = System.currentTimeMillis() - inicio;
+        Metricas.registrar(Operacion.RESTAURAR, nombreCasa, inicioNanos, true, lista.size());
+        logger.info("✅ Restaurada la casa {} desde SQLite ({} filas, {} ms).", nombreCasa, lista.size(), ms);
+        return ms;
     }
 }
@@ -0,0 +1,102 @@
+package org.equiporon.Modelo;
+
+/**
+ * Resultado de una fila dentro de una operación por lotes
+ * (ver {@code BaseDAO#insertarLote}, {@code BaseDAO#editarLote} y {@code BaseDAO#borrarLote}).
+ *
+ * @version 1.0
+ */
+public class ResultadoOperacion {
+
+    /** Posición de la fila en la lista recibida. */
+    private final int indice;
+
+    /** ID del estudiante (el asignado, en el caso de una inserción). */
+    private final String id;
+
+    /** Si la fila se ha aplicado en la base de datos. */
+    private final boolean exito;
+
+    /** Motivo del fallo, o {@code null} si la fila se ha aplicado. */
+    private final String mensaje;
+
+    /**
+     * Crea el resultado de una fila.
+     *
+     * @param indice posición de la fila en la lista recibida.
+     * @param id ID del estudiante (puede ser {@code null} si no llegó a asignarse).
+     * @param exito si la fila se ha aplicado.
+     * @param mensaje motivo del fallo, o {@code null} si se ha aplicado.
+     */
+    public ResultadoOperacion(int indice, String id, boolean exito, String mensaje) {
+        this.indice = indice;
+        this.id = id;
+        this.exito = exito;
+        this.mensaje = mensaje;
+    }
+
+    /**
+     * Crea el resultado de una fila aplicada correctamente.
+     *
+     * @param indice posición de la fila en la lista recibida.
+     * @param id ID del estudiante.
+     * @return El resultado correcto.
+     */
+    public static ResultadoOperacion ok(int indice, String id) {
+        return new ResultadoOperacion(indice, id, true, null);
+    }
+
+    /**
+     * Crea el resultado de una fila que no se ha aplicado.
+     *
+     * @param indice posición de la fila en la lista recibida.
+     * @param id ID del estudiante (puede ser {@code null}).
+     * @param mensaje motivo del fallo.
+     * @return El resultado fallido.
+     */
+    public static ResultadoOperacion error(int indice, String id, String mensaje) {
+        return new ResultadoOperacion(indice, id, false, mensaje);
+    }
+
+    /**
+     * Obtiene la posición de la fila en la lista recibida.
+     * @return El índice (empezando en 0).
+     */
+    public int getIndice() {
+        return indice;
+    }
+
+    /**
+     * Obtiene el ID del estudiante.
+     * @return El ID, o {@code null} si no llegó a asignarse.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Indica si la fila se ha aplicado.
+     * @return {@code true} si se ha aplicado.
+     */
+    public boolean isExito() {
+        return exito;
+    }
+
+    /**
+     * Obtiene el motivo del fallo.
+     * @return El mensaje, o {@code null} si la fila se ha aplicado.
+     */
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    /**
+     * Devuelve una representación legible del resultado.
+     *
+     * @return cadena de texto con formato.
+     */
+    @Override
+    public String toString() {
+        return "#" + indice + " " + id + (exito ? " OK" : " ERROR: " + mensaje);
+    }
+}
@@ -0,0 +1,311 @@
+package org.equiporon.Servidor;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Modelo.ResultadoOperacion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lectura y escritura de JSON para el {@link ServidorApi}, sin dependencias externas.
+ * <p>
+ * Al leer, los objetos pasan a {@code Map<String, Object>} (en orden), los arrays a
+ * {@code List<Object>}, los números enteros a {@code Long} y los demás a {@code Double}.
+ */
+final class Json {
+
+    private Json() {}
+
+    /**
+     * @param texto Documento JSON.
+     * @return El valor leído.
+     * @throws IllegalArgumentException Si no es JSON válido.
+     */
+    static Object leer(String texto) {
+        Lector lector = new Lector(texto);
+        Object valor = lector.valor();
+        lector.espacios();
+        if (lector.pos < texto.length()) throw lector.error("Contenido después del valor");
+        return valor;
+    }
+
+    /**
+     * Convierte un objeto JSON en estudiante. Los campos que faltan quedan a {@code null}
+     * (o curso 0), y la validación los rechaza después.
+     *
+     * @param valor Objeto leído con {@link #leer}.
+     * @return El estudiante.
+     * @throws IllegalArgumentException Si no es un objeto o algún campo tiene otro tipo.
+     */
+    static Modelo_Estudiante estudiante(Object valor) {
+        if (!(valor instanceof Map<?, ?> campos)) throw new IllegalArgumentException("Se esperaba un objeto estudiante");
+        Object curso = campos.get("curso");
+        if (curso != null && !(curso instanceof Long n && n == (int) (long) n)) {
+            throw new IllegalArgumentException("El curso debe ser un número entero");
+        }
+        return new Modelo_Estudiante(texto(campos, "id"), texto(campos, "nombre"), texto(campos, "apellidos"),
+                texto(campos, "casa"), curso == null ? 0 : ((Long) curso).intValue(), texto(campos, "patronus"));
+    }
+
+    /**
+     * @param valor Array leído con {@link #leer}.
+     * @return Sus elementos.
+     * @throws IllegalArgumentException Si no es un array.
+     */
+    static List<?> lista(Object valor) {
+        if (!(valor instanceof List<?> lista)) throw new IllegalArgumentException("Se esperaba un array");
+        return lista;
+    }
+
+    private static String texto(Map<?, ?> campos, String clave) {
+        Object v = campos.get(clave);
+        if (v == null || v instanceof String) return (String) v;
+        throw new IllegalArgumentException("El campo " + clave + " debe ser texto");
+    }
+
+    /**
+     * Escribe un valor: {@code Map}, {@code Collection}, {@link Modelo_Estudiante},
+     * {@link ResultadoOperacion}, texto, número, booleano o {@code null}.
+     *
+     * @param salida Destino.
+     * @param valor Valor a escribir.
+     * @throws IOException Si falla el destino.
+     */
+    static void escribir(Appendable salida, Object valor) throws IOException {
+        switch (valor) {
+            case null -> salida.append("null");
+            case String s -> cadena(salida, s);
+            case Number n -> salida.append(n.toString());
+            case Boolean b -> salida.append(b.toString());
+            case Modelo_Estudiante e -> estudiante(salida, e);
+            case ResultadoOperacion r -> {
+                salida.append("{\"indice\":").append(Integer.toString(r.getIndice())).append(",\"id\":");
+                escribir(salida, r.getId());
+                salida.append(",\"exito\":").append(Boolean.toString(r.isExito())).append(",\"mensaje\":");
+                escribir(salida, r.getMensaje());
+                salida.append('}');
+            }
+            case Map<?, ?> m -> {
+                salida.append('{');
+                boolean primero = true;
+                for (Map.Entry<?, ?> entrada : m.entrySet()) {
+                    if (!primero) salida.append(',');
+                    primero = false;
+                    cadena(salida, String.valueOf(entrada.getKey()));
+                    salida.append(':');
+                    escribir(salida, entrada.getValue());
+                }
+                salida.append('}');
+            }
+            case Collection<?> c -> {
+                salida.append('[');
+                boolean primero = true;
+                for (Object elemento : c) {
+                    if (!primero) salida.append(',');
+                    primero = false;
+                    escribir(salida, elemento);
+                }
+                salida.append(']');
+            }
+            default -> cadena(salida, valor.toString());
+        }
+    }
+
+    /**
+     * @param valor Valor a escribir.
+     * @return El valor en JSON.
+     */
+    static String escribir(Object valor) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            escribir(sb, valor);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // StringBuilder no lanza
+        }
+        return sb.toString();
+    }
+
+    /** Escribe un estudiante como objeto, sin pasar por un mapa (se usa fila a fila al exportar). */
+    static void estudiante(Appendable salida, Modelo_Estudiante e) throws IOException {
+        salida.append("{\"id\":");
+        escribir(salida, e.getId());
+        salida.append(",\"nombre\":");
+        escribir(salida, e.getNombre());
+        salida.append(",\"apellidos\":");
+        escribir(salida, e.getApellidos());
+        salida.append(",\"casa\":");
+        escribir(salida, e.getCasa());
+        salida.append(",\"curso\":").append(String.valueOf(e.getCurso())).append(",\"patronus\":");
+        escribir(salida, e.getPatronus());
+        salida.append('}');
+    }
+
+    private static void cadena(Appendable salida, String s) throws IOException {
+        salida.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> salida.append("\\\"");
+                case '\\' -> salida.append("\\\\");
+                case '\n' -> salida.append("\\n");
+                case '\r' -> salida.append("\\r");
+                case '\t' -> salida.append("\\t");
+                default -> {
+                    if (c < 0x20) salida.append(String.format("\\u%04x", (int) c));
+                    else salida.append(c);
+                }
+            }
+        }
+        salida.append('"');
+    }
+
+    /** Analizador descendente recursivo. */
+    private static final class Lector {
+        private static final int MAX_PROFUNDIDAD = 64;
+
+        final String texto;
+        int pos;
+        int profundidad;
+
+        Lector(String texto) {
+            this.texto = texto;
+        }
+
+        Object valor() {
+            espacios();
+            if (pos >= texto.length()) throw error("Fin inesperado");
+            char c = texto.charAt(pos);
+            return switch (c) {
+                case '{' -> objeto();
+                case '[' -> array();
+                case '"' -> cadena();
+                case 't' -> literal("true", Boolean.TRUE);
+                case 'f' -> literal("false", Boolean.FALSE);
+                case 'n' -> literal("null", null);
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9')) yield numero();
+                    throw error("Carácter inesperado '" + c + "'");
+                }
+            };
+        }
+
+        Map<String, Object> objeto() {
+            entrar();
+            pos++;
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            espacios();
+            if (consumir('}')) return salir(mapa);
+            do {
+                espacios();
+                if (pos >= texto.length() || texto.charAt(pos) != '"') throw error("Se esperaba una clave");
+                String clave = cadena();
+                espacios();
+                if (!consumir(':')) throw error("Se esperaba ':'");
+                mapa.put(clave, valor());
+                espacios();
+            } while (consumir(','));
+            if (!consumir('}')) throw error("Se esperaba '}'");
+            return salir(mapa);
+        }
+
+        List<Object> array() {
+            entrar();
+            pos++;
+            List<Object> lista = new ArrayList<>();
+            espacios();
+            if (consumir(']')) return salir(lista);
+            do {
+                lista.add(valor());
+                espacios();
+            } while (consumir(','));
+            if (!consumir(']')) throw error("Se esperaba ']'");
+            return salir(lista);
+        }
+
+        String cadena() {
+            pos++;
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= texto.length()) throw error("Texto sin cerrar");
+                char c = texto.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= texto.length()) throw error("Escape incompleto");
+                char e = texto.charAt(pos++);
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append(e);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > texto.length()) throw error("Escape \\u incompleto");
+                        try {
+                            sb.append((char) Integer.parseInt(texto, pos, pos + 4, 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Escape \\u no válido");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("Escape no válido '\\" + e + "'");
+                }
+            }
+        }
+
+        Object numero() {
+            int inicio = pos;
+            boolean decimal = false;
+            while (pos < texto.length()) {
+                char c = texto.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E') decimal = true;
+                else if (c != '-' && c != '+' && (c < '0' || c > '9')) break;
+                pos++;
+            }
+            String n = texto.substring(inicio, pos);
+            try {
+                return decimal ? (Object) Double.parseDouble(n) : (Object) Long.parseLong(n);
+            } catch (NumberFormatException ex) {
+                throw error("Número no válido '" + n + "'");
+            }
+        }
+
+        Object literal(String palabra, Object valor) {
+            if (!texto.startsWith(palabra, pos)) throw error("Valor no válido");
+            pos += palabra.length();
+            return valor;
+        }
+
+        void espacios() {
+            while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) pos++;
+        }
+
+        boolean consumir(char c) {
+            if (pos < texto.length() && texto.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void entrar() {
+            if (++profundidad > MAX_PROFUNDIDAD) throw error("Demasiado anidado");
+        }
+
+        <T> T salir(T valor) {
+            profundidad--;
+            return valor;
+        }
+
+        IllegalArgumentException error(String mensaje) {
+            return new IllegalArgumentException(mensaje + " (posición " + pos + ")");
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package org.equiporon.Servidor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.DAO.BaseDAO;
+import org.equiporon.DAO.EjecutorBD;
+import org.equiporon.DAO.RegistroDAO;
+import org.equiporon.DAO.Replicador;
+import org.equiporon.DAO.SQLiteDAO;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Utils.Metricas;
+import org.equiporon.Utils.SerieLatencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Servidor HTTP sin interfaz gráfica que expone la capa de datos como API JSON, para que los
+ * procesos por lotes y otras herramientas usen los DAOs (y con ellos la replicación) sin
+ * abrir la aplicación JavaFX.
+ * <p>
+ * Usa el servidor del JDK ({@code com.sun.net.httpserver}) con un hilo virtual por petición y
+ * escucha solo en la interfaz local. Las conexiones se mantienen abiertas entre peticiones
+ * (HTTP/1.1 keep-alive). Cada operación pasa por el {@link EjecutorBD}, en el compartimento de su
+ * casa, igual que desde la interfaz: si una cola se llena la petición recibe un 503.
+ * <p>
+ * Rutas (<code>{casa}</code> es "Hogwarts" o el nombre de una casa, sin distinguir mayúsculas):
+ * <ul>
+ *     <li><code>GET /api/salud</code>: estado del servidor y de las colas de cada casa.</li>
+ *     <li><code>GET /api/{casa}/estudiantes?orden=&amp;desc=&amp;tamano=&amp;cursor=</code>: una
+ *     página ordenada en la base de datos ({@link BaseDAO#obtenerPagina}). La respuesta trae el
+ *     <code>cursor</code> de la página siguiente, o {@code null} si es la última.</li>
+ *     <li><code>GET /api/{casa}/exportar</code>: todos los estudiantes como array JSON, enviado
+ *     por trozos a medida que se leen (la memoria no depende del tamaño de la tabla).</li>
+ *     <li><code>POST /api/{casa}/estudiantes</code>: inserta el estudiante del cuerpo (201).</li>
+ *     <li><code>GET|PUT|DELETE /api/{casa}/estudiantes/{id}</code>: lee, edita o borra uno.</li>
+ *     <li><code>POST /api/{casa}/lote/{insertar|editar|borrar}</code>: operación por lotes con un
+ *     array de estudiantes (o de IDs para borrar); devuelve el resultado de cada elemento.</li>
+ *     <li><code>POST /api/backup?tipo=incremental|completo</code>: backup en SQLite.</li>
+ *     <li><code>POST /api/restaurar/{casa}</code>: restaura desde el backup.</li>
+ * </ul>
+ * Los errores se devuelven como <code>{"error": "..."}</code>: 400 si los datos no son válidos,
+ * 404 si la ruta o el estudiante no existen, 503 si la base de datos no responde o está
+ * saturada y 500 en otro caso. La latencia de cada ruta se publica por JMX
+ * (<code>type=Servidor</code>).
+ * <p>
+ * Escuchar solo en local no basta: cualquier proceso de la máquina, o una página web que envíe un
+ * formulario a <code>127.0.0.1</code>, podría borrar o restaurar datos. Por eso, salvo
+ * <code>/api/salud</code>, toda petición debe traer <code>Authorization: Bearer &lt;token&gt;</code>
+ * (401 si no), su cabecera <code>Host</code> debe ser local (403 si no; evita que una página la
+ * alcance cambiando la IP de su dominio) y las que modifican datos deben declarar
+ * <code>Content-Type: application/json</code> (415 si no), que un formulario no puede enviar.
+ * El token es <code>servidor.token</code>; si no se configura, se genera uno al arrancar y se
+ * guarda en <code>servidor.token.fichero</code> (<code>~/.hogwarts/api.token</code>), legible
+ * solo por el usuario.
+ * <p>
+ * Configuración: <code>servidor.puerto</code> (8080), <code>servidor.cola</code> (conexiones
+ * pendientes de aceptar, 0 = la del sistema) y <code>servidor.cuerpo.max</code> (bytes por
+ * petición, 16 MB). Desde la línea de comandos:
+ * <code>java ... org.equiporon.Servidor.ServidorApi [puerto]</code>.
+ */
+public final class ServidorApi {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServidorApi.class);
+
+    private static final int PUERTO = Config.getInt("servidor.puerto", 8080);
+    private static final int COLA = Math.max(0, Config.getInt("servidor.cola", 0));
+    private static final int MAX_CUERPO = Math.max(1024, Config.getInt("servidor.cuerpo.max", 16 << 20));
+    private static final int MAX_PAGINA = 10_000;
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private static final Path FICHERO_TOKEN = Config.get("servidor.token.fichero") != null
+            ? Path.of(Config.get("servidor.token.fichero"))
+            : Path.of(System.getProperty("user.home"), ".hogwarts", "api.token");
+
+    /** Nombres de host locales aceptados en la cabecera <code>Host</code>. */
+    private static final Set<String> HOSTS_LOCALES = Set.of("localhost", "127.0.0.1", "[::1]");
+
+    /** Latencia de cada ruta (ver {@link #ruta}). */
+    private static final Map<String, SerieLatencia> SERIES = new HashMap<>();
+    static {
+        for (String ruta : List.of("salud", "pagina", "exportar", "leer", "insertar", "editar", "borrar",
+                "lote", "backup", "restaurar", "otra")) {
+            SERIES.put(ruta, Metricas.serie("Servidor", ruta, "peticion"));
+        }
+    }
+
+    private static HttpServer servidor;
+    private static ExecutorService hilos;
+    /** Token exigido en <code>Authorization</code> (ver {@link #token()}). */
+    private static volatile byte[] token;
+
+    /** Respuesta ya calculada: estado HTTP y valor a escribir en JSON ({@code null} = sin cuerpo). */
+    private record Respuesta(int estado, Object cuerpo) {}
+
+    /** Error con su estado HTTP. */
+    private static final class ErrorHttp extends RuntimeException {
+        final int estado;
+
+        ErrorHttp(int estado, String mensaje) {
+            super(mensaje);
+            this.estado = estado;
+        }
+    }
+
+    private ServidorApi() {}
+
+    /**
+     * Arranca el servidor (si no lo estaba) y el {@link Replicador}.
+     *
+     * @param puerto Puerto local; 0 para que el sistema elija uno libre.
+     * @return La dirección en la que escucha.
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public static synchronized InetSocketAddress iniciar(int puerto) throws IOException {
+        if (servidor != null) return servidor.getAddress();
+
+        // Sin esto, la respuesta (cabeceras y cuerpo por separado) choca con el ACK retrasado del
+        // cliente en conexiones keep-alive y cada petición pequeña tarda ~40 ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        token = token().getBytes(StandardCharsets.UTF_8);
+        HttpServer nuevo = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto), COLA);
+        hilos = Executors.newVirtualThreadPerTaskExecutor();
+        nuevo.setExecutor(hilos);
+        nuevo.createContext("/api/", ServidorApi::atender);
+        nuevo.start();
+        servidor = nuevo;
+
+        Replicador.iniciar();
+        logger.info("🌐 API escuchando en http://{}:{}/api/", servidor.getAddress().getHostString(), servidor.getAddress().getPort());
+        return servidor.getAddress();
+    }
+
+    /** Deja de aceptar peticiones y espera hasta un segundo a que acaben las que están en curso. */
+    public static synchronized void detener() {
+        if (servidor == null) return;
+        servidor.stop(1);
+        hilos.shutdown();
+        servidor = null;
+        logger.info("🌐 API detenida.");
+    }
+
+    /**
+     * Punto de entrada sin interfaz. El servidor sigue en marcha hasta que se detiene el proceso
+     * (Ctrl+C), y entonces cierra la replicación y las conexiones.
+     *
+     * @param args Puerto (opcional; por defecto <code>servidor.puerto</code>).
+     */
+    public static void main(String[] args) {
+        int puerto = PUERTO;
+        if (args.length > 0) {
+            try {
+                puerto = Integer.parseInt(args[0]);
+            } catch (NumberFormatException ex) {
+                System.err.println("Uso: ServidorApi [puerto]");
+                System.exit(2);
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(ServidorApi::cerrarTodo, "cierre-api"));
+        try {
+            iniciar(puerto);
+        } catch (IOException ex) {
+            System.err.println("❌ No se pudo abrir el puerto " + puerto + ": " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void cerrarTodo() {
+        detener();
+        Replicador.detener();
+        RegistroDAO.cerrar();
+    }
+
+    // ============================================================
+    // === PETICIONES ==============================================
+    // ============================================================
+
+    /**
+     * @return El token de <code>servidor.token</code>, o uno nuevo guardado en {@link #FICHERO_TOKEN}.
+     * @throws IOException Si hay que generarlo y no se puede guardar.
+     */
+    private static String token() throws IOException {
+        String configurado = Config.get("servidor.token");
+        if (configurado != null && !configurado.isBlank()) return configurado.strip();
+
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        String nuevo = HexFormat.of().formatHex(bytes);
+        Files.createDirectories(FICHERO_TOKEN.toAbsolutePath().getParent());
+        Files.deleteIfExists(FICHERO_TOKEN);
+        if (FICHERO_TOKEN.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(FICHERO_TOKEN, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.writeString(FICHERO_TOKEN, nuevo, StandardCharsets.UTF_8);
+        logger.info("🔑 Token de la API generado en {}.", FICHERO_TOKEN);
+        return nuevo;
+    }
+
+    /**
+     * Comprueba el origen de la petición antes de enrutarla.
+     *
+     * @throws ErrorHttp 403 si el Host no es local, 401 sin token válido o 415 si una petición que
+     *                   modifica datos no es JSON.
+     */
+    private static void autorizar(HttpExchange ex, String[] p) {
+        String host = ex.getRequestHeaders().getFirst("Host");
+        if (host == null || !HOSTS_LOCALES.contains(sinPuerto(host).toLowerCase(Locale.ROOT))) {
+            throw new ErrorHttp(403, "Host no permitido");
+        }
+        if (p.length == 1 && p[0].equals("salud")) return;
+
+        String cabecera = ex.getRequestHeaders().getFirst("Authorization");
+        byte[] recibido = cabecera != null && cabecera.startsWith("Bearer ")
+                ? cabecera.substring("Bearer ".length()).strip().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        if (!MessageDigest.isEqual(recibido, token)) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            throw new ErrorHttp(401, "Falta el token de la API o no es válido");
+        }
+
+        String metodo = ex.getRequestMethod();
+        if (!metodo.equals("GET") && !metodo.equals("HEAD")) {
+            String tipo = ex.getRequestHeaders().getFirst("Content-Type");
+            if (tipo == null || !tipo.split(";")[0].strip().equalsIgnoreCase("application/json")) {
+                throw new ErrorHttp(415, "Las peticiones que modifican datos deben ser application/json");
+            }
+        }
+    }
+
+    /** @return El host de una cabecera <code>Host</code> sin el puerto. */
+    private static String sinPuerto(String host) {
+        int dosPuntos = host.lastIndexOf(':');
+        return dosPuntos > host.lastIndexOf(']') ? host.substring(0, dosPuntos) : host;
+    }
+
+    private static void atender(HttpExchange ex) {
+        long inicio = System.nanoTime();
+        String[] partes = partes(ex);
+        String ruta = ruta(ex.getRequestMethod(), partes);
+        int estado;
+        try {
+            autorizar(ex, partes);
+            Respuesta r = enrutar(ex, partes);
+            estado = r == null ? ex.getResponseCode() : responder(ex, r.estado(), r.cuerpo());
+        } catch (Exception error) {
+            estado = responderError(ex, error);
+        } finally {
+            ex.close();
+        }
+        SERIES.get(ruta).medir(inicio, estado < 500);
+    }
+
+    /** @return La ruta sin <code>/api/</code>, partida por '/' (ya decodificada). */
+    private static String[] partes(HttpExchange ex) {
+        String ruta = ex.getRequestURI().getPath().substring("/api/".length());
+        return Arrays.stream(ruta.split("/")).filter(p -> !p.isEmpty()).toArray(String[]::new);
+    }
+
+    /** @return Nombre de la ruta para las métricas. */
+    private static String ruta(String metodo, String[] p) {
+        if (p.length == 1 && (p[0].equals("salud") || p[0].equals("backup"))) return p[0];
+        if (p.length == 2 && p[0].equals("restaurar")) return "restaurar";
+        if (p.length == 2 && p[1].equals("exportar")) return "exportar";
+        if (p.length == 3 && p[1].equals("lote")) return "lote";
+        if (p.length == 2 && p[1].equals("estudiantes")) return metodo.equals("POST") ? "insertar" : "pagina";
+        if (p.length == 3 && p[1].equals("estudiantes")) {
+            return switch (metodo) {
+                case "PUT" -> "editar";
+                case "DELETE" -> "borrar";
+                default -> "leer";
+            };
+        }
+        return "otra";
+    }
+
+    /**
+     * @return La respuesta a enviar, o {@code null} si ya se ha enviado (exportación por trozos).
+     */
+    private static Respuesta enrutar(HttpExchange ex, String[] p) throws Exception {
+        String metodo = ex.getRequestMethod();
+
+        if (p.length == 1 && p[0].equals("salud")) {
+            exigir(ex, "GET");
+            Map<String, Object> colas = new LinkedHashMap<>();
+            for (String casa : FuentesDatos.bases()) {
+                colas.put(casa, Map.of("enEspera", EjecutorBD.getEnEspera(casa), "enCurso", EjecutorBD.getEnCurso(casa)));
+            }
+            Map<String, Object> salud = new LinkedHashMap<>();
+            salud.put("estado", "ok");
+            salud.put("colas", colas);
+            return new Respuesta(200, salud);
+        }
+        if (p.length == 1 && p[0].equals("backup")) {
+            exigir(ex, "POST");
+            return backup(parametros(ex).getOrDefault("tipo", "incremental"));
+        }
+        if (p.length == 2 && p[0].equals("restaurar")) {
+            exigir(ex, "POST");
+            Map<String, Boolean> resultado = RegistroDAO.backup().restaurarBackupAsync(casa(p[1])).join();
+            if (resultado.isEmpty()) throw new ErrorHttp(503, "No se pudo leer el backup");
+            return new Respuesta(resultado.containsValue(false) ? 500 : 200, resultado);
+        }
+        if (p.length < 2) throw new ErrorHttp(404, "Ruta no encontrada");
+
+        String casa = casa(p[0]);
+        BaseDAO dao = BaseDAO.daoDeCasa(casa);
+
+        if (p.length == 2 && p[1].equals("exportar")) {
+            exigir(ex, "GET");
+            exportar(ex, casa, dao);
+            return null;
+        }
+        if (p.length == 2 && p[1].equals("estudiantes")) {
+            if (metodo.equals("POST")) {
+                Modelo_Estudiante e = estudianteValido(Json.leer(cuerpo(ex)), null, casa);
+                e.setId(null);
+                if (!dao.insertarAsync(e).join()) throw new ErrorHttp(500, "No se pudo insertar");
+                return new Respuesta(201, e);
+            }
+            exigir(ex, "GET", "POST");
+            return pagina(dao, parametros(ex));
+        }
+        if (p.length == 3 && p[1].equals("estudiantes")) {
+            String id = p[2];
+            switch (metodo) {
+                case "GET" -> {
+                    Modelo_Estudiante e = dao.obtenerPorIdAsync(id).join();
+                    if (e == null) throw new ErrorHttp(404, "No existe el estudiante " + id);
+                    return new Respuesta(200, e);
+                }
+                case "PUT" -> {
+                    Modelo_Estudiante e = estudianteValido(Json.leer(cuerpo(ex)), id, casa);
+                    if (!dao.editarAsync(e).join()) {
+                        if (dao.obtenerPorIdAsync(id).join() == null) throw new ErrorHttp(404, "No existe el estudiante " + id);
+                        throw new ErrorHttp(500, "No se pudo editar " + id);
+                    }
+                    return new Respuesta(200, e);
+                }
+                case "DELETE" -> {
+                    if (!dao.borrarAsync(id).join()) {
+                        if (dao.obtenerPorIdAsync(id).join() == null) throw new ErrorHttp(404, "No existe el estudiante " + id);
+                        throw new ErrorHttp(500, "No se pudo borrar " + id);
+                    }
+                    return new Respuesta(204, null);
+                }
+                default -> exigir(ex, "GET", "PUT", "DELETE");
+            }
+        }
+        if (p.length == 3 && p[1].equals("lote")) {
+            exigir(ex, "POST");
+            List<?> elementos = Json.lista(Json.leer(cuerpo(ex)));
+            return new Respuesta(200, switch (p[2]) {
+                case "insertar" -> dao.insertarLoteAsync(estudiantes(elementos, casa, false)).join();
+                case "editar" -> dao.editarLoteAsync(estudiantes(elementos, casa, true)).join();
+                case "borrar" -> {
+                    List<String> ids = new ArrayList<>(elementos.size());
+                    for (Object id : elementos) {
+                        if (!(id instanceof String s)) throw new IllegalArgumentException("Se esperaba un array de IDs");
+                        ids.add(s);
+                    }
+                    yield dao.borrarLoteAsync(ids).join();
+                }
+                default -> throw new ErrorHttp(404, "Operación de lote no válida: " + p[2]);
+            });
+        }
+        throw new ErrorHttp(404, "Ruta no encontrada");
+    }
+
+    private static Respuesta pagina(BaseDAO dao, Map<String, String> parametros) {
+        String orden = parametros.getOrDefault("orden", "id").toLowerCase(Locale.ROOT);
+        boolean desc = Boolean.parseBoolean(parametros.get("desc"));
+        int tamano;
+        try {
+            tamano = Integer.parseInt(parametros.getOrDefault("tamano", String.valueOf(BaseDAO.getTamanoPagina())));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Tamaño de página no válido");
+        }
+        if (tamano < 1 || tamano > MAX_PAGINA) throw new IllegalArgumentException("El tamaño debe estar entre 1 y " + MAX_PAGINA);
+
+        String cursor = parametros.get("cursor");
+        Modelo_Estudiante despuesDe = cursor == null ? null : desdeCursor(cursor, orden);
+        List<Modelo_Estudiante> filas = dao.obtenerPaginaAsync(orden, desc, despuesDe, tamano).join();
+
+        Map<String, Object> cuerpo = new LinkedHashMap<>();
+        cuerpo.put("filas", filas);
+        cuerpo.put("cursor", filas.size() < tamano ? null : cursor(filas.getLast(), orden));
+        return new Respuesta(200, cuerpo);
+    }
+
+    /**
+     * Cursor de paginación: el ID y el valor de la columna de orden de la última fila,
+     * en Base64 (URL) para que el cliente lo devuelva tal cual.
+     */
+    private static String cursor(Modelo_Estudiante ultima, String orden) {
+        String valor = switch (orden) {
+            case "nombre" -> ultima.getNombre();
+            case "apellidos" -> ultima.getApellidos();
+            case "casa" -> ultima.getCasa();
+            case "curso" -> String.valueOf(ultima.getCurso());
+            case "patronus" -> ultima.getPatronus();
+            default -> "";
+        };
+        String texto = ultima.getId() + '\n' + (valor == null ? "" : valor);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Modelo_Estudiante desdeCursor(String cursor, String orden) {
+        String texto;
+        try {
+            texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Cursor no válido");
+        }
+        int corte = texto.indexOf('\n');
+        if (corte < 0) throw new IllegalArgumentException("Cursor no válido");
+        String valor = texto.substring(corte + 1);
+        Modelo_Estudiante e = new Modelo_Estudiante(texto.substring(0, corte), null, null, null, 0, null);
+        switch (orden) {
+            case "nombre" -> e.setNombre(valor);
+            case "apellidos" -> e.setApellidos(valor);
+            case "casa" -> e.setCasa(valor);
+            case "patronus" -> e.setPatronus(valor);
+            case "curso" -> {
+                try {
+                    e.setCurso(Integer.parseInt(valor));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Cursor no válido para ordenar por curso");
+                }
+            }
+            default -> { }
+        }
+        return e;
+    }
+
+    /**
+     * Envía todos los estudiantes a medida que se leen. La lectura ocupa un hueco del
+     * compartimento de la casa (prioridad de mantenimiento) mientras dura, como una exportación.
+     */
+    private static void exportar(HttpExchange ex, String casa, BaseDAO dao) {
+        EjecutorBD.enviar(casa, EjecutorBD.Prioridad.MANTENIMIENTO, () -> {
+            ex.getResponseHeaders().set("Content-Type", JSON);
+            ex.sendResponseHeaders(200, 0);
+            try (Writer salida = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+                salida.write('[');
+                boolean[] primero = {true};
+                int filas = dao.recorrerTodos(e -> {
+                    try {
+                        if (!primero[0]) salida.write(',');
+                        primero[0] = false;
+                        Json.estudiante(salida, e);
+                    } catch (IOException io) {
+                        throw new UncheckedIOException(io);
+                    }
+                });
+                salida.write(']');
+                return filas;
+            } catch (UncheckedIOException io) {
+                throw io.getCause();
+            }
+        }).join();
+    }
+
+    private static Respuesta backup(String tipo) {
+        SQLiteDAO sqlite = RegistroDAO.backup();
+        long inicio = System.currentTimeMillis();
+        CompletableFuture<Void> tarea = switch (tipo) {
+            case "completo" -> EjecutorBD.ejecutar("Backup", EjecutorBD.Prioridad.MANTENIMIENTO, sqlite::hacerBackupCompleto);
+            case "incremental" -> EjecutorBD.ejecutar("Backup", EjecutorBD.Prioridad.ESCRITURA, sqlite::hacerBackupInstantaneo);
+            default -> throw new IllegalArgumentException("Tipo de backup no válido: " + tipo);
+        };
+        tarea.join();
+        return new Respuesta(200, Map.of("tipo", tipo, "ms", System.currentTimeMillis() - inicio));
+    }
+
+    // ============================================================
+    // === UTILIDADES ==============================================
+    // ============================================================
+
+    /** @return El nombre de la base de datos tal como lo usan los DAOs. */
+    private static String casa(String nombre) {
+        String casa = FuentesDatos.normalizar(nombre);
+        if (casa == null) throw new ErrorHttp(404, "Casa no válida: " + nombre);
+        return casa;
+    }
+
+    /**
+     * Lee un estudiante del cuerpo y lo valida aquí, sin pasar por las alertas de
+     * {@link BaseDAO#comprobarEstudiante}, que necesitan la interfaz gráfica.
+     *
+     * @param id ID de la ruta (sustituye al del cuerpo), o {@code null}.
+     * @param casa Base de datos; en una casa, es la casa por defecto del estudiante.
+     */
+    private static Modelo_Estudiante estudianteValido(Object valor, String id, String casa) {
+        Modelo_Estudiante e = Json.estudiante(valor);
+        if (id != null) e.setId(id);
+        if (e.getCasa() == null && !casa.equals("Hogwarts")) e.setCasa(casa);
+        String error = BaseDAO.validarEstudiante(e);
+        if (error != null) throw new IllegalArgumentException(error);
+        return e;
+    }
+
+    /** Estudiantes de un lote; la validación de cada uno la hace el DAO y va en su resultado. */
+    private static List<Modelo_Estudiante> estudiantes(List<?> elementos, String casa, boolean conId) {
+        List<Modelo_Estudiante> lista = new ArrayList<>(elementos.size());
+        for (Object elemento : elementos) {
+            Modelo_Estudiante e = Json.estudiante(elemento);
+            if (!conId) e.setId(null);
+            if (e.getCasa() == null && !casa.equals("Hogwarts")) e.setCasa(casa);
+            lista.add(e);
+        }
+        return lista;
+    }
+
+    private static void exigir(HttpExchange ex, String... metodos) {
+        if (Arrays.asList(metodos).contains(ex.getRequestMethod())) return;
+        ex.getResponseHeaders().set("Allow", String.join(", ", metodos));
+        throw new ErrorHttp(405, "Método no permitido");
+    }
+
+    private static Map<String, String> parametros(HttpExchange ex) {
+        Map<String, String> parametros = new HashMap<>();
+        String consulta = ex.getRequestURI().getRawQuery();
+        if (consulta == null) return parametros;
+        for (String par : consulta.split("&")) {
+            if (par.isEmpty()) continue;
+            int igual = par.indexOf('=');
+            String clave = URLDecoder.decode(igual < 0 ? par : par.substring(0, igual), StandardCharsets.UTF_8);
+            String valor = igual < 0 ? "true" : URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8);
+            parametros.put(clave, valor);
+        }
+        return parametros;
+    }
+
+    private static String cuerpo(HttpExchange ex) throws IOException {
+        try (InputStream entrada = ex.getRequestBody()) {
+            byte[] bytes = entrada.readNBytes(MAX_CUERPO + 1);
+            if (bytes.length > MAX_CUERPO) throw new ErrorHttp(413, "El cuerpo supera " + MAX_CUERPO + " bytes");
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** @return El estado enviado. */
+    private static int responder(HttpExchange ex, int estado, Object cuerpo) throws IOException {
+        if (cuerpo == null) {
+            ex.sendResponseHeaders(estado, -1);
+            return estado;
+        }
+        byte[] bytes = Json.escribir(cuerpo).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", JSON);
+        ex.sendResponseHeaders(estado, bytes.length);
+        try (OutputStream salida = ex.getResponseBody()) {
+            salida.write(bytes);
+        }
+        return estado;
+    }
+
+    /** Traduce una excepción a su estado HTTP y la envía, si todavía no se había empezado a responder. */
+    private static int responderError(HttpExchange ex, Throwable error) {
+        Throwable causa = error;
+        while (causa instanceof CompletionException && causa.getCause() != null) causa = causa.getCause();
+
+        int estado = switch (causa) {
+            case ErrorHttp e -> e.estado;
+            case IllegalArgumentException e -> 400;
+            case RejectedExecutionException e -> 503;
+            case SQLTransientConnectionException e -> 503;
+            default -> 500;
+        };
+        if (ex.getResponseCode() != -1) {
+            // Ya se estaba enviando (exportación): solo queda cortar la conexión
+            logger.warn("⚠️ {} {} interrumpida: {}", ex.getRequestMethod(), ex.getRequestURI(), causa.toString());
+            return 500;
+        }
+        if (estado >= 500) {
+            logger.error("❌ {} {} → {}", ex.getRequestMethod(), ex.getRequestURI(), estado, causa);
+        } else {
+            logger.debug("{} {} → {}: {}", ex.getRequestMethod(), ex.getRequestURI(), estado, causa.getMessage());
+        }
+        if (estado == 503) ex.getResponseHeaders().set("Retry-After", "1");
+        try {
+            String mensaje = causa instanceof SQLException || causa.getMessage() == null ? causa.toString() : causa.getMessage();
+            responder(ex, estado, Map.of("error", mensaje));
+        } catch (IOException io) {
+            logger.debug("No se pudo enviar el error al cliente: {}", io.getMessage());
+        }
+        return estado;
+    }
+}
@@ -0,0 +1,155 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escribe estudiantes en el formato binario por columnas de la aplicación (extensión <code>.hog</code>).
+ * <p>
+ * Formato:
+ * <pre>
+ * "HOGW" + versión (1 byte)
+ * bloques: varint n (filas del bloque, hasta {@value #FILAS_BLOQUE}), seguido de sus columnas:
+ *     id, nombre, apellidos   n cadenas
+ *     casa                    n códigos de diccionario
+ *     curso                   n varints (zigzag)
+ *     patronus                n códigos de diccionario
+ * varint 0 = fin del fichero
+ *
+ * cadena:  varint (bytes UTF-8 + 1; 0 = null) y los bytes
+ * código:  varint 0 = cadena literal a continuación
+ *          varint 1 = cadena nueva a continuación, que pasa a ser la siguiente entrada del diccionario
+ *          varint k ≥ 2 = entrada k - 2 del diccionario
+ * </pre>
+ * Cada columna con diccionario tiene el suyo, que se va llenando a lo largo del fichero
+ * (hasta {@value #MAX_DICCIONARIO} entradas; a partir de ahí se escriben literales). Así
+ * <code>casa</code> ocupa un byte por fila y los patronus repetidos, uno o dos.
+ * <p>
+ * Solo se guarda en memoria el bloque en curso, por columnas; {@link LectorBinario} lo lee.
+ */
+final class EscritorBinario implements Exportador.Escritor {
+
+    static final byte[] MAGICO = {'H', 'O', 'G', 'W'};
+    static final int VERSION = 1;
+    static final int FILAS_BLOQUE = 4_096;
+    static final int MAX_DICCIONARIO = 65_536;
+
+    private final OutputStream salida;
+
+    private final Columna ids = new Columna();
+    private final Columna nombres = new Columna();
+    private final Columna apellidos = new Columna();
+    private final Columna casas = new Columna();
+    private final Columna cursos = new Columna();
+    private final Columna patronus = new Columna();
+    private final Map<String, Integer> diccionarioCasas = new HashMap<>();
+    private final Map<String, Integer> diccionarioPatronus = new HashMap<>();
+    private int filas;
+
+    /**
+     * Escribe la cabecera.
+     *
+     * @param salida Destino (se cierra con el escritor).
+     * @throws IOException Si falla la escritura.
+     */
+    EscritorBinario(OutputStream salida) throws IOException {
+        this.salida = new BufferedOutputStream(salida, 1 << 16);
+        this.salida.write(MAGICO);
+        this.salida.write(VERSION);
+    }
+
+    @Override
+    public void escribir(Modelo_Estudiante e) throws IOException {
+        ids.cadena(e.getId());
+        nombres.cadena(e.getNombre());
+        apellidos.cadena(e.getApellidos());
+        casas.codigo(e.getCasa(), diccionarioCasas);
+        int curso = e.getCurso() == null ? 0 : e.getCurso();
+        cursos.varint((curso << 1) ^ (curso >> 31));
+        patronus.codigo(e.getPatronus(), diccionarioPatronus);
+        if (++filas == FILAS_BLOQUE) volcar();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (filas > 0) volcar();
+            escribirVarint(salida, 0);
+        } finally {
+            salida.close();
+        }
+    }
+
+    private void volcar() throws IOException {
+        escribirVarint(salida, filas);
+        for (Columna c : new Columna[]{ids, nombres, apellidos, casas, cursos, patronus}) {
+            salida.write(c.bytes, 0, c.tamano);
+            c.tamano = 0;
+        }
+        filas = 0;
+    }
+
+    static void escribirVarint(OutputStream salida, int valor) throws IOException {
+        while ((valor & ~0x7F) != 0) {
+            salida.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        salida.write(valor);
+    }
+
+    /** Bytes de una columna del bloque en curso. */
+    private static final class Columna {
+        byte[] bytes = new byte[1 << 12];
+        int tamano;
+
+        void varint(int valor) {
+            while ((valor & ~0x7F) != 0) {
+                anadirByte((valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            anadirByte(valor);
+        }
+
+        void cadena(String valor) {
+            if (valor == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = valor.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1);
+            asegurar(utf8.length);
+            System.arraycopy(utf8, 0, bytes, tamano, utf8.length);
+            tamano += utf8.length;
+        }
+
+        void codigo(String valor, Map<String, Integer> diccionario) {
+            Integer entrada = valor == null ? null : diccionario.get(valor);
+            if (entrada != null) {
+                varint(entrada + 2);
+            } else if (valor != null && diccionario.size() < MAX_DICCIONARIO) {
+                diccionario.put(valor, diccionario.size());
+                varint(1);
+                cadena(valor);
+            } else {
+                varint(0);
+                cadena(valor);
+            }
+        }
+
+        private void anadirByte(int b) {
+            asegurar(1);
+            bytes[tamano++] = (byte) b;
+        }
+
+        private void asegurar(int n) {
+            if (tamano + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, tamano + n));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escribe estudiantes en CSV (UTF-8, separador <code>,</code>), con la cabecera que entiende
+ * {@link LectorCSV}. Los campos con separadores, comillas o saltos de línea van entre comillas.
+ */
+final class EscritorCSV implements Exportador.Escritor {
+
+    private final Writer salida;
+
+    /**
+     * Escribe la cabecera.
+     *
+     * @param salida Destino (se cierra con el escritor).
+     * @throws IOException Si falla la escritura.
+     */
+    EscritorCSV(OutputStream salida) throws IOException {
+        this.salida = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 1 << 16);
+        this.salida.write("id,nombre,apellidos,casa,curso,patronus\n");
+    }
+
+    @Override
+    public void escribir(Modelo_Estudiante e) throws IOException {
+        campo(e.getId());
+        salida.write(',');
+        campo(e.getNombre());
+        salida.write(',');
+        campo(e.getApellidos());
+        salida.write(',');
+        campo(e.getCasa());
+        salida.write(',');
+        if (e.getCurso() != null) salida.write(String.valueOf(e.getCurso()));
+        salida.write(',');
+        campo(e.getPatronus());
+        salida.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        salida.close();
+    }
+
+    private void campo(String valor) throws IOException {
+        if (valor == null) return;
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ',' || c == ';' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) {
+            salida.write(valor);
+            return;
+        }
+        salida.write('"');
+        salida.write(valor.replace("\"", "\"\""));
+        salida.write('"');
+    }
+}
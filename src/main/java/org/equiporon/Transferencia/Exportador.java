@@ -0,0 +1,208 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.DAO.BaseDAO;
+import org.equiporon.DAO.EjecutorBD;
+import org.equiporon.DAO.Replicador;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación de los estudiantes de una casa o de Hogwarts a fichero, sin interfaz gráfica.
+ * <p>
+ * Las filas pasan directamente del {@code ResultSet} al fichero
+ * ({@link BaseDAO#recorrerTodos(java.util.function.Consumer)}), así que la memoria usada no
+ * depende del tamaño de la tabla. Hay dos formatos:
+ * <ul>
+ *     <li>{@link Formato#CSV}: legible y compatible con cualquier hoja de cálculo ({@link EscritorCSV}).</li>
+ *     <li>{@link Formato#HOG}: binario por columnas, con diccionario para <code>casa</code> y
+ *     <code>patronus</code> y varints para <code>curso</code> ({@link EscritorBinario}). Ocupa
+ *     bastante menos y se lee más rápido.</li>
+ * </ul>
+ * Los dos se pueden comprimir con gzip y se vuelven a cargar con el {@link Importador}. Para
+ * llevar todos los datos a otra máquina basta con exportar Hogwarts, que tiene a todos los
+ * alumnos: al importarlo cada fila vuelve a su casa y se replica a Hogwarts.
+ * <p>
+ * El fichero se escribe con otro nombre y se renombra al terminar, así que nunca queda uno a medias.
+ * <p>
+ * Desde la línea de comandos:
+ * <code>java ... org.equiporon.Transferencia.Exportador &lt;casa|todas&gt; &lt;destino&gt; [csv|hog] [gz]</code>.
+ */
+public final class Exportador {
+
+    private static final Logger logger = LoggerFactory.getLogger(Exportador.class);
+
+    /** Bases de datos que se exportan con {@link #exportarTodas}. */
+    private static final List<String> BASES = FuentesDatos.bases();
+
+    /** Formatos de exportación. */
+    public enum Formato {
+        /** Texto separado por comas, con cabecera. */
+        CSV("csv"),
+        /** Binario por columnas de la aplicación. */
+        HOG("hog");
+
+        private final String extension;
+
+        Formato(String extension) {
+            this.extension = extension;
+        }
+
+        /** @return Extensión del fichero, sin punto. */
+        public String getExtension() { return extension; }
+    }
+
+    /** Destino de las filas exportadas. */
+    interface Escritor extends Closeable {
+        void escribir(Modelo_Estudiante e) throws IOException;
+    }
+
+    private Exportador() {}
+
+    /**
+     * Exporta todos los estudiantes de una base de datos.
+     *
+     * @param casa "Hogwarts" o el nombre de una casa.
+     * @param fichero Fichero de destino (se sustituye si existe).
+     * @param formato Formato del fichero.
+     * @param comprimir {@code true} para comprimirlo con gzip.
+     * @return Número de estudiantes exportados.
+     * @throws IOException Si falla la escritura.
+     * @throws SQLException Si falla la lectura de la base de datos.
+     * @throws IllegalArgumentException Si la casa no existe.
+     */
+    public static long exportar(String casa, Path fichero, Formato formato, boolean comprimir) throws IOException, SQLException {
+        BaseDAO dao = BaseDAO.daoDeCasa(casa);
+        if (dao == null) throw new IllegalArgumentException("Casa no válida: " + casa);
+
+        long inicio = System.currentTimeMillis();
+        Path temporal = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+        int filas;
+        try {
+            OutputStream salida = Files.newOutputStream(temporal);
+            if (comprimir) salida = new GZIPOutputStream(salida, 1 << 16);
+            try (Escritor escritor = formato == Formato.CSV ? new EscritorCSV(salida) : new EscritorBinario(salida)) {
+                filas = dao.recorrerTodos(e -> {
+                    try {
+                        escritor.escribir(e);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+
+        long ms = Math.max(1, System.currentTimeMillis() - inicio);
+        logger.info("📤 {} exportado a {}: {} filas, {} KB en {} ms ({} filas/s).", casa, fichero.getFileName(),
+                filas, Files.size(fichero) / 1024, ms, filas * 1000L / ms);
+        return filas;
+    }
+
+    /**
+     * Exporta las cinco bases de datos en paralelo, cada una en el compartimento de su casa
+     * del {@link EjecutorBD} con prioridad de mantenimiento. Los ficheros se llaman
+     * <code>&lt;casa&gt;.&lt;extensión&gt;[.gz]</code> (ej. <code>hogwarts.hog.gz</code>).
+     *
+     * @param carpeta Carpeta de destino (se crea si no existe).
+     * @param formato Formato de los ficheros.
+     * @param comprimir {@code true} para comprimirlos con gzip.
+     * @return Un {@link CompletableFuture} con el mapa casa → filas exportadas (-1 si falló).
+     * Nunca termina con error.
+     */
+    public static CompletableFuture<Map<String, Long>> exportarTodas(Path carpeta, Formato formato, boolean comprimir) {
+        try {
+            Files.createDirectories(carpeta);
+        } catch (IOException ex) {
+            logger.error("❌ No se pudo crear la carpeta {}.", carpeta, ex);
+            Map<String, Long> fallidas = new LinkedHashMap<>();
+            for (String casa : BASES) fallidas.put(casa, -1L);
+            return CompletableFuture.completedFuture(fallidas);
+        }
+
+        Map<String, CompletableFuture<Long>> tareas = new LinkedHashMap<>();
+        for (String casa : BASES) {
+            Path fichero = carpeta.resolve(nombreFichero(casa, formato, comprimir));
+            tareas.put(casa, EjecutorBD.enviar(casa, EjecutorBD.Prioridad.MANTENIMIENTO,
+                            () -> exportar(casa, fichero, formato, comprimir))
+                    .exceptionally(ex -> {
+                        logger.error("❌ Error exportando {}.", casa, ex);
+                        return -1L;
+                    }));
+        }
+        return CompletableFuture.allOf(tareas.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, Long> resultado = new LinkedHashMap<>();
+            tareas.forEach((casa, tarea) -> resultado.put(casa, tarea.join()));
+            return resultado;
+        });
+    }
+
+    /**
+     * @param casa Casa o "Hogwarts".
+     * @param formato Formato.
+     * @param comprimir Si va comprimido.
+     * @return Nombre de fichero por defecto (ej. <code>gryffindor.csv.gz</code>).
+     */
+    public static String nombreFichero(String casa, Formato formato, boolean comprimir) {
+        return casa.toLowerCase(Locale.ROOT) + "." + formato.getExtension() + (comprimir ? ".gz" : "");
+    }
+
+    /**
+     * Punto de entrada sin interfaz.
+     * <ul>
+     *     <li><code>Exportador Hogwarts hogwarts.hog gz</code>: una base de datos a un fichero.</li>
+     *     <li><code>Exportador todas copia/ csv</code>: las cinco, en paralelo, a una carpeta.</li>
+     * </ul>
+     *
+     * @param args Casa (o "todas"), destino, formato (<code>csv</code> por defecto) y <code>gz</code> para comprimir.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Uso: Exportador <casa|todas> <destino> [csv|hog] [gz]");
+            System.exit(2);
+        }
+        Formato formato = args.length > 2 && args[2].equalsIgnoreCase("hog") ? Formato.HOG : Formato.CSV;
+        boolean comprimir = args.length > 3 && args[3].equalsIgnoreCase("gz");
+        int salida = 0;
+        try {
+            if (args[0].equalsIgnoreCase("todas")) {
+                Map<String, Long> resultado = exportarTodas(Path.of(args[1]), formato, comprimir).join();
+                resultado.forEach((casa, filas) -> System.out.println((filas >= 0 ? "✅ " : "❌ ") + casa + ": "
+                        + (filas >= 0 ? filas + " filas" : "error")));
+                if (resultado.containsValue(-1L)) salida = 1;
+            } else {
+                long filas = exportar(args[0], Path.of(args[1]), formato, comprimir);
+                System.out.println("✅ " + args[0] + ": " + filas + " filas");
+            }
+        } catch (IOException | SQLException | IllegalArgumentException ex) {
+            System.err.println("❌ No se pudo exportar " + args[0] + ": " + ex.getMessage());
+            salida = 1;
+        } finally {
+            Replicador.detener();
+            BaseDAO.shutdown();
+            ConexionBD.cerrarPools();
+        }
+        System.exit(salida);
+    }
+}
@@ -0,0 +1,327 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Conexion.ConexionBD;
+import org.equiporon.Conexion.Config;
+import org.equiporon.Conexion.FuentesDatos;
+import org.equiporon.DAO.BaseDAO;
+import org.equiporon.DAO.EjecutorBD;
+import org.equiporon.DAO.Replicador;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.equiporon.Modelo.ResultadoOperacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Importación masiva de estudiantes desde un fichero, sin interfaz gráfica.
+ * <p>
+ * Admite CSV ({@link LectorCSV}) y el formato binario de {@link EscritorBinario}, comprimidos
+ * o no con gzip; el formato se reconoce por el contenido, no por la extensión.
+ * El fichero se lee por trozos y nunca está entero en memoria:
+ * <ol>
+ *     <li>El hilo que llama lee trozos de {@value #TROZO} filas del CSV, o bloques del binario.</li>
+ *     <li>Cada trozo se convierte y se valida en paralelo (<code>importacion.hilos</code>)
+ *     con las reglas de {@link BaseDAO#validarEstudiante(Modelo_Estudiante)}. Los errores se
+ *     anotan por fila, sin alertas.</li>
+ *     <li>Las filas válidas se reparten por <code>casa</code> y se insertan en la base de datos
+ *     de esa casa (o en Hogwarts) por lotes de <code>importacion.lote</code> filas, con
+ *     {@link BaseDAO#insertarLote(List)}: una transacción por lote, que deja en la bandeja
+ *     de salida la réplica a Hogwarts de todo el lote de una vez.</li>
+ * </ol>
+ * Los lotes van al {@link EjecutorBD} con prioridad de mantenimiento, así que una importación
+ * no deja sin huecos al usuario. Como mucho hay {@value #LOTES_EN_VUELO} lotes por casa y
+ * unos pocos trozos en marcha a la vez: si la base de datos va más lenta que la lectura,
+ * la lectura espera.
+ * <p>
+ * Desde la línea de comandos: <code>java ... org.equiporon.Transferencia.Importador alumnos.csv</code>
+ * (o <code>hogwarts.hog.gz</code>, etc.).
+ */
+public final class Importador {
+
+    private static final Logger logger = LoggerFactory.getLogger(Importador.class);
+
+    /** Filas que se leen y validan juntas. */
+    static final int TROZO = 1_000;
+
+    /** Lotes de una misma casa enviados a la vez. */
+    private static final int LOTES_EN_VUELO = 2;
+
+    private static final int LOTE = Math.max(1, Config.getInt("importacion.lote", 5_000));
+    private static final int HILOS = Math.max(1, Config.getInt("importacion.hilos", Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_ERRORES = Math.max(0, Config.getInt("importacion.errores", 1_000));
+
+    private Importador() {}
+
+    /** Origen de las filas, leído por trozos desde un único hilo. */
+    interface FuenteTrozos extends Closeable {
+        /**
+         * @return El siguiente trozo, o {@code null} al llegar al final.
+         * @throws IOException Si falla la lectura.
+         */
+        Trozo siguiente() throws IOException;
+    }
+
+    /** Trozo leído pero sin convertir; se convierte en un hilo de validación. */
+    @FunctionalInterface
+    interface Trozo {
+        List<FilaLeida> convertir();
+    }
+
+    /**
+     * Fila leída: el estudiante o, si no se pudo leer, el motivo.
+     *
+     * @param linea Línea del fichero donde empieza.
+     * @param estudiante Estudiante leído (sin ID), o {@code null} si hubo error.
+     * @param error Motivo por el que no se pudo leer, o {@code null}.
+     */
+    record FilaLeida(long linea, Modelo_Estudiante estudiante, String error) {
+        static FilaLeida ok(long linea, Modelo_Estudiante e) { return new FilaLeida(linea, e, null); }
+        static FilaLeida error(long linea, String error) { return new FilaLeida(linea, null, error); }
+    }
+
+    /**
+     * Importa un fichero CSV (ver {@link LectorCSV} para el formato) o <code>.hog</code>,
+     * comprimido o no con gzip.
+     *
+     * @param fichero Fichero a importar.
+     * @return El resumen con las filas insertadas, los errores y el rendimiento.
+     * @throws IOException Si no se puede leer el fichero o su cabecera no es válida.
+     */
+    public static ResumenImportacion importar(Path fichero) throws IOException {
+        String nombre = fichero.getFileName().toString();
+        InputStream entrada = abrir(fichero);
+        try (FuenteTrozos fuente = LectorBinario.reconoce(entrada)
+                ? new LectorBinario(entrada, nombre)
+                : new LectorCSV(entrada, nombre, TROZO)) {
+            return importar(nombre, fuente);
+        }
+    }
+
+    /** Abre el fichero con búfer, descomprimiéndolo si empieza por la firma de gzip. */
+    private static InputStream abrir(Path fichero) throws IOException {
+        InputStream entrada = new BufferedInputStream(Files.newInputStream(fichero), 1 << 16);
+        try {
+            entrada.mark(2);
+            boolean gzip = entrada.read() == 0x1f && entrada.read() == 0x8b;
+            entrada.reset();
+            return gzip ? new BufferedInputStream(new GZIPInputStream(entrada, 1 << 16), 1 << 16) : entrada;
+        } catch (IOException ex) {
+            entrada.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Importa todas las filas de una fuente.
+     *
+     * @param nombre Nombre del origen, para el log.
+     * @param fuente Origen de las filas (no se cierra aquí).
+     * @return El resumen de la importación.
+     * @throws IOException Si falla la lectura; lo ya enviado a la base de datos se queda.
+     */
+    static ResumenImportacion importar(String nombre, FuenteTrozos fuente) throws IOException {
+        ResumenImportacion resumen = new Ejecucion().ejecutar(fuente);
+        logger.info("📥 Importación de {}: {}", nombre, resumen);
+        return resumen;
+    }
+
+    /**
+     * Punto de entrada sin interfaz: importa el fichero indicado y muestra el resumen.
+     *
+     * @param args Ruta del fichero (CSV o <code>.hog</code>, comprimido o no).
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Uso: Importador <fichero.csv|fichero.hog>[.gz]");
+            System.exit(2);
+        }
+        int salida = 0;
+        try {
+            ResumenImportacion resumen = importar(Path.of(args[0]));
+            System.out.println("✅ " + resumen);
+            resumen.primerosErrores().forEach(e -> System.out.println("  ❌ " + e));
+            if (resumen.errores() > resumen.primerosErrores().size()) {
+                System.out.println("  ... y " + (resumen.errores() - resumen.primerosErrores().size()) + " errores más.");
+            }
+        } catch (IOException ex) {
+            System.err.println("❌ No se pudo importar " + args[0] + ": " + ex.getMessage());
+            salida = 1;
+        } finally {
+            // Lo que quede por replicar a Hogwarts sigue en las bandejas y se aplica en el próximo arranque
+            Replicador.detener();
+            BaseDAO.shutdown();
+            ConexionBD.cerrarPools();
+        }
+        System.exit(salida);
+    }
+
+    /**
+     * Nombre de casa tal como lo guardan los DAOs, sin distinguir mayúsculas.
+     *
+     * @param casa Casa leída del fichero.
+     * @return El nombre de la casa en {@link FuentesDatos}, o el valor tal cual si no es ninguna.
+     */
+    static String casaNormalizada(String casa) {
+        String normalizada = FuentesDatos.normalizar(casa);
+        return normalizada == null ? casa : normalizada;
+    }
+
+    // ============================================================
+    // === INTERNOS ===============================================
+    // ============================================================
+
+    /** Estado de una importación. */
+    private static final class Ejecucion {
+        private final LongAdder leidas = new LongAdder();
+        private final LongAdder insertadas = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+        private final ConcurrentLinkedQueue<ResumenImportacion.ErrorFila> primerosErrores = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger erroresGuardados = new AtomicInteger();
+        private final Map<String, Destino> destinos = new ConcurrentHashMap<>();
+
+        /** Trozos leídos que todavía no se han repartido. */
+        private final Semaphore trozosEnVuelo = new Semaphore(HILOS * 2);
+
+        ResumenImportacion ejecutar(FuenteTrozos fuente) throws IOException {
+            long inicio = System.currentTimeMillis();
+            AtomicInteger n = new AtomicInteger();
+            ExecutorService validadores = Executors.newFixedThreadPool(HILOS, r -> {
+                Thread t = new Thread(r, "importacion-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+            try {
+                Trozo trozo;
+                while ((trozo = fuente.siguiente()) != null) {
+                    trozosEnVuelo.acquire();
+                    Trozo actual = trozo;
+                    validadores.execute(() -> {
+                        try {
+                            repartir(actual.convertir());
+                        } catch (RuntimeException ex) {
+                            logger.error("❌ Error procesando un trozo de la importación.", ex);
+                        } finally {
+                            trozosEnVuelo.release();
+                        }
+                    });
+                }
+                // Esperar a que se repartan todos los trozos y mandar lo que quede de cada casa
+                trozosEnVuelo.acquire(HILOS * 2);
+                for (Destino d : destinos.values()) {
+                    List<FilaLeida> resto = d.vaciar();
+                    if (!resto.isEmpty()) enviar(d, resto);
+                }
+                for (Destino d : destinos.values()) d.esperar();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Importación interrumpida");
+            } finally {
+                validadores.shutdown();
+            }
+
+            return new ResumenImportacion(leidas.sum(), insertadas.sum(), errores.sum(),
+                    List.copyOf(primerosErrores), System.currentTimeMillis() - inicio);
+        }
+
+        /** Valida un trozo y añade cada fila válida al lote de su casa; envía los lotes que se llenan. */
+        private void repartir(List<FilaLeida> filas) {
+            for (FilaLeida fila : filas) {
+                leidas.increment();
+                if (fila.error() != null) {
+                    anotarError(fila.linea(), fila.error());
+                    continue;
+                }
+                Modelo_Estudiante e = fila.estudiante();
+                e.setCasa(casaNormalizada(e.getCasa()));
+                String error = BaseDAO.validarEstudiante(e);
+                if (error != null) {
+                    anotarError(fila.linea(), error);
+                    continue;
+                }
+                Destino destino = destinos.computeIfAbsent(e.getCasa(), Destino::new);
+                List<FilaLeida> lote = destino.anadir(fila);
+                if (lote != null) enviar(destino, lote);
+            }
+        }
+
+        /** Inserta un lote en su casa; espera si esa casa ya tiene el máximo de lotes en marcha. */
+        private void enviar(Destino destino, List<FilaLeida> lote) {
+            destino.enVuelo.acquireUninterruptibly();
+            List<Modelo_Estudiante> estudiantes = new ArrayList<>(lote.size());
+            for (FilaLeida f : lote) estudiantes.add(f.estudiante());
+
+            EjecutorBD.enviar(destino.casa, EjecutorBD.Prioridad.MANTENIMIENTO, () -> destino.dao.insertarLote(estudiantes))
+                    .whenComplete((resultados, ex) -> {
+                        try {
+                            if (ex != null) {
+                                Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                                for (FilaLeida f : lote) anotarError(f.linea(), "No aplicado: " + causa.getMessage());
+                                return;
+                            }
+                            for (ResultadoOperacion r : resultados) {
+                                if (r.isExito()) insertadas.increment();
+                                else anotarError(lote.get(r.getIndice()).linea(), r.getMensaje());
+                            }
+                        } finally {
+                            destino.enVuelo.release();
+                        }
+                    });
+        }
+
+        private void anotarError(long linea, String mensaje) {
+            errores.increment();
+            if (erroresGuardados.getAndIncrement() < MAX_ERRORES) {
+                primerosErrores.add(new ResumenImportacion.ErrorFila(linea, mensaje));
+            }
+        }
+    }
+
+    /** Lote en construcción de una casa y el límite de lotes suyos en marcha. */
+    private static final class Destino {
+        final String casa;
+        final BaseDAO dao;
+        final Semaphore enVuelo = new Semaphore(LOTES_EN_VUELO);
+        private List<FilaLeida> lote = new ArrayList<>();
+
+        Destino(String casa) {
+            this.casa = casa;
+            this.dao = BaseDAO.daoDeCasa(casa);
+        }
+
+        /** @return El lote completo si con esta fila se ha llenado, o {@code null}. */
+        synchronized List<FilaLeida> anadir(FilaLeida fila) {
+            lote.add(fila);
+            if (lote.size() < LOTE) return null;
+            List<FilaLeida> lleno = lote;
+            lote = new ArrayList<>();
+            return lleno;
+        }
+
+        synchronized List<FilaLeida> vaciar() {
+            List<FilaLeida> resto = lote;
+            lote = new ArrayList<>();
+            return resto;
+        }
+
+        /** Espera a que terminen todos los lotes enviados. */
+        void esperar() throws InterruptedException {
+            enVuelo.acquire(LOTES_EN_VUELO);
+            enVuelo.release(LOTES_EN_VUELO);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lee el formato binario de {@link EscritorBinario} bloque a bloque: cada bloque es un trozo
+ * del {@link Importador}. Los IDs del fichero se descartan, como en el CSV: los asigna cada
+ * base de datos al insertar. La "línea" de cada fila es su posición en el fichero (desde 1).
+ */
+final class LectorBinario implements Importador.FuenteTrozos {
+
+    private final InputStream entrada;
+    private final String fichero;
+    private final List<String> diccionarioCasas = new ArrayList<>();
+    private final List<String> diccionarioPatronus = new ArrayList<>();
+    private long posicion;
+    private boolean terminado;
+
+    /**
+     * Comprueba la cabecera.
+     *
+     * @param entrada Fichero ya descomprimido y con búfer; se cierra con el lector.
+     * @param fichero Nombre del fichero, para los mensajes de error.
+     * @throws IOException Si no es un fichero de este formato o es de otra versión.
+     */
+    LectorBinario(InputStream entrada, String fichero) throws IOException {
+        this.entrada = entrada;
+        this.fichero = fichero;
+        byte[] cabecera = entrada.readNBytes(EscritorBinario.MAGICO.length + 1);
+        if (cabecera.length < EscritorBinario.MAGICO.length + 1
+                || !Arrays.equals(cabecera, 0, EscritorBinario.MAGICO.length, EscritorBinario.MAGICO, 0, EscritorBinario.MAGICO.length)) {
+            entrada.close();
+            throw new IOException(fichero + " no es un fichero .hog");
+        }
+        int version = cabecera[EscritorBinario.MAGICO.length];
+        if (version != EscritorBinario.VERSION) {
+            entrada.close();
+            throw new IOException(fichero + " es de la versión " + version + " del formato; se esperaba la " + EscritorBinario.VERSION);
+        }
+    }
+
+    /**
+     * @param entrada Flujo con búfer que admite {@code mark}.
+     * @return {@code true} si empieza por la cabecera de este formato (no consume nada).
+     * @throws IOException Si falla la lectura.
+     */
+    static boolean reconoce(InputStream entrada) throws IOException {
+        entrada.mark(EscritorBinario.MAGICO.length);
+        byte[] inicio = entrada.readNBytes(EscritorBinario.MAGICO.length);
+        entrada.reset();
+        return Arrays.equals(inicio, EscritorBinario.MAGICO);
+    }
+
+    @Override
+    public Importador.Trozo siguiente() throws IOException {
+        if (terminado) return null;
+        int n = varint();
+        if (n == 0) {
+            terminado = true;
+            return null;
+        }
+        if (n > EscritorBinario.FILAS_BLOQUE) throw new IOException(fichero + " está dañado (bloque de " + n + " filas)");
+
+        // El id se lee para saltarlo
+        for (int i = 0; i < n; i++) cadena();
+        String[] nombres = new String[n];
+        String[] apellidos = new String[n];
+        String[] casas = new String[n];
+        int[] cursos = new int[n];
+        String[] patronus = new String[n];
+        for (int i = 0; i < n; i++) nombres[i] = cadena();
+        for (int i = 0; i < n; i++) apellidos[i] = cadena();
+        for (int i = 0; i < n; i++) casas[i] = codigo(diccionarioCasas);
+        for (int i = 0; i < n; i++) {
+            int z = varint();
+            cursos[i] = (z >>> 1) ^ -(z & 1);
+        }
+        for (int i = 0; i < n; i++) patronus[i] = codigo(diccionarioPatronus);
+
+        List<Importador.FilaLeida> filas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Modelo_Estudiante e = new Modelo_Estudiante(null, nombres[i], apellidos[i], casas[i], cursos[i], patronus[i]);
+            filas.add(Importador.FilaLeida.ok(++posicion, e));
+        }
+        return () -> filas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+
+    private int varint() throws IOException {
+        int valor = 0;
+        for (int desplazamiento = 0; desplazamiento < 35; desplazamiento += 7) {
+            int b = entrada.read();
+            if (b < 0) throw new EOFException(fichero + " está truncado");
+            valor |= (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) return valor;
+        }
+        throw new IOException(fichero + " está dañado (varint demasiado largo)");
+    }
+
+    private String cadena() throws IOException {
+        int longitud = varint();
+        if (longitud == 0) return null;
+        byte[] utf8 = entrada.readNBytes(longitud - 1);
+        if (utf8.length < longitud - 1) throw new EOFException(fichero + " está truncado");
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private String codigo(List<String> diccionario) throws IOException {
+        int codigo = varint();
+        if (codigo == 0) return cadena();
+        if (codigo == 1) {
+            String nueva = cadena();
+            diccionario.add(nueva);
+            return nueva;
+        }
+        if (codigo - 2 >= diccionario.size()) throw new IOException(fichero + " está dañado (entrada de diccionario " + (codigo - 2) + ")");
+        return diccionario.get(codigo - 2);
+    }
+}
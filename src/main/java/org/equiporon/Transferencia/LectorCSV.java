@@ -0,0 +1,165 @@
+package org.equiporon.Transferencia;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lee un CSV de estudiantes por trozos, sin cargarlo entero en memoria.
+ * <p>
+ * La primera línea es la cabecera, con las columnas <code>nombre</code>, <code>apellidos</code>,
+ * <code>casa</code>, <code>curso</code> y <code>patronus</code> en cualquier orden (una columna
+ * <code>id</code> se ignora: los IDs los asigna cada base de datos). El separador es
+ * <code>,</code> o <code>;</code>, el que más aparezca en la cabecera. Los campos pueden ir
+ * entre comillas dobles, con <code>""</code> para una comilla y saltos de línea dentro.
+ * <p>
+ * Este hilo solo separa los registros; convertirlos en {@link Modelo_Estudiante} lo hace
+ * cada trozo al ejecutarse, en los hilos de validación del {@link Importador}.
+ */
+final class LectorCSV implements Importador.FuenteTrozos {
+
+    static final List<String> COLUMNAS = List.of("nombre", "apellidos", "casa", "curso", "patronus");
+
+    private final BufferedReader lector;
+    private final int tamanoTrozo;
+    private final char separador;
+    /** Posición de cada columna de {@link #COLUMNAS} en el fichero. */
+    private final int[] posiciones = new int[COLUMNAS.size()];
+    /** Última línea leída (la cabecera es la 1). */
+    private long linea = 1;
+    private long inicioRegistro;
+
+    /** Registro sin separar en campos, con la línea donde empieza. */
+    private record Registro(long linea, String texto) {}
+
+    /**
+     * Lee la cabecera.
+     *
+     * @param entrada CSV en UTF-8, ya descomprimido; se cierra con el lector.
+     * @param fichero Nombre del fichero, para los mensajes de error.
+     * @param tamanoTrozo Registros por trozo.
+     * @throws IOException Si no se puede leer o a la cabecera le falta alguna columna.
+     */
+    LectorCSV(InputStream entrada, String fichero, int tamanoTrozo) throws IOException {
+        this.lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8), 1 << 16);
+        this.tamanoTrozo = tamanoTrozo;
+        try {
+            String cabecera = lector.readLine();
+            if (cabecera == null) throw new IOException("El fichero está vacío: " + fichero);
+            if (!cabecera.isEmpty() && cabecera.charAt(0) == '\uFEFF') cabecera = cabecera.substring(1);
+            separador = contar(cabecera, ';') > contar(cabecera, ',') ? ';' : ',';
+
+            Map<String, Integer> indice = new HashMap<>();
+            List<String> nombres = separar(cabecera, separador);
+            for (int i = 0; i < nombres.size(); i++) indice.put(nombres.get(i).trim().toLowerCase(Locale.ROOT), i);
+            for (int c = 0; c < COLUMNAS.size(); c++) {
+                Integer pos = indice.get(COLUMNAS.get(c));
+                if (pos == null) throw new IOException("Falta la columna '" + COLUMNAS.get(c) + "' en la cabecera de " + fichero);
+                posiciones[c] = pos;
+            }
+        } catch (IOException ex) {
+            lector.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Importador.Trozo siguiente() throws IOException {
+        List<Registro> registros = new ArrayList<>(tamanoTrozo);
+        String texto;
+        while (registros.size() < tamanoTrozo && (texto = leerRegistro()) != null) {
+            if (!texto.isBlank()) registros.add(new Registro(inicioRegistro, texto));
+        }
+        if (registros.isEmpty()) return null;
+        return () -> convertir(registros);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lector.close();
+    }
+
+    /** Lee un registro completo (varias líneas si hay comillas abiertas) y anota en {@link #inicioRegistro} su primera línea. */
+    private String leerRegistro() throws IOException {
+        String primera = lector.readLine();
+        if (primera == null) return null;
+        inicioRegistro = ++linea;
+        int comillas = contar(primera, '"');
+        if (comillas % 2 == 0) return primera;
+
+        StringBuilder sb = new StringBuilder(primera);
+        String siguiente;
+        while (comillas % 2 != 0 && (siguiente = lector.readLine()) != null) {
+            linea++;
+            sb.append('\n').append(siguiente);
+            comillas += contar(siguiente, '"');
+        }
+        return sb.toString();
+    }
+
+    private List<Importador.FilaLeida> convertir(List<Registro> registros) {
+        List<Importador.FilaLeida> filas = new ArrayList<>(registros.size());
+        for (Registro r : registros) {
+            List<String> campos = separar(r.texto(), separador);
+            String[] v = new String[COLUMNAS.size()];
+            for (int c = 0; c < v.length; c++) {
+                v[c] = posiciones[c] < campos.size() ? campos.get(posiciones[c]).trim() : "";
+            }
+            int curso;
+            try {
+                curso = Integer.parseInt(v[3]);
+            } catch (NumberFormatException ex) {
+                filas.add(Importador.FilaLeida.error(r.linea(), "Curso no numérico: '" + v[3] + "'"));
+                continue;
+            }
+            filas.add(Importador.FilaLeida.ok(r.linea(), new Modelo_Estudiante(null, v[0], v[1], v[2], curso, v[4])));
+        }
+        return filas;
+    }
+
+    /** Separa un registro en campos respetando las comillas dobles. */
+    static List<String> separar(String texto, char separador) {
+        List<String> campos = new ArrayList<>(8);
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < texto.length() && texto.charAt(i + 1) == '"') {
+                        campo.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private static int contar(String texto, char c) {
+        int n = 0;
+        for (int i = 0; i < texto.length(); i++) if (texto.charAt(i) == c) n++;
+        return n;
+    }
+}
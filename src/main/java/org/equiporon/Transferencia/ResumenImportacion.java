@@ -0,0 +1,40 @@
+package org.equiporon.Transferencia;
+
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva (ver {@link Importador}).
+ *
+ * @param leidas Filas leídas del fichero (sin contar la cabecera).
+ * @param insertadas Filas insertadas en alguna base de datos.
+ * @param errores Filas que no se insertaron (inválidas o de un lote que falló).
+ * @param primerosErrores Los primeros errores, con su línea, para revisarlos (como mucho <code>importacion.errores</code>).
+ * @param duracionMs Duración total de la importación.
+ */
+public record ResumenImportacion(long leidas, long insertadas, long errores,
+                                 List<ErrorFila> primerosErrores, long duracionMs) {
+
+    /**
+     * Fila que no se pudo importar.
+     *
+     * @param linea Línea del fichero donde empieza la fila (la cabecera es la 1), o posición en los formatos sin líneas.
+     * @param mensaje Motivo.
+     */
+    public record ErrorFila(long linea, String mensaje) {
+        @Override
+        public String toString() {
+            return "Línea " + linea + ": " + mensaje;
+        }
+    }
+
+    /** @return Filas leídas por segundo. */
+    public double filasPorSegundo() {
+        return duracionMs == 0 ? leidas : leidas * 1000.0 / duracionMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d filas leídas, %d insertadas, %d con errores en %.1f s (%.0f filas/s)",
+                leidas, insertadas, errores, duracionMs / 1000.0, filasPorSegundo());
+    }
+}
@@ -0,0 +1,138 @@
+package org.equiporon.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Cronología del arranque de la aplicación, escrita en el log para seguir su evolución entre versiones.
+ * <p>
+ * Hay dos tipos de entradas, todas en ms desde que arrancó el proceso:
+ * <ul>
+ *     <li><b>Hitos</b> ({@link #hito}): momentos puntuales del hilo de la interfaz, como
+ *     "ventana visible" o "primera página".</li>
+ *     <li><b>Tareas</b> ({@link #tarea}): trabajos en segundo plano (backup inicial, conexiones...)
+ *     con su inicio y su fin.</li>
+ * </ul>
+ * Cuando se ha mostrado la primera página y no queda ninguna tarea en curso se escribe un
+ * resumen con todo, una sola vez. Las tareas pendientes se pueden observar ({@link #observar})
+ * para mostrar un indicador de progreso.
+ */
+public final class Arranque {
+
+    private static final Logger logger = LoggerFactory.getLogger(Arranque.class);
+
+    /** Hito que da por terminada la parte visible del arranque. */
+    public static final String PRIMERA_PAGINA = "primera página";
+
+    private static final long INICIO = ProcessHandle.current().info().startInstant()
+            .map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+
+    /** Entrada de la cronología (en un hito, {@code inicio == fin}). */
+    private record Entrada(String nombre, long inicio, long fin, boolean ok) {}
+
+    private static final List<Entrada> entradas = new ArrayList<>();
+    private static final Set<String> pendientes = new LinkedHashSet<>();
+    private static Consumer<Set<String>> observador;
+    private static boolean visible;
+    private static boolean resumido;
+
+    private Arranque() {}
+
+    /**
+     * Anota un hito (solo la primera vez que se alcanza).
+     *
+     * @param nombre Nombre del hito.
+     */
+    public static void hito(String nombre) {
+        long ms = ahora();
+        synchronized (Arranque.class) {
+            if (resumido || entradas.stream().anyMatch(e -> e.nombre().equals(nombre))) return;
+            entradas.add(new Entrada(nombre, ms, ms, true));
+            if (nombre.equals(PRIMERA_PAGINA)) visible = true;
+        }
+        logger.info("⏱️ Arranque: {} a los {} ms.", nombre, ms);
+        resumirSiTermina();
+    }
+
+    /**
+     * Anota una tarea de arranque en segundo plano, desde ahora hasta que termine el futuro.
+     *
+     * @param nombre Nombre de la tarea (también es el que se muestra como pendiente).
+     * @param futuro Trabajo de la tarea.
+     * @param <T> Tipo del resultado.
+     * @return El mismo futuro, para encadenar.
+     */
+    public static <T> CompletableFuture<T> tarea(String nombre, CompletableFuture<T> futuro) {
+        long inicio = ahora();
+        synchronized (Arranque.class) {
+            pendientes.add(nombre);
+        }
+        avisar();
+        futuro.whenComplete((r, ex) -> {
+            long fin = ahora();
+            synchronized (Arranque.class) {
+                pendientes.remove(nombre);
+                entradas.add(new Entrada(nombre, inicio, fin, ex == null));
+            }
+            logger.info("⏱️ Arranque: {} {} en {} ms (a los {} ms).", nombre, ex == null ? "terminado" : "fallido",
+                    fin - inicio, fin);
+            avisar();
+            resumirSiTermina();
+        });
+        return futuro;
+    }
+
+    /**
+     * Registra quién recibe las tareas pendientes cada vez que cambian (y una vez en el acto).
+     * Solo hay uno: la ventana nueva (por ejemplo, al cambiar de idioma) sustituye al anterior.
+     *
+     * @param nuevo Recibe una copia de las tareas en curso, desde cualquier hilo.
+     */
+    public static void observar(Consumer<Set<String>> nuevo) {
+        synchronized (Arranque.class) {
+            observador = nuevo;
+        }
+        avisar();
+    }
+
+    private static void avisar() {
+        Consumer<Set<String>> destino;
+        Set<String> copia;
+        synchronized (Arranque.class) {
+            destino = observador;
+            copia = new LinkedHashSet<>(pendientes);
+        }
+        if (destino != null) destino.accept(copia);
+    }
+
+    private static void resumirSiTermina() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (Arranque.class) {
+            if (resumido || !visible || !pendientes.isEmpty()) return;
+            resumido = true;
+            entradas.sort(Comparator.comparingLong(Entrada::fin));
+            long total = 0;
+            for (Entrada e : entradas) {
+                total = Math.max(total, e.fin());
+                sb.append("\n  ").append(String.format("%6d ms", e.fin())).append("  ").append(e.nombre());
+                if (e.fin() != e.inicio()) sb.append(" (").append(e.fin() - e.inicio()).append(" ms)");
+                if (!e.ok()) sb.append(" ❌");
+            }
+            sb.insert(0, "⏱️ Arranque completo en " + total + " ms:");
+        }
+        logger.info(sb.toString());
+    }
+
+    private static long ahora() {
+        return System.currentTimeMillis() - INICIO;
+    }
+}
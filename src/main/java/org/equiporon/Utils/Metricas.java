@@ -0,0 +1,257 @@
+package org.equiporon.Utils;
+
+import org.equiporon.Conexion.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registro de métricas de la aplicación, publicado por JMX (JConsole, VisualVM...).
+ * <p>
+ * Guarda dos tipos de métricas:
+ * <ul>
+ *   <li><b>Series de latencia</b> por operación y casa (cada casa es un motor distinto):
+ *   número de operaciones, errores, filas, operaciones por segundo y percentiles.
+ *   Se publican como <code>org.equiporon:type=Operacion,casa=...,operacion=...</code>.</li>
+ *   <li><b>Indicadores</b>: valores que se leen en el momento de consultarlos (conexiones en
+ *   uso de un pool, tareas en cola de un ejecutor...), agrupados en
+ *   <code>org.equiporon:type=...,nombre=...</code>.</li>
+ * </ul>
+ * El coste en el camino caliente es un {@link System#nanoTime()} al empezar y unos pocos
+ * incrementos atómicos al terminar (ver {@link SerieLatencia}). Con
+ * <code>metricas.activas=false</code> no se registra nada.
+ * <p>
+ * Uso típico:
+ * <pre>{@code
+ * long inicio = System.nanoTime();
+ * ...
+ * Metricas.registrar(Metricas.Operacion.INSERTAR, getCasa(), inicio, ok);
+ * }</pre>
+ */
+public final class Metricas {
+
+    private static final Logger logger = LoggerFactory.getLogger(Metricas.class);
+
+    private static final String DOMINIO = "org.equiporon";
+
+    private static final boolean ACTIVAS = !"false".equalsIgnoreCase(Config.get("metricas.activas"));
+
+    /** Operaciones medidas. */
+    public enum Operacion {
+        INSERTAR, EDITAR, BORRAR,
+        INSERTAR_LOTE, EDITAR_LOTE, BORRAR_LOTE,
+        LEER, SINCRONIZAR, RECONCILIAR, BACKUP, RESTAURAR, DESHACER, CONECTAR;
+
+        private final String nombre = name().toLowerCase();
+
+        /** @return Nombre en minúsculas, tal como aparece en JMX. */
+        public String getNombre() { return nombre; }
+    }
+
+    private static final Operacion[] OPERACIONES = Operacion.values();
+
+    /** Series de cada casa, indexadas por {@link Operacion#ordinal()}. */
+    private static final Map<String, AtomicReferenceArray<SerieLatencia>> series = new ConcurrentHashMap<>();
+
+    /** Grupos de indicadores por nombre JMX. */
+    private static final Map<String, Indicadores> indicadores = new ConcurrentHashMap<>();
+
+    private Metricas() {}
+
+    /**
+     * Registra una operación de una fila.
+     *
+     * @param op Operación realizada.
+     * @param casa Casa (o "Hogwarts", "Backup") donde se realizó.
+     * @param inicioNanos Valor de {@link System#nanoTime()} al empezar.
+     * @param ok {@code false} si terminó con error.
+     */
+    public static void registrar(Operacion op, String casa, long inicioNanos, boolean ok) {
+        registrar(op, casa, inicioNanos, ok, 1);
+    }
+
+    /**
+     * Registra una operación que ha procesado varias filas (lotes, lecturas, restauraciones).
+     *
+     * @param op Operación realizada.
+     * @param casa Casa (o "Hogwarts", "Backup") donde se realizó.
+     * @param inicioNanos Valor de {@link System#nanoTime()} al empezar.
+     * @param ok {@code false} si terminó con error.
+     * @param filas Filas procesadas.
+     */
+    public static void registrar(Operacion op, String casa, long inicioNanos, boolean ok, int filas) {
+        if (!ACTIVAS || casa == null) return;
+        long nanos = System.nanoTime() - inicioNanos;
+        serie(op, casa).registrar(nanos, ok, filas);
+    }
+
+    /**
+     * @param op Operación.
+     * @param casa Casa.
+     * @return La serie de esa operación en esa casa (se crea y publica la primera vez).
+     */
+    public static SerieLatencia serie(Operacion op, String casa) {
+        AtomicReferenceArray<SerieLatencia> deCasa = series.get(casa);
+        if (deCasa == null) {
+            deCasa = series.computeIfAbsent(casa, c -> new AtomicReferenceArray<>(OPERACIONES.length));
+        }
+        SerieLatencia serie = deCasa.get(op.ordinal());
+        if (serie != null) return serie;
+
+        SerieLatencia nueva = new SerieLatencia(op.getNombre(), casa);
+        if (deCasa.compareAndSet(op.ordinal(), null, nueva)) {
+            publicar(DOMINIO + ":type=Operacion,casa=" + casa + ",operacion=" + op.getNombre(), nueva);
+            return nueva;
+        }
+        return deCasa.get(op.ordinal());
+    }
+
+    /**
+     * Serie de latencia que no corresponde a una operación de una casa (ej. la espera en cola
+     * de cada prioridad del planificador). Se publica como
+     * <code>org.equiporon:type=&lt;tipo&gt;,nombre=&lt;nombre&gt;,operacion=&lt;operacion&gt;</code>.
+     * Se registra con {@link SerieLatencia#medir(long, boolean)}.
+     *
+     * @param tipo Tipo de objeto JMX (ej. "Prioridad").
+     * @param nombre Grupo dentro del tipo (ej. "interactiva"); aparece como casa de la serie.
+     * @param operacion Qué se mide (ej. "espera").
+     * @return La serie (nueva en cada llamada: se debe guardar).
+     */
+    public static SerieLatencia serie(String tipo, String nombre, String operacion) {
+        SerieLatencia serie = new SerieLatencia(operacion, nombre);
+        if (ACTIVAS) publicar(DOMINIO + ":type=" + tipo + ",nombre=" + nombre + ",operacion=" + operacion, serie);
+        return serie;
+    }
+
+    /**
+     * Publica un indicador. Si ya existía uno con el mismo nombre, se sustituye
+     * (p. ej. al volver a crear un pool tras cerrarlo).
+     *
+     * @param tipo Tipo de objeto JMX (ej. "Pool", "Ejecutor").
+     * @param nombre Nombre del objeto (ej. "Gryffindor").
+     * @param atributo Nombre del atributo (ej. "enUso").
+     * @param valor Función que devuelve el valor actual.
+     */
+    public static void indicador(String tipo, String nombre, String atributo, DoubleSupplier valor) {
+        if (!ACTIVAS) return;
+        String clave = DOMINIO + ":type=" + tipo + ",nombre=" + nombre;
+        indicadores.computeIfAbsent(clave, c -> {
+            Indicadores grupo = new Indicadores(tipo + " " + nombre);
+            publicar(c, grupo);
+            return grupo;
+        }).valores.put(atributo, valor);
+    }
+
+    /**
+     * Publica los indicadores habituales de un ejecutor: hilos, tareas activas,
+     * tareas en cola y tareas completadas.
+     *
+     * @param nombre Nombre del ejecutor.
+     * @param ejecutor Ejecutor a observar.
+     */
+    public static void ejecutor(String nombre, ThreadPoolExecutor ejecutor) {
+        indicador("Ejecutor", nombre, "hilos", ejecutor::getPoolSize);
+        indicador("Ejecutor", nombre, "activas", ejecutor::getActiveCount);
+        indicador("Ejecutor", nombre, "enCola", () -> ejecutor.getQueue().size());
+        indicador("Ejecutor", nombre, "completadas", ejecutor::getCompletedTaskCount);
+    }
+
+    /** @return {@code false} si las métricas están desactivadas con <code>metricas.activas=false</code>. */
+    public static boolean activas() {
+        return ACTIVAS;
+    }
+
+    /** @return Todas las series creadas hasta ahora. */
+    public static List<SerieLatencia> getSeries() {
+        List<SerieLatencia> todas = new ArrayList<>();
+        for (AtomicReferenceArray<SerieLatencia> deCasa : series.values()) {
+            for (int i = 0; i < deCasa.length(); i++) {
+                SerieLatencia s = deCasa.get(i);
+                if (s != null) todas.add(s);
+            }
+        }
+        return todas;
+    }
+
+    /** @return Una línea por serie con operaciones, percentiles y errores, para el log. */
+    public static String resumen() {
+        StringBuilder sb = new StringBuilder();
+        for (SerieLatencia s : getSeries()) {
+            if (s.getOperaciones() > 0) sb.append("\n  ").append(s);
+        }
+        return sb.isEmpty() ? " sin operaciones" : sb.toString();
+    }
+
+    /** Registra un MBean en el servidor de la plataforma; si falla, la app sigue sin él. */
+    private static void publicar(String nombre, Object mbean) {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objeto = new ObjectName(nombre);
+            if (servidor.isRegistered(objeto)) servidor.unregisterMBean(objeto);
+            servidor.registerMBean(mbean, objeto);
+        } catch (JMException | RuntimeException e) {
+            logger.warn("⚠️ No se pudo publicar la métrica {} por JMX: {}", nombre, e.getMessage());
+        }
+    }
+
+    /** MBean dinámico con un atributo de solo lectura por indicador. */
+    private static final class Indicadores implements DynamicMBean {
+
+        private final String descripcion;
+        private final Map<String, DoubleSupplier> valores = new ConcurrentSkipListMap<>();
+
+        Indicadores(String descripcion) {
+            this.descripcion = descripcion;
+        }
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            DoubleSupplier valor = valores.get(atributo);
+            if (valor == null) throw new AttributeNotFoundException(atributo);
+            return valor.getAsDouble();
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Los indicadores son de solo lectura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            AttributeList lista = new AttributeList();
+            for (String a : atributos) {
+                DoubleSupplier valor = valores.get(a);
+                if (valor != null) lista.add(new Attribute(a, valor.getAsDouble()));
+            }
+            return lista;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String accion, Object[] params, String[] firma) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(accion));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] atributos = valores.keySet().stream()
+                    .map(a -> new MBeanAttributeInfo(a, "double", a, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Indicadores.class.getName(), descripcion, atributos, null, null, null);
+        }
+    }
+}
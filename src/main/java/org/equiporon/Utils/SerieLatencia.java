@@ -0,0 +1,139 @@
+package org.equiporon.Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores e histograma de latencias de una operación en una casa.
+ * <p>
+ * El histograma guarda microsegundos en cubetas logarítmicas: cada potencia de dos se
+ * divide en 4 cubetas, así que cualquier percentil tiene un error máximo del 25 % y la
+ * serie ocupa siempre lo mismo (unos pocos KB), sin guardar muestras. Registrar una
+ * medida son unos pocos incrementos atómicos, sin bloqueos.
+ */
+public final class SerieLatencia implements SerieLatenciaMXBean {
+
+    /** 4 cubetas exactas (0-3 µs) y 4 por cada potencia de dos hasta 2^41 µs. */
+    private static final int CUBETAS = 4 + 40 * 4;
+
+    private final String operacion;
+    private final String casa;
+
+    private final LongAdder operaciones = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder filas = new LongAdder();
+    private final LongAdder nanosTotal = new LongAdder();
+    private final AtomicLong nanosMax = new AtomicLong();
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private volatile long desde = System.nanoTime();
+
+    SerieLatencia(String operacion, String casa) {
+        this.operacion = operacion;
+        this.casa = casa;
+    }
+
+    /**
+     * Añade una medida.
+     *
+     * @param nanos Duración de la operación.
+     * @param ok {@code false} si terminó con error.
+     * @param numFilas Filas procesadas por la operación.
+     */
+    void registrar(long nanos, boolean ok, int numFilas) {
+        operaciones.increment();
+        if (!ok) errores.increment();
+        filas.add(numFilas);
+        nanosTotal.add(nanos);
+        cubetas.incrementAndGet(cubeta(nanos / 1_000));
+
+        long max = nanosMax.get();
+        while (nanos > max && !nanosMax.compareAndSet(max, nanos)) max = nanosMax.get();
+    }
+
+    /**
+     * Añade una medida de una fila que empezó en {@code inicioNanos}.
+     * No hace nada con <code>metricas.activas=false</code>.
+     *
+     * @param inicioNanos Valor de {@link System#nanoTime()} al empezar.
+     * @param ok {@code false} si terminó con error.
+     */
+    public void medir(long inicioNanos, boolean ok) {
+        if (Metricas.activas()) registrar(System.nanoTime() - inicioNanos, ok, 1);
+    }
+
+    /** Cubeta del histograma para una duración en microsegundos. */
+    static int cubeta(long micros) {
+        if (micros < 4) return (int) Math.max(0, micros);
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exp - 2)) & 3);
+        return Math.min(CUBETAS - 1, 4 + (exp - 2) * 4 + sub);
+    }
+
+    /** Mayor duración (µs) que cae en una cubeta. */
+    static long limiteSuperior(int cubeta) {
+        if (cubeta < 4) return cubeta;
+        int exp = (cubeta - 4) / 4 + 2;
+        int sub = (cubeta - 4) % 4;
+        long inferior = (4L + sub) << (exp - 2);
+        return inferior + (1L << (exp - 2)) - 1;
+    }
+
+    /** Percentil {@code p} (0..1) en ms, a partir del histograma. */
+    private double percentilMs(double p) {
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) total += cubetas.get(i);
+        if (total == 0) return 0;
+
+        long objetivo = Math.max(1, (long) Math.ceil(p * total));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += cubetas.get(i);
+            if (acumulado >= objetivo) return limiteSuperior(i) / 1_000.0;
+        }
+        return getMaxMs();
+    }
+
+    @Override public String getCasa() { return casa; }
+    @Override public String getOperacion() { return operacion; }
+    @Override public long getOperaciones() { return operaciones.sum(); }
+    @Override public long getErrores() { return errores.sum(); }
+    @Override public long getFilas() { return filas.sum(); }
+
+    @Override
+    public double getPorSegundo() {
+        double segundos = (System.nanoTime() - desde) / 1e9;
+        return segundos <= 0 ? 0 : operaciones.sum() / segundos;
+    }
+
+    @Override
+    public double getMediaMs() {
+        long n = operaciones.sum();
+        return n == 0 ? 0 : nanosTotal.sum() / 1e6 / n;
+    }
+
+    @Override public double getMaxMs() { return nanosMax.get() / 1e6; }
+    @Override public double getP50Ms() { return percentilMs(0.50); }
+    @Override public double getP95Ms() { return percentilMs(0.95); }
+    @Override public double getP99Ms() { return percentilMs(0.99); }
+    @Override public double getP999Ms() { return percentilMs(0.999); }
+
+    @Override
+    public void reiniciar() {
+        // Las medidas que lleguen durante el reinicio pueden quedar a medias; es solo estadística
+        operaciones.reset();
+        errores.reset();
+        filas.reset();
+        nanosTotal.reset();
+        nanosMax.set(0);
+        for (int i = 0; i < CUBETAS; i++) cubetas.set(i, 0);
+        desde = System.nanoTime();
+    }
+
+    /** @return Resumen de una línea para el log. */
+    @Override
+    public String toString() {
+        return String.format("%s %s: %d ops (%d errores), media %.2f ms, p50 %.2f ms, p99 %.2f ms, máx %.2f ms",
+                casa, operacion, getOperaciones(), getErrores(), getMediaMs(), getP50Ms(), getP99Ms(), getMaxMs());
+    }
+}
@@ -0,0 +1,47 @@
+package org.equiporon.Utils;
+
+/**
+ * Vista JMX de una {@link SerieLatencia}: las métricas de una operación en una casa.
+ * Los tiempos se dan en milisegundos y los percentiles son aproximados (cubetas de ±25 %).
+ */
+public interface SerieLatenciaMXBean {
+
+    /** @return Casa (o "Hogwarts", "Backup") de la serie; en las series que no son de una casa, su grupo. */
+    String getCasa();
+
+    /** @return Operación medida (insertar, editar, leer...). */
+    String getOperacion();
+
+    /** @return Operaciones registradas desde el último reinicio. */
+    long getOperaciones();
+
+    /** @return Operaciones que terminaron con error. */
+    long getErrores();
+
+    /** @return Filas procesadas (en las operaciones por lotes, varias por operación). */
+    long getFilas();
+
+    /** @return Operaciones por segundo desde el último reinicio. */
+    double getPorSegundo();
+
+    /** @return Latencia media. */
+    double getMediaMs();
+
+    /** @return Latencia máxima. */
+    double getMaxMs();
+
+    /** @return Percentil 50 de la latencia. */
+    double getP50Ms();
+
+    /** @return Percentil 95 de la latencia. */
+    double getP95Ms();
+
+    /** @return Percentil 99 de la latencia. */
+    double getP99Ms();
+
+    /** @return Percentil 99,9 de la latencia. */
+    double getP999Ms();
+
+    /** Pone a cero la serie (p. ej. antes de una prueba de carga). */
+    void reiniciar();
+}
@@ -0,0 +1,128 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Diario de {@link DiarioDeshacer} en <code>deshacer.diario</code> de los tests: lo que se anota y
+ * las marcas de deshecho, rehecho y descartado deben reconstruir las mismas pilas al volver a
+ * abrirlo, también después de la compactación que se hace al cargarlo.
+ * <p>
+ * Deshacer de verdad necesita las bases de datos, así que las marcas se escriben a mano al final
+ * del diario, con el mismo formato (byte tipo y long número) que usa el diario.
+ */
+class DiarioDeshacerTest {
+
+    private static final Path DIARIO = Path.of(Config.get("deshacer.diario"));
+
+    @BeforeEach
+    void diarioVacio() throws IOException {
+        DiarioDeshacer.cerrar();
+        Files.deleteIfExists(DIARIO);
+    }
+
+    @Test
+    void losPasosSeRecuperanAlReabrir() {
+        Modelo_Estudiante antes = alumno("7", "Neville");
+        Modelo_Estudiante despues = alumno("7", "Neville L.");
+        DiarioDeshacer.anotar("Gryffindor", "insert", List.of(new DiarioDeshacer.Cambio("7", null, antes)));
+        DiarioDeshacer.anotar("Gryffindor", "update", List.of(new DiarioDeshacer.Cambio("7", antes, despues)));
+        DiarioDeshacer.anotar("Gryffindor", "delete", List.of(new DiarioDeshacer.Cambio("7", despues, null)));
+        DiarioDeshacer.cerrar();
+
+        List<DiarioDeshacer.Paso> pasos = DiarioDeshacer.pilaDeshacer();
+        assertEquals(List.of(3L, 2L, 1L), pasos.stream().map(DiarioDeshacer.Paso::numero).toList());
+        DiarioDeshacer.Paso edicion = pasos.get(1);
+        assertEquals("update", edicion.operacion());
+        assertTrue(DiarioDeshacer.mismaFila(antes, edicion.cambios().getFirst().antes()));
+        assertTrue(DiarioDeshacer.mismaFila(despues, edicion.cambios().getFirst().despues()));
+        assertNull(pasos.get(0).cambios().getFirst().despues());
+        assertEquals(0, DiarioDeshacer.getPasosRehacer());
+    }
+
+    @Test
+    void lasMarcasSeReaplicanDespuesDeCompactar() throws IOException {
+        for (int i = 1; i <= 3; i++) anotar(i);
+        DiarioDeshacer.cerrar();
+        // Se deshacen 3 y 2, se rehace 2 y el 1 se descarta por conflicto
+        anadirMarcas(marca('D', 3), marca('D', 2), marca('R', 2), marca('X', 1));
+
+        assertPilas(List.of(2L), List.of(3L));
+        // Al cargarlo se ha compactado: solo los pasos vivos y la marca del deshecho
+        DiarioDeshacer.cerrar();
+        assertEquals(3, registros());
+        assertPilas(List.of(2L), List.of(3L));
+
+        // Un paso nuevo sigue la numeración y vacía la pila de rehacer
+        anotar(4);
+        DiarioDeshacer.cerrar();
+        assertPilas(List.of(4L, 2L), List.of());
+    }
+
+    @Test
+    void unRegistroCortadoAlFinalSeDescarta() throws IOException {
+        anotar(1);
+        anotar(2);
+        DiarioDeshacer.cerrar();
+        // Cabecera de un registro cuyo contenido no llegó a escribirse entero
+        anadirMarcas(ByteBuffer.allocate(8 + 10).putInt(500).putInt(0).flip());
+
+        assertPilas(List.of(2L, 1L), List.of());
+        // Lo anotado justo después de cargar va detrás de la compactación, no detrás de la basura
+        anotar(3);
+        DiarioDeshacer.cerrar();
+        assertPilas(List.of(3L, 2L, 1L), List.of());
+    }
+
+    private static void anotar(int i) {
+        DiarioDeshacer.anotar("Gryffindor", "update", List.of(new DiarioDeshacer.Cambio(String.valueOf(i),
+                alumno(String.valueOf(i), "Antes"), alumno(String.valueOf(i), "Después"))));
+    }
+
+    private static Modelo_Estudiante alumno(String id, String nombre) {
+        return new Modelo_Estudiante(id, nombre, "Longbottom", "Gryffindor", 5, "Sapo");
+    }
+
+    private static ByteBuffer marca(char tipo, long numero) {
+        return FormatoDiario.registro(salida -> {
+            salida.writeByte(tipo);
+            salida.writeLong(numero);
+        });
+    }
+
+    private static void anadirMarcas(ByteBuffer... registros) throws IOException {
+        try (FileChannel canal = FileChannel.open(DIARIO, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (ByteBuffer registro : registros) FormatoDiario.escribir(canal, registro);
+        }
+    }
+
+    /** @return Registros válidos del diario en disco. */
+    private static int registros() throws IOException {
+        int n = 0;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(DIARIO)))) {
+            while (FormatoDiario.leer(entrada, 1 << 20, DIARIO) != null) n++;
+        }
+        return n;
+    }
+
+    private static void assertPilas(List<Long> deshacer, List<Long> rehacer) {
+        assertEquals(deshacer, DiarioDeshacer.pilaDeshacer().stream().map(DiarioDeshacer.Paso::numero).toList());
+        assertEquals(rehacer, DiarioDeshacer.pilaRehacer().stream().map(DiarioDeshacer.Paso::numero).toList());
+    }
+}
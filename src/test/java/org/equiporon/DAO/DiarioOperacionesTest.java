@@ -0,0 +1,197 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link DiarioOperaciones} sobre la carpeta de los tests (<code>operaciones.dir</code>), con
+ * segmentos de 1 MB y solo dos conservados (<code>src/test/resources/config.properties</code>), así
+ * que rodar y borrar segmentos se ve con pocos registros. Cada test cierra el diario para volver a
+ * abrirlo desde el disco, como al arrancar tras un cierre de golpe.
+ * <p>
+ * Las secuencias se cuentan desde la que toca al empezar cada test: en Windows no se puede borrar
+ * un segmento mientras siga proyectado, así que puede quedar lo de un test anterior.
+ */
+class DiarioOperacionesTest {
+
+    private static final Path DIRECTORIO = Path.of(Config.get("operaciones.dir"));
+
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().startsWith("windows");
+
+    /** Secuencia del primer registro del test. */
+    private long base;
+
+    @BeforeEach
+    void diarioCerrado() throws IOException {
+        DiarioOperaciones.cerrar();
+        for (Path segmento : segmentos()) {
+            try {
+                Files.delete(segmento);
+            } catch (IOException ignorado) {
+                // Todavía proyectado (Windows): se queda
+            }
+        }
+        base = DiarioOperaciones.getSiguienteSeq();
+    }
+
+    @Test
+    void loAnotadoSeLeeAlReabrir() throws IOException {
+        for (int i = 0; i < 5; i++) assertEquals(base + i, anotar(3));
+        DiarioOperaciones.cerrar();
+
+        assertEquals(base + 5, DiarioOperaciones.getSiguienteSeq());
+        List<DiarioOperaciones.Entrada> entradas = leer(base);
+        assertEquals(List.of(base, base + 1, base + 2, base + 3, base + 4), secuencias(entradas));
+        DiarioOperaciones.Entrada tercera = entradas.get(2);
+        assertEquals("Gryffindor", tercera.casa());
+        assertEquals(3, tercera.filas().size());
+        assertEquals((base + 2) + "-2", tercera.filas().get(2).getId());
+        assertEquals(List.of(String.valueOf(base + 2)), tercera.borrados());
+    }
+
+    @Test
+    void unRegistroDanadoAlFinalSeDescartaYSeReescribe() throws IOException {
+        for (int i = 0; i < 3; i++) anotar(2);
+        DiarioOperaciones.cerrar();
+
+        // Un byte cambiado en el contenido del último registro: su CRC ya no cuadra
+        Path segmento = segmentos().getLast();
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int pos = inicios(segmento).getLast() + 8 + 20;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            canal.read(b, pos);
+            canal.write(ByteBuffer.wrap(new byte[]{(byte) ~b.get(0)}), pos);
+        }
+
+        assertEquals(base + 2, DiarioOperaciones.getSiguienteSeq());
+        assertEquals(List.of(base, base + 1), secuencias(leer(base)));
+        assertEquals(base + 2, anotar(1));
+        assertEquals(List.of(base, base + 1, base + 2), secuencias(leer(base)));
+        assertEquals(1, leer(base + 2).getFirst().filas().size());
+    }
+
+    @Test
+    void unaEscrituraCortadaSeLimpiaAlReabrir() throws IOException {
+        for (int i = 0; i < 3; i++) anotar(2);
+        DiarioOperaciones.cerrar();
+
+        // Cabecera de un cuarto registro con el contenido a medio escribir
+        Path segmento = segmentos().getLast();
+        int fin = fin(segmento);
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer cortado = ByteBuffer.allocate(8 + 30);
+            cortado.putInt(200).putInt(12345).putLong(base + 3).put("a medias".getBytes());
+            canal.write(cortado.flip(), fin);
+        }
+
+        assertEquals(base + 3, DiarioOperaciones.getSiguienteSeq());
+        DiarioOperaciones.cerrar();
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ)) {
+            ByteBuffer resto = ByteBuffer.allocate(8 + 30);
+            canal.read(resto, fin);
+            for (byte b : resto.array()) assertEquals(0, b, "Queda basura detrás del último registro");
+        }
+        assertEquals(base + 3, anotar(1));
+        assertEquals(List.of(base, base + 1, base + 2, base + 3), secuencias(leer(base)));
+    }
+
+    @Test
+    void alRodarSeConservanLosUltimosSegmentosYSeLeeDesdeCualquierSecuencia() throws IOException {
+        // Unos 100 kB por registro: cada segmento de 1 MB guarda unos diez
+        int total = 45;
+        for (int i = 0; i < total; i++) assertEquals(base + i, anotar(2000));
+        long ultima = base + total - 1;
+        DiarioOperaciones.cerrar();
+
+        List<Path> quedan = segmentos();
+        // En Windows los segmentos antiguos siguen proyectados y no se pueden borrar todavía
+        if (!WINDOWS) assertEquals(2, quedan.size());
+        long primero = primeraSecuencia(quedan.get(quedan.size() - 2));
+        long ultimoSegmento = primeraSecuencia(quedan.getLast());
+        assertTrue(primero > base, "No se ha abierto ningún segmento nuevo");
+
+        // Desde el principio de un segmento: todo lo que sigue, sin huecos
+        List<Long> todas = secuencias(leer(primero));
+        assertEquals(primero, (long) todas.getFirst());
+        assertEquals(ultima, (long) todas.getLast());
+        assertEquals(ultima - primero + 1, todas.size());
+
+        // Desde la mitad de un segmento, y desde la mitad del último
+        for (long desde : List.of(primero + 3, ultimoSegmento + 1)) {
+            List<Long> leidas = secuencias(leer(desde));
+            assertEquals(desde, (long) leidas.getFirst());
+            assertEquals(ultima - desde + 1, leidas.size());
+        }
+
+        assertEquals(ultima + 1, anotar(1));
+    }
+
+    /** Anota un "update" de {@code filas} filas y el borrado del ID igual a su secuencia. */
+    private static long anotar(int filas) {
+        long seq = DiarioOperaciones.getSiguienteSeq();
+        List<Modelo_Estudiante> lista = new ArrayList<>(filas);
+        for (int i = 0; i < filas; i++) {
+            lista.add(new Modelo_Estudiante(seq + "-" + i, "Alumno", "Apellido", "Gryffindor", 1 + i % 7, "Ciervo"));
+        }
+        return DiarioOperaciones.anotar("Gryffindor", "update", false, lista, List.of(String.valueOf(seq)));
+    }
+
+    private static List<DiarioOperaciones.Entrada> leer(long desde) throws IOException {
+        List<DiarioOperaciones.Entrada> entradas = new ArrayList<>();
+        long ultima = DiarioOperaciones.leer(desde, entradas::add);
+        assertEquals(entradas.isEmpty() ? desde - 1 : entradas.getLast().seq(), ultima);
+        return entradas;
+    }
+
+    private static List<Long> secuencias(List<DiarioOperaciones.Entrada> entradas) {
+        return entradas.stream().map(DiarioOperaciones.Entrada::seq).toList();
+    }
+
+    private static List<Path> segmentos() throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        if (!Files.isDirectory(DIRECTORIO)) return segmentos;
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(DIRECTORIO, "*.seg")) {
+            for (Path archivo : archivos) segmentos.add(archivo);
+        }
+        segmentos.sort(null);
+        return segmentos;
+    }
+
+    private static long primeraSecuencia(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Long.parseLong(nombre.substring(0, nombre.length() - ".seg".length()));
+    }
+
+    /** @return Posición de cada registro del segmento, hasta la longitud 0 que marca el final. */
+    private static List<Integer> inicios(Path segmento) throws IOException {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        List<Integer> inicios = new ArrayList<>();
+        int pos = 0;
+        while (pos + 8 <= datos.limit() && datos.getInt(pos) > 0) {
+            inicios.add(pos);
+            pos += 8 + datos.getInt(pos);
+        }
+        return inicios;
+    }
+
+    private static int fin(Path segmento) throws IOException {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        int ultimo = inicios(segmento).getLast();
+        return ultimo + 8 + datos.getInt(ultimo);
+    }
+}
@@ -0,0 +1,95 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Conexion.Config;
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Recuperación del diario de {@link EscrituraDiferida} (<code>diferida.diario</code> de los tests)
+ * tras un cierre de golpe: se leen las ediciones hasta el primer registro cortado o dañado.
+ * <p>
+ * Las ediciones son de una casa que no existe, así que su volcado falla sin tocar ninguna base de
+ * datos; al terminar, el diario se compacta y no queda nada pendiente.
+ */
+class EscrituraDiferidaTest {
+
+    private static final Path DIARIO = Path.of(Config.get("diferida.diario"));
+
+    @BeforeEach
+    void diarioVacio() throws IOException {
+        esperarHilo();
+        Files.deleteIfExists(DIARIO);
+    }
+
+    @Test
+    void recuperaHastaElRegistroCortado() throws IOException {
+        escribir(registro("1", "Luna"), registro("2", "Ginny"), registro("1", "Luna L."),
+                ByteBuffer.allocate(8 + 10).putInt(300).putInt(0).flip());
+
+        assertEquals(3, (int) EscrituraDiferida.recuperar().join());
+        esperarHilo();
+        assertEquals(0, EscrituraDiferida.getPendientes());
+        assertEquals(0, registros());
+    }
+
+    @Test
+    void seParaEnUnRegistroDanado() throws IOException {
+        ByteBuffer danado = registro("2", "Ginny");
+        danado.put(danado.limit() - 1, (byte) (danado.get(danado.limit() - 1) ^ 1));
+        escribir(registro("1", "Luna"), danado, registro("3", "Cho"));
+
+        assertEquals(1, (int) EscrituraDiferida.recuperar().join());
+    }
+
+    @Test
+    void sinDiarioNoHayNadaQueRecuperar() {
+        assertEquals(0, (int) EscrituraDiferida.recuperar().join());
+    }
+
+    /**
+     * Espera a que el hilo de la escritura diferida termine lo que tenga encolado: el primer
+     * {@link EscrituraDiferida#vaciar()} deja atrás el volcado en curso, y el segundo la
+     * compactación que este encola al terminar.
+     */
+    private static void esperarHilo() {
+        EscrituraDiferida.vaciar().join();
+        EscrituraDiferida.vaciar().join();
+    }
+
+    /** Registro con el mismo formato que escribe el diario: casa y estado de la fila. */
+    private static ByteBuffer registro(String id, String nombre) {
+        return FormatoDiario.registro(salida -> {
+            FormatoDiario.cadena(salida, "Nadie");
+            FormatoDiario.estudiante(salida, new Modelo_Estudiante(id, nombre, "Lovegood", "Ravenclaw", 4, "Liebre"));
+        });
+    }
+
+    private static void escribir(ByteBuffer... registros) throws IOException {
+        Files.createDirectories(DIARIO.toAbsolutePath().getParent());
+        try (FileChannel canal = FileChannel.open(DIARIO, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer registro : registros) FormatoDiario.escribir(canal, registro);
+        }
+    }
+
+    /** @return Registros válidos del diario en disco. */
+    private static int registros() throws IOException {
+        int n = 0;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(DIARIO)))) {
+            while (FormatoDiario.leer(entrada, 1 << 16, DIARIO) != null) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,85 @@
+package org.equiporon.DAO;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reserva de IDs de {@link GeneradorIds} contra una base H2 en memoria, con muchos hilos
+ * insertando a la vez desde varios "clientes" (cada fuente tiene sus propios bloques en memoria,
+ * pero todas comparten la misma tabla <code>ID_SECUENCIAS</code>).
+ */
+class GeneradorIdsTest {
+
+    private static final int HILOS = 16;
+    private static final int IDS_POR_HILO = 500;
+    private static final int CLIENTES = 4;
+
+    /** Base nueva para cada test, con una conexión propia por reserva como hace el pool. */
+    private static GeneradorIds.ProveedorConexion baseNueva(String nombre) {
+        String url = "jdbc:h2:mem:" + nombre + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        return () -> DriverManager.getConnection(url, "sa", "");
+    }
+
+    @Test
+    void hilosEnParaleloNuncaRecibenElMismoId() throws Exception {
+        GeneradorIds.ProveedorConexion proveedor = baseNueva("ids_paralelo");
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch salida = new CountDownLatch(1);
+
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<Integer>> tareas = new ArrayList<>();
+            for (int h = 0; h < HILOS; h++) {
+                String cliente = "Cliente" + (h % CLIENTES);
+                boolean masivo = h % 4 == 3;
+                tareas.add(hilos.submit(() -> {
+                    salida.await();
+                    int repetidos = 0;
+                    for (int i = 0; i < IDS_POR_HILO; i++) {
+                        if (masivo && i % 50 == 0) {
+                            long inicio = GeneradorIds.reservar(cliente, "ESTUDIANTES", 10, proveedor, c -> 0);
+                            for (long id = inicio; id < inicio + 10; id++) if (!ids.add(id)) repetidos++;
+                        }
+                        if (!ids.add(GeneradorIds.siguiente(cliente, "ESTUDIANTES", proveedor, c -> 0))) repetidos++;
+                    }
+                    return repetidos;
+                }));
+            }
+            salida.countDown();
+
+            int repetidos = 0;
+            for (Future<Integer> tarea : tareas) repetidos += tarea.get();
+            assertEquals(0, repetidos, "IDs repetidos entre hilos");
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        int masivos = (HILOS / 4) * (IDS_POR_HILO / 50) * 10;
+        assertEquals(HILOS * IDS_POR_HILO + masivos, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id >= 1));
+    }
+
+    @Test
+    void laSecuenciaPasaDe32Bits() throws SQLException {
+        GeneradorIds.ProveedorConexion proveedor = baseNueva("ids_64");
+        long inicio = GeneradorIds.reservar("Grande", "ESTUDIANTES", 1, proveedor, c -> Integer.MAX_VALUE - 3L);
+        assertEquals(Integer.MAX_VALUE - 2L, inicio);
+
+        // Este bloque deja el contador por encima de 2^31 - 1
+        assertEquals(Integer.MAX_VALUE - 1L, GeneradorIds.reservar("Grande", "ESTUDIANTES", 10, proveedor, c -> 0));
+        assertEquals(Integer.MAX_VALUE + 9L, GeneradorIds.reservar("Grande", "ESTUDIANTES", 1, proveedor, c -> 0));
+    }
+}
@@ -0,0 +1,78 @@
+package org.equiporon.DAO;
+
+import org.equiporon.Modelo.Modelo_Estudiante;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Huellas de {@link MariaDBDAO#resumirCubetas} frente a las de {@link Reconciliador#huella}, contra
+ * un MariaDB de verdad (<code>-Dprueba.mariadb.url=...</code>; sin él, el test se salta).
+ * <p>
+ * Usa una tabla <code>ESTUDIANTES</code> temporal, que solo ve su conexión y oculta la real, en
+ * latin1 a propósito: es el juego de caracteres por defecto de muchas instalaciones, y con él las
+ * tildes y la ñ tienen otros bytes que en UTF-8.
+ */
+class ReconciliadorTest {
+
+    private static final long ANCHO = 64;
+
+    private static final List<Modelo_Estudiante> ALUMNOS = List.of(
+            new Modelo_Estudiante("GR1", "Harry", "Potter", "Gryffindor", 5, "Ciervo"),
+            new Modelo_Estudiante("GR2", "Begoña", "Núñez Peña", "Gryffindor", 3, "Cigüeña"),
+            new Modelo_Estudiante("GR70", "Inés", "Martín", "Gryffindor", 1, null),
+            new Modelo_Estudiante("GR71", "Óscar", "Álvarez", "Gryffindor", 7, "Búho"),
+            new Modelo_Estudiante("GR200", "José Ramón", "Díaz", "Gryffindor", 2, "Salmón"));
+
+    @Test
+    void nombresConTildesNoDanDiferencias() throws Exception {
+        String url = System.getProperty("prueba.mariadb.url");
+        assumeTrue(url != null && !url.isBlank(), "Sin prueba.mariadb.url: no hay MariaDB con el que probar");
+
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("""
+                        CREATE TEMPORARY TABLE ESTUDIANTES (
+                            id VARCHAR(20) PRIMARY KEY,
+                            nombre VARCHAR(50),
+                            apellidos VARCHAR(50),
+                            casa VARCHAR(20),
+                            curso INT,
+                            patronus VARCHAR(50)
+                        ) DEFAULT CHARSET = latin1""");
+            }
+            try (PreparedStatement ins = conn.prepareStatement(
+                    "INSERT INTO ESTUDIANTES (id, nombre, apellidos, casa, curso, patronus) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (Modelo_Estudiante e : ALUMNOS) {
+                    ins.setString(1, e.getId());
+                    ins.setString(2, e.getNombre());
+                    ins.setString(3, e.getApellidos());
+                    ins.setString(4, e.getCasa());
+                    ins.setInt(5, e.getCurso());
+                    ins.setString(6, e.getPatronus());
+                    ins.addBatch();
+                }
+                ins.executeBatch();
+            }
+
+            // Lo que calcularía la casa con las mismas filas (su ID va sin prefijo)
+            Map<Long, Reconciliador.Huella> esperadas = new HashMap<>();
+            for (Modelo_Estudiante e : ALUMNOS) {
+                String numero = e.getId().substring(2);
+                esperadas.merge(Long.parseLong(numero) / ANCHO,
+                        new Reconciliador.Huella(1, Reconciliador.huella(numero, e)), Reconciliador.Huella::sumar);
+            }
+
+            assertEquals(esperadas, MariaDBDAO.resumirCubetas(conn, "GR", ANCHO, null));
+        }
+    }
+}